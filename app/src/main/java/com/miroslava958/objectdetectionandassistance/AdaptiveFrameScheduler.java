@@ -0,0 +1,142 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Decides which camera frames go through inference.
+ * Keeps an exponential moving average of the measured inference time and picks
+ * the interval between inferences so that the target rate is met when the device
+ * has headroom, and inference never takes more than a set share of the time.
+ * When latency rises (for example under thermal throttling) the rate backs off
+ * quickly; when headroom returns it speeds up again more gently.
+ *
+ * Plain Java with a pluggable {@link Clock}, so the control behaviour can be
+ * tested on simulated latency traces.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class AdaptiveFrameScheduler {
+    // Smoothing used when latency goes up - react quickly to throttling
+    private static final double ALPHA_RISING = 0.3;
+    // Smoothing used when latency goes down - recover gradually to avoid oscillation
+    private static final double ALPHA_FALLING = 0.1;
+
+    private final Clock clock;
+    // Highest share of wall time that inference may use (0..1]
+    private final double maxUtilisation;
+    // Slowest allowed interval, so detection never stops completely
+    private final long maxIntervalNanos;
+
+    // Interval matching the target rate
+    private long targetIntervalNanos;
+    // Interval currently used
+    private long intervalNanos;
+    // Moving average of inference time, 0 until the first sample
+    private double averageLatencyNanos = 0;
+    // Earliest time the next frame may run, or Long.MIN_VALUE before the first frame
+    private long nextRunNanos = Long.MIN_VALUE;
+    private long acceptedFrames = 0;
+    private long skippedFrames = 0;
+
+    /**
+     * @param clock          Time source
+     * @param targetHz       Desired inference rate, e.g. 10 for speech or 30 for the overlay
+     * @param minHz          Lowest rate the scheduler may back off to
+     * @param maxUtilisation Highest share of time inference may use, e.g. 0.75
+     */
+    public AdaptiveFrameScheduler(Clock clock, double targetHz, double minHz, double maxUtilisation) {
+        if (targetHz <= 0 || minHz <= 0 || minHz > targetHz) {
+            throw new IllegalArgumentException("Invalid rates: target " + targetHz + ", min " + minHz);
+        }
+        if (maxUtilisation <= 0 || maxUtilisation > 1) {
+            throw new IllegalArgumentException("Utilisation must be in (0, 1]");
+        }
+        this.clock = clock;
+        this.maxUtilisation = maxUtilisation;
+        this.maxIntervalNanos = hzToNanos(minHz);
+        this.targetIntervalNanos = hzToNanos(targetHz);
+        this.intervalNanos = targetIntervalNanos;
+    }
+
+    private static long hzToNanos(double hz) {
+        return (long) (1_000_000_000L / hz);
+    }
+
+    /**
+     * Called for each camera frame.
+     *
+     * @return true if this frame should go through inference
+     */
+    public synchronized boolean shouldRun() {
+        long now = clock.nanoTime();
+        if (nextRunNanos != Long.MIN_VALUE && now < nextRunNanos) {
+            skippedFrames++;
+            return false;
+        }
+        // Advance from the due time, not from now, so the average rate matches the
+        // interval even though camera frames do not line up with it exactly
+        nextRunNanos = nextRunNanos == Long.MIN_VALUE ? now + intervalNanos : nextRunNanos + intervalNanos;
+        if (nextRunNanos <= now) {
+            // Fell more than an interval behind (e.g. the camera paused) - start again from now
+            nextRunNanos = now + intervalNanos;
+        }
+        acceptedFrames++;
+        return true;
+    }
+
+    /**
+     * Feeds back the measured time of one inference and updates the rate.
+     *
+     * @param latencyNanos How long the inference took
+     */
+    public synchronized void recordInference(long latencyNanos) {
+        if (averageLatencyNanos == 0) {
+            averageLatencyNanos = latencyNanos;
+        } else {
+            double alpha = latencyNanos > averageLatencyNanos ? ALPHA_RISING : ALPHA_FALLING;
+            averageLatencyNanos += alpha * (latencyNanos - averageLatencyNanos);
+        }
+        updateInterval();
+    }
+
+    /**
+     * Changes the target rate, e.g. when the overlay is hidden and only speech is needed.
+     *
+     * @param targetHz The new target rate
+     */
+    public synchronized void setTargetRate(double targetHz) {
+        if (targetHz <= 0) {
+            throw new IllegalArgumentException("Invalid rate " + targetHz);
+        }
+        targetIntervalNanos = Math.min(hzToNanos(targetHz), maxIntervalNanos);
+        updateInterval();
+    }
+
+    private void updateInterval() {
+        // Leave enough idle time that inference stays under the utilisation limit
+        long budgetInterval = (long) (averageLatencyNanos / maxUtilisation);
+        intervalNanos = Math.min(maxIntervalNanos, Math.max(targetIntervalNanos, budgetInterval));
+    }
+
+    /**
+     * @return The rate the scheduler currently lets frames through at
+     */
+    public synchronized double getCurrentRateHz() {
+        return 1_000_000_000.0 / intervalNanos;
+    }
+
+    public synchronized long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    public synchronized long getAverageLatencyNanos() {
+        return (long) averageLatencyNanos;
+    }
+
+    public synchronized long getAcceptedFrames() {
+        return acceptedFrames;
+    }
+
+    public synchronized long getSkippedFrames() {
+        return skippedFrames;
+    }
+}
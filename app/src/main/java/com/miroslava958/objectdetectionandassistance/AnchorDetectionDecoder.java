@@ -0,0 +1,177 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decoder for SSD-style models exported without the detection post-processing op.
+ * The model returns box encodings [1, A, 4] relative to A anchors, and class
+ * logits [1, A, C]. Boxes are decoded with the standard SSD box coder
+ * (scale factors 10, 10, 5, 5) and filtered with class-aware non-max suppression.
+ *
+ * Scores are compared in logit space, so the sigmoid is only computed for anchors
+ * that pass the threshold, and every loop runs over flat arrays. Quantized logits
+ * are compared as raw keys against the threshold quantized once per frame, and
+ * quantized box encodings are dequantized only for anchors that pass.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class AnchorDetectionDecoder implements DetectionDecoder {
+    // SSD box coder scale factors for y, x, height and width
+    private static final float Y_SCALE = 10f;
+    private static final float X_SCALE = 10f;
+    private static final float H_SCALE = 5f;
+    private static final float W_SCALE = 5f;
+
+    // Anchors as (centre y, centre x, height, width), normalised
+    private final float[] anchors;
+    private final int anchorCount;
+    // Score columns per anchor, and the first real class (1 if column 0 is background)
+    private final int scoreColumns;
+    private final int firstClass;
+    private final OutputBuffer encodings;
+    // Class logits, and the same buffer as a float or a quantized one
+    private final OutputBuffer scores;
+    private final FloatOutputBuffer logits;
+    private final QuantizedOutputBuffer quantizedLogits;
+    private final Map<Integer, Object> outputs = new HashMap<>();
+    private final NonMaxSuppression nms;
+    private final int maxDetections;
+
+    /**
+     * @param anchors       Anchors as (centre y, centre x, height, width) per anchor, normalised
+     * @param scoreColumns  Number of class scores per anchor
+     * @param firstClass    Index of the first real class (1 when column 0 is background)
+     * @param boxesIndex    Output index of the box encodings
+     * @param scoresIndex   Output index of the class logits
+     * @param iouThreshold  Overlap threshold for non-max suppression
+     * @param maxCandidates Most boxes passed into non-max suppression
+     * @param maxDetections Most detections returned per frame
+     */
+    public AnchorDetectionDecoder(float[] anchors, int scoreColumns, int firstClass, int boxesIndex, int scoresIndex,
+                                  float iouThreshold, int maxCandidates, int maxDetections) {
+        this(anchors, scoreColumns, firstClass, boxesIndex, scoresIndex, iouThreshold, maxCandidates, maxDetections,
+                null, null);
+    }
+
+    /**
+     * @param anchors       Anchors as (centre y, centre x, height, width) per anchor, normalised
+     * @param scoreColumns  Number of class scores per anchor
+     * @param firstClass    Index of the first real class (1 when column 0 is background)
+     * @param boxesIndex    Output index of the box encodings
+     * @param scoresIndex   Output index of the class logits
+     * @param iouThreshold  Overlap threshold for non-max suppression
+     * @param maxCandidates Most boxes passed into non-max suppression
+     * @param maxDetections Most detections returned per frame
+     * @param boxSpec       Box encoding tensor giving its type, or null for FLOAT32
+     * @param scoreSpec     Class logit tensor giving its type, or null for FLOAT32
+     */
+    public AnchorDetectionDecoder(float[] anchors, int scoreColumns, int firstClass, int boxesIndex, int scoresIndex,
+                                  float iouThreshold, int maxCandidates, int maxDetections,
+                                  TensorSpec boxSpec, TensorSpec scoreSpec) {
+        if (anchors.length % 4 != 0) {
+            throw new IllegalArgumentException("Anchors must have 4 values each");
+        }
+        this.anchors = anchors;
+        this.anchorCount = anchors.length / 4;
+        this.scoreColumns = scoreColumns;
+        this.firstClass = firstClass;
+        this.maxDetections = maxDetections;
+        encodings = OutputBuffer.forTensor(boxSpec, anchorCount * 4);
+        scores = OutputBuffer.forTensor(scoreSpec, anchorCount * scoreColumns);
+        logits = scores instanceof FloatOutputBuffer ? (FloatOutputBuffer) scores : null;
+        quantizedLogits = scores instanceof QuantizedOutputBuffer ? (QuantizedOutputBuffer) scores : null;
+        outputs.put(boxesIndex, encodings.prepare());
+        outputs.put(scoresIndex, scores.prepare());
+        nms = new NonMaxSuppression(maxCandidates, iouThreshold, maxDetections);
+    }
+
+    @Override
+    public Map<Integer, Object> prepareOutputs() {
+        encodings.prepare();
+        scores.prepare();
+        return outputs;
+    }
+
+    @Override
+    public int decode(float scoreThreshold, DetectionBuffer out) {
+        encodings.load();
+        // sigmoid(x) > t  <=>  x > log(t / (1 - t))
+        float minLogit = scoreThreshold <= 0f ? Float.NEGATIVE_INFINITY
+                : scoreThreshold >= 1f ? Float.POSITIVE_INFINITY
+                : (float) Math.log(scoreThreshold / (1.0 - scoreThreshold));
+
+        nms.reset();
+        if (logits != null) {
+            decodeFloat(logits.read(), minLogit);
+        } else {
+            decodeQuantized(quantizedLogits.read(), minLogit);
+        }
+        return nms.run(out);
+    }
+
+    private void decodeFloat(float[] logit, float minLogit) {
+        for (int a = 0; a < anchorCount; a++) {
+            int row = a * scoreColumns;
+            float best = minLogit;
+            int bestClass = -1;
+            for (int c = firstClass; c < scoreColumns; c++) {
+                float value = logit[row + c];
+                if (value > best) {
+                    best = value;
+                    bestClass = c;
+                }
+            }
+            if (bestClass >= 0) {
+                addBox(a, best, bestClass);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #decodeFloat} on quantized logits, comparing keys.
+     */
+    private void decodeQuantized(byte[] logit, float minLogit) {
+        int mask = quantizedLogits.getKeyMask();
+        int minKey = quantizedLogits.keyAbove(minLogit);
+        for (int a = 0; a < anchorCount; a++) {
+            int row = a * scoreColumns;
+            int best = minKey;
+            int bestClass = -1;
+            for (int c = firstClass; c < scoreColumns; c++) {
+                int key = (logit[row + c] & 0xFF) ^ mask;
+                if (key > best) {
+                    best = key;
+                    bestClass = c;
+                }
+            }
+            if (bestClass >= 0) {
+                addBox(a, quantizedLogits.dequantize(best), bestClass);
+            }
+        }
+    }
+
+    /**
+     * Decodes one anchor's box and adds it to non-max suppression.
+     */
+    private void addBox(int anchor, float logit, int bestClass) {
+        int b = anchor * 4;
+        float anchorY = anchors[b];
+        float anchorX = anchors[b + 1];
+        float anchorH = anchors[b + 2];
+        float anchorW = anchors[b + 3];
+        float centreY = encodings.get(b) / Y_SCALE * anchorH + anchorY;
+        float centreX = encodings.get(b + 1) / X_SCALE * anchorW + anchorX;
+        float halfH = (float) Math.exp(encodings.get(b + 2) / H_SCALE) * anchorH / 2;
+        float halfW = (float) Math.exp(encodings.get(b + 3) / W_SCALE) * anchorW / 2;
+        float score = (float) (1.0 / (1.0 + Math.exp(-logit)));
+
+        nms.add(centreX - halfW, centreY - halfH, centreX + halfW, centreY + halfH, score, bestClass - firstClass);
+    }
+
+    @Override
+    public int getMaxDetections() {
+        return maxDetections;
+    }
+}
@@ -0,0 +1,61 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+
+/**
+ * Reads the battery and thermal status from the platform for the {@link PerformanceGovernor}.
+ * The battery comes from the sticky battery broadcast, so no receiver stays registered;
+ * the thermal status needs Android 10 and reads as THERMAL_NONE before it.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class AndroidDeviceSignals implements DeviceSignals {
+
+    private final Context context;
+    private final PowerManager powerManager;
+    private final IntentFilter batteryFilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+    // Battery broadcast read by the last getBatteryPercent() call, reused by isCharging()
+    private Intent battery;
+
+    /**
+     * @param context Any context of the app
+     */
+    public AndroidDeviceSignals(Context context) {
+        this.context = context.getApplicationContext();
+        this.powerManager = (PowerManager) this.context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    @Override
+    public int getBatteryPercent() {
+        battery = context.registerReceiver(null, batteryFilter);
+        if (battery == null) {
+            return -1;
+        }
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return level < 0 || scale <= 0 ? -1 : level * 100 / scale;
+    }
+
+    @Override
+    public boolean isCharging() {
+        if (battery == null) {
+            battery = context.registerReceiver(null, batteryFilter);
+        }
+        int plugged = battery == null ? 0 : battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+        return plugged != 0;
+    }
+
+    @Override
+    public int getThermalStatus() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || powerManager == null) {
+            return THERMAL_NONE;
+        }
+        return powerManager.getCurrentThermalStatus();
+    }
+}
@@ -0,0 +1,106 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.SystemClock;
+import android.view.Surface;
+import android.view.WindowManager;
+
+/**
+ * Reads the gyroscope and accelerometer for the {@link MotionEstimator}.
+ * Samples arrive in the device's natural axes and are turned into screen axes with the
+ * display rotation read on {@link #start}; the activity is recreated when the display
+ * rotates, which starts the sensor again. Sensor timestamps count from boot including
+ * deep sleep, so they are moved onto the System.nanoTime() clock of the camera frames.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class AndroidMotionSensor implements MotionSensor, SensorEventListener {
+    // About 50 Hz, enough to follow head and hand movements
+    private static final int SAMPLING_PERIOD = SensorManager.SENSOR_DELAY_GAME;
+
+    private final Context context;
+    private final SensorManager sensorManager;
+    private final Sensor gyroscope;
+    private final Sensor accelerometer;
+    // Receives the samples while started, null otherwise
+    private volatile Listener listener;
+    // Surface.ROTATION_* of the display when started
+    private volatile int displayRotation = Surface.ROTATION_0;
+
+    /**
+     * @param context Any context of the app
+     */
+    public AndroidMotionSensor(Context context) {
+        this.context = context.getApplicationContext();
+        sensorManager = (SensorManager) this.context.getSystemService(Context.SENSOR_SERVICE);
+        gyroscope = sensorManager != null ? sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE) : null;
+        accelerometer = sensorManager != null ? sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER) : null;
+    }
+
+    @Override
+    public boolean start(Listener listener) {
+        if (gyroscope == null || accelerometer == null) {
+            return false;
+        }
+        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        displayRotation = windowManager != null
+                ? windowManager.getDefaultDisplay().getRotation() : Surface.ROTATION_0;
+        this.listener = listener;
+        sensorManager.registerListener(this, gyroscope, SAMPLING_PERIOD);
+        sensorManager.registerListener(this, accelerometer, SAMPLING_PERIOD);
+        return true;
+    }
+
+    @Override
+    public void stop() {
+        if (sensorManager != null) {
+            sensorManager.unregisterListener(this);
+        }
+        listener = null;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        Listener target = listener;
+        if (target == null) {
+            return;
+        }
+        long timestampNanos = event.timestamp - SystemClock.elapsedRealtimeNanos() + System.nanoTime();
+        float naturalX = event.values[0];
+        float naturalY = event.values[1];
+        float x;
+        float y;
+        switch (displayRotation) {
+            case Surface.ROTATION_90:
+                x = -naturalY;
+                y = naturalX;
+                break;
+            case Surface.ROTATION_180:
+                x = -naturalX;
+                y = -naturalY;
+                break;
+            case Surface.ROTATION_270:
+                x = naturalY;
+                y = -naturalX;
+                break;
+            default:
+                x = naturalX;
+                y = naturalY;
+                break;
+        }
+        if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE) {
+            target.onGyroscope(timestampNanos, x, y, event.values[2]);
+        } else {
+            target.onAccelerometer(timestampNanos, x, y, event.values[2]);
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+}
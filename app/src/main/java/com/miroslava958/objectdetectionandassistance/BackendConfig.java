@@ -0,0 +1,107 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Describes one way of running the TensorFlow Lite model:
+ * the hardware backend, the number of CPU threads and whether XNNPACK is used.
+ * Configurations can be written to and read from a short text key, so the
+ * chosen one can be cached between launches.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public final class BackendConfig {
+
+    /**
+     * Hardware backend used by the interpreter.
+     */
+    public enum Type {
+        CPU,
+        GPU,
+        NNAPI
+    }
+
+    private final Type type;
+    private final int threads;
+    private final boolean xnnpack;
+
+    public BackendConfig(Type type, int threads, boolean xnnpack) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        this.type = type;
+        this.threads = threads;
+        this.xnnpack = xnnpack;
+    }
+
+    /**
+     * @param threads Number of CPU threads
+     * @param xnnpack Whether the XNNPACK delegate is enabled
+     * @return A CPU configuration
+     */
+    public static BackendConfig cpu(int threads, boolean xnnpack) {
+        return new BackendConfig(Type.CPU, threads, xnnpack);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean isXnnpack() {
+        return xnnpack;
+    }
+
+    /**
+     * @return A short text form such as "CPU:4:xnnpack", readable by {@link #fromKey}
+     */
+    public String toKey() {
+        return type.name() + ":" + threads + ":" + (xnnpack ? "xnnpack" : "plain");
+    }
+
+    /**
+     * Parses a key written by {@link #toKey()}.
+     *
+     * @param key The stored key
+     * @return The configuration, or null if the key is missing or malformed
+     */
+    public static BackendConfig fromKey(String key) {
+        if (key == null) {
+            return null;
+        }
+        String[] parts = key.split(":");
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            return new BackendConfig(Type.valueOf(parts[0]), Integer.parseInt(parts[1]),
+                    "xnnpack".equals(parts[2]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BackendConfig)) {
+            return false;
+        }
+        BackendConfig other = (BackendConfig) o;
+        return type == other.type && threads == other.threads && xnnpack == other.xnnpack;
+    }
+
+    @Override
+    public int hashCode() {
+        return (type.hashCode() * 31 + threads) * 31 + (xnnpack ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return toKey();
+    }
+}
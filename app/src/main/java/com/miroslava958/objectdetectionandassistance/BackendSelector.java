@@ -0,0 +1,199 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Chooses the fastest way to run the model on the current device.
+ * Each candidate configuration is timed with a few warm-up and timed invocations,
+ * the fastest working one is picked, and the choice is cached under a key
+ * (device model + app version) so later launches skip the probe.
+ * Candidates that are unavailable or fail fall back cleanly to CPU.
+ *
+ * The timing itself is done by a {@link Probe}, so the selection logic is plain Java.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class BackendSelector {
+
+    /**
+     * Runs the model with a given configuration and reports how long it takes.
+     */
+    public interface Probe {
+        /**
+         * @param config The configuration to check
+         * @return true if the backend exists on this device
+         */
+        boolean isAvailable(BackendConfig config);
+
+        /**
+         * Runs warm-up invocations and then times the model.
+         *
+         * @param config     The configuration to time
+         * @param warmupRuns Invocations run before timing
+         * @param timedRuns  Invocations that are timed
+         * @return The median time of one invocation in nanoseconds
+         * @throws Exception if the interpreter could not be built or run
+         */
+        long measureNanos(BackendConfig config, int warmupRuns, int timedRuns) throws Exception;
+    }
+
+    /**
+     * Persistent key/value storage for the chosen configuration.
+     */
+    public interface Cache {
+        String get(String key);
+
+        void put(String key, String value);
+    }
+
+    /**
+     * Timing of one candidate, kept for logging.
+     */
+    public static final class Result {
+        private final BackendConfig config;
+        private final long nanos;
+        private final String error;
+
+        Result(BackendConfig config, long nanos, String error) {
+            this.config = config;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        public BackendConfig getConfig() {
+            return config;
+        }
+
+        /**
+         * @return Median invocation time, or -1 if the candidate failed
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return Why the candidate was rejected, or null if it ran
+         */
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return config + (error == null ? " " + (nanos / 1000) + "us" : " failed: " + error);
+        }
+    }
+
+    private final Probe probe;
+    private final Cache cache;
+    private final int warmupRuns;
+    private final int timedRuns;
+    private final List<Result> lastResults = new ArrayList<>();
+    private boolean lastFromCache = false;
+
+    /**
+     * @param probe      Times the model for a configuration
+     * @param cache      Stores the chosen configuration between launches
+     * @param warmupRuns Invocations run before timing each candidate
+     * @param timedRuns  Invocations timed for each candidate
+     */
+    public BackendSelector(Probe probe, Cache cache, int warmupRuns, int timedRuns) {
+        this.probe = probe;
+        this.cache = cache;
+        this.warmupRuns = warmupRuns;
+        this.timedRuns = timedRuns;
+    }
+
+    /**
+     * Builds the list of configurations worth trying.
+     *
+     * @param maxThreads   Highest CPU thread count to try
+     * @param accelerators Whether to add GPU and NNAPI candidates
+     * @return CPU with 1..maxThreads threads (XNNPACK on and off), then GPU and NNAPI
+     */
+    public static List<BackendConfig> candidates(int maxThreads, boolean accelerators) {
+        List<BackendConfig> list = new ArrayList<>();
+        for (int threads = 1; threads <= Math.max(1, maxThreads); threads++) {
+            list.add(BackendConfig.cpu(threads, true));
+            list.add(BackendConfig.cpu(threads, false));
+        }
+        if (accelerators) {
+            list.add(new BackendConfig(BackendConfig.Type.GPU, 1, false));
+            list.add(new BackendConfig(BackendConfig.Type.NNAPI, 1, false));
+        }
+        return list;
+    }
+
+    /**
+     * Returns the cached choice for this key, or probes the candidates and caches the fastest.
+     *
+     * @param cacheKey   Identifies the device and app version
+     * @param candidates Configurations to try, in order of preference on ties
+     * @return The chosen configuration, never null
+     */
+    public BackendConfig select(String cacheKey, List<BackendConfig> candidates) {
+        lastResults.clear();
+        lastFromCache = false;
+
+        BackendConfig cached = BackendConfig.fromKey(cache.get(cacheKey));
+        if (cached != null && candidates.contains(cached)) {
+            lastFromCache = true;
+            return cached;
+        }
+
+        BackendConfig best = null;
+        long bestNanos = Long.MAX_VALUE;
+        for (BackendConfig config : candidates) {
+            if (!probe.isAvailable(config)) {
+                lastResults.add(new Result(config, -1, "not available"));
+                continue;
+            }
+            try {
+                long nanos = probe.measureNanos(config, warmupRuns, timedRuns);
+                lastResults.add(new Result(config, nanos, null));
+                if (nanos < bestNanos) {
+                    bestNanos = nanos;
+                    best = config;
+                }
+            } catch (Exception e) {
+                lastResults.add(new Result(config, -1, String.valueOf(e.getMessage())));
+            }
+        }
+
+        if (best == null) {
+            // Nothing could be timed, use plain CPU and probe again next launch
+            return fallback(candidates);
+        }
+        cache.put(cacheKey, best.toKey());
+        return best;
+    }
+
+    /**
+     * @return The first CPU candidate, or single-threaded CPU if there is none
+     */
+    private static BackendConfig fallback(List<BackendConfig> candidates) {
+        for (BackendConfig config : candidates) {
+            if (config.getType() == BackendConfig.Type.CPU) {
+                return config;
+            }
+        }
+        return BackendConfig.cpu(1, false);
+    }
+
+    /**
+     * @return Timings from the last probe (empty if the choice came from the cache)
+     */
+    public List<Result> getLastResults() {
+        return Collections.unmodifiableList(lastResults);
+    }
+
+    /**
+     * @return true if the last selection was read from the cache
+     */
+    public boolean isLastFromCache() {
+        return lastFromCache;
+    }
+}
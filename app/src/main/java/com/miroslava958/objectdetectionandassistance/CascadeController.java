@@ -0,0 +1,582 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Runs a second, heavier detector on parts of the frame where the fast model is unsure.
+ * The fast model still analyses every frame; the refinement model, with its own
+ * interpreter and threads, looks again at crops around objects that need a closer look:
+ * - tracks that have just appeared, once
+ * - tracks whose score is low, again every so often
+ * - the whole frame, when the user asks for it
+ * A crop is a small part of the frame converted at the refinement model's full input size,
+ * so small and distant objects get several times the input resolution.
+ *
+ * Regions are planned from the tracked objects while the frame is being converted (the
+ * camera image is only available then), run after the fast model and merged into the fast
+ * detections before tracking:
+ * - a refined box replaces the fast box of the same object
+ * - objects found only by the refinement model are added, once if crops overlap
+ * - a fast detection inside a crop that the refinement model did not confirm is removed
+ * - refined boxes cut off by a crop edge only confirm, as they are not whole
+ *
+ * Compute is limited by a budget per frame: each analysed frame earns a fixed amount of
+ * refinement time, unused time can be saved up to a limit, and each region costs the
+ * measured average time of one refinement. When the refinement model is slower than the
+ * budget, it runs every few frames instead of holding up every frame.
+ *
+ * {@link #plan} runs on the camera analyzer thread and {@link #refine} on a pipeline stage.
+ * What a plan spends and marks is kept in the frame's {@link Plan}; a frame dropped by the
+ * pipeline before its refinement ran gives it back with {@link #cancel}, so its tracks are
+ * planned again on the next frame and a request for the whole frame is not lost.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class CascadeController {
+    // Tracks never refined
+    private static final long NEVER = Long.MIN_VALUE;
+    // Refined box edges this close (view pixels) to an inner crop edge are cut off by the crop
+    private static final float CUT_TOLERANCE = 1f;
+    // Weight of each new refinement time in the moving average
+    private static final float ESTIMATE_ALPHA = 0.25f;
+    // Outcomes of matching a fast detection against the refined ones
+    private static final int NO_MATCH = 0;
+    private static final int MATCH_CUT = 1;
+    private static final int MATCH_WHOLE = 2;
+
+    // Most regions refined per frame, and the refinement model's input aspect ratio
+    private final int maxRegions;
+    private final float aspect;
+    // Refinement time earned per frame, and the most that can be saved up
+    private final long budgetNanos;
+    private final long maxCreditNanos;
+    // Tracks scoring below this are refined again at most every refreshNanos
+    private final float confidentScore;
+    private final long refreshNanos;
+    // Margin around a box as a share of its size, and smallest crop as a share of the shorter frame side
+    private final float margin;
+    private final float minSizeFraction;
+    // Same-class boxes overlapping at least this much are the same object
+    private final float mergeIou;
+    // Times each refinement
+    private final Clock clock;
+
+    // IDs of the tracks in the last plan and when each was last refined; swapped with the next arrays
+    private int[] trackIds;
+    private long[] refinedAt;
+    private int trackCount;
+    private int[] nextTrackIds;
+    private long[] nextRefinedAt;
+    // Unspent refinement time; may go below zero when a refinement took longer than expected
+    private long creditNanos;
+    // Moving average of one refinement, 0 until the first one is measured
+    private long estimateNanos;
+    // Set by the user, cleared when the whole frame has been planned
+    private volatile boolean requested;
+    private long plannedRegions;
+    private long budgetLimitedFrames;
+
+    /**
+     * What one frame's plan spent and marked, kept with the frame until its refinement
+     * runs so it can be given back if the frame is dropped first. Preallocated per frame
+     * slot; only read and written under the controller's lock.
+     */
+    public static final class Plan {
+        // Tracks marked as refined by the plan, and when they were refined before
+        private final int[] trackIds;
+        private final long[] previousRefinedAt;
+        private int trackCount;
+        // Capture time of the planned frame, the refinement time reserved and whether it took a user request
+        private long timeNanos;
+        private long spentNanos;
+        private int regions;
+        private boolean wholeFrame;
+        // Set by plan, cleared when the refinement runs or the plan is cancelled
+        private boolean pending;
+
+        Plan(int maxTracks) {
+            trackIds = new int[maxTracks];
+            previousRefinedAt = new long[maxTracks];
+        }
+    }
+
+    /**
+     * @param maxRegions      Most regions refined per frame
+     * @param refineWidth     Input width of the refinement model
+     * @param refineHeight    Input height of the refinement model
+     * @param maxTracks       Most tracks the tracker reports
+     * @param budgetNanos     Refinement time each analysed frame may use on average
+     * @param maxCreditNanos  Most unused refinement time that can be saved up
+     * @param confidentScore  Tracks scoring below this are refined again
+     * @param refreshNanos    Shortest time before a low-scoring track is refined again
+     * @param margin          Margin around a box, as a share of its size
+     * @param minSizeFraction Smallest crop side, as a share of the shorter frame side
+     * @param mergeIou        Overlap at which a fast and a refined box are the same object
+     * @param clock           Times each refinement
+     */
+    public CascadeController(int maxRegions, int refineWidth, int refineHeight, int maxTracks,
+                             long budgetNanos, long maxCreditNanos, float confidentScore, long refreshNanos,
+                             float margin, float minSizeFraction, float mergeIou, Clock clock) {
+        if (maxRegions < 1) {
+            throw new IllegalArgumentException("At least one region per frame is needed");
+        }
+        if (refreshNanos <= 0) {
+            throw new IllegalArgumentException("Refresh time must be positive");
+        }
+        this.maxRegions = maxRegions;
+        this.aspect = (float) refineWidth / refineHeight;
+        this.budgetNanos = budgetNanos;
+        this.maxCreditNanos = Math.max(budgetNanos, maxCreditNanos);
+        this.confidentScore = confidentScore;
+        this.refreshNanos = refreshNanos;
+        this.margin = margin;
+        this.minSizeFraction = minSizeFraction;
+        this.mergeIou = mergeIou;
+        this.clock = clock;
+        this.trackIds = new int[maxTracks];
+        this.refinedAt = new long[maxTracks];
+        this.nextTrackIds = new int[maxTracks];
+        this.nextRefinedAt = new long[maxTracks];
+    }
+
+    /**
+     * Asks for the whole next affordable frame to be refined, e.g. when the user wants a closer look.
+     * Safe to call from any thread.
+     */
+    public void requestRefinement() {
+        requested = true;
+    }
+
+    /**
+     * @return A plan for one frame slot, reused for every frame through it
+     */
+    public Plan newPlan() {
+        return new Plan(trackIds.length);
+    }
+
+    /**
+     * Chooses the regions of the current frame to refine and reserves their budget.
+     * The reservation is recorded in the plan, which travels with the frame until
+     * {@link #refine} uses it or {@link #cancel} gives it back.
+     *
+     * @param tracked   Tracked boxes predicted for this frame, in view pixels, with track IDs
+     * @param transform Transform of the whole frame, with the view size set
+     * @param nowNanos  Capture time of the frame
+     * @param regions   Receives {left, top, right, bottom} per region in upright frame pixels,
+     *                  room for 4 * maxRegions values
+     * @param plan      Receives what the plan spent and marked, from {@link #newPlan}
+     * @return The number of regions, 0 to skip refinement for this frame
+     */
+    public synchronized int plan(DetectionBuffer tracked, InputTransform transform, long nowNanos, float[] regions,
+                                 Plan plan) {
+        creditNanos = Math.min(maxCreditNanos, creditNanos + budgetNanos);
+        rememberTracks(tracked);
+        plan.timeNanos = nowNanos;
+        plan.trackCount = 0;
+        plan.spentNanos = 0;
+        plan.regions = 0;
+        plan.wholeFrame = false;
+        plan.pending = true;
+        int count = 0;
+
+        if (requested) {
+            if (!affordable(count)) {
+                budgetLimitedFrames++;
+                return 0;
+            }
+            requested = false;
+            regions[0] = 0f;
+            regions[1] = 0f;
+            regions[2] = transform.getUprightWidth();
+            regions[3] = transform.getUprightHeight();
+            spend(plan);
+            count = 1;
+            plan.wholeFrame = true;
+            for (int t = 0; t < trackCount; t++) {
+                mark(plan, t, nowNanos);
+            }
+        }
+        if (!transform.hasViewMapping()) {
+            return count;
+        }
+
+        while (count < maxRegions) {
+            int next = nextCandidate(tracked, nowNanos);
+            if (next < 0) {
+                break;
+            }
+            int t = indexOf(trackIds, trackCount, tracked.getTrackId(next));
+            if (!covered(tracked, next, transform, regions, count)) {
+                if (!affordable(count)) {
+                    budgetLimitedFrames++;
+                    break;
+                }
+                crop(tracked, next, transform, regions, count);
+                spend(plan);
+                count++;
+            }
+            mark(plan, t, nowNanos);
+        }
+        return count;
+    }
+
+    /**
+     * Gives back what a plan reserved if its refinement never ran, e.g. because the
+     * pipeline dropped the frame: its budget is returned, its tracks count as not refined
+     * by it and a whole-frame request is asked for again. Does nothing for a plan that
+     * was used or already cancelled.
+     *
+     * @param plan The frame's plan
+     */
+    public synchronized void cancel(Plan plan) {
+        if (!plan.pending) {
+            return;
+        }
+        plan.pending = false;
+        creditNanos = Math.min(maxCreditNanos, creditNanos + plan.spentNanos);
+        plannedRegions -= plan.regions;
+        if (plan.wholeFrame) {
+            requested = true;
+        }
+        // Only tracks that no later plan has refined since
+        for (int i = 0; i < plan.trackCount; i++) {
+            int t = indexOf(trackIds, trackCount, plan.trackIds[i]);
+            if (t >= 0 && refinedAt[t] == plan.timeNanos) {
+                refinedAt[t] = plan.previousRefinedAt[i];
+            }
+        }
+    }
+
+    /**
+     * Marks the plan as used by its refinement, so it can no longer be cancelled.
+     */
+    private synchronized void use(Plan plan) {
+        plan.pending = false;
+    }
+
+    /**
+     * Marks track t as refined by the plan, remembering when it was refined before.
+     */
+    private void mark(Plan plan, int t, long nowNanos) {
+        plan.trackIds[plan.trackCount] = trackIds[t];
+        plan.previousRefinedAt[plan.trackCount] = refinedAt[t];
+        plan.trackCount++;
+        refinedAt[t] = nowNanos;
+    }
+
+    /**
+     * Picks the track most in need of refinement: new tracks first, then the
+     * lowest-scoring track not refined recently.
+     *
+     * @return Index into tracked, or -1 if none needs it
+     */
+    private int nextCandidate(DetectionBuffer tracked, long nowNanos) {
+        int best = -1;
+        boolean bestIsNew = false;
+        for (int i = 0; i < tracked.size(); i++) {
+            int t = indexOf(trackIds, trackCount, tracked.getTrackId(i));
+            if (t < 0) {
+                continue;
+            }
+            boolean isNew = refinedAt[t] == NEVER;
+            boolean uncertain = tracked.getScore(i) < confidentScore && nowNanos - refinedAt[t] >= refreshNanos;
+            if (!isNew && !uncertain) {
+                continue;
+            }
+            if (best < 0 || (isNew && !bestIsNew)
+                    || (isNew == bestIsNew && tracked.getScore(i) < tracked.getScore(best))) {
+                best = i;
+                bestIsNew = isNew;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Keeps the refinement times of tracks that are still present and adds new ones as never refined.
+     */
+    private void rememberTracks(DetectionBuffer tracked) {
+        int count = 0;
+        for (int i = 0; i < tracked.size() && count < nextTrackIds.length; i++) {
+            int id = tracked.getTrackId(i);
+            if (id < 0 || indexOf(nextTrackIds, count, id) >= 0) {
+                continue;
+            }
+            int t = indexOf(trackIds, trackCount, id);
+            nextTrackIds[count] = id;
+            nextRefinedAt[count] = t >= 0 ? refinedAt[t] : NEVER;
+            count++;
+        }
+        int[] ids = trackIds;
+        trackIds = nextTrackIds;
+        nextTrackIds = ids;
+        long[] times = refinedAt;
+        refinedAt = nextRefinedAt;
+        nextRefinedAt = times;
+        trackCount = count;
+    }
+
+    private static int indexOf(int[] ids, int count, int id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Until the first refinement has been timed only one region per frame is planned.
+     */
+    private boolean affordable(int planned) {
+        return estimateNanos == 0 ? planned == 0 && creditNanos > 0 : creditNanos >= estimateNanos;
+    }
+
+    private void spend(Plan plan) {
+        creditNanos -= estimateNanos;
+        plannedRegions++;
+        plan.spentNanos += estimateNanos;
+        plan.regions++;
+    }
+
+    /**
+     * @return true if a planned region already contains the whole box
+     */
+    private static boolean covered(DetectionBuffer tracked, int i, InputTransform transform,
+                                   float[] regions, int count) {
+        float left = transform.viewToUprightX(tracked.getLeft(i));
+        float top = transform.viewToUprightY(tracked.getTop(i));
+        float right = transform.viewToUprightX(tracked.getRight(i));
+        float bottom = transform.viewToUprightY(tracked.getBottom(i));
+        for (int r = 0; r < count; r++) {
+            if (left >= regions[4 * r] && top >= regions[4 * r + 1]
+                    && right <= regions[4 * r + 2] && bottom <= regions[4 * r + 3]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes a crop around a box: the box plus a margin, at least the minimum size,
+     * grown to the refinement model's aspect ratio and shifted inside the frame.
+     */
+    private void crop(DetectionBuffer tracked, int i, InputTransform transform, float[] regions, int r) {
+        float frameWidth = transform.getUprightWidth();
+        float frameHeight = transform.getUprightHeight();
+        float left = transform.viewToUprightX(tracked.getLeft(i));
+        float top = transform.viewToUprightY(tracked.getTop(i));
+        float right = transform.viewToUprightX(tracked.getRight(i));
+        float bottom = transform.viewToUprightY(tracked.getBottom(i));
+
+        float minSize = minSizeFraction * Math.min(frameWidth, frameHeight);
+        float width = Math.max(minSize, (right - left) * (1 + 2 * margin));
+        float height = Math.max(minSize, (bottom - top) * (1 + 2 * margin));
+        if (width < height * aspect) {
+            width = height * aspect;
+        } else {
+            height = width / aspect;
+        }
+        width = Math.min(width, frameWidth);
+        height = Math.min(height, frameHeight);
+
+        float cropLeft = Math.max(0f, Math.min(frameWidth - width, (left + right) / 2 - width / 2));
+        float cropTop = Math.max(0f, Math.min(frameHeight - height, (top + bottom) / 2 - height / 2));
+        regions[4 * r] = cropLeft;
+        regions[4 * r + 1] = cropTop;
+        regions[4 * r + 2] = cropLeft + width;
+        regions[4 * r + 3] = cropTop + height;
+    }
+
+    /**
+     * Runs the refinement model on a frame's planned regions and merges the results
+     * into its fast detections.
+     *
+     * @param frame         The frame, post-processed by the fast model, with its regions converted
+     *                      and its plan, if it has one, which is used up
+     * @param runner        The refinement model
+     * @param postProcessor Policy and mapping applied to the refined detections
+     * @param tracked       Tracked boxes predicted for the frame, for the policy's exit thresholds
+     * @param scratch       Working buffer at least as large as the frame's detections
+     * @return The number of detections after merging
+     * @throws Exception if the refinement model fails
+     */
+    public int refine(InferenceContext frame, ModelRunner runner, DetectionPostProcessor postProcessor,
+                      DetectionBuffer tracked, DetectionBuffer scratch) throws Exception {
+        if (frame.getCascadePlan() != null) {
+            use(frame.getCascadePlan());
+        }
+        InferenceContext[] regions = frame.getRefinements();
+        int count = frame.getRefinementCount();
+        for (int r = 0; r < count; r++) {
+            InferenceContext region = regions[r];
+            long start = clock.nanoTime();
+            runner.run(region.getInputs(), region.getOutputs());
+            recordRefinement(clock.nanoTime() - start);
+            region.postProcess(postProcessor, tracked);
+        }
+        return merge(frame.getDetections(), regions, count, scratch);
+    }
+
+    /**
+     * Feeds back the measured time of one refinement: the difference from the amount
+     * reserved for it is settled with the budget and the estimate is updated.
+     *
+     * @param latencyNanos How long the refinement took
+     */
+    public synchronized void recordRefinement(long latencyNanos) {
+        creditNanos += estimateNanos - latencyNanos;
+        estimateNanos = estimateNanos == 0 ? latencyNanos
+                : estimateNanos + (long) (ESTIMATE_ALPHA * (latencyNanos - estimateNanos));
+    }
+
+    /**
+     * Merges refined detections into the fast ones, all in view pixels.
+     *
+     * @param detections The fast detections, replaced by the merged ones
+     * @param regions    Refinement contexts, post-processed, whose transforms hold their regions
+     * @param count      Number of regions in use
+     * @param scratch    Working buffer at least as large as detections
+     * @return The number of detections after merging
+     */
+    public int merge(DetectionBuffer detections, InferenceContext[] regions, int count, DetectionBuffer scratch) {
+        if (count == 0) {
+            return detections.size();
+        }
+        scratch.clear();
+
+        // Fast detections the refinement did not replace or reject
+        for (int i = 0; i < detections.size(); i++) {
+            int match = findRefined(detections, i, regions, count);
+            if (match == MATCH_WHOLE || (match == NO_MATCH && inAnyRegion(detections, i, regions, count))) {
+                continue;
+            }
+            int index = scratch.add(detections.getLeft(i), detections.getTop(i), detections.getRight(i),
+                    detections.getBottom(i), detections.getScore(i), detections.getClassId(i));
+            if (index < 0) {
+                break;
+            }
+        }
+
+        // Whole refined boxes, one per object where crops overlap
+        for (int r = 0; r < count; r++) {
+            DetectionBuffer refined = regions[r].getDetections();
+            InputTransform transform = regions[r].getTransform();
+            for (int j = 0; j < refined.size(); j++) {
+                if (isCut(refined, j, transform)) {
+                    continue;
+                }
+                int same = findSame(scratch, refined, j);
+                if (same >= 0) {
+                    if (refined.getScore(j) > scratch.getScore(same)) {
+                        scratch.set(same, refined.getLeft(j), refined.getTop(j), refined.getRight(j),
+                                refined.getBottom(j), refined.getScore(j), refined.getClassId(j));
+                    }
+                } else {
+                    scratch.add(refined.getLeft(j), refined.getTop(j), refined.getRight(j),
+                            refined.getBottom(j), refined.getScore(j), refined.getClassId(j));
+                }
+            }
+        }
+        detections.copyFrom(scratch);
+        return detections.size();
+    }
+
+    /**
+     * @return Whether any refined box of the same class overlaps fast detection i, and whether one is whole
+     */
+    private int findRefined(DetectionBuffer detections, int i, InferenceContext[] regions, int count) {
+        int result = NO_MATCH;
+        for (int r = 0; r < count; r++) {
+            DetectionBuffer refined = regions[r].getDetections();
+            for (int j = 0; j < refined.size(); j++) {
+                if (refined.getClassId(j) == detections.getClassId(i)
+                        && ObjectTracker.iou(detections.getLeft(i), detections.getTop(i), detections.getRight(i),
+                        detections.getBottom(i), refined.getLeft(j), refined.getTop(j), refined.getRight(j),
+                        refined.getBottom(j)) >= mergeIou) {
+                    if (!isCut(refined, j, regions[r].getTransform())) {
+                        return MATCH_WHOLE;
+                    }
+                    result = MATCH_CUT;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Index of a box in buffer of the same class as refined box j overlapping it, or -1
+     */
+    private int findSame(DetectionBuffer buffer, DetectionBuffer refined, int j) {
+        for (int i = 0; i < buffer.size(); i++) {
+            if (buffer.getClassId(i) == refined.getClassId(j)
+                    && ObjectTracker.iou(buffer.getLeft(i), buffer.getTop(i), buffer.getRight(i), buffer.getBottom(i),
+                    refined.getLeft(j), refined.getTop(j), refined.getRight(j), refined.getBottom(j)) >= mergeIou) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the centre of detection i lies inside any refined region
+     */
+    private static boolean inAnyRegion(DetectionBuffer detections, int i, InferenceContext[] regions, int count) {
+        float x = (detections.getLeft(i) + detections.getRight(i)) / 2;
+        float y = (detections.getTop(i) + detections.getBottom(i)) / 2;
+        for (int r = 0; r < count; r++) {
+            InputTransform t = regions[r].getTransform();
+            float left = t.uprightToViewX(t.getRegionLeft());
+            float top = t.uprightToViewY(t.getRegionTop());
+            if (x >= left && x <= t.uprightToViewX(t.getRegionLeft() + t.getRegionWidth())
+                    && y >= top && y <= t.uprightToViewY(t.getRegionTop() + t.getRegionHeight())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if refined box j touches an edge of its crop that is not an edge of the frame
+     */
+    private static boolean isCut(DetectionBuffer refined, int j, InputTransform t) {
+        float regionLeft = t.getRegionLeft();
+        float regionTop = t.getRegionTop();
+        float regionRight = regionLeft + t.getRegionWidth();
+        float regionBottom = regionTop + t.getRegionHeight();
+        return (regionLeft > 0 && refined.getLeft(j) - t.uprightToViewX(regionLeft) < CUT_TOLERANCE)
+                || (regionTop > 0 && refined.getTop(j) - t.uprightToViewY(regionTop) < CUT_TOLERANCE)
+                || (regionRight < t.getUprightWidth()
+                && t.uprightToViewX(regionRight) - refined.getRight(j) < CUT_TOLERANCE)
+                || (regionBottom < t.getUprightHeight()
+                && t.uprightToViewY(regionBottom) - refined.getBottom(j) < CUT_TOLERANCE);
+    }
+
+    /**
+     * @return Regions planned since start, less those of frames dropped before their refinement
+     */
+    public synchronized long getPlannedRegions() {
+        return plannedRegions;
+    }
+
+    /**
+     * @return Frames where a region was wanted but the budget had run out
+     */
+    public synchronized long getBudgetLimitedFrames() {
+        return budgetLimitedFrames;
+    }
+
+    /**
+     * @return Average time of one refinement, 0 before the first
+     */
+    public synchronized long getEstimateNanos() {
+        return estimateNanos;
+    }
+
+    public synchronized long getCreditNanos() {
+        return creditNanos;
+    }
+
+    public int getMaxRegions() {
+        return maxRegions;
+    }
+}
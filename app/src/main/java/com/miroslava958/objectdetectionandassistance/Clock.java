@@ -0,0 +1,22 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Source of monotonic time in nanoseconds.
+ * Classes that make timing decisions take a Clock so tests can drive them
+ * with simulated time instead of waiting in real time.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public interface Clock {
+
+    /**
+     * The real clock, backed by System.nanoTime().
+     */
+    Clock SYSTEM = System::nanoTime;
+
+    /**
+     * @return The current time in nanoseconds, only meaningful as a difference
+     */
+    long nanoTime();
+}
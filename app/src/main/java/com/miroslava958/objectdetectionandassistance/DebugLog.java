@@ -0,0 +1,19 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Switch for the verbose per-frame and per-box logs.
+ * VERBOSE is a compile-time constant taken from the build (off unless the app is
+ * built with -PverboseLogs=true), so code guarded by {@code if (DebugLog.VERBOSE)}
+ * is removed by the compiler - including the string concatenation that builds the
+ * message. Errors and one-off messages are logged as before.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public final class DebugLog {
+    // Whether verbose logs are compiled in
+    public static final boolean VERBOSE = BuildConfig.VERBOSE_LOGS;
+
+    private DebugLog() {
+    }
+}
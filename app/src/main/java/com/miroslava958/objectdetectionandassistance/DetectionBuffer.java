@@ -0,0 +1,141 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Fixed-capacity, reusable store of detections kept as primitive arrays.
+ * Post-processing writes into this buffer instead of creating a RectF and a
+ * DetectionResult per object, so a frame does not allocate anything once the
+ * buffer exists.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class DetectionBuffer {
+    // Box edges in the coordinate space chosen by the producer
+    private final float[] left;
+    private final float[] top;
+    private final float[] right;
+    private final float[] bottom;
+    // Confidence score of each detection
+    private final float[] score;
+    // Index into the label list of each detection
+    private final int[] classId;
+    // Track ID from the tracker, or -1 if the detection is not tracked
+    private final int[] trackId;
+    // Number of valid entries
+    private int count;
+
+    /**
+     * Creates an empty buffer.
+     *
+     * @param capacity Maximum number of detections the buffer can hold
+     */
+    public DetectionBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        left = new float[capacity];
+        top = new float[capacity];
+        right = new float[capacity];
+        bottom = new float[capacity];
+        score = new float[capacity];
+        classId = new int[capacity];
+        trackId = new int[capacity];
+    }
+
+    /**
+     * Removes all detections without releasing the arrays.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Appends an untracked detection.
+     *
+     * @return The index of the new entry, or -1 if the buffer is full
+     */
+    public int add(float left, float top, float right, float bottom, float score, int classId) {
+        if (count == this.left.length) {
+            return -1;
+        }
+        int i = count++;
+        this.left[i] = left;
+        this.top[i] = top;
+        this.right[i] = right;
+        this.bottom[i] = bottom;
+        this.score[i] = score;
+        this.classId[i] = classId;
+        this.trackId[i] = -1;
+        return i;
+    }
+
+    /**
+     * Replaces the box, score and class of an entry, keeping its track ID.
+     *
+     * @param i Index of an existing entry
+     */
+    public void set(int i, float left, float top, float right, float bottom, float score, int classId) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("No detection at " + i);
+        }
+        this.left[i] = left;
+        this.top[i] = top;
+        this.right[i] = right;
+        this.bottom[i] = bottom;
+        this.score[i] = score;
+        this.classId[i] = classId;
+    }
+
+    /**
+     * Copies every detection of another buffer into this one, replacing its contents.
+     *
+     * @param other The buffer to copy from
+     */
+    public void copyFrom(DetectionBuffer other) {
+        clear();
+        for (int i = 0; i < other.count && i < left.length; i++) {
+            add(other.left[i], other.top[i], other.right[i], other.bottom[i], other.score[i], other.classId[i]);
+            trackId[i] = other.trackId[i];
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int capacity() {
+        return left.length;
+    }
+
+    public float getLeft(int i) {
+        return left[i];
+    }
+
+    public float getTop(int i) {
+        return top[i];
+    }
+
+    public float getRight(int i) {
+        return right[i];
+    }
+
+    public float getBottom(int i) {
+        return bottom[i];
+    }
+
+    public float getScore(int i) {
+        return score[i];
+    }
+
+    public int getClassId(int i) {
+        return classId[i];
+    }
+
+    public int getTrackId(int i) {
+        return trackId[i];
+    }
+
+    public void setTrackId(int i, int id) {
+        trackId[i] = id;
+    }
+}
@@ -0,0 +1,53 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.Map;
+
+/**
+ * Turns the raw outputs of one detector head into detections.
+ * Each implementation owns the output buffers handed to the interpreter
+ * (direct ByteBuffers read as flat float arrays) and any scratch space it needs,
+ * so one decoder is created per pipeline slot and decoding does not allocate.
+ * Decoded boxes are normalised to the model input (0..1), so mapping them back to
+ * the overlay is the same for every head.
+ *
+ * See {@link DetectionDecoders} for choosing a decoder from the model's outputs.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public interface DetectionDecoder {
+
+    /**
+     * Creates a decoder for each pipeline slot.
+     */
+    interface Factory {
+        DetectionDecoder create();
+
+        /**
+         * @return The most detections one frame can produce, as reported by the decoders it creates
+         */
+        int getMaxDetections();
+    }
+
+    /**
+     * Rewinds the output buffers so the interpreter can write the next frame.
+     *
+     * @return The output buffers keyed by output index, for Interpreter.runForMultipleInputsOutputs
+     */
+    Map<Integer, Object> prepareOutputs();
+
+    /**
+     * Decodes the latest outputs.
+     *
+     * @param scoreThreshold Detections must score strictly above this value
+     * @param out            Receives at most {@link #getMaxDetections()} detections with boxes
+     *                       normalised to the model input (cleared first)
+     * @return The number of detections
+     */
+    int decode(float scoreThreshold, DetectionBuffer out);
+
+    /**
+     * @return The most detections one frame can produce
+     */
+    int getMaxDetections();
+}
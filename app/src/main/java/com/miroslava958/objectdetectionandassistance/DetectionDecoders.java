@@ -0,0 +1,205 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses the {@link DetectionDecoder} for a model from the shapes (and names) of its outputs,
+ * so a different detector can be dropped in without touching the detection code:
+ * - 4 outputs with [1, N, 4] boxes and a single count: post-processed SSD / EfficientDet head
+ * - 2 outputs [1, A, 4] and [1, A, C]: raw SSD anchors (needs the anchor list)
+ * - 1 output [1, N, 4 + C] / [1, 4 + C, N], with or without objectness: YOLO
+ *
+ * Each decoder reads the outputs in their own type, FLOAT32 or quantized, as given by the specs.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public final class DetectionDecoders {
+    // Overlap above which NMS removes the lower scoring box
+    public static final float DEFAULT_IOU_THRESHOLD = 0.5f;
+    // Most boxes passed into NMS per frame
+    private static final int MAX_NMS_CANDIDATES = 500;
+
+    private DetectionDecoders() {
+    }
+
+    /**
+     * Picks a decoder for the model outputs.
+     *
+     * @param outputs       Output tensors in output index order
+     * @param numClasses    Number of labels, used to tell YOLO layouts apart
+     * @param anchors       Anchors for raw SSD outputs as (cy, cx, h, w), or null if not available
+     * @param iouThreshold  Overlap threshold for decoders that run NMS
+     * @param maxDetections Most detections per frame for decoders that run NMS
+     * @return A factory creating one decoder per pipeline slot
+     * @throws IllegalArgumentException if the outputs match no supported head
+     */
+    public static DetectionDecoder.Factory select(List<TensorSpec> outputs, int numClasses, float[] anchors,
+                                                  float iouThreshold, int maxDetections) {
+        if (outputs.size() == 4) {
+            return selectPostProcessed(outputs);
+        }
+        if (outputs.size() == 2) {
+            return selectAnchors(outputs, numClasses, anchors, iouThreshold, maxDetections);
+        }
+        if (outputs.size() == 1 && outputs.get(0).getRank() == 3) {
+            return selectYolo(outputs.get(0), numClasses, iouThreshold, maxDetections);
+        }
+        throw new IllegalArgumentException("Unsupported model outputs " + outputs);
+    }
+
+    private static DetectionDecoder.Factory selectPostProcessed(List<TensorSpec> outputs) {
+        int boxes = -1;
+        int count = -1;
+        List<Integer> others = new ArrayList<>();
+        for (int i = 0; i < outputs.size(); i++) {
+            TensorSpec spec = outputs.get(i);
+            if (boxes < 0 && spec.getRank() == 3 && spec.getDim(-1) == 4) {
+                boxes = i;
+            } else if (count < 0 && spec.getElementCount() == 1) {
+                count = i;
+            } else {
+                others.add(i);
+            }
+        }
+        if (boxes < 0 || count < 0 || others.size() != 2) {
+            throw new IllegalArgumentException("Unsupported model outputs " + outputs);
+        }
+        // Classes and scores have the same shape; use the names if present, else classes come first
+        int classes = others.get(0);
+        int scores = others.get(1);
+        if (outputs.get(classes).nameContains("score") || outputs.get(scores).nameContains("class")) {
+            classes = others.get(1);
+            scores = others.get(0);
+        }
+        final int maxDetections = outputs.get(boxes).getDim(1);
+        final int boxesIndex = boxes;
+        final int classesIndex = classes;
+        final int scoresIndex = scores;
+        final int countIndex = count;
+        final List<TensorSpec> specs = new ArrayList<>(outputs);
+        return new DetectionDecoder.Factory() {
+            @Override
+            public DetectionDecoder create() {
+                return new SsdDetectionDecoder(maxDetections, boxesIndex, classesIndex, scoresIndex, countIndex,
+                        specs);
+            }
+
+            @Override
+            public int getMaxDetections() {
+                return maxDetections;
+            }
+        };
+    }
+
+    private static DetectionDecoder.Factory selectAnchors(List<TensorSpec> outputs, int numClasses, float[] anchors,
+                                                          float iouThreshold, int maxDetections) {
+        int boxes = outputs.get(0).getDim(-1) == 4 ? 0 : 1;
+        TensorSpec boxSpec = outputs.get(boxes);
+        TensorSpec scoreSpec = outputs.get(1 - boxes);
+        if (boxSpec.getRank() != 3 || scoreSpec.getRank() != 3 || boxSpec.getDim(1) != scoreSpec.getDim(1)) {
+            throw new IllegalArgumentException("Unsupported model outputs " + outputs);
+        }
+        int anchorCount = boxSpec.getDim(1);
+        if (anchors == null || anchors.length != anchorCount * 4) {
+            throw new IllegalArgumentException("Model needs " + anchorCount + " anchors, got "
+                    + (anchors == null ? "none" : anchors.length / 4));
+        }
+        final int scoreColumns = scoreSpec.getDim(2);
+        // An extra column means column 0 is the background class
+        final int firstClass = scoreColumns == numClasses + 1 ? 1 : 0;
+        final int boxesIndex = boxes;
+        final int scoresIndex = 1 - boxes;
+        return new DetectionDecoder.Factory() {
+            @Override
+            public DetectionDecoder create() {
+                return new AnchorDetectionDecoder(anchors, scoreColumns, firstClass, boxesIndex, scoresIndex,
+                        iouThreshold, MAX_NMS_CANDIDATES, maxDetections, boxSpec, scoreSpec);
+            }
+
+            @Override
+            public int getMaxDetections() {
+                return maxDetections;
+            }
+        };
+    }
+
+    private static DetectionDecoder.Factory selectYolo(TensorSpec spec, int numClasses, float iouThreshold,
+                                                       int maxDetections) {
+        int first = spec.getDim(1);
+        int second = spec.getDim(2);
+        boolean attributesFirst;
+        if (numClasses > 0 && (first == numClasses + 4 || first == numClasses + 5)) {
+            attributesFirst = true;
+        } else if (numClasses > 0 && (second == numClasses + 4 || second == numClasses + 5)) {
+            attributesFirst = false;
+        } else {
+            // Labels do not match: there are always far more candidates than attributes
+            attributesFirst = first < second;
+        }
+        final int attributes = attributesFirst ? first : second;
+        final int candidates = attributesFirst ? second : first;
+        final boolean objectness = numClasses > 0 && attributes == numClasses + 5;
+        final int classes = attributes - (objectness ? 5 : 4);
+        if (classes <= 0) {
+            throw new IllegalArgumentException("Unsupported model output " + spec);
+        }
+        final boolean layout = attributesFirst;
+        return new DetectionDecoder.Factory() {
+            @Override
+            public DetectionDecoder create() {
+                return new YoloDetectionDecoder(candidates, classes, objectness, layout,
+                        iouThreshold, MAX_NMS_CANDIDATES, maxDetections, spec);
+            }
+
+            @Override
+            public int getMaxDetections() {
+                return maxDetections;
+            }
+        };
+    }
+
+    /**
+     * Reads anchors from text, one anchor per line as "centreY, centreX, height, width"
+     * (commas or spaces). Blank lines and lines starting with # are ignored.
+     *
+     * @param in The anchor file
+     * @return Flat anchor values, 4 per anchor
+     * @throws IOException if reading fails or a line is malformed
+     */
+    public static float[] readAnchors(InputStream in) throws IOException {
+        List<float[]> rows = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("[,\\s]+");
+            if (parts.length != 4) {
+                throw new IOException("Expected 4 values per anchor: " + line);
+            }
+            float[] row = new float[4];
+            try {
+                for (int i = 0; i < 4; i++) {
+                    row[i] = Float.parseFloat(parts[i]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid anchor: " + line, e);
+            }
+            rows.add(row);
+        }
+        float[] anchors = new float[rows.size() * 4];
+        for (int i = 0; i < rows.size(); i++) {
+            System.arraycopy(rows.get(i), 0, anchors, i * 4, 4);
+        }
+        return anchors;
+    }
+}
@@ -0,0 +1,829 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Append-only history of the published detections, so the app can answer questions
+ * such as "was there a bench in the last minute?" and sessions can be analysed later.
+ *
+ * Storage is columnar: each detection is a row of a timestamp, class ID, score (one
+ * byte), box (four 16-bit fractions of the frame) and track ID, 23 bytes in total,
+ * kept in one primitive array per column. Rows go into segments of a fixed number of
+ * rows. New rows are appended to an in-memory segment taken from a small preallocated
+ * ring; a full segment is handed to a background thread that writes it to a file and
+ * maps it back in, then returns the memory segment to the ring. Only the newest segment
+ * files are kept (bounded retention) and they are read again when the app restarts.
+ *
+ * Indexes, both built while appending:
+ * - time: rows are stored in time order, so each segment is binary searched for a
+ *   time range and whole segments outside it are skipped
+ * - class: every block of {@link #BLOCK_ROWS} rows counts its rows of each class, so a
+ *   query for one class only reads the blocks that contain it, and counts add up whole
+ *   blocks without reading their rows
+ *
+ * Appending is done by one thread (the pipeline's publish stage), never blocks and does
+ * not allocate: when the writer thread is so far behind that no memory segment is free,
+ * rows are dropped and counted. Queries may run on any thread at the same time; they read
+ * newest first and do not allocate either.
+ *
+ * Segment file format (little-endian): a 32-byte header (magic "ODHS", version, rows,
+ * block rows, classes, sequence number), then the columns one after another: times
+ * (long), track IDs (int), boxes (4 short), class IDs (short), class counts (short per
+ * block and class) and scores (byte). The magic is written last, so a file cut short
+ * by a crash is discarded.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class DetectionHistory implements AutoCloseable {
+    // Returned by lastSeen when nothing matched
+    public static final long NONE = Long.MIN_VALUE;
+    // Class ID that matches every class in queries
+    public static final int ANY_CLASS = -1;
+    // Rows per block of the class index
+    static final int BLOCK_ROWS = 256;
+
+    static final int MAGIC = 0x5348444F; // "ODHS" in little-endian order
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    private static final String PREFIX = "history-";
+    private static final String SUFFIX = ".odhs";
+    // Bytes per row over all columns
+    private static final int ROW_BYTES = 8 + 4 + 8 + 2 + 1;
+    private static final float BOX_SCALE = 65535f;
+    private static final float SCORE_SCALE = 255f;
+    // Sequence of a memory segment that has been replaced by its file
+    private static final long RETIRED = -1;
+    // How long the writer waits for a full segment before checking whether it should stop
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * Rows read back by a query, newest first, in preallocated columns.
+     * Boxes are fractions of the frame from 0 to 1.
+     */
+    public static final class Rows {
+        private final long[] times;
+        private final int[] classIds;
+        private final float[] scores;
+        private final float[] boxes;
+        private final int[] trackIds;
+        private int size = 0;
+
+        /**
+         * @param capacity Most rows a query returns
+         */
+        public Rows(int capacity) {
+            times = new long[capacity];
+            classIds = new int[capacity];
+            scores = new float[capacity];
+            boxes = new float[4 * capacity];
+            trackIds = new int[capacity];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(Segment segment, int row) {
+            times[size] = segment.time(row);
+            classIds[size] = segment.classId(row);
+            scores[size] = segment.score(row) / SCORE_SCALE;
+            for (int corner = 0; corner < 4; corner++) {
+                boxes[4 * size + corner] = segment.box(row, corner) / BOX_SCALE;
+            }
+            trackIds[size] = segment.trackId(row);
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int capacity() {
+            return times.length;
+        }
+
+        public long getTime(int i) {
+            return times[i];
+        }
+
+        public int getClassId(int i) {
+            return classIds[i];
+        }
+
+        public float getScore(int i) {
+            return scores[i];
+        }
+
+        public float getLeft(int i) {
+            return boxes[4 * i];
+        }
+
+        public float getTop(int i) {
+            return boxes[4 * i + 1];
+        }
+
+        public float getRight(int i) {
+            return boxes[4 * i + 2];
+        }
+
+        public float getBottom(int i) {
+            return boxes[4 * i + 3];
+        }
+
+        public int getTrackId(int i) {
+            return trackIds[i];
+        }
+    }
+
+    /**
+     * Rows of one segment, in memory or in a mapped file. Readers register while they
+     * read, so a memory segment is only reused once nobody reads it any more.
+     */
+    abstract static class Segment {
+        final AtomicInteger readers = new AtomicInteger();
+        // Position of the segment in the history, or RETIRED
+        volatile long sequence;
+
+        abstract int size();
+
+        abstract long time(int row);
+
+        abstract int classId(int row);
+
+        // Quantized score, 0 to 255
+        abstract int score(int row);
+
+        // Quantized box corner (left, top, right, bottom), 0 to 65535
+        abstract int box(int row, int corner);
+
+        abstract int trackId(int row);
+
+        // Rows of a class in a block
+        abstract int classCount(int block, int classId);
+
+        /**
+         * @return The first of the rows before end whose time is at least the given time
+         */
+        int firstAtOrAfter(long time, int end) {
+            int low = 0;
+            int high = end;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (time(mid) < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Segment being appended to, or waiting to be written. Rows below the count are complete.
+     */
+    static final class MemorySegment extends Segment {
+        final long[] times;
+        final short[] classIds;
+        final byte[] scores;
+        final short[] boxes;
+        final int[] trackIds;
+        final short[] classCounts;
+        final int classes;
+        volatile int count = 0;
+
+        MemorySegment(int rows, int classes) {
+            times = new long[rows];
+            classIds = new short[rows];
+            scores = new byte[rows];
+            boxes = new short[4 * rows];
+            trackIds = new int[rows];
+            this.classes = classes;
+            classCounts = new short[blocks(rows) * classes];
+            sequence = RETIRED;
+        }
+
+        void reset(long newSequence) {
+            count = 0;
+            Arrays.fill(classCounts, (short) 0);
+            sequence = newSequence;
+        }
+
+        int capacity() {
+            return times.length;
+        }
+
+        @Override
+        int size() {
+            return count;
+        }
+
+        @Override
+        long time(int row) {
+            return times[row];
+        }
+
+        @Override
+        int classId(int row) {
+            return classIds[row];
+        }
+
+        @Override
+        int score(int row) {
+            return scores[row] & 0xFF;
+        }
+
+        @Override
+        int box(int row, int corner) {
+            return boxes[4 * row + corner] & 0xFFFF;
+        }
+
+        @Override
+        int trackId(int row) {
+            return trackIds[row];
+        }
+
+        @Override
+        int classCount(int block, int classId) {
+            return classCounts[block * classes + classId];
+        }
+    }
+
+    /**
+     * Segment read from its file through a memory map.
+     */
+    static final class MappedSegment extends Segment {
+        final File file;
+        private final ByteBuffer buffer;
+        private final int rows;
+        private final int classes;
+        // Column offsets in the file
+        private final int trackOffset;
+        private final int boxOffset;
+        private final int classOffset;
+        private final int countOffset;
+        private final int scoreOffset;
+
+        MappedSegment(File file, ByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+            rows = buffer.getInt(8);
+            classes = buffer.getInt(16);
+            sequence = buffer.getLong(24);
+            trackOffset = HEADER_SIZE + 8 * rows;
+            boxOffset = trackOffset + 4 * rows;
+            classOffset = boxOffset + 8 * rows;
+            countOffset = classOffset + 2 * rows;
+            scoreOffset = countOffset + 2 * blocks(rows) * classes;
+        }
+
+        @Override
+        int size() {
+            return rows;
+        }
+
+        @Override
+        long time(int row) {
+            return buffer.getLong(HEADER_SIZE + 8 * row);
+        }
+
+        @Override
+        int classId(int row) {
+            return buffer.getShort(classOffset + 2 * row);
+        }
+
+        @Override
+        int score(int row) {
+            return buffer.get(scoreOffset + row) & 0xFF;
+        }
+
+        @Override
+        int box(int row, int corner) {
+            return buffer.getShort(boxOffset + 8 * row + 2 * corner) & 0xFFFF;
+        }
+
+        @Override
+        int trackId(int row) {
+            return buffer.getInt(trackOffset + 4 * row);
+        }
+
+        @Override
+        int classCount(int block, int classId) {
+            return buffer.getShort(countOffset + 2 * (block * classes + classId));
+        }
+    }
+
+    private final File directory;
+    private final int segmentRows;
+    private final int numClasses;
+    // Most segment files kept; older ones are deleted
+    private final int maxFiles;
+
+    // Every live segment at index sequence % length; sequences oldest to newest are live
+    private final AtomicReferenceArray<Segment> segments;
+    private volatile long oldest;
+    private volatile long newest;
+    // Memory segments ready to be appended to, and full ones waiting for the writer
+    private final BlockingQueue<MemorySegment> free;
+    private final BlockingQueue<MemorySegment> full;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Appending thread state: the segment being appended to and the newest time appended
+    private volatile MemorySegment active;
+    private long lastTime = Long.MIN_VALUE;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile IOException lastError;
+
+    /**
+     * Opens the history in a folder, reading the segment files already there, and starts
+     * its writer thread.
+     *
+     * @param directory      Folder for the segment files
+     * @param numClasses     Number of labels; class IDs from 0 up to this are stored
+     * @param segmentRows    Rows per segment, e.g. 16384
+     * @param memorySegments Segments kept in memory, including the one being appended to
+     * @param maxFiles       Most segment files kept, which bounds the history to maxFiles * segmentRows rows
+     * @throws IOException if the folder cannot be read
+     */
+    public DetectionHistory(File directory, int numClasses, int segmentRows, int memorySegments, int maxFiles)
+            throws IOException {
+        if (numClasses < 1 || numClasses > Short.MAX_VALUE || segmentRows < 1 || memorySegments < 2
+                || maxFiles < 1) {
+            throw new IllegalArgumentException("Invalid history settings");
+        }
+        if (!directory.isDirectory()) {
+            throw new IOException("Not a folder: " + directory);
+        }
+        this.directory = directory;
+        this.numClasses = numClasses;
+        this.segmentRows = segmentRows;
+        this.maxFiles = maxFiles;
+        segments = new AtomicReferenceArray<>(maxFiles + memorySegments + 1);
+        free = new ArrayBlockingQueue<>(memorySegments);
+        full = new ArrayBlockingQueue<>(memorySegments);
+        for (int i = 0; i < memorySegments; i++) {
+            free.offer(new MemorySegment(segmentRows, numClasses));
+        }
+        load();
+        writer = new Thread(this::runWriter, "detection-history");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Maps the newest valid segment files and deletes the rest.
+     */
+    private void load() throws IOException {
+        File[] files = directory.listFiles();
+        List<MappedSegment> loaded = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+                    continue;
+                }
+                MappedSegment segment = open(file);
+                if (segment != null) {
+                    loaded.add(segment);
+                } else if (!file.delete()) {
+                    lastError = new IOException("Could not delete " + file);
+                }
+            }
+        }
+        Collections.sort(loaded, (a, b) -> Long.compare(a.sequence, b.sequence));
+        long last = loaded.isEmpty() ? 0 : loaded.get(loaded.size() - 1).sequence;
+        oldest = Math.max(1, last - maxFiles + 1);
+        newest = last;
+        for (MappedSegment segment : loaded) {
+            if (segment.sequence < oldest) {
+                delete(segment);
+            } else {
+                segments.set(slot(segment.sequence), segment);
+                lastTime = Math.max(lastTime, segment.time(segment.size() - 1));
+            }
+        }
+    }
+
+    /**
+     * @return The mapped segment, or null if the file is cut short or from another model
+     */
+    private MappedSegment open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            int rows = buffer.getInt(8);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || rows < 1
+                    || buffer.getInt(12) != BLOCK_ROWS || buffer.getInt(16) != numClasses
+                    || channel.size() != fileSize(rows, numClasses)) {
+                return null;
+            }
+            return new MappedSegment(file, buffer);
+        }
+    }
+
+    /**
+     * Appends the detections of one frame. Call from one thread only; never blocks.
+     *
+     * @param detections  Detections with their track IDs, in frame pixels
+     * @param timeMillis  When they were seen, wall clock time; earlier times than the last are stored as the last
+     * @param frameWidth  Frame width in pixels, to store boxes as fractions of the frame
+     * @param frameHeight Frame height in pixels
+     */
+    public void append(DetectionBuffer detections, long timeMillis, int frameWidth, int frameHeight) {
+        int count = detections.size();
+        if (!running || count == 0 || frameWidth <= 0 || frameHeight <= 0) {
+            return;
+        }
+        lastTime = Math.max(lastTime, timeMillis);
+        float scaleX = BOX_SCALE / frameWidth;
+        float scaleY = BOX_SCALE / frameHeight;
+        for (int i = 0; i < count; i++) {
+            int classId = detections.getClassId(i);
+            if (classId < 0 || classId >= numClasses) {
+                dropped.incrementAndGet();
+                continue;
+            }
+            MemorySegment segment = active;
+            if (segment == null || segment.count == segment.capacity()) {
+                segment = nextSegment();
+                if (segment == null) {
+                    dropped.addAndGet(count - i);
+                    return;
+                }
+            }
+            int row = segment.count;
+            segment.times[row] = lastTime;
+            segment.classIds[row] = (short) classId;
+            segment.scores[row] = (byte) quantize(detections.getScore(i) * SCORE_SCALE, SCORE_SCALE);
+            segment.boxes[4 * row] = (short) quantize(detections.getLeft(i) * scaleX, BOX_SCALE);
+            segment.boxes[4 * row + 1] = (short) quantize(detections.getTop(i) * scaleY, BOX_SCALE);
+            segment.boxes[4 * row + 2] = (short) quantize(detections.getRight(i) * scaleX, BOX_SCALE);
+            segment.boxes[4 * row + 3] = (short) quantize(detections.getBottom(i) * scaleY, BOX_SCALE);
+            segment.trackIds[row] = detections.getTrackId(i);
+            segment.classCounts[(row / BLOCK_ROWS) * numClasses + classId]++;
+            // Publishes the row to readers
+            segment.count = row + 1;
+            appended.incrementAndGet();
+        }
+    }
+
+    private static int quantize(float value, float max) {
+        return Math.round(Math.max(0f, Math.min(max, value)));
+    }
+
+    /**
+     * Hands the full segment to the writer and starts a free one.
+     *
+     * @return The new segment, or null if none is free
+     */
+    private MemorySegment nextSegment() {
+        MemorySegment current = active;
+        if (current != null) {
+            // Never fails: there are no more memory segments than the queue holds
+            full.offer(current);
+            active = null;
+        }
+        MemorySegment next = free.poll();
+        if (next == null) {
+            return null;
+        }
+        long sequence = newest + 1;
+        next.reset(sequence);
+        segments.set(slot(sequence), next);
+        newest = sequence;
+        active = next;
+        return next;
+    }
+
+    /**
+     * Writer thread loop: writes full segments until the history is closed, then writes
+     * the rows appended to the last one.
+     */
+    private void runWriter() {
+        try {
+            while (running || !full.isEmpty()) {
+                MemorySegment segment = full.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (segment != null) {
+                    spill(segment);
+                }
+            }
+            MemorySegment last = active;
+            if (last != null && last.count > 0) {
+                active = null;
+                spill(last);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes a memory segment to its file, swaps in the mapped file, applies the retention
+     * and gives the memory segment back once no query reads it any more.
+     */
+    private void spill(MemorySegment memory) throws InterruptedException {
+        long sequence = memory.sequence;
+        Segment replacement = null;
+        try {
+            replacement = write(memory, sequence);
+        } catch (IOException e) {
+            // The rows are lost, but appending carries on
+            lastError = e;
+        }
+        segments.set(slot(sequence), replacement);
+        long keepFrom = sequence - maxFiles + 1;
+        for (long old = oldest; old < keepFrom; old++) {
+            oldest = old + 1;
+            Segment segment = segments.get(slot(old));
+            if (segment instanceof MappedSegment && segment.sequence == old) {
+                delete((MappedSegment) segment);
+            }
+        }
+
+        // A query that picked the memory segment before the swap sees it retired and reads the file instead
+        memory.sequence = RETIRED;
+        while (memory.readers.get() > 0) {
+            Thread.sleep(1);
+        }
+        free.offer(memory);
+    }
+
+    private MappedSegment write(MemorySegment memory, long sequence) throws IOException {
+        int rows = memory.count;
+        long size = fileSize(rows, numClasses);
+        File file = new File(directory, String.format(Locale.ROOT, "%s%012d%s", PREFIX, sequence, SUFFIX));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(HEADER_SIZE);
+            for (int row = 0; row < rows; row++) {
+                buffer.putLong(memory.times[row]);
+            }
+            for (int row = 0; row < rows; row++) {
+                buffer.putInt(memory.trackIds[row]);
+            }
+            for (int i = 0; i < 4 * rows; i++) {
+                buffer.putShort(memory.boxes[i]);
+            }
+            for (int row = 0; row < rows; row++) {
+                buffer.putShort(memory.classIds[row]);
+            }
+            int counts = blocks(rows) * numClasses;
+            for (int i = 0; i < counts; i++) {
+                buffer.putShort(memory.classCounts[i]);
+            }
+            buffer.put(memory.scores, 0, rows);
+            buffer.putInt(4, VERSION).putInt(8, rows).putInt(12, BLOCK_ROWS).putInt(16, numClasses)
+                    .putLong(24, sequence);
+            // The magic only once the rest is on disk, so a file cut short by a crash or
+            // power loss is never read
+            buffer.force();
+            buffer.putInt(0, MAGIC);
+            buffer.force();
+            bytesWritten.addAndGet(size);
+            return new MappedSegment(file, buffer);
+        }
+    }
+
+    private void delete(MappedSegment segment) {
+        // Queries still reading it keep their mapping
+        if (!segment.file.delete()) {
+            lastError = new IOException("Could not delete " + segment.file);
+        }
+    }
+
+    static long fileSize(int rows, int classes) {
+        return HEADER_SIZE + (long) ROW_BYTES * rows + 2L * blocks(rows) * classes;
+    }
+
+    private static int blocks(int rows) {
+        return (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % segments.length());
+    }
+
+    /**
+     * Registers as a reader of a segment.
+     *
+     * @return The segment, to be released after reading, or null if it is no longer kept
+     */
+    private Segment acquire(long sequence) {
+        // A second try finds the file that replaced a memory segment in the meantime
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Segment segment = segments.get(slot(sequence));
+            if (segment == null) {
+                return null;
+            }
+            segment.readers.incrementAndGet();
+            if (segment.sequence == sequence) {
+                return segment;
+            }
+            segment.readers.decrementAndGet();
+        }
+        return null;
+    }
+
+    /**
+     * @param classId    The class, or {@link #ANY_CLASS}
+     * @param fromMillis Start of the time range, inclusive
+     * @param toMillis   End of the time range, inclusive
+     * @return Time of the newest matching detection, or {@link #NONE}
+     */
+    public long lastSeen(int classId, long fromMillis, long toMillis) {
+        return scan(classId, fromMillis, toMillis, 1, null, true);
+    }
+
+    /**
+     * @param classId    The class, or {@link #ANY_CLASS}
+     * @param fromMillis Start of the time range, inclusive
+     * @param toMillis   End of the time range, inclusive
+     * @return Number of matching detections
+     */
+    public int count(int classId, long fromMillis, long toMillis) {
+        return (int) scan(classId, fromMillis, toMillis, Integer.MAX_VALUE, null, false);
+    }
+
+    /**
+     * Reads the matching detections, newest first, until the rows are full.
+     *
+     * @param classId    The class, or {@link #ANY_CLASS}
+     * @param fromMillis Start of the time range, inclusive
+     * @param toMillis   End of the time range, inclusive
+     * @param out        Receives the detections
+     * @return Number of detections read
+     */
+    public int query(int classId, long fromMillis, long toMillis, Rows out) {
+        out.clear();
+        return (int) scan(classId, fromMillis, toMillis, out.capacity(), out, false);
+    }
+
+    /**
+     * Walks the segments newest first and the matching rows of each newest first.
+     *
+     * @param limit      Stops after this many matches
+     * @param out        Receives the matches, or null
+     * @param newestTime Whether to return the time of the first match instead of the count
+     * @return Number of matches, at most the limit, or the time of the first match ({@link #NONE} if none)
+     */
+    private long scan(int classId, long from, long to, int limit, Rows out, boolean newestTime) {
+        if (classId != ANY_CLASS && (classId < 0 || classId >= numClasses) || from > to) {
+            return newestTime ? NONE : 0;
+        }
+        int found = 0;
+        long first = oldest;
+        for (long sequence = newest; sequence >= first && found < limit; sequence--) {
+            Segment segment = acquire(sequence);
+            if (segment == null) {
+                continue;
+            }
+            try {
+                int size = segment.size();
+                if (size == 0 || segment.time(0) > to) {
+                    continue;
+                }
+                if (segment.time(size - 1) < from) {
+                    break; // Older segments are older still
+                }
+                int end = to == Long.MAX_VALUE ? size : segment.firstAtOrAfter(to + 1, size);
+                int start = segment.firstAtOrAfter(from, end);
+                if (out == null && !newestTime) {
+                    found += Math.min(classId == ANY_CLASS ? end - start : countClass(segment, classId, start, end),
+                            limit - found);
+                    continue;
+                }
+                for (int row = previousMatch(segment, classId, end - 1, start); row >= 0 && found < limit;
+                     row = previousMatch(segment, classId, row - 1, start)) {
+                    if (newestTime) {
+                        return segment.time(row);
+                    }
+                    if (out != null) {
+                        out.add(segment, row);
+                    }
+                    found++;
+                }
+            } finally {
+                segment.readers.decrementAndGet();
+            }
+        }
+        return newestTime ? NONE : found;
+    }
+
+    /**
+     * @return Rows of the class from start to end, adding up the counts of whole blocks
+     */
+    private static int countClass(Segment segment, int classId, int start, int end) {
+        int count = 0;
+        int row = start;
+        while (row < end) {
+            int block = row / BLOCK_ROWS;
+            int blockEnd = Math.min(end, (block + 1) * BLOCK_ROWS);
+            int inBlock = segment.classCount(block, classId);
+            if (row == block * BLOCK_ROWS && blockEnd == row + BLOCK_ROWS) {
+                count += inBlock;
+            } else if (inBlock > 0) {
+                for (int r = row; r < blockEnd; r++) {
+                    if (segment.classId(r) == classId) {
+                        count++;
+                    }
+                }
+            }
+            row = blockEnd;
+        }
+        return count;
+    }
+
+    /**
+     * @return The newest row of the class from the given row back to the start, or -1,
+     * skipping the blocks the class index rules out
+     */
+    private static int previousMatch(Segment segment, int classId, int row, int start) {
+        if (classId == ANY_CLASS) {
+            return row >= start ? row : -1;
+        }
+        while (row >= start) {
+            int block = row / BLOCK_ROWS;
+            int blockStart = Math.max(start, block * BLOCK_ROWS);
+            if (segment.classCount(block, classId) > 0) {
+                for (; row >= blockStart; row--) {
+                    if (segment.classId(row) == classId) {
+                        return row;
+                    }
+                }
+            } else {
+                row = blockStart - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Detections appended since the history was opened
+     */
+    public long getAppended() {
+        return appended.get();
+    }
+
+    /**
+     * @return Detections not stored because no memory segment was free or their class is unknown
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return Bytes written to segment files since the history was opened
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return The last file error, or null; the rows of a segment that could not be written are lost
+     */
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Stops appending and writes the rows still in memory. Stop calling {@link #append}
+     * first; the history can still be queried afterwards. If the calling thread is interrupted
+     * while waiting, this returns with its interrupt flag set and the writer finishes alone.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
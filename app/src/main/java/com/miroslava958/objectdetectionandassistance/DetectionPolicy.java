@@ -0,0 +1,249 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decides which detections are shown and announced: per-class confidence thresholds
+ * with hysteresis, classes that are never reported, a minimum box size and a limit on
+ * the number of objects per frame.
+ *
+ * The policy is written by label name in a config file and compiled against the model's
+ * label list into flat tables indexed by class ID, so checking a detection is two array
+ * reads and never compares strings.
+ *
+ * Hysteresis: a new object must score above its class's enter threshold, while an object
+ * that is already being tracked stays as long as it scores above the lower exit threshold,
+ * so boxes and announcements do not flicker when the score hovers around one value.
+ *
+ * Config format, one setting per line ('#' starts a comment):
+ * <pre>
+ * default: enter=0.7 exit=0.55      thresholds for classes without their own
+ * min_area: 0.002                   smallest box, as a fraction of the view area
+ * max_objects: 6                    most objects reported per frame
+ * allow: person, car, bicycle       if present, only these classes are reported
+ * deny: potted plant, vase          never reported
+ * class person: enter=0.5 exit=0.4  thresholds for one class
+ * </pre>
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class DetectionPolicy {
+    // Threshold for every class when the app ships no policy, also the host tools' default
+    public static final float DEFAULT_THRESHOLD = 0.7f;
+    // Enter threshold of a class that is never reported: no score is above it
+    private static final float NEVER = Float.POSITIVE_INFINITY;
+
+    // Thresholds by class ID; classes outside the tables use the defaults
+    private final float[] enterThreshold;
+    private final float[] exitThreshold;
+    private final float defaultEnter;
+    private final float defaultExit;
+    private final float minAreaFraction;
+    private final int maxObjects;
+    // Lowest score any detection can be kept with, used while decoding
+    private final float minThreshold;
+
+    private DetectionPolicy(float[] enterThreshold, float[] exitThreshold, float defaultEnter, float defaultExit,
+                            float minAreaFraction, int maxObjects) {
+        this.enterThreshold = enterThreshold;
+        this.exitThreshold = exitThreshold;
+        this.defaultEnter = defaultEnter;
+        this.defaultExit = defaultExit;
+        this.minAreaFraction = minAreaFraction;
+        this.maxObjects = maxObjects;
+        float min = defaultExit;
+        for (float exit : exitThreshold) {
+            min = Math.min(min, exit);
+        }
+        this.minThreshold = min;
+    }
+
+    /**
+     * A policy with one threshold for every class and no other limits.
+     *
+     * @param threshold Detections must score strictly above this value
+     */
+    public static DetectionPolicy uniform(float threshold) {
+        return new DetectionPolicy(new float[0], new float[0], threshold, threshold, 0f, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads a policy config and compiles it for a model's labels.
+     *
+     * @param in     The config
+     * @param labels The model's labels, indexed by class ID
+     * @return The compiled policy
+     * @throws IOException if reading fails, a line is malformed or a label is not in the list
+     */
+    public static DetectionPolicy read(InputStream in, List<String> labels) throws IOException {
+        float defaultEnter = 0.5f;
+        float defaultExit = Float.NaN;
+        float minArea = 0f;
+        int maxObjects = Integer.MAX_VALUE;
+        // Per-class settings; NaN = use the default
+        float[] enter = new float[labels.size()];
+        float[] exit = new float[labels.size()];
+        Arrays.fill(enter, Float.NaN);
+        Arrays.fill(exit, Float.NaN);
+        boolean[] allowed = null;
+        boolean[] denied = new boolean[labels.size()];
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                throw new IOException("Line " + lineNumber + ": expected 'key: value': " + line);
+            }
+            String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            try {
+                if (key.equals("default")) {
+                    float[] thresholds = thresholds(value);
+                    defaultEnter = thresholds[0];
+                    defaultExit = thresholds[1];
+                } else if (key.equals("min_area")) {
+                    minArea = Float.parseFloat(value);
+                } else if (key.equals("max_objects")) {
+                    maxObjects = Integer.parseInt(value);
+                } else if (key.equals("allow")) {
+                    if (allowed == null) {
+                        allowed = new boolean[labels.size()];
+                    }
+                    for (String label : value.split(",")) {
+                        allowed[classId(labels, label, lineNumber)] = true;
+                    }
+                } else if (key.equals("deny")) {
+                    for (String label : value.split(",")) {
+                        denied[classId(labels, label, lineNumber)] = true;
+                    }
+                } else if (key.startsWith("class ")) {
+                    int id = classId(labels, key.substring("class ".length()), lineNumber);
+                    float[] thresholds = thresholds(value);
+                    enter[id] = thresholds[0];
+                    exit[id] = thresholds[1];
+                } else {
+                    throw new IOException("Line " + lineNumber + ": unknown setting '" + key + "'");
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + ": invalid number: " + line, e);
+            }
+        }
+
+        if (Float.isNaN(defaultExit)) {
+            defaultExit = defaultEnter;
+        }
+        for (int id = 0; id < labels.size(); id++) {
+            if (denied[id] || (allowed != null && !allowed[id])) {
+                enter[id] = NEVER;
+                exit[id] = NEVER;
+            } else if (Float.isNaN(enter[id])) {
+                enter[id] = defaultEnter;
+                exit[id] = defaultExit;
+            }
+        }
+        // Classes missing from the allow list stay hidden even if the model reports an unknown ID
+        float outsideEnter = allowed != null ? NEVER : defaultEnter;
+        float outsideExit = allowed != null ? NEVER : defaultExit;
+        return new DetectionPolicy(enter, exit, outsideEnter, outsideExit, minArea, maxObjects);
+    }
+
+    /**
+     * Parses "enter=0.6 exit=0.45"; exit defaults to enter and may not be above it.
+     */
+    private static float[] thresholds(String value) throws IOException {
+        float enter = Float.NaN;
+        float exit = Float.NaN;
+        for (String part : value.split("\\s+")) {
+            if (part.startsWith("enter=")) {
+                enter = Float.parseFloat(part.substring("enter=".length()));
+            } else if (part.startsWith("exit=")) {
+                exit = Float.parseFloat(part.substring("exit=".length()));
+            } else {
+                throw new IOException("Expected enter=... exit=..., got '" + part + "'");
+            }
+        }
+        if (Float.isNaN(enter)) {
+            throw new IOException("Missing enter threshold: " + value);
+        }
+        if (Float.isNaN(exit)) {
+            exit = enter;
+        }
+        if (exit > enter) {
+            throw new IOException("Exit threshold above enter threshold: " + value);
+        }
+        return new float[]{enter, exit};
+    }
+
+    private static int classId(List<String> labels, String label, int lineNumber) throws IOException {
+        String name = label.trim();
+        for (int id = 0; id < labels.size(); id++) {
+            if (labels.get(id).equalsIgnoreCase(name)) {
+                return id;
+            }
+        }
+        throw new IOException("Line " + lineNumber + ": unknown label '" + name + "'");
+    }
+
+    /**
+     * @return Score a new object of a class must be strictly above
+     */
+    public float getEnterThreshold(int classId) {
+        return classId >= 0 && classId < enterThreshold.length ? enterThreshold[classId] : defaultEnter;
+    }
+
+    /**
+     * @return Score a tracked object of a class must stay strictly above
+     */
+    public float getExitThreshold(int classId) {
+        return classId >= 0 && classId < exitThreshold.length ? exitThreshold[classId] : defaultExit;
+    }
+
+    /**
+     * Checks one detection.
+     *
+     * @param classId Class of the detection
+     * @param score   Confidence score
+     * @param tracked Whether the detection continues an object already being tracked
+     * @return true if the detection is kept
+     */
+    public boolean accepts(int classId, float score, boolean tracked) {
+        return score > (tracked ? getExitThreshold(classId) : getEnterThreshold(classId));
+    }
+
+    /**
+     * @return Lowest threshold of any class; weaker candidates can be dropped while decoding
+     */
+    public float getMinThreshold() {
+        return minThreshold;
+    }
+
+    /**
+     * @return Smallest box kept, as a fraction of the view area
+     */
+    public float getMinAreaFraction() {
+        return minAreaFraction;
+    }
+
+    public int getMaxObjects() {
+        return maxObjects;
+    }
+}
@@ -0,0 +1,144 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Turns decoded detections into overlay detections.
+ * Holds the {@link DetectionPolicy} that decides which detections are kept, and its
+ * lowest threshold used while decoding (so weak candidates never reach non-max
+ * suppression), and maps the normalised boxes back through the input transform so
+ * they line up with the overlay whatever rotation, crop or letterbox was used.
+ * Works only on primitive arrays and reusable {@link DetectionBuffer}s, so it does
+ * not allocate anything once it has seen the largest decoded buffer.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class DetectionPostProcessor {
+    // Minimum overlap with a tracked box of the same class to use the lower exit threshold
+    private static final float TRACKED_IOU = 0.3f;
+    // Per-class thresholds, minimum size and object limit
+    private final DetectionPolicy policy;
+    // Detections that passed the policy, while choosing the strongest ones (grown once)
+    private boolean[] passed = new boolean[0];
+
+    /**
+     * @param scoreThreshold Detections must score strictly above this value
+     */
+    public DetectionPostProcessor(float scoreThreshold) {
+        this(DetectionPolicy.uniform(scoreThreshold));
+    }
+
+    /**
+     * @param policy Decides which detections are kept
+     */
+    public DetectionPostProcessor(DetectionPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * @return Lowest score any detection can be kept with
+     */
+    public float getScoreThreshold() {
+        return policy.getMinThreshold();
+    }
+
+    public DetectionPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Maps decoded boxes to the overlay, without tracked objects for hysteresis.
+     *
+     * @see #process(DetectionBuffer, InputTransform, DetectionBuffer, DetectionBuffer)
+     */
+    public int process(DetectionBuffer decoded, InputTransform transform, DetectionBuffer out) {
+        return process(decoded, transform, null, out);
+    }
+
+    /**
+     * Maps decoded boxes to the overlay and applies the policy.
+     * Boxes that lie entirely in letterbox padding or outside the view are dropped.
+     * When more detections pass than the policy allows, the highest scoring are kept.
+     *
+     * @param decoded   Detections with boxes normalised to the model input
+     * @param transform The transform the model input was prepared with
+     * @param tracked   Boxes of the objects being tracked, in view pixels, or null
+     * @param out       Buffer receiving the kept detections in view pixels (cleared first)
+     * @return The number of detections kept
+     */
+    public int process(DetectionBuffer decoded, InputTransform transform, DetectionBuffer tracked,
+                       DetectionBuffer out) {
+        out.clear();
+        if (passed.length < decoded.size()) {
+            passed = new boolean[decoded.capacity()];
+        }
+        float minArea = policy.getMinAreaFraction() * transform.getViewWidth() * transform.getViewHeight();
+        int passing = 0;
+        for (int i = 0; i < decoded.size(); i++) {
+            passed[i] = false;
+            float left = transform.modelToViewX(decoded.getLeft(i));
+            float top = transform.modelToViewY(decoded.getTop(i));
+            float right = transform.modelToViewX(decoded.getRight(i));
+            float bottom = transform.modelToViewY(decoded.getBottom(i));
+            if (right <= left || bottom <= top) {
+                continue; // Nothing left inside the image
+            }
+            if ((right - left) * (bottom - top) < minArea) {
+                continue;
+            }
+            int classId = decoded.getClassId(i);
+            float score = decoded.getScore(i);
+            if (!policy.accepts(classId, score, false)
+                    && !(policy.accepts(classId, score, true) && isTracked(tracked, classId, left, top, right, bottom))) {
+                continue;
+            }
+            passed[i] = true;
+            passing++;
+        }
+
+        int limit = Math.min(policy.getMaxObjects(), out.capacity());
+        if (passing <= limit) {
+            for (int i = 0; i < decoded.size(); i++) {
+                if (passed[i]) {
+                    add(decoded, i, transform, out);
+                }
+            }
+        } else {
+            // Keep the strongest, best first
+            for (int k = 0; k < limit; k++) {
+                int best = -1;
+                for (int i = 0; i < decoded.size(); i++) {
+                    if (passed[i] && (best < 0 || decoded.getScore(i) > decoded.getScore(best))) {
+                        best = i;
+                    }
+                }
+                passed[best] = false;
+                add(decoded, best, transform, out);
+            }
+        }
+        return out.size();
+    }
+
+    private static void add(DetectionBuffer decoded, int i, InputTransform transform, DetectionBuffer out) {
+        out.add(transform.modelToViewX(decoded.getLeft(i)), transform.modelToViewY(decoded.getTop(i)),
+                transform.modelToViewX(decoded.getRight(i)), transform.modelToViewY(decoded.getBottom(i)),
+                decoded.getScore(i), decoded.getClassId(i));
+    }
+
+    /**
+     * Checks whether a box continues a tracked object of the same class.
+     */
+    private static boolean isTracked(DetectionBuffer tracked, int classId, float left, float top, float right,
+                                     float bottom) {
+        if (tracked == null) {
+            return false;
+        }
+        for (int t = 0; t < tracked.size(); t++) {
+            if (tracked.getClassId(t) == classId
+                    && ObjectTracker.iou(left, top, right, bottom, tracked.getLeft(t), tracked.getTop(t),
+                    tracked.getRight(t), tracked.getBottom(t)) >= TRACKED_IOU) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -4,8 +4,11 @@ import android.graphics.RectF;
 
 /**
  * Represents the result of a single object detection.
- * Holds the bounding box, label, and score for each detected object.
+ * Holds the bounding box, label, and score for each detected object,
+ * and how far away it is estimated to be.
  * Used to pass detection results to the overlay view for visualisation.
+ * Instances can be refilled with {@link #set} so the detector can reuse a
+ * fixed pool of results instead of allocating new ones every frame.
  *
  * @author Miroslava
  */
@@ -13,9 +16,15 @@ public class DetectionResult {
     // Rectangle defining the area of the detected object in the image
     private final RectF boundingBox;
     // Label of the detected object
-    private final String label;
+    private String label;
     // Confidence score for the detection
-    private final float score;
+    private float score;
+    // Stable ID of the tracked object, or -1 if not tracked
+    private int trackId = -1;
+    // Estimated distance in metres, or NaN if unknown
+    private float distance = Float.NaN;
+    // Whether the object is approaching, receding or neither (ProximityEstimator constants)
+    private int motion = ProximityEstimator.STEADY;
 
     /**
      * Constructs a DetectionResult object.
@@ -30,6 +39,38 @@ public class DetectionResult {
         this.score = score;
     }
 
+    /**
+     * Replaces the contents of this result, reusing its bounding box object.
+     *
+     * @param left    Left edge of the box
+     * @param top     Top edge of the box
+     * @param right   Right edge of the box
+     * @param bottom  Bottom edge of the box
+     * @param label   Text label for the object
+     * @param score   The level of the detection
+     * @param trackId Stable ID of the tracked object, or -1
+     */
+    void set(float left, float top, float right, float bottom, String label, float score, int trackId) {
+        boundingBox.set(left, top, right, bottom);
+        this.label = label;
+        this.score = score;
+        this.trackId = trackId;
+        this.distance = Float.NaN;
+        this.motion = ProximityEstimator.STEADY;
+    }
+
+    /**
+     * Sets how close the object is, after {@link #set}.
+     *
+     * @param distance Estimated distance in metres, or NaN if unknown
+     * @param motion   {@link ProximityEstimator#APPROACHING}, {@link ProximityEstimator#RECEDING}
+     *                 or {@link ProximityEstimator#STEADY}
+     */
+    void setProximity(float distance, int motion) {
+        this.distance = distance;
+        this.motion = motion;
+    }
+
     /**
      * Gets the bounding box of the detection.
      *
@@ -56,4 +97,41 @@ public class DetectionResult {
     public float getScore() {
         return score;
     }
+
+    /**
+     * Gets the track ID of the detection.
+     *
+     * @return The same ID for the same object across frames, or -1 if not tracked
+     */
+    public int getTrackId() {
+        return trackId;
+    }
+
+    /**
+     * Gets the estimated distance of the object.
+     *
+     * @return Distance from the camera in metres, or NaN if unknown
+     */
+    public float getDistance() {
+        return distance;
+    }
+
+    /**
+     * Checks whether the object is coming closer.
+     *
+     * @return true if the object is approaching the user
+     */
+    public boolean isApproaching() {
+        return motion == ProximityEstimator.APPROACHING;
+    }
+
+    /**
+     * Gets the direction the object is moving in.
+     *
+     * @return {@link ProximityEstimator#APPROACHING}, {@link ProximityEstimator#RECEDING}
+     * or {@link ProximityEstimator#STEADY}
+     */
+    public int getMotion() {
+        return motion;
+    }
 }
@@ -0,0 +1,112 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Measures how stable the tracked detections are from one processed frame to the next:
+ * - how many distinct objects (track IDs) were reported and for how many frames each
+ * - how much a box moves between frames (1 - IoU of the same track ID)
+ * - how often the number of reported objects changes (flicker)
+ *
+ * A steady scene replayed through a better pipeline should give fewer, longer tracks,
+ * less jitter and less flicker. Updating does not allocate.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class DetectionStability {
+    // Track IDs and boxes of the previous frame
+    private final int[] previousIds;
+    private final float[] previousBoxes;
+    private int previousCount = -1;
+
+    private long frames = 0;
+    private long trackFrames = 0;
+    private long distinctTracks = 0;
+    // Track IDs only grow, so a larger ID is a new object
+    private int highestId = 0;
+    private long matchedPairs = 0;
+    private double jitterSum = 0;
+    private long countChanges = 0;
+
+    /**
+     * @param maxTracks Most tracked objects reported per frame
+     */
+    public DetectionStability(int maxTracks) {
+        previousIds = new int[maxTracks];
+        previousBoxes = new float[maxTracks * 4];
+    }
+
+    /**
+     * Adds one processed frame.
+     *
+     * @param tracks The tracked objects reported for the frame, with track IDs
+     */
+    public void update(DetectionBuffer tracks) {
+        int count = Math.min(tracks.size(), previousIds.length);
+        frames++;
+        trackFrames += count;
+        if (previousCount >= 0 && count != previousCount) {
+            countChanges++;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int id = tracks.getTrackId(i);
+            if (id > highestId) {
+                highestId = id;
+                distinctTracks++;
+            }
+            for (int p = 0; p < previousCount; p++) {
+                if (previousIds[p] == id) {
+                    int b = p * 4;
+                    float iou = ObjectTracker.iou(tracks.getLeft(i), tracks.getTop(i), tracks.getRight(i),
+                            tracks.getBottom(i), previousBoxes[b], previousBoxes[b + 1], previousBoxes[b + 2],
+                            previousBoxes[b + 3]);
+                    jitterSum += 1 - iou;
+                    matchedPairs++;
+                    break;
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            previousIds[i] = tracks.getTrackId(i);
+            int b = i * 4;
+            previousBoxes[b] = tracks.getLeft(i);
+            previousBoxes[b + 1] = tracks.getTop(i);
+            previousBoxes[b + 2] = tracks.getRight(i);
+            previousBoxes[b + 3] = tracks.getBottom(i);
+        }
+        previousCount = count;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return Number of distinct objects reported
+     */
+    public long getDistinctTracks() {
+        return distinctTracks;
+    }
+
+    /**
+     * @return Average number of frames each object was reported in
+     */
+    public double getMeanTrackLength() {
+        return distinctTracks == 0 ? 0 : (double) trackFrames / distinctTracks;
+    }
+
+    /**
+     * @return Mean 1 - IoU of the same object's box in consecutive frames (0 = perfectly still)
+     */
+    public double getMeanJitter() {
+        return matchedPairs == 0 ? 0 : jitterSum / matchedPairs;
+    }
+
+    /**
+     * @return Share of frames where the number of reported objects changed
+     */
+    public double getFlickerRate() {
+        return frames <= 1 ? 0 : (double) countChanges / (frames - 1);
+    }
+}
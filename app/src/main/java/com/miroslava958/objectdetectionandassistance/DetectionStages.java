@@ -0,0 +1,208 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * The detection steps every frame goes through, shared by the app ({@link ObjectDetector}),
+ * the replay tool ({@link ReplayEngine}) and the detection server ({@link FrameDetector}):
+ * YUV conversion into the letterboxed model input, inference, decoding with the
+ * detection policy and, in cascade mode, planning, converting and running the
+ * refinement model's crops.
+ *
+ * Tracking, timing and how the steps are scheduled stay with the caller. The convert
+ * steps of a frame run on one thread; each of the other steps may run on its own.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class DetectionStages {
+    // Most detections per frame for decoders that run their own non-max suppression
+    private static final int MAX_DETECTIONS = 25;
+
+    private final ModelRunner runner;
+    private final int inputWidth;
+    private final int inputHeight;
+    private final InputTransform.ScaleMode scaleMode;
+    // Turns the model's outputs into detections, chosen from its output tensors
+    private final DetectionDecoder.Factory decoderFactory;
+    // Converts YUV planes straight into the model input buffer
+    private final YuvToRgbConverter converter;
+    // Keeps detections allowed by the policy and maps them to the view
+    private final DetectionPostProcessor postProcessor;
+    // Cascade mode: the refinement model, what decides where it runs, and its input; null without one
+    private ModelRunner refiner;
+    private CascadeController cascade;
+    private DetectionDecoder.Factory refineDecoderFactory;
+    private YuvToRgbConverter refineConverter;
+    // Regions planned for the frame being converted, in upright frame pixels
+    private float[] cascadeRegions;
+    // Room for merging refined detections
+    private final DetectionBuffer mergeScratch;
+
+    /**
+     * @param runner     Runs the model
+     * @param numClasses Number of labels
+     * @param anchors    Anchors for raw SSD outputs, or null
+     * @param policy     Decides which detections are kept
+     * @param scaleMode  How frames are fitted into the model input
+     */
+    public DetectionStages(ModelRunner runner, int numClasses, float[] anchors, DetectionPolicy policy,
+                           InputTransform.ScaleMode scaleMode) {
+        this.runner = runner;
+        TensorSpec input = runner.getInputSpec(); // [1, height, width, 3]
+        this.inputHeight = input.getDim(1);
+        this.inputWidth = input.getDim(2);
+        this.scaleMode = scaleMode;
+        this.decoderFactory = DetectionDecoders.select(runner.getOutputSpecs(), numClasses, anchors,
+                DetectionDecoders.DEFAULT_IOU_THRESHOLD, MAX_DETECTIONS);
+        this.converter = new YuvToRgbConverter(inputWidth, inputHeight,
+                InputFormat.forTensor(input, InputFormat.DEFAULT_MEAN, InputFormat.DEFAULT_STD));
+        this.postProcessor = new DetectionPostProcessor(policy);
+        this.mergeScratch = new DetectionBuffer(decoderFactory.getMaxDetections());
+    }
+
+    /**
+     * Turns on cascade mode. Call before creating contexts.
+     *
+     * @param refiner    The refinement model, with the same labels as the main model
+     * @param numClasses Number of labels
+     * @param cascade    Decides where the refinement model runs
+     */
+    public void setCascade(ModelRunner refiner, int numClasses, CascadeController cascade) {
+        TensorSpec input = refiner.getInputSpec(); // [1, height, width, 3]
+        this.refiner = refiner;
+        this.cascade = cascade;
+        this.refineDecoderFactory = DetectionDecoders.select(refiner.getOutputSpecs(), numClasses, null,
+                DetectionDecoders.DEFAULT_IOU_THRESHOLD, MAX_DETECTIONS);
+        this.refineConverter = new YuvToRgbConverter(input.getDim(2), input.getDim(1),
+                InputFormat.forTensor(input, InputFormat.DEFAULT_MEAN, InputFormat.DEFAULT_STD));
+        this.cascadeRegions = new float[4 * cascade.getMaxRegions()];
+    }
+
+    /**
+     * @return The cascade set with {@link #setCascade}, or null
+     */
+    public CascadeController getCascade() {
+        return cascade;
+    }
+
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    public int getInputHeight() {
+        return inputHeight;
+    }
+
+    /**
+     * @return Most detections a frame can have
+     */
+    public int getMaxDetections() {
+        return decoderFactory.getMaxDetections();
+    }
+
+    /**
+     * Creates the state of one frame, with contexts for the refinement model in cascade mode.
+     */
+    public InferenceContext newContext() {
+        InferenceContext context = new InferenceContext(inputWidth, inputHeight, converter.getFormat(),
+                decoderFactory.create(), scaleMode);
+        if (cascade != null) {
+            InferenceContext[] refinements = new InferenceContext[cascade.getMaxRegions()];
+            for (int i = 0; i < refinements.length; i++) {
+                refinements[i] = new InferenceContext(refineConverter.getOutputWidth(),
+                        refineConverter.getOutputHeight(), refineConverter.getFormat(), refineDecoderFactory.create(),
+                        scaleMode);
+            }
+            context.setRefinements(refinements);
+            context.setCascadePlan(cascade.newPlan());
+        }
+        return context;
+    }
+
+    /**
+     * Convert step - writes the frame into the context's model input and keeps the
+     * transform it was converted with, so boxes map back to the view.
+     *
+     * @param frame          The frame
+     * @param transform      Rotation, region and view of the frame; may be the context's own
+     * @param timestampNanos Time the frame was captured
+     * @param context        The frame's state
+     */
+    public void convert(YuvFrame frame, InputTransform transform, long timestampNanos, InferenceContext context) {
+        converter.convert(frame, transform, context.getInputBuffer());
+        if (transform != context.getTransform()) {
+            context.getTransform().set(transform);
+        }
+        context.setTimestampNanos(timestampNanos);
+    }
+
+    /**
+     * Lets the cascade choose the regions of a converted frame and sets up the refinement
+     * contexts' transforms for them. Follow with {@link #convertRefinements}.
+     *
+     * @param tracks  Tracked boxes predicted for the frame, in view pixels
+     * @param context The frame's state, after {@link #convert}
+     * @return The number of regions
+     */
+    public int planRefinements(DetectionBuffer tracks, InferenceContext context) {
+        InputTransform frameTransform = context.getTransform();
+        int count = cascade.plan(tracks, frameTransform, context.getTimestampNanos(), cascadeRegions,
+                context.getCascadePlan());
+        InferenceContext[] refinements = context.getRefinements();
+        for (int r = 0; r < count; r++) {
+            InputTransform transform = refinements[r].getTransform();
+            transform.update(frameTransform.getFrameWidth(), frameTransform.getFrameHeight(),
+                    frameTransform.getRotationDegrees(), cascadeRegions[4 * r], cascadeRegions[4 * r + 1],
+                    cascadeRegions[4 * r + 2], cascadeRegions[4 * r + 3]);
+            transform.setViewSize(frameTransform.getViewWidth(), frameTransform.getViewHeight());
+        }
+        context.setRefinementCount(count);
+        return count;
+    }
+
+    /**
+     * Converts the planned regions for the refinement model, while the frame is still open.
+     *
+     * @param frame   The frame given to {@link #convert}
+     * @param context The frame's state, after {@link #planRefinements}
+     */
+    public void convertRefinements(YuvFrame frame, InferenceContext context) {
+        InferenceContext[] refinements = context.getRefinements();
+        for (int r = 0; r < context.getRefinementCount(); r++) {
+            refineConverter.convert(frame, refinements[r].getTransform(), refinements[r].getInputBuffer());
+        }
+    }
+
+    /**
+     * Inference step - runs the model on the converted frame.
+     *
+     * @throws Exception if inference failed
+     */
+    public void infer(InferenceContext context) throws Exception {
+        runner.run(context.getInputs(), context.getOutputs());
+    }
+
+    /**
+     * Decode step - keeps the detections the policy allows, mapped to the view.
+     *
+     * @param context The frame's state, after {@link #infer}
+     * @param tracks  Tracked boxes predicted for the frame, for the exit thresholds, or null
+     * @return The number of detections kept
+     */
+    public int postProcess(InferenceContext context, DetectionBuffer tracks) {
+        return context.postProcess(postProcessor, tracks);
+    }
+
+    /**
+     * Refinement step (cascade mode) - runs the refinement model on the frame's planned
+     * regions and merges the results into its detections. Runs also without regions,
+     * so the frame's plan counts as used.
+     *
+     * @param context The frame's state, after {@link #postProcess}
+     * @param tracks  Tracked boxes predicted for the frame, for the exit thresholds
+     * @return The number of detections after merging
+     * @throws Exception if the refinement model fails
+     */
+    public int refine(InferenceContext context, DetectionBuffer tracks) throws Exception {
+        return cascade.refine(context, refiner, postProcessor, tracks, mergeScratch);
+    }
+}
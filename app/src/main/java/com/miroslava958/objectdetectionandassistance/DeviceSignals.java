@@ -0,0 +1,36 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Battery and temperature of the device as seen by the {@link PerformanceGovernor}.
+ * Implemented by {@link AndroidDeviceSignals} on Android; tests and simulations
+ * use a fake that plays back a scripted walk.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public interface DeviceSignals {
+
+    // Thermal status, with the same values as android.os.PowerManager.THERMAL_STATUS_*
+    int THERMAL_NONE = 0;
+    int THERMAL_LIGHT = 1;
+    int THERMAL_MODERATE = 2;
+    int THERMAL_SEVERE = 3;
+    int THERMAL_CRITICAL = 4;
+    int THERMAL_EMERGENCY = 5;
+    int THERMAL_SHUTDOWN = 6;
+
+    /**
+     * @return Battery charge from 0 to 100, or -1 if unknown
+     */
+    int getBatteryPercent();
+
+    /**
+     * @return true while the device is plugged in
+     */
+    boolean isCharging();
+
+    /**
+     * @return One of the THERMAL_* values; THERMAL_NONE where the platform does not report it
+     */
+    int getThermalStatus();
+}
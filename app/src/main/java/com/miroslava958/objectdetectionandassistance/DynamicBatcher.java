@@ -0,0 +1,329 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Groups requests from many clients into batches for a fixed set of workers, as the
+ * host-side detection server does with frames sent by phones.
+ *
+ * Requests wait in a bounded queue. A worker takes a batch as soon as the queue holds a
+ * full batch or the oldest request has waited the longest allowed time, whichever comes
+ * first, so batches grow with the load while a lone request is delayed by at most that
+ * time. Each worker runs on its own thread with its own state (e.g. one interpreter per
+ * core), and processes its batch back to back.
+ *
+ * Backpressure: when the queue is full new requests are refused at once, so the caller
+ * can shed them (e.g. answer "busy") instead of letting latency grow without bound, and
+ * requests that waited longer than their deadline are dropped unprocessed, as their
+ * client has usually given up on them. Every request is either processed or dropped.
+ *
+ * The queue is a preallocated ring; queueing and taking batches do not allocate.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class DynamicBatcher<T> {
+
+    /**
+     * Processes batches on one worker thread.
+     */
+    public interface Worker<T> {
+
+        /**
+         * @param batch Requests in arrival order, valid only during the call
+         * @throws Exception if the batch failed; its requests are then dropped as FAILED
+         */
+        void process(List<T> batch) throws Exception;
+    }
+
+    /**
+     * Why a request was dropped without being processed.
+     */
+    public enum Drop {
+        EXPIRED,
+        FAILED,
+        SHUTDOWN
+    }
+
+    /**
+     * Told about every request dropped without being processed, on the thread that dropped it.
+     */
+    public interface DropListener<T> {
+        void dropped(T request, Drop reason);
+    }
+
+    private final int maxBatch;
+    // Longest time the oldest request waits for a batch to fill
+    private final long maxWaitNanos;
+    // Requests older than this when taken are dropped
+    private final long maxQueueNanos;
+    private final DropListener<T> dropListener;
+    private final List<? extends Worker<T>> workers;
+    private final Thread[] threads;
+
+    // Ring of queued requests and the time each arrived, guarded by the lock
+    private final Object[] queue;
+    private final long[] arrivedNanos;
+    private int head = 0;
+    private int size = 0;
+    private boolean running = false;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+
+    /**
+     * @param name          Prefix of the worker thread names
+     * @param workers       One worker per thread, e.g. one per core
+     * @param capacity      Most requests queued at once; more are refused
+     * @param maxBatch      Most requests in one batch
+     * @param maxWaitNanos  Longest time the oldest request waits for a batch to fill, 0 for no batching delay
+     * @param maxQueueNanos Requests that waited longer than this are dropped as EXPIRED
+     * @param dropListener  Told about requests dropped without being processed
+     */
+    public DynamicBatcher(String name, List<? extends Worker<T>> workers, int capacity, int maxBatch,
+                          long maxWaitNanos, long maxQueueNanos, DropListener<T> dropListener) {
+        if (workers.isEmpty() || capacity < 1 || maxBatch < 1) {
+            throw new IllegalArgumentException("Need at least one worker, queue slot and request per batch");
+        }
+        if (maxWaitNanos < 0 || maxQueueNanos < maxWaitNanos) {
+            throw new IllegalArgumentException("Invalid wait times");
+        }
+        this.workers = workers;
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = maxWaitNanos;
+        this.maxQueueNanos = maxQueueNanos;
+        this.dropListener = dropListener;
+        queue = new Object[capacity];
+        arrivedNanos = new long[capacity];
+        threads = new Thread[workers.size()];
+        for (int i = 0; i < threads.length; i++) {
+            final Worker<T> worker = workers.get(i);
+            threads[i] = new Thread(() -> work(worker), name + "-" + i);
+            threads[i].setDaemon(true);
+        }
+    }
+
+    /**
+     * Starts the worker threads.
+     */
+    public void start() {
+        lock.lock();
+        try {
+            running = true;
+        } finally {
+            lock.unlock();
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    /**
+     * Queues a request.
+     *
+     * @param request The request
+     * @return false if the queue is full or the batcher stopped; the caller sheds the request
+     */
+    public boolean submit(T request) {
+        lock.lock();
+        try {
+            if (!running || size == queue.length) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            int tail = (head + size) % queue.length;
+            queue[tail] = request;
+            arrivedNanos[tail] = System.nanoTime();
+            size++;
+            submitted.incrementAndGet();
+            // Wake a worker for a new oldest request or a full batch; others sleep on
+            if (size == 1 || size == maxBatch) {
+                changed.signal();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Worker thread loop: waits for a batch, drops the expired requests and processes the rest.
+     */
+    private void work(Worker<T> worker) {
+        List<T> batch = new ArrayList<>(maxBatch);
+        List<T> late = new ArrayList<>(maxBatch);
+        while (true) {
+            lock.lock();
+            try {
+                if (!awaitBatch()) {
+                    return;
+                }
+                take(batch, late);
+                // Requests left over start the next batch on another worker
+                if (size > 0) {
+                    changed.signal();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            for (int i = 0; i < late.size(); i++) {
+                expired.incrementAndGet();
+                dropListener.dropped(late.get(i), Drop.EXPIRED);
+            }
+            late.clear();
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                worker.process(batch);
+                processed.addAndGet(batch.size());
+            } catch (Exception e) {
+                for (int i = 0; i < batch.size(); i++) {
+                    failed.incrementAndGet();
+                    dropListener.dropped(batch.get(i), Drop.FAILED);
+                }
+            }
+            batches.incrementAndGet();
+            batch.clear();
+        }
+    }
+
+    /**
+     * Waits, holding the lock, until a full batch is queued or the oldest request has waited long enough.
+     *
+     * @return false once the batcher stops
+     */
+    private boolean awaitBatch() throws InterruptedException {
+        while (running) {
+            if (size == 0) {
+                changed.await();
+                continue;
+            }
+            long wait = arrivedNanos[head] + maxWaitNanos - System.nanoTime();
+            if (size >= maxBatch || wait <= 0) {
+                return true;
+            }
+            changed.awaitNanos(wait);
+        }
+        return false;
+    }
+
+    /**
+     * Takes up to a batch of requests off the queue, holding the lock, sorting out the expired ones.
+     */
+    @SuppressWarnings("unchecked")
+    private void take(List<T> batch, List<T> late) {
+        long now = System.nanoTime();
+        while (size > 0 && batch.size() < maxBatch) {
+            T request = (T) queue[head];
+            boolean isLate = now - arrivedNanos[head] > maxQueueNanos;
+            queue[head] = null;
+            head = (head + 1) % queue.length;
+            size--;
+            (isLate ? late : batch).add(request);
+        }
+    }
+
+    /**
+     * Stops the workers once their current batch is done and drops the queued requests as SHUTDOWN.
+     *
+     * @param timeoutMillis How long to wait for the workers to finish
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @SuppressWarnings("unchecked")
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+        List<T> left = new ArrayList<>();
+        lock.lock();
+        try {
+            running = false;
+            while (size > 0) {
+                left.add((T) queue[head]);
+                queue[head] = null;
+                head = (head + 1) % queue.length;
+                size--;
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (int i = 0; i < left.size(); i++) {
+            dropListener.dropped(left.get(i), Drop.SHUTDOWN);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Thread thread : threads) {
+            thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        }
+    }
+
+    /**
+     * @return Requests waiting in the queue
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    /**
+     * @return Requests accepted into the queue
+     */
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    /**
+     * @return Requests refused because the queue was full or the batcher stopped
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return Requests dropped because they waited too long
+     */
+    public long getExpired() {
+        return expired.get();
+    }
+
+    /**
+     * @return Requests dropped because their batch failed
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return Batches processed, including failed ones
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * @return Requests processed successfully
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+}
@@ -0,0 +1,69 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * A model output tensor received as a direct ByteBuffer and read as a flat float array.
+ * The interpreter copies the tensor into the buffer; {@link #read()} then copies it
+ * in one bulk operation into a reused float array, so decoders index plain arrays
+ * instead of calling into the buffer for every value.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class FloatOutputBuffer extends OutputBuffer {
+    // Buffer the interpreter writes into
+    private final ByteBuffer buffer;
+    // Float view of the whole buffer, created once
+    private final FloatBuffer view;
+    // Flat copy of the latest output
+    private final float[] values;
+
+    /**
+     * @param size Number of float elements in the tensor
+     */
+    public FloatOutputBuffer(int size) {
+        buffer = ByteBuffer.allocateDirect(size * 4).order(ByteOrder.nativeOrder());
+        view = buffer.asFloatBuffer();
+        values = new float[size];
+    }
+
+    /**
+     * Rewinds the buffer so the interpreter can write a new output into it.
+     *
+     * @return The buffer to pass to the interpreter
+     */
+    @Override
+    public ByteBuffer prepare() {
+        buffer.rewind();
+        return buffer;
+    }
+
+    /**
+     * Copies the latest output into the flat array.
+     *
+     * @return The flat array, valid until the next call
+     */
+    public float[] read() {
+        view.rewind();
+        view.get(values);
+        return values;
+    }
+
+    @Override
+    public void load() {
+        read();
+    }
+
+    @Override
+    public float get(int index) {
+        return values[index];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+}
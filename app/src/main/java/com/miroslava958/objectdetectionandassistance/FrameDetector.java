@@ -0,0 +1,67 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Detects objects in single frames with the {@link DetectionStages} of {@link ObjectDetector} -
+ * YUV conversion into the letterboxed model input, inference, decoding and the detection
+ * policy - without the camera, tracking or speech, for the host-side detection server.
+ * Each frame stands on its own, so frames of different clients can be mixed freely.
+ *
+ * Boxes are reported in upright frame pixels.
+ *
+ * Not thread-safe: each worker thread has its own, with its own model runner.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class FrameDetector {
+    private final DetectionStages stages;
+    // Input, outputs and results of the frame being detected, reused for every frame
+    private final InferenceContext context;
+
+    /**
+     * @param runner     Runs the model; used only by this detector
+     * @param numClasses Number of labels
+     * @param anchors    Anchors for raw SSD outputs, or null
+     * @param policy     Decides which detections are kept
+     * @param scaleMode  How frames are fitted into the model input
+     */
+    public FrameDetector(ModelRunner runner, int numClasses, float[] anchors, DetectionPolicy policy,
+                         InputTransform.ScaleMode scaleMode) {
+        stages = new DetectionStages(runner, numClasses, anchors, policy, scaleMode);
+        context = stages.newContext();
+    }
+
+    /**
+     * Runs one frame through conversion, inference and post-processing.
+     *
+     * @param frame           The frame
+     * @param rotationDegrees Clockwise rotation that makes the frame upright
+     * @return The detections kept, valid until the next call
+     * @throws Exception if inference failed
+     */
+    public DetectionBuffer detect(YuvFrame frame, int rotationDegrees) throws Exception {
+        long[] stageNanos = context.getStageNanos();
+        long start = System.nanoTime();
+        InputTransform transform = context.getTransform();
+        transform.update(frame.getWidth(), frame.getHeight(), rotationDegrees);
+        transform.setViewSize(transform.getUprightWidth(), transform.getUprightHeight());
+        stages.convert(frame, transform, start, context);
+        long converted = System.nanoTime();
+        stageNanos[PipelineMetrics.Stage.CONVERT.ordinal()] = converted - start;
+
+        stages.infer(context);
+        long inferred = System.nanoTime();
+        stageNanos[PipelineMetrics.Stage.INVOKE.ordinal()] = inferred - converted;
+
+        stages.postProcess(context, null);
+        stageNanos[PipelineMetrics.Stage.DECODE.ordinal()] = System.nanoTime() - inferred;
+        return context.getDetections();
+    }
+
+    /**
+     * @return Time the last frame spent in each {@link PipelineMetrics.Stage}, indexed by ordinal
+     */
+    public long[] getStageNanos() {
+        return context.getStageNanos();
+    }
+}
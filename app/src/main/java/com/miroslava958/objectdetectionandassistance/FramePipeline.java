@@ -0,0 +1,112 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * A multi-stage frame processing pipeline.
+ * Frames are written into reusable slots by the caller (the convert stage) and then
+ * handed through the remaining stages, each running on its own background thread.
+ * When a stage cannot keep up, stale frames are dropped instead of queueing up,
+ * so the results always describe the most recent camera frame.
+ *
+ * Plain Java, with no Android dependencies, so it can be driven by JVM tests.
+ *
+ * @param <T> The per-frame slot type carrying the frame through the stages
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public interface FramePipeline<T> {
+
+    /**
+     * Fills a free slot with a new frame. Runs on the thread calling {@link #submit}.
+     *
+     * @param <T> The slot type
+     */
+    interface FrameWriter<T> {
+        /**
+         * @param slot The slot to fill
+         * @return true to send the frame down the pipeline, false to discard it
+         * @throws Exception if the frame could not be written
+         */
+        boolean write(T slot) throws Exception;
+    }
+
+    /**
+     * One processing step, run on a dedicated thread.
+     *
+     * @param <T> The slot type
+     */
+    interface Stage<T> {
+        /**
+         * @param slot The frame to process
+         * @throws Exception if processing failed; the frame is then discarded
+         */
+        void process(T slot) throws Exception;
+    }
+
+    /**
+     * Receives exceptions thrown by the writer or any stage.
+     */
+    interface ErrorListener {
+        void onError(Throwable error);
+    }
+
+    /**
+     * Notified when a written frame leaves the pipeline without going through every
+     * stage - replaced by a newer frame, rejected by the writer or failed - so whatever
+     * was reserved for it can be given back. Runs on the thread that discarded it.
+     *
+     * @param <T> The slot type
+     */
+    interface DiscardListener<T> {
+        void onDiscarded(T slot);
+    }
+
+    /**
+     * Starts the stage threads.
+     */
+    void start();
+
+    /**
+     * Writes a frame into a free slot and queues it for processing.
+     * Never blocks; if no slot is free the frame is dropped.
+     *
+     * @param writer Fills the slot, called on the current thread
+     * @return true if the frame entered the pipeline
+     */
+    boolean submit(FrameWriter<T> writer);
+
+    /**
+     * Stops the stage threads and waits for them to finish.
+     */
+    void shutdown();
+
+    /**
+     * @return Number of frames offered through {@link #submit}
+     */
+    long getSubmittedFrames();
+
+    /**
+     * @return Number of frames that went through every stage
+     */
+    long getCompletedFrames();
+
+    /**
+     * @return Number of frames dropped because a newer frame replaced them or no slot was free
+     */
+    long getDroppedFrames();
+
+    /**
+     * @return Number of frames discarded because the writer or a stage threw
+     */
+    long getFailedFrames();
+
+    /**
+     * @return Mean time from submit to the end of the last stage, in nanoseconds
+     */
+    long getAverageLatencyNanos();
+
+    /**
+     * @return Longest time from submit to the end of the last stage, in nanoseconds
+     */
+    long getMaxLatencyNanos();
+}
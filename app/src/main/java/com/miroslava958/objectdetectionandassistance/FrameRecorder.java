@@ -0,0 +1,322 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in recorder that captures live analysis frames, with the model's raw outputs,
+ * into {@link FrameRecording} segment files for offline replay.
+ *
+ * Recording a frame takes two steps on the pipeline threads:
+ * - {@link #begin} copies the camera planes into a free preallocated entry
+ *   (the camera image is released right after the analyzer returns)
+ * - {@link #commit} appends the outputs once inference has run and hands the entry
+ *   to a background writer thread
+ * Neither step blocks: when every entry is still waiting to be written the frame is
+ * simply not recorded and counted as dropped. Only every Nth frame can be recorded
+ * to keep the log small.
+ *
+ * The writer appends records to a memory-mapped segment file of fixed size. A record's
+ * size field is written last, so a record cut short by a crash reads as the end of
+ * the segment. When a record does not fit, the segment is trimmed to its used length
+ * and a new one is started; the oldest segments are deleted beyond the limit.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class FrameRecorder implements AutoCloseable {
+
+    /**
+     * One frame being recorded. Owned by the pipeline between {@link #begin} and
+     * {@link #commit} or {@link #cancel}, then by the writer thread. Belongs to the
+     * recorder that created it, as a pipeline slot may still hold it after recording
+     * has been stopped and started again.
+     */
+    public static final class Entry {
+        private final FrameRecorder owner;
+        // Encoded record, grown when a frame or its outputs do not fit
+        private ByteBuffer record;
+
+        Entry(FrameRecorder owner) {
+            this.owner = owner;
+        }
+    }
+
+    // How long the writer waits for a frame before checking whether it should stop
+    private static final long POLL_MILLIS = 100;
+    // Extra room allocated with each entry for the model outputs
+    private static final int OUTPUT_RESERVE = 64 * 1024;
+
+    private final File directory;
+    private final String prefix;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final int sampleInterval;
+    // Entries ready to copy a frame into, and entries waiting for the writer
+    private final BlockingQueue<Entry> free;
+    private final BlockingQueue<Entry> pending;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Analysed frames offered so far, used for sampling (pipeline thread only)
+    private long offered = 0;
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile IOException lastError;
+
+    // Writer thread state: the current segment and the files written so far
+    private final ArrayDeque<File> segments = new ArrayDeque<>();
+    private int segmentNumber = 0;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+
+    /**
+     * Creates the recorder and starts its writer thread.
+     *
+     * @param directory      Folder for the segment files
+     * @param prefix         Segment file name prefix, e.g. the session start time
+     * @param segmentBytes   Size of each segment file; a larger frame is dropped
+     * @param maxSegments    Most segment files kept; older ones are deleted
+     * @param sampleInterval Record every Nth analysed frame (1 = all)
+     * @param bufferedFrames Frames that can wait for the writer before new ones are dropped
+     */
+    public FrameRecorder(File directory, String prefix, long segmentBytes, int maxSegments, int sampleInterval,
+                         int bufferedFrames) {
+        if (segmentBytes <= FrameRecording.HEADER_SIZE || segmentBytes > Integer.MAX_VALUE
+                || maxSegments < 1 || sampleInterval < 1 || bufferedFrames < 1) {
+            throw new IllegalArgumentException("Invalid recorder settings");
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentBytes = (int) segmentBytes;
+        this.maxSegments = maxSegments;
+        this.sampleInterval = sampleInterval;
+        free = new ArrayBlockingQueue<>(bufferedFrames);
+        pending = new ArrayBlockingQueue<>(bufferedFrames);
+        for (int i = 0; i < bufferedFrames; i++) {
+            free.offer(new Entry(this));
+        }
+        writer = new Thread(this::runWriter, "frame-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Copies a frame into a free entry. Call from the thread that owns the frame.
+     *
+     * @param frame           The camera frame
+     * @param timestampNanos  Capture time
+     * @param rotationDegrees Clockwise rotation that makes the frame upright
+     * @return The entry to pass to {@link #commit} or {@link #cancel}, or null if the
+     * frame is not sampled, the writer is behind or recording has stopped
+     */
+    public Entry begin(YuvFrame frame, long timestampNanos, int rotationDegrees) {
+        if (!running || offered++ % sampleInterval != 0) {
+            return null;
+        }
+        Entry entry = free.poll();
+        if (entry == null) {
+            dropped.incrementAndGet();
+            return null;
+        }
+        long size = FrameRecording.Writer.recordSize(frame);
+        if (entry.record == null || entry.record.capacity() < size) {
+            entry.record = ByteBuffer.allocateDirect((int) size + OUTPUT_RESERVE).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        entry.record.clear();
+        FrameRecording.putRecord(entry.record, frame, timestampNanos, rotationDegrees);
+        return entry;
+    }
+
+    /**
+     * Appends the model outputs to a begun frame and queues it for writing.
+     * Entries of another recorder are ignored.
+     *
+     * @param entry   The entry returned by {@link #begin}
+     * @param outputs The output buffers passed to the interpreter, by output index
+     */
+    public void commit(Entry entry, Map<Integer, Object> outputs) {
+        if (entry.owner != this) {
+            return;
+        }
+        for (int i = 0; i < outputs.size(); i++) {
+            ByteBuffer output = (ByteBuffer) outputs.get(i);
+            if (entry.record.remaining() < 4 + output.capacity()) {
+                grow(entry, 4 + output.capacity());
+            }
+            FrameRecording.putOutput(entry.record, 0, output);
+        }
+        entry.record.flip();
+        // Never fails: there are no more entries than the queue holds
+        pending.offer(entry);
+    }
+
+    private static void grow(Entry entry, int extra) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(entry.record.position() + extra + OUTPUT_RESERVE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        entry.record.flip();
+        larger.put(entry.record);
+        entry.record = larger;
+    }
+
+    /**
+     * Gives back a begun frame that will not be committed, e.g. because it was dropped.
+     * Entries of another recorder are ignored.
+     *
+     * @param entry The entry returned by {@link #begin}, or null
+     */
+    public void cancel(Entry entry) {
+        if (entry != null && entry.owner == this) {
+            free.offer(entry);
+        }
+    }
+
+    /**
+     * Writer thread loop: appends queued frames until the recorder is closed,
+     * then writes what is left and trims the last segment.
+     */
+    private void runWriter() {
+        try {
+            while (running || !pending.isEmpty()) {
+                Entry entry = pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (entry == null) {
+                    continue;
+                }
+                try {
+                    write(entry.record);
+                } catch (IOException e) {
+                    lastError = e;
+                    running = false;
+                }
+                free.offer(entry);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            finishSegment();
+        }
+    }
+
+    private void write(ByteBuffer record) throws IOException {
+        int size = record.remaining();
+        if (size > segmentBytes - FrameRecording.HEADER_SIZE) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (segment == null || segment.remaining() < size) {
+            finishSegment();
+            startSegment();
+        }
+        // Fields first and the size last, so an interrupted record is never read
+        int start = segment.position();
+        record.position(4);
+        segment.position(start + 4);
+        segment.put(record);
+        segment.putInt(start, size - 4);
+        recorded.incrementAndGet();
+        bytesWritten.addAndGet(size);
+    }
+
+    private void startSegment() throws IOException {
+        File file = new File(directory, String.format(Locale.ROOT, "%s-%04d.odfr", prefix, segmentNumber++));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(segmentBytes);
+            channel = raf.getChannel();
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        FrameRecording.putFileHeader(segment);
+        bytesWritten.addAndGet(FrameRecording.HEADER_SIZE);
+
+        segments.addLast(file);
+        while (segments.size() > maxSegments) {
+            File oldest = segments.removeFirst();
+            if (!oldest.delete()) {
+                lastError = new IOException("Could not delete " + oldest);
+            }
+        }
+    }
+
+    /**
+     * Trims the current segment to the bytes written and closes it.
+     */
+    private void finishSegment() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            segment.force();
+            channel.truncate(segment.position());
+        } catch (IOException e) {
+            // Still readable: the unused tail reads as the end of the recording
+            lastError = e;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            lastError = e;
+        }
+        channel = null;
+        segment = null;
+    }
+
+    /**
+     * @return Frames written to disk
+     */
+    public long getRecordedFrames() {
+        return recorded.get();
+    }
+
+    /**
+     * @return Sampled frames not recorded because the writer was behind or they were too large
+     */
+    public long getDroppedFrames() {
+        return dropped.get();
+    }
+
+    /**
+     * @return Bytes written to segment files, including their headers
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return The last write error, after which recording stops, or null
+     */
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Stops recording, writes the frames already committed and closes the last segment.
+     * Frames begun but not committed are discarded. If the calling thread is interrupted
+     * while waiting, this returns with its interrupt flag set and the writer finishes alone.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A recorded sequence of raw YUV_420_888 camera frames, read through a memory map
+ * so recordings larger than the heap can be replayed.
+ *
+ * File layout (little-endian):
+ * - header: magic "ODFR", format version, header size, flags (4 ints)
+ * - then one record per frame: record size (int, bytes after this field),
+ *   capture time (long, ns), width, height, rotation, Y row stride, UV row stride,
+ *   UV pixel stride, Y/U/V plane lengths (ints), followed by the Y, U and V bytes
+ * - since version 2, each record ends with the model's raw outputs: output count (int),
+ *   then per output its length (int) and the tensor bytes in the device's native order
+ *   (little-endian on every Android ABI)
+ *
+ * Planes are stored with the camera's own strides, so recording is a plain copy and
+ * replay sees exactly what the analyzer saw. Readers skip unknown header bytes, so the
+ * header can grow in later versions, and version 1 files read as records without outputs.
+ * Reading stops at a record whose size is zero or runs past the end of the file, so a
+ * truncated last record or the unused tail of a preallocated segment is ignored.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class FrameRecording implements FrameSource {
+    // "ODFR" read as a little-endian int
+    static final int MAGIC = 0x5246444F;
+    public static final int VERSION = 2;
+    static final int HEADER_SIZE = 16;
+    // Record fields after the size: timestamp (long) + 9 ints
+    static final int RECORD_HEADER_SIZE = 8 + 9 * 4;
+    // Offset of the Y plane length from the start of a record's fields
+    private static final int PLANE_LENGTHS = 32;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+    // Offset of each frame record's fields (just after its size)
+    private final int[] offsets;
+    // Views of the map, moved to the planes of the current frame
+    private final ByteBuffer yView;
+    private final ByteBuffer uView;
+    private final ByteBuffer vView;
+    private int next = 0;
+    private int current = -1;
+
+    /**
+     * Opens a recording and indexes its frames.
+     *
+     * @param file The recording
+     * @throws IOException if the file cannot be read, is not a recording, has a newer
+     *                     version or is larger than one memory map (2 GB)
+     */
+    public FrameRecording(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        channel = raf.getChannel();
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Recording too large to map, split it into segments: " + file);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            offsets = index(data, file);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+        yView = data.duplicate();
+        uView = data.duplicate();
+        vView = data.duplicate();
+    }
+
+    private static int[] index(ByteBuffer data, File file) throws IOException {
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a frame recording: " + file);
+        }
+        int version = data.getInt(4);
+        if (version > VERSION) {
+            throw new IOException("Recording version " + version + " is newer than supported " + VERSION);
+        }
+        int position = data.getInt(8);
+        int[] offsets = new int[64];
+        int count = 0;
+        while (position + 4 + RECORD_HEADER_SIZE <= data.limit()) {
+            int recordSize = data.getInt(position);
+            if (recordSize < RECORD_HEADER_SIZE || position + 4L + recordSize > data.limit()) {
+                break; // Truncated or damaged tail
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = position + 4;
+            position += 4 + recordSize;
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    /**
+     * @return Number of complete frames in the recording
+     */
+    public int getFrameCount() {
+        return offsets.length;
+    }
+
+    /**
+     * Points a frame at the planes of a recorded frame, without copying.
+     * The frame stays valid until the recording is closed.
+     *
+     * @param index Frame number, 0 = first
+     * @param frame The frame object to fill
+     * @return The filled frame
+     */
+    public YuvFrame read(int index, YuvFrame frame) {
+        int base = offsets[index];
+        int width = data.getInt(base + 8);
+        int height = data.getInt(base + 12);
+        int yLength = data.getInt(base + PLANE_LENGTHS);
+        int uLength = data.getInt(base + PLANE_LENGTHS + 4);
+        int vLength = data.getInt(base + PLANE_LENGTHS + 8);
+        int yStart = base + RECORD_HEADER_SIZE;
+        int uStart = yStart + yLength;
+        int vStart = uStart + uLength;
+        moveTo(yView, yStart, yLength);
+        moveTo(uView, uStart, uLength);
+        moveTo(vView, vStart, vLength);
+        current = index;
+        return frame.set(width, height, yView, uView, vView,
+                data.getInt(base + 20), data.getInt(base + 24), data.getInt(base + 28));
+    }
+
+    private static void moveTo(ByteBuffer view, int start, int length) {
+        view.limit(view.capacity());
+        view.position(start);
+        view.limit(start + length);
+    }
+
+    /**
+     * @return Capture time of a frame in nanoseconds
+     */
+    public long getTimestampNanos(int index) {
+        return data.getLong(offsets[index]);
+    }
+
+    /**
+     * @return Clockwise rotation that makes a frame upright
+     */
+    public int getRotationDegrees(int index) {
+        return data.getInt(offsets[index] + 16);
+    }
+
+    /**
+     * @return Number of model outputs stored with a frame (0 if none were recorded)
+     */
+    public int getOutputCount(int index) {
+        int position = outputsStart(index);
+        return position + 4 <= recordEnd(index) ? data.getInt(position) : 0;
+    }
+
+    /**
+     * Returns one of the model outputs stored with a frame, as raw tensor bytes.
+     *
+     * @param index  Frame number
+     * @param output Output index, as passed to the interpreter
+     * @return A read-only little-endian view of the tensor
+     */
+    public ByteBuffer getOutput(int index, int output) {
+        if (output < 0 || output >= getOutputCount(index)) {
+            throw new IndexOutOfBoundsException("Frame " + index + " has no output " + output);
+        }
+        int position = outputsStart(index) + 4;
+        for (int i = 0; i < output; i++) {
+            position += 4 + data.getInt(position);
+        }
+        int length = data.getInt(position);
+        ByteBuffer view = data.duplicate();
+        view.position(position + 4);
+        view.limit(position + 4 + length);
+        return view.slice().asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private int outputsStart(int index) {
+        int base = offsets[index];
+        return base + RECORD_HEADER_SIZE + data.getInt(base + PLANE_LENGTHS)
+                + data.getInt(base + PLANE_LENGTHS + 4) + data.getInt(base + PLANE_LENGTHS + 8);
+    }
+
+    private int recordEnd(int index) {
+        return offsets[index] + data.getInt(offsets[index] - 4);
+    }
+
+    @Override
+    public boolean next(YuvFrame frame) {
+        if (next >= offsets.length) {
+            return false;
+        }
+        read(next++, frame);
+        return true;
+    }
+
+    @Override
+    public long getTimestampNanos() {
+        return getTimestampNanos(current);
+    }
+
+    @Override
+    public int getRotationDegrees() {
+        return getRotationDegrees(current);
+    }
+
+    @Override
+    public void rewind() {
+        next = 0;
+        current = -1;
+    }
+
+    /**
+     * Unmapping happens when the buffer is garbage collected; closing releases the file.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Encodes a frame record with no outputs at the buffer's position, size field included.
+     * Outputs can then be appended with {@link #putOutput}.
+     *
+     * @param out             Little-endian destination with at least {@link Writer#recordSize} bytes remaining
+     * @param frame           The frame
+     * @param timestampNanos  Capture time
+     * @param rotationDegrees Clockwise rotation that makes the frame upright
+     */
+    static void putRecord(ByteBuffer out, YuvFrame frame, long timestampNanos, int rotationDegrees) {
+        int yLength = Writer.yLength(frame);
+        int uvLength = Writer.uvLength(frame);
+        putRecordHeader(out, frame, timestampNanos, rotationDegrees, yLength, uvLength, 0);
+        out.put(Writer.plane(frame.getYBuffer(), yLength));
+        out.put(Writer.plane(frame.getUBuffer(), uvLength));
+        out.put(Writer.plane(frame.getVBuffer(), uvLength));
+        out.putInt(0);
+    }
+
+    /**
+     * Appends a model output to the record encoded at a position by {@link #putRecord},
+     * which must be the last thing in the buffer.
+     *
+     * @param out         Buffer holding the record
+     * @param recordStart Position of the record's size field
+     * @param output      Tensor bytes, from position 0 to capacity
+     */
+    static void putOutput(ByteBuffer out, int recordStart, ByteBuffer output) {
+        ByteBuffer bytes = output.duplicate();
+        bytes.clear();
+        int fields = recordStart + 4;
+        int countPosition = fields + RECORD_HEADER_SIZE + out.getInt(fields + PLANE_LENGTHS)
+                + out.getInt(fields + PLANE_LENGTHS + 4) + out.getInt(fields + PLANE_LENGTHS + 8);
+        out.putInt(bytes.remaining());
+        out.put(bytes);
+        out.putInt(countPosition, out.getInt(countPosition) + 1);
+        out.putInt(recordStart, out.position() - fields);
+    }
+
+    private static void putRecordHeader(ByteBuffer out, YuvFrame frame, long timestampNanos, int rotationDegrees,
+                                        int yLength, int uvLength, int outputBytes) {
+        out.putInt(RECORD_HEADER_SIZE + yLength + 2 * uvLength + 4 + outputBytes)
+                .putLong(timestampNanos)
+                .putInt(frame.getWidth())
+                .putInt(frame.getHeight())
+                .putInt(rotationDegrees)
+                .putInt(frame.getYRowStride())
+                .putInt(frame.getUvRowStride())
+                .putInt(frame.getUvPixelStride())
+                .putInt(yLength)
+                .putInt(uvLength)
+                .putInt(uvLength);
+    }
+
+    /**
+     * Writes the file header at the buffer's position.
+     */
+    static void putFileHeader(ByteBuffer out) {
+        out.putInt(MAGIC).putInt(VERSION).putInt(HEADER_SIZE).putInt(0);
+    }
+
+    /**
+     * Writes frames in the recording format. Not thread-safe.
+     */
+    public static final class Writer {
+        private final WritableByteChannel channel;
+        // Reused for every record header
+        private final ByteBuffer header = ByteBuffer.allocate(4 + RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        // Reused for the output count and lengths
+        private final ByteBuffer field = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        private long bytesWritten = 0;
+        private int framesWritten = 0;
+
+        /**
+         * Writes the file header.
+         *
+         * @param channel Destination, positioned at the start of a new file
+         * @throws IOException if writing fails
+         */
+        public Writer(WritableByteChannel channel) throws IOException {
+            this.channel = channel;
+            ByteBuffer fileHeader = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            putFileHeader(fileHeader);
+            fileHeader.flip();
+            writeFully(fileHeader);
+        }
+
+        /**
+         * @return Bytes that one frame takes in the recording, without outputs
+         */
+        public static long recordSize(YuvFrame frame) {
+            return 4L + RECORD_HEADER_SIZE + yLength(frame) + 2L * uvLength(frame) + 4;
+        }
+
+        /**
+         * Appends a frame without model outputs.
+         *
+         * @see #write(YuvFrame, long, int, ByteBuffer[])
+         */
+        public void write(YuvFrame frame, long timestampNanos, int rotationDegrees) throws IOException {
+            write(frame, timestampNanos, rotationDegrees, null);
+        }
+
+        /**
+         * Appends a frame, copying only the bytes the strides actually use.
+         *
+         * @param frame           The frame
+         * @param timestampNanos  Capture time
+         * @param rotationDegrees Clockwise rotation that makes the frame upright
+         * @param outputs         Raw model outputs for the frame (position 0 to capacity), or null
+         * @throws IOException if writing fails
+         */
+        public void write(YuvFrame frame, long timestampNanos, int rotationDegrees, ByteBuffer[] outputs)
+                throws IOException {
+            int yLength = yLength(frame);
+            int uvLength = uvLength(frame);
+            int outputCount = outputs == null ? 0 : outputs.length;
+            int outputBytes = 0;
+            for (int i = 0; i < outputCount; i++) {
+                outputBytes += 4 + outputs[i].capacity();
+            }
+            header.clear();
+            putRecordHeader(header, frame, timestampNanos, rotationDegrees, yLength, uvLength, outputBytes);
+            header.flip();
+            writeFully(header);
+            writeFully(plane(frame.getYBuffer(), yLength));
+            writeFully(plane(frame.getUBuffer(), uvLength));
+            writeFully(plane(frame.getVBuffer(), uvLength));
+            writeInt(outputCount);
+            for (int i = 0; i < outputCount; i++) {
+                ByteBuffer bytes = outputs[i].duplicate();
+                bytes.clear();
+                writeInt(bytes.remaining());
+                writeFully(bytes);
+            }
+            framesWritten++;
+        }
+
+        /**
+         * @return Bytes written so far, including the file header
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public int getFramesWritten() {
+            return framesWritten;
+        }
+
+        private static int yLength(YuvFrame frame) {
+            return frame.getYRowStride() * (frame.getHeight() - 1) + frame.getWidth();
+        }
+
+        private static int uvLength(YuvFrame frame) {
+            int chromaWidth = (frame.getWidth() + 1) / 2;
+            int chromaHeight = (frame.getHeight() + 1) / 2;
+            return frame.getUvRowStride() * (chromaHeight - 1) + (chromaWidth - 1) * frame.getUvPixelStride() + 1;
+        }
+
+        private static ByteBuffer plane(ByteBuffer buffer, int length) {
+            ByteBuffer view = buffer.duplicate();
+            view.limit(view.position() + length);
+            return view;
+        }
+
+        private void writeInt(int value) throws IOException {
+            field.clear();
+            field.putInt(value).flip();
+            writeFully(field);
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                bytesWritten += channel.write(buffer);
+            }
+        }
+    }
+}
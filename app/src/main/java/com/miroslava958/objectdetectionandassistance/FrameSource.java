@@ -0,0 +1,36 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.io.Closeable;
+
+/**
+ * A sequence of YUV frames read from somewhere other than the camera,
+ * such as a {@link FrameRecording} or a folder of images, for replay.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public interface FrameSource extends Closeable {
+
+    /**
+     * Moves to the next frame.
+     *
+     * @param frame Filled with the frame's planes, valid until the next call
+     * @return false when there are no more frames
+     */
+    boolean next(YuvFrame frame);
+
+    /**
+     * @return Capture time of the current frame in nanoseconds
+     */
+    long getTimestampNanos();
+
+    /**
+     * @return Clockwise rotation that makes the current frame upright
+     */
+    int getRotationDegrees();
+
+    /**
+     * Starts again from the first frame.
+     */
+    void rewind();
+}
@@ -0,0 +1,109 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ring buffer of the most recent frame timelines: when each frame was captured,
+ * how long it took end to end and how long each stage took.
+ * Writers claim an entry with one atomic increment and never block or allocate;
+ * when the ring is full the oldest frame is overwritten.
+ *
+ * Each entry carries a sequence stamp that is cleared while it is being written,
+ * so a reader copying the ring skips entries that changed under it instead of
+ * returning a mix of two frames.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class FrameTimeline {
+    // Values per entry: capture time, end-to-end latency, then one duration per stage
+    private static final int HEADER = 2;
+
+    private final int capacity;
+    private final int stageCount;
+    private final int entrySize;
+    private final AtomicLongArray values;
+    // Sequence number + 1 of the frame held by each entry, 0 while being written
+    private final AtomicLongArray stamps;
+    // Sequence number of the next frame
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * @param capacity   Number of recent frames kept
+     * @param stageCount Number of stage durations per frame
+     */
+    public FrameTimeline(int capacity, int stageCount) {
+        if (capacity <= 0 || stageCount < 0) {
+            throw new IllegalArgumentException("Invalid timeline size");
+        }
+        this.capacity = capacity;
+        this.stageCount = stageCount;
+        this.entrySize = HEADER + stageCount;
+        values = new AtomicLongArray(capacity * entrySize);
+        stamps = new AtomicLongArray(capacity);
+    }
+
+    /**
+     * Records one frame.
+     *
+     * @param timestampNanos Capture time of the frame
+     * @param latencyNanos   Time from capture to result
+     * @param stageNanos     Duration of each stage (at least stageCount values)
+     */
+    public void record(long timestampNanos, long latencyNanos, long[] stageNanos) {
+        long sequence = next.getAndIncrement();
+        int entry = (int) (sequence % capacity);
+        int base = entry * entrySize;
+        stamps.set(entry, 0);
+        values.set(base, timestampNanos);
+        values.set(base + 1, latencyNanos);
+        for (int i = 0; i < stageCount; i++) {
+            values.set(base + HEADER + i, stageNanos[i]);
+        }
+        stamps.set(entry, sequence + 1);
+    }
+
+    /**
+     * @return Number of frames recorded so far (including overwritten ones)
+     */
+    public long getRecordedCount() {
+        return next.get();
+    }
+
+    public int getStageCount() {
+        return stageCount;
+    }
+
+    /**
+     * Copies the recent frames, oldest first, skipping any entry being written.
+     *
+     * @return One row per frame: capture time, latency, then the stage durations
+     */
+    public long[][] snapshot() {
+        long end = next.get();
+        long start = Math.max(0, end - capacity);
+        long[][] rows = new long[(int) (end - start)][];
+        int count = 0;
+        for (long sequence = start; sequence < end; sequence++) {
+            int entry = (int) (sequence % capacity);
+            int base = entry * entrySize;
+            if (stamps.get(entry) != sequence + 1) {
+                continue; // Overwritten or still being written
+            }
+            long[] row = new long[entrySize];
+            for (int i = 0; i < entrySize; i++) {
+                row[i] = values.get(base + i);
+            }
+            if (stamps.get(entry) == sequence + 1) {
+                rows[count++] = row;
+            }
+        }
+        if (count == rows.length) {
+            return rows;
+        }
+        long[][] trimmed = new long[count][];
+        System.arraycopy(rows, 0, trimmed, 0, count);
+        return trimmed;
+    }
+}
@@ -0,0 +1,216 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+
+/**
+ * Preallocated state for running the detector on one frame.
+ * Owns the direct input buffer, the decoder holding the model output buffers,
+ * the input container passed to the interpreter and the detection buffers filled
+ * by post-processing. Everything is created once and reused for every frame,
+ * so the steady-state inference loop does not allocate.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class InferenceContext {
+    // Model input size in pixels
+    private final int inputWidth;
+    private final int inputHeight;
+    // How the RGB input is written, and the direct buffer holding it
+    private final InputFormat inputFormat;
+    private final ByteBuffer inputBuffer;
+    // Container handed to Interpreter.runForMultipleInputsOutputs
+    private final Object[] inputs;
+    // Owns the output buffers and turns them into detections
+    private final DetectionDecoder decoder;
+
+    // Mapping the input was prepared with, used to map boxes back to the overlay
+    private final InputTransform transform;
+    // Decoded detections, normalised to the model input
+    private final DetectionBuffer decoded;
+    // Detections kept after post-processing
+    private final DetectionBuffer detections;
+    // Time the frame was captured
+    private long timestampNanos;
+    // How long each stage took for this frame, indexed by PipelineMetrics.Stage
+    private final long[] stageNanos = new long[PipelineMetrics.STAGE_COUNT];
+    // Recording of this frame waiting for the model outputs, or null
+    private FrameRecorder.Entry recording;
+    // Crops of this frame prepared for the refinement model in cascade mode, and how many are in use
+    private InferenceContext[] refinements = new InferenceContext[0];
+    private int refinementCount;
+    // Budget and tracks the cascade reserved for those crops, or null outside cascade mode
+    private CascadeController.Plan cascadePlan;
+
+    /**
+     * Context for EfficientDet-Lite0 with a square input, stretched to fit.
+     *
+     * @param inputSize     Width and height of the square RGB model input
+     * @param maxDetections Number of detections the model returns
+     */
+    public InferenceContext(int inputSize, int maxDetections) {
+        this(inputSize, inputSize, new SsdDetectionDecoder(maxDetections), InputTransform.ScaleMode.STRETCH);
+    }
+
+    /**
+     * Context for a model taking raw RGB bytes.
+     *
+     * @param inputWidth  Width of the RGB model input
+     * @param inputHeight Height of the RGB model input
+     * @param decoder     Decoder for the model's outputs, used only by this context
+     * @param scaleMode   How frames are fitted into the input
+     */
+    public InferenceContext(int inputWidth, int inputHeight, DetectionDecoder decoder,
+                            InputTransform.ScaleMode scaleMode) {
+        this(inputWidth, inputHeight, InputFormat.RGB_BYTES, decoder, scaleMode);
+    }
+
+    /**
+     * @param inputWidth  Width of the RGB model input
+     * @param inputHeight Height of the RGB model input
+     * @param inputFormat How the input is written, which sets the buffer size
+     * @param decoder     Decoder for the model's outputs, used only by this context
+     * @param scaleMode   How frames are fitted into the input
+     */
+    public InferenceContext(int inputWidth, int inputHeight, InputFormat inputFormat, DetectionDecoder decoder,
+                            InputTransform.ScaleMode scaleMode) {
+        this.inputWidth = inputWidth;
+        this.inputHeight = inputHeight;
+        this.inputFormat = inputFormat;
+        this.inputBuffer = ByteBuffer.allocateDirect(inputWidth * inputHeight * 3 * inputFormat.getBytesPerChannel())
+                .order(ByteOrder.nativeOrder());
+        this.inputs = new Object[]{inputBuffer};
+        this.decoder = decoder;
+        this.transform = new InputTransform(inputWidth, inputHeight, scaleMode);
+        this.decoded = new DetectionBuffer(decoder.getMaxDetections());
+        this.detections = new DetectionBuffer(decoder.getMaxDetections());
+    }
+
+    /**
+     * Decodes the current outputs and maps the boxes to the overlay
+     * through {@link #getTransform()}, filling {@link #getDetections()}.
+     *
+     * @param postProcessor The threshold and mapping step
+     * @return The number of detections kept
+     */
+    public int postProcess(DetectionPostProcessor postProcessor) {
+        return postProcess(postProcessor, null);
+    }
+
+    /**
+     * Decodes the current outputs and maps the boxes to the overlay, keeping
+     * detections of tracked objects down to their class's exit threshold.
+     *
+     * @param postProcessor The policy and mapping step
+     * @param tracked       Boxes of the objects being tracked, in view pixels, or null
+     * @return The number of detections kept
+     */
+    public int postProcess(DetectionPostProcessor postProcessor, DetectionBuffer tracked) {
+        decoder.decode(postProcessor.getScoreThreshold(), decoded);
+        return postProcessor.process(decoded, transform, tracked, detections);
+    }
+
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    public int getInputHeight() {
+        return inputHeight;
+    }
+
+    public InputFormat getInputFormat() {
+        return inputFormat;
+    }
+
+    public ByteBuffer getInputBuffer() {
+        return inputBuffer;
+    }
+
+    public Object[] getInputs() {
+        return inputs;
+    }
+
+    /**
+     * @return The output buffers, rewound and ready for the interpreter
+     */
+    public Map<Integer, Object> getOutputs() {
+        return decoder.prepareOutputs();
+    }
+
+    public DetectionDecoder getDecoder() {
+        return decoder;
+    }
+
+    public InputTransform getTransform() {
+        return transform;
+    }
+
+    /**
+     * @return The detections of the last {@link #postProcess} before mapping, normalised to the input
+     */
+    public DetectionBuffer getDecoded() {
+        return decoded;
+    }
+
+    public DetectionBuffer getDetections() {
+        return detections;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public void setTimestampNanos(long timestampNanos) {
+        this.timestampNanos = timestampNanos;
+    }
+
+    public FrameRecorder.Entry getRecording() {
+        return recording;
+    }
+
+    public void setRecording(FrameRecorder.Entry recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Gives this frame its own contexts for the refinement model, one per region it can refine.
+     *
+     * @param refinements Contexts sized for the refinement model's input
+     */
+    public void setRefinements(InferenceContext[] refinements) {
+        this.refinements = refinements;
+        this.refinementCount = 0;
+    }
+
+    /**
+     * @return The refinement contexts; the first {@link #getRefinementCount()} hold regions of this frame
+     */
+    public InferenceContext[] getRefinements() {
+        return refinements;
+    }
+
+    public int getRefinementCount() {
+        return refinementCount;
+    }
+
+    public void setRefinementCount(int refinementCount) {
+        this.refinementCount = refinementCount;
+    }
+
+    public CascadeController.Plan getCascadePlan() {
+        return cascadePlan;
+    }
+
+    public void setCascadePlan(CascadeController.Plan cascadePlan) {
+        this.cascadePlan = cascadePlan;
+    }
+
+    /**
+     * @return Stage durations of the current frame, filled in as it moves through the pipeline
+     */
+    public long[] getStageNanos() {
+        return stageNanos;
+    }
+}
@@ -0,0 +1,146 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * How RGB pixels are written into the model input, chosen once from the input
+ * tensor's type and quantization when the model is loaded.
+ *
+ * Every channel value is 0-255, so each format is a 256-entry lookup table applied
+ * by {@link YuvToRgbConverter} as it samples the frame:
+ * - FLOAT32: (pixel - mean) / std, written as native-order floats
+ * - UINT8 / INT8 with quantization: the normalised value quantized with the tensor's
+ *   scale and zero point, rounded and clamped
+ * - UINT8 without quantization, or whose table stays within one step of every pixel
+ *   (the usual export of an image model): raw pixels, written without a lookup
+ * - INT8 without quantization: pixel - 128
+ *
+ * Resizing, colour conversion and normalisation therefore happen in one pass, with no
+ * per-frame arithmetic beyond the lookup. The mean and std must match the
+ * normalisation the model was trained with (127.5 and 127.5 map pixels to [-1, 1]).
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public final class InputFormat {
+    // Normalisation of the bundled detection models: pixels to [-1, 1]
+    public static final float DEFAULT_MEAN = 127.5f;
+    public static final float DEFAULT_STD = 127.5f;
+
+    // Raw RGB bytes, the layout the converter writes by default
+    public static final InputFormat RGB_BYTES = new InputFormat(TensorSpec.DataType.UINT8, null, null);
+
+    private final TensorSpec.DataType dataType;
+    // Value written for each channel value 0-255; both null for raw bytes
+    private final float[] floatTable;
+    private final byte[] byteTable;
+
+    private InputFormat(TensorSpec.DataType dataType, float[] floatTable, byte[] byteTable) {
+        this.dataType = dataType;
+        this.floatTable = floatTable;
+        this.byteTable = byteTable;
+    }
+
+    /**
+     * Chooses the format for a model's image input.
+     *
+     * @param input The input tensor
+     * @param mean  Pixel value the model sees as 0
+     * @param std   Pixel range the model sees as 1
+     * @return The format to write the input in
+     */
+    public static InputFormat forTensor(TensorSpec input, float mean, float std) {
+        switch (input.getDataType()) {
+            case FLOAT32:
+                return float32(mean, std);
+            case UINT8:
+                return input.hasQuantization()
+                        ? quantized(TensorSpec.DataType.UINT8, input.getScale(), input.getZeroPoint(), mean, std)
+                        : RGB_BYTES;
+            default:
+                // Signed input without parameters: the raw pixels shifted into the int8 range
+                return input.hasQuantization()
+                        ? quantized(TensorSpec.DataType.INT8, input.getScale(), input.getZeroPoint(), mean, std)
+                        : quantized(TensorSpec.DataType.INT8, 1f, -128, 0f, 1f);
+        }
+    }
+
+    /**
+     * @param mean Pixel value written as 0
+     * @param std  Pixel range written as 1
+     * @return Normalised float input
+     */
+    public static InputFormat float32(float mean, float std) {
+        if (!(std > 0)) {
+            throw new IllegalArgumentException("Invalid std " + std);
+        }
+        float[] table = new float[256];
+        for (int p = 0; p < 256; p++) {
+            table[p] = (p - mean) / std;
+        }
+        return new InputFormat(TensorSpec.DataType.FLOAT32, table, null);
+    }
+
+    /**
+     * @param dataType  UINT8 or INT8
+     * @param scale     Quantization scale of the input tensor
+     * @param zeroPoint Quantization zero point of the input tensor
+     * @param mean      Pixel value the model sees as 0
+     * @param std       Pixel range the model sees as 1
+     * @return Quantized input, or {@link #RGB_BYTES} when the table would move no pixel by more than one step
+     */
+    public static InputFormat quantized(TensorSpec.DataType dataType, float scale, int zeroPoint,
+                                        float mean, float std) {
+        if (dataType == TensorSpec.DataType.FLOAT32 || !(scale > 0) || !(std > 0)) {
+            throw new IllegalArgumentException("Invalid quantized input " + dataType + ", scale " + scale);
+        }
+        boolean signed = dataType == TensorSpec.DataType.INT8;
+        int min = signed ? -128 : 0;
+        int max = signed ? 127 : 255;
+        byte[] table = new byte[256];
+        boolean identity = !signed;
+        for (int p = 0; p < 256; p++) {
+            double real = (p - mean) / (double) std;
+            long q = Math.round(real / scale + zeroPoint);
+            int value = (int) Math.max(min, Math.min(max, q));
+            table[p] = (byte) value;
+            identity &= Math.abs(value - p) <= 1;
+        }
+        return identity ? RGB_BYTES : new InputFormat(dataType, null, table);
+    }
+
+    public TensorSpec.DataType getDataType() {
+        return dataType;
+    }
+
+    /**
+     * @return Bytes written per colour channel: 4 for floats, 1 for bytes
+     */
+    public int getBytesPerChannel() {
+        return dataType.getBytes();
+    }
+
+    /**
+     * @return true if pixels are written as they are
+     */
+    public boolean isRaw() {
+        return floatTable == null && byteTable == null;
+    }
+
+    /**
+     * @return Float written for each channel value, or null if the input is not FLOAT32
+     */
+    public float[] getFloatTable() {
+        return floatTable;
+    }
+
+    /**
+     * @return Byte written for each channel value, or null for float or raw input
+     */
+    public byte[] getByteTable() {
+        return byteTable;
+    }
+
+    @Override
+    public String toString() {
+        return isRaw() ? "raw " + dataType : (byteTable != null ? "quantized " : "normalised ") + dataType;
+    }
+}
@@ -0,0 +1,419 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Describes how a camera frame is turned into the model input, and back.
+ * The frame arrives in sensor orientation and is first rotated upright
+ * (by the rotation CameraX reports). A region of the upright frame - the whole
+ * frame or a region of interest around the tracked objects - is then scaled to
+ * the model input, either stretched, letterboxed (padded, aspect ratio kept) or
+ * center-cropped (aspect ratio kept, edges cut).
+ *
+ * The same object gives the exact inverse, used to map model boxes back to the
+ * overlay. The overlay is assumed to show the upright frame the way PreviewView
+ * does by default (FILL_CENTER: scaled to cover the view and centred), with the
+ * preview and analysis streams sharing the same field of view.
+ *
+ * Coordinates are continuous pixels: pixel (x, y) covers [x, x+1) x [y, y+1).
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class InputTransform {
+
+    /**
+     * How the region is fitted into the model input.
+     */
+    public enum ScaleMode {
+        STRETCH,      // Fill the input, ignoring the aspect ratio
+        LETTERBOX,    // Fit the whole region, padding the rest
+        CENTER_CROP   // Fill the input, cutting off the edges of the region
+    }
+
+    // Model input size in pixels
+    private final int modelWidth;
+    private final int modelHeight;
+    private final ScaleMode scaleMode;
+
+    // Frame as delivered by the camera, and the clockwise rotation that makes it upright
+    private int frameWidth;
+    private int frameHeight;
+    private int rotationDegrees;
+    private int uprightWidth;
+    private int uprightHeight;
+
+    // Region of the upright frame fed to the model
+    private float regionLeft;
+    private float regionTop;
+    private float regionWidth;
+    private float regionHeight;
+    // Model pixels per upright pixel, and padding around the region in model pixels
+    private float scaleX;
+    private float scaleY;
+    private float padX;
+    private float padY;
+    // Incremented whenever the frame-to-model mapping changes
+    private int version = 0;
+
+    // Overlay size and the FILL_CENTER mapping of the upright frame onto it
+    private int viewWidth;
+    private int viewHeight;
+    private float viewScale;
+    private float viewOffsetX;
+    private float viewOffsetY;
+
+    /**
+     * @param modelWidth  Width of the model input in pixels
+     * @param modelHeight Height of the model input in pixels
+     * @param scaleMode   How the region is fitted into the input
+     */
+    public InputTransform(int modelWidth, int modelHeight, ScaleMode scaleMode) {
+        if (modelWidth <= 0 || modelHeight <= 0) {
+            throw new IllegalArgumentException("Invalid model size " + modelWidth + "x" + modelHeight);
+        }
+        this.modelWidth = modelWidth;
+        this.modelHeight = modelHeight;
+        this.scaleMode = scaleMode;
+    }
+
+    /**
+     * Feeds the whole frame to the model.
+     *
+     * @param frameWidth      Frame width in sensor orientation
+     * @param frameHeight     Frame height in sensor orientation
+     * @param rotationDegrees Clockwise rotation that makes the frame upright (0, 90, 180 or 270)
+     */
+    public void update(int frameWidth, int frameHeight, int rotationDegrees) {
+        boolean swap = normaliseRotation(rotationDegrees) % 180 != 0;
+        update(frameWidth, frameHeight, rotationDegrees, 0, 0,
+                swap ? frameHeight : frameWidth, swap ? frameWidth : frameHeight);
+    }
+
+    /**
+     * Feeds a region of interest of the upright frame to the model.
+     * The region is clipped to the frame.
+     *
+     * @param frameWidth      Frame width in sensor orientation
+     * @param frameHeight     Frame height in sensor orientation
+     * @param rotationDegrees Clockwise rotation that makes the frame upright (0, 90, 180 or 270)
+     * @param roiLeft         Left edge of the region in upright pixels
+     * @param roiTop          Top edge of the region in upright pixels
+     * @param roiRight        Right edge of the region in upright pixels
+     * @param roiBottom       Bottom edge of the region in upright pixels
+     * @throws IllegalArgumentException for a bad frame size or rotation, or an empty region
+     */
+    public void update(int frameWidth, int frameHeight, int rotationDegrees,
+                       float roiLeft, float roiTop, float roiRight, float roiBottom) {
+        int rotation = normaliseRotation(rotationDegrees);
+        if (frameWidth <= 0 || frameHeight <= 0) {
+            throw new IllegalArgumentException("Invalid frame size " + frameWidth + "x" + frameHeight);
+        }
+        int newUprightWidth = rotation % 180 == 0 ? frameWidth : frameHeight;
+        int newUprightHeight = rotation % 180 == 0 ? frameHeight : frameWidth;
+
+        float left = Math.max(0f, roiLeft);
+        float top = Math.max(0f, roiTop);
+        float width = Math.min(newUprightWidth, roiRight) - left;
+        float height = Math.min(newUprightHeight, roiBottom) - top;
+        if (!(width > 0 && height > 0)) {
+            throw new IllegalArgumentException("Empty region of interest");
+        }
+
+        float newScaleX = modelWidth / width;
+        float newScaleY = modelHeight / height;
+        float newPadX = 0f;
+        float newPadY = 0f;
+        if (scaleMode == ScaleMode.LETTERBOX) {
+            float scale = Math.min(newScaleX, newScaleY);
+            newScaleX = scale;
+            newScaleY = scale;
+            newPadX = (modelWidth - width * scale) / 2;
+            newPadY = (modelHeight - height * scale) / 2;
+        } else if (scaleMode == ScaleMode.CENTER_CROP) {
+            float scale = Math.max(newScaleX, newScaleY);
+            newScaleX = scale;
+            newScaleY = scale;
+            // Keep the centre of the region, cut the side that does not fit
+            float croppedWidth = modelWidth / scale;
+            float croppedHeight = modelHeight / scale;
+            left += (width - croppedWidth) / 2;
+            top += (height - croppedHeight) / 2;
+            width = croppedWidth;
+            height = croppedHeight;
+        }
+
+        if (frameWidth != this.frameWidth || frameHeight != this.frameHeight || rotation != this.rotationDegrees
+                || left != regionLeft || top != regionTop || width != regionWidth || height != regionHeight) {
+            version++;
+        }
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        this.rotationDegrees = rotation;
+        this.uprightWidth = newUprightWidth;
+        this.uprightHeight = newUprightHeight;
+        this.regionLeft = left;
+        this.regionTop = top;
+        this.regionWidth = width;
+        this.regionHeight = height;
+        this.scaleX = newScaleX;
+        this.scaleY = newScaleY;
+        this.padX = newPadX;
+        this.padY = newPadY;
+        updateViewMapping();
+    }
+
+    /**
+     * Sets the size of the overlay that boxes are mapped to.
+     *
+     * @param viewWidth  Overlay width in pixels
+     * @param viewHeight Overlay height in pixels
+     */
+    public void setViewSize(int viewWidth, int viewHeight) {
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        updateViewMapping();
+    }
+
+    private void updateViewMapping() {
+        if (uprightWidth <= 0 || uprightHeight <= 0 || viewWidth <= 0 || viewHeight <= 0) {
+            viewScale = 0f;
+            return;
+        }
+        viewScale = Math.max((float) viewWidth / uprightWidth, (float) viewHeight / uprightHeight);
+        viewOffsetX = (viewWidth - uprightWidth * viewScale) / 2;
+        viewOffsetY = (viewHeight - uprightHeight * viewScale) / 2;
+    }
+
+    /**
+     * Copies another transform with the same model size and scale mode,
+     * so a pipeline slot keeps the mapping its frame was converted with.
+     *
+     * @param other The transform to copy
+     */
+    public void set(InputTransform other) {
+        if (other.modelWidth != modelWidth || other.modelHeight != modelHeight || other.scaleMode != scaleMode) {
+            throw new IllegalArgumentException("Incompatible transform");
+        }
+        frameWidth = other.frameWidth;
+        frameHeight = other.frameHeight;
+        rotationDegrees = other.rotationDegrees;
+        uprightWidth = other.uprightWidth;
+        uprightHeight = other.uprightHeight;
+        regionLeft = other.regionLeft;
+        regionTop = other.regionTop;
+        regionWidth = other.regionWidth;
+        regionHeight = other.regionHeight;
+        scaleX = other.scaleX;
+        scaleY = other.scaleY;
+        padX = other.padX;
+        padY = other.padY;
+        version = other.version;
+        viewWidth = other.viewWidth;
+        viewHeight = other.viewHeight;
+        viewScale = other.viewScale;
+        viewOffsetX = other.viewOffsetX;
+        viewOffsetY = other.viewOffsetY;
+    }
+
+    private static int normaliseRotation(int rotationDegrees) {
+        int rotation = ((rotationDegrees % 360) + 360) % 360;
+        if (rotation % 90 != 0) {
+            throw new IllegalArgumentException("Rotation must be a multiple of 90: " + rotationDegrees);
+        }
+        return rotation;
+    }
+
+    // --- Sensor <-> upright ---
+
+    /**
+     * Maps a point of the camera frame to the upright frame.
+     *
+     * @param x   X in sensor orientation
+     * @param y   Y in sensor orientation
+     * @param out Receives {x, y} in the upright frame
+     */
+    public void sensorToUpright(float x, float y, float[] out) {
+        switch (rotationDegrees) {
+            case 90:
+                out[0] = frameHeight - y;
+                out[1] = x;
+                break;
+            case 180:
+                out[0] = frameWidth - x;
+                out[1] = frameHeight - y;
+                break;
+            case 270:
+                out[0] = y;
+                out[1] = frameWidth - x;
+                break;
+            default:
+                out[0] = x;
+                out[1] = y;
+        }
+    }
+
+    /**
+     * Maps a point of the upright frame back to the camera frame.
+     *
+     * @param x   X in the upright frame
+     * @param y   Y in the upright frame
+     * @param out Receives {x, y} in sensor orientation
+     */
+    public void uprightToSensor(float x, float y, float[] out) {
+        switch (rotationDegrees) {
+            case 90:
+                out[0] = y;
+                out[1] = frameHeight - x;
+                break;
+            case 180:
+                out[0] = frameWidth - x;
+                out[1] = frameHeight - y;
+                break;
+            case 270:
+                out[0] = frameWidth - y;
+                out[1] = x;
+                break;
+            default:
+                out[0] = x;
+                out[1] = y;
+        }
+    }
+
+    // --- Upright <-> model ---
+
+    public float uprightToModelX(float x) {
+        return padX + (x - regionLeft) * scaleX;
+    }
+
+    public float uprightToModelY(float y) {
+        return padY + (y - regionTop) * scaleY;
+    }
+
+    public float modelToUprightX(float x) {
+        return regionLeft + (x - padX) / scaleX;
+    }
+
+    public float modelToUprightY(float y) {
+        return regionTop + (y - padY) / scaleY;
+    }
+
+    // --- Upright <-> view ---
+
+    public float uprightToViewX(float x) {
+        return viewOffsetX + x * viewScale;
+    }
+
+    public float uprightToViewY(float y) {
+        return viewOffsetY + y * viewScale;
+    }
+
+    public float viewToUprightX(float x) {
+        return (x - viewOffsetX) / viewScale;
+    }
+
+    public float viewToUprightY(float y) {
+        return (y - viewOffsetY) / viewScale;
+    }
+
+    /**
+     * @return true once both the frame and the view size are known
+     */
+    public boolean hasViewMapping() {
+        return viewScale > 0f;
+    }
+
+    // --- Model output -> view ---
+
+    /**
+     * Maps a normalised model x coordinate (0..1 across the input) to the view.
+     * The result is clamped to the region that was fed to the model and to the view,
+     * so boxes reaching into letterbox padding end at the edge of the image.
+     *
+     * @param normalisedX X as returned by the model
+     * @return X in view pixels
+     */
+    public float modelToViewX(float normalisedX) {
+        float x = modelToUprightX(normalisedX * modelWidth);
+        x = Math.max(regionLeft, Math.min(regionLeft + regionWidth, x));
+        return Math.max(0f, Math.min(viewWidth, uprightToViewX(x)));
+    }
+
+    /**
+     * Maps a normalised model y coordinate (0..1 down the input) to the view.
+     *
+     * @param normalisedY Y as returned by the model
+     * @return Y in view pixels
+     * @see #modelToViewX(float)
+     */
+    public float modelToViewY(float normalisedY) {
+        float y = modelToUprightY(normalisedY * modelHeight);
+        y = Math.max(regionTop, Math.min(regionTop + regionHeight, y));
+        return Math.max(0f, Math.min(viewHeight, uprightToViewY(y)));
+    }
+
+    public int getModelWidth() {
+        return modelWidth;
+    }
+
+    public int getModelHeight() {
+        return modelHeight;
+    }
+
+    public ScaleMode getScaleMode() {
+        return scaleMode;
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    public int getUprightWidth() {
+        return uprightWidth;
+    }
+
+    public int getUprightHeight() {
+        return uprightHeight;
+    }
+
+    public float getRegionLeft() {
+        return regionLeft;
+    }
+
+    public float getRegionTop() {
+        return regionTop;
+    }
+
+    public float getRegionWidth() {
+        return regionWidth;
+    }
+
+    public float getRegionHeight() {
+        return regionHeight;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return View pixels per upright frame pixel, 0 without a view mapping
+     */
+    public float getViewScale() {
+        return viewScale;
+    }
+
+    public int getViewWidth() {
+        return viewWidth;
+    }
+
+    public int getViewHeight() {
+        return viewHeight;
+    }
+}
@@ -0,0 +1,260 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import androidx.core.content.pm.PackageInfoCompat;
+
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+import org.tensorflow.lite.gpu.CompatibilityList;
+import org.tensorflow.lite.gpu.GpuDelegate;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds TensorFlow Lite interpreters for a {@link BackendConfig}.
+ * Sets the thread count and XNNPACK flag for CPU, adds the GPU delegate when the
+ * device supports it and enables NNAPI when asked. Also acts as the
+ * {@link BackendSelector.Probe} that times the model on each configuration,
+ * and provides the SharedPreferences cache for the chosen one.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class InterpreterFactory implements BackendSelector.Probe, AutoCloseable {
+    // SharedPreferences file holding the chosen configuration per device/app version
+    private static final String PREFS_NAME = "backend_selection";
+
+    // Memory-mapped model shared by every interpreter this factory builds
+    private final MappedByteBuffer model;
+    // GPU delegates owned by interpreters returned from create(), closed with the factory
+    private final List<GpuDelegate> delegates = new ArrayList<>();
+    // Lazily created - checking GPU support loads the GPU library
+    private Boolean gpuSupported;
+
+    /**
+     * @param model The memory-mapped .tflite model
+     */
+    public InterpreterFactory(MappedByteBuffer model) {
+        this.model = model;
+    }
+
+    /**
+     * Builds an interpreter for a configuration. Any GPU delegate it needs is
+     * closed when this factory is closed.
+     *
+     * @param config The backend configuration
+     * @return A ready interpreter
+     */
+    public Interpreter create(BackendConfig config) {
+        GpuDelegate delegate = config.getType() == BackendConfig.Type.GPU ? createGpuDelegate() : null;
+        Interpreter interpreter;
+        try {
+            interpreter = new Interpreter(model, buildOptions(config, delegate));
+        } catch (RuntimeException e) {
+            if (delegate != null) {
+                delegate.close();
+            }
+            throw e;
+        }
+        if (delegate != null) {
+            synchronized (delegates) {
+                delegates.add(delegate);
+            }
+        }
+        return interpreter;
+    }
+
+    private Interpreter.Options buildOptions(BackendConfig config, GpuDelegate delegate) {
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(config.getThreads());
+        options.setUseXNNPACK(config.isXnnpack());
+        if (config.getType() == BackendConfig.Type.NNAPI) {
+            options.setUseNNAPI(true);
+        }
+        if (delegate != null) {
+            options.addDelegate(delegate);
+        }
+        return options;
+    }
+
+    private GpuDelegate createGpuDelegate() {
+        CompatibilityList compatibilityList = new CompatibilityList();
+        try {
+            return new GpuDelegate(compatibilityList.getBestOptionsForThisDevice());
+        } finally {
+            compatibilityList.close();
+        }
+    }
+
+    @Override
+    public boolean isAvailable(BackendConfig config) {
+        switch (config.getType()) {
+            case GPU:
+                if (gpuSupported == null) {
+                    CompatibilityList compatibilityList = new CompatibilityList();
+                    gpuSupported = compatibilityList.isDelegateSupportedOnThisDevice();
+                    compatibilityList.close();
+                }
+                return gpuSupported;
+            case NNAPI:
+                // NNAPI 1.1 (Android 8.1) is the first version worth using
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1;
+            default:
+                return true;
+        }
+    }
+
+    @Override
+    public long measureNanos(BackendConfig config, int warmupRuns, int timedRuns) {
+        GpuDelegate delegate = config.getType() == BackendConfig.Type.GPU ? createGpuDelegate() : null;
+        Interpreter interpreter = null;
+        try {
+            // Inside the try, so the delegate is closed when the interpreter cannot be built
+            interpreter = new Interpreter(model, buildOptions(config, delegate));
+            Object[] inputs = dummyInputs(interpreter);
+            Map<Integer, Object> outputs = dummyOutputs(interpreter);
+
+            for (int i = 0; i < warmupRuns; i++) {
+                interpreter.runForMultipleInputsOutputs(inputs, outputs);
+            }
+            long[] times = new long[Math.max(1, timedRuns)];
+            for (int i = 0; i < times.length; i++) {
+                long start = System.nanoTime();
+                interpreter.runForMultipleInputsOutputs(inputs, outputs);
+                times[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(times);
+            return times[times.length / 2];
+        } finally {
+            if (interpreter != null) {
+                interpreter.close();
+            }
+            if (delegate != null) {
+                delegate.close();
+            }
+        }
+    }
+
+    /**
+     * Allocates the interpreter's tensors and runs one inference on a blank input,
+     * so the first camera frame does not pay for memory planning and kernel set-up.
+     *
+     * @param interpreter A newly built interpreter
+     */
+    public static void warmUp(Interpreter interpreter) {
+        interpreter.allocateTensors();
+        interpreter.runForMultipleInputsOutputs(dummyInputs(interpreter), dummyOutputs(interpreter));
+    }
+
+    // Dummy input and outputs sized from the model's own tensors
+    private static Object[] dummyInputs(Interpreter interpreter) {
+        Object[] inputs = new Object[interpreter.getInputTensorCount()];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = allocate(interpreter.getInputTensor(i));
+        }
+        return inputs;
+    }
+
+    private static Map<Integer, Object> dummyOutputs(Interpreter interpreter) {
+        Map<Integer, Object> outputs = new HashMap<>();
+        for (int i = 0; i < interpreter.getOutputTensorCount(); i++) {
+            outputs.put(i, allocate(interpreter.getOutputTensor(i)));
+        }
+        return outputs;
+    }
+
+    private static ByteBuffer allocate(Tensor tensor) {
+        return ByteBuffer.allocateDirect(tensor.numBytes()).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Describes a tensor for the plain Java pipeline: name, shape, type and quantization.
+     *
+     * @param tensor An input or output tensor of a loaded model
+     * @return Its spec
+     * @throws IllegalArgumentException if the pipeline cannot read or write the tensor's type
+     */
+    public static TensorSpec describe(Tensor tensor) {
+        TensorSpec.DataType dataType;
+        switch (tensor.dataType()) {
+            case FLOAT32:
+                dataType = TensorSpec.DataType.FLOAT32;
+                break;
+            case UINT8:
+                dataType = TensorSpec.DataType.UINT8;
+                break;
+            case INT8:
+                dataType = TensorSpec.DataType.INT8;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported " + tensor.dataType() + " tensor " + tensor.name());
+        }
+        Tensor.QuantizationParams quantization = tensor.quantizationParams();
+        return new TensorSpec(tensor.name(), tensor.shape(), dataType,
+                quantization.getScale(), quantization.getZeroPoint());
+    }
+
+    /**
+     * Closes the GPU delegates of interpreters built by {@link #create}.
+     * Call only after those interpreters have been closed.
+     */
+    @Override
+    public void close() {
+        synchronized (delegates) {
+            for (GpuDelegate delegate : delegates) {
+                delegate.close();
+            }
+            delegates.clear();
+        }
+    }
+
+    /**
+     * Cache key identifying the device model and app version, so the probe
+     * runs again after an update or on a different phone.
+     *
+     * @param context Any context of the app
+     * @return The key
+     */
+    public static String cacheKey(Context context) {
+        long versionCode = 0;
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            versionCode = PackageInfoCompat.getLongVersionCode(info);
+        } catch (PackageManager.NameNotFoundException e) {
+            // Own package is always present; keep version 0 if not
+        }
+        return Build.MANUFACTURER + "/" + Build.MODEL + "/" + versionCode;
+    }
+
+    /**
+     * @param context Any context of the app
+     * @return A selector cache stored in SharedPreferences
+     */
+    public static BackendSelector.Cache preferencesCache(Context context) {
+        final SharedPreferences preferences =
+                context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        return new BackendSelector.Cache() {
+            @Override
+            public String get(String key) {
+                return preferences.getString(key, null);
+            }
+
+            @Override
+            public void put(String key, String value) {
+                preferences.edit().putString(key, value).apply();
+            }
+        };
+    }
+}
@@ -0,0 +1,209 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small fixed pool of ready-to-use interpreters built from the same model.
+ * The interpreters are built and warmed up before the pool is created, so
+ * borrowing one never waits on construction - only on another user
+ * returning theirs. Borrowing and returning do not allocate.
+ *
+ * Closing the pool closes idle instances immediately and borrowed ones when
+ * they are returned, so it is safe to close while inference is still running.
+ * What the instances depend on (e.g. GPU delegates) is released by the callback
+ * given to {@link #close(Runnable)}, once the last of them is closed.
+ * The same goes for replacing the instances, e.g. with interpreters built for
+ * fewer threads: users keep the pool and get the new ones from then on.
+ *
+ * @param <T> The interpreter type (generic so the pool can be tested without TensorFlow Lite)
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class InterpreterPool<T> implements AutoCloseable {
+
+    /**
+     * Releases an instance when the pool is closed.
+     *
+     * @param <T> The interpreter type
+     */
+    public interface Closer<T> {
+        void close(T instance);
+    }
+
+    // Current instances, replaced as a whole by replace()
+    private List<T> instances;
+    private final Closer<T> closer;
+    // Instances not currently borrowed
+    private final BlockingQueue<T> idle;
+    private boolean closed = false;
+    // Instances handed to the pool and not yet closed, borrowed or not
+    private int open;
+    // Run once the pool is closed and open reaches zero, or null
+    private Runnable onClosed;
+
+    /**
+     * @param instances Ready interpreters, at least one
+     * @param closer    Closes an interpreter when the pool is closed
+     */
+    public InterpreterPool(List<T> instances, Closer<T> closer) {
+        if (instances.isEmpty()) {
+            throw new IllegalArgumentException("Pool needs at least one interpreter");
+        }
+        this.instances = new ArrayList<>(instances);
+        this.closer = closer;
+        this.idle = new ArrayBlockingQueue<>(instances.size(), false, instances);
+        this.open = instances.size();
+    }
+
+    /**
+     * @return Any one of the pooled interpreters, for reading tensor shapes (do not run it)
+     */
+    public synchronized T peek() {
+        return instances.get(0);
+    }
+
+    /**
+     * Borrows an interpreter, waiting until one is returned if all are in use.
+     *
+     * @return The interpreter; pass it back to {@link #release} when done
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the pool is closed
+     */
+    public T acquire() throws InterruptedException {
+        checkOpen();
+        return idle.take();
+    }
+
+    /**
+     * Borrows an interpreter if one becomes free within the timeout.
+     *
+     * @return The interpreter, or null if none was free in time
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the pool is closed
+     */
+    public T tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        checkOpen();
+        return idle.poll(timeout, unit);
+    }
+
+    /**
+     * Returns a borrowed interpreter. If the pool was closed or its instances were
+     * replaced meanwhile it is closed instead.
+     *
+     * @param instance An interpreter from {@link #acquire}
+     */
+    public void release(T instance) {
+        boolean close;
+        synchronized (this) {
+            close = closed || !instances.contains(instance);
+            if (!close) {
+                idle.offer(instance);
+            }
+        }
+        if (close) {
+            closeAll(Collections.singletonList(instance));
+        }
+    }
+
+    /**
+     * Swaps in a new set of ready interpreters of the same size. Idle old ones are
+     * closed now and borrowed ones when they are returned; waiting users get new ones.
+     * If the pool is already closed the new instances are closed instead.
+     *
+     * @param replacements Ready interpreters, as many as the pool holds
+     */
+    public void replace(List<T> replacements) {
+        if (replacements.size() != size()) {
+            throw new IllegalArgumentException("Expected " + size() + " interpreters, got " + replacements.size());
+        }
+        List<T> toClose = new ArrayList<>();
+        synchronized (this) {
+            open += replacements.size();
+            if (closed) {
+                toClose.addAll(replacements);
+            } else {
+                idle.drainTo(toClose);
+                instances = new ArrayList<>(replacements);
+                idle.addAll(replacements);
+            }
+        }
+        closeAll(toClose);
+    }
+
+    /**
+     * @return Number of interpreters in the pool
+     */
+    public synchronized int size() {
+        return instances.size();
+    }
+
+    /**
+     * @return Number of interpreters not currently borrowed
+     */
+    public int available() {
+        return idle.size();
+    }
+
+    private synchronized void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Interpreter pool is closed");
+        }
+    }
+
+    /**
+     * Closes idle interpreters now and borrowed ones as they are returned.
+     */
+    @Override
+    public void close() {
+        close(null);
+    }
+
+    /**
+     * Closes idle interpreters now and borrowed ones as they are returned, then runs
+     * the callback - right away if none are borrowed, otherwise on the thread that
+     * returns the last one.
+     *
+     * @param onClosed Releases what the interpreters used, or null
+     */
+    public void close(Runnable onClosed) {
+        List<T> toClose = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            this.onClosed = onClosed;
+            idle.drainTo(toClose);
+        }
+        // Runs the callback here too when every instance is borrowed
+        closeAll(toClose);
+    }
+
+    private void closeAll(List<T> toClose) {
+        for (T instance : toClose) {
+            closer.close(instance);
+        }
+        synchronized (this) {
+            open -= toClose.size();
+        }
+        runIfClosed();
+    }
+
+    private void runIfClosed() {
+        Runnable callback;
+        synchronized (this) {
+            if (!closed || open > 0 || onClosed == null) {
+                return;
+            }
+            callback = onClosed;
+            onClosed = null;
+        }
+        callback.run();
+    }
+}
@@ -0,0 +1,149 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram in the style of HdrHistogram.
+ * Values are counted in log-linear buckets: every power of two is split into
+ * 16 equal sub-buckets, so any percentile is within about 6% of the true value
+ * from a nanosecond up to about a minute, using a fixed array of counters.
+ *
+ * Recording is a few atomic adds with no locks and no allocation, so it can be
+ * called from every pipeline thread on every frame. Reading takes a
+ * {@link Snapshot}, which copies the counters and may allocate.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class LatencyHistogram {
+    // Sub-buckets per power of two (2^SUB_BITS)
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // Values at or above 2^MAX_EXPONENT nanoseconds (~68 s) go in the last bucket
+    private static final int MAX_EXPONENT = 36;
+    private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+    static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds; negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = nanos < 0 ? 0 : nanos;
+        counts.incrementAndGet(bucketIndex(value));
+        total.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Retry until the maximum is updated
+        }
+    }
+
+    /**
+     * @return A copy of the current counts
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, total.get(), max.get());
+    }
+
+    /**
+     * Bucket holding a value: values below 16 each have their own bucket,
+     * larger ones share a bucket with the values agreeing in their top 5 bits.
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_COUNT) {
+            return (int) Math.max(0, value);
+        }
+        if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+    }
+
+    /**
+     * @return The smallest value counted in a bucket
+     */
+    static long lowestValue(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long mantissa = SUB_COUNT + index % SUB_COUNT;
+        return mantissa << shift;
+    }
+
+    /**
+     * @return The largest value counted in a bucket
+     */
+    static long highestValue(int index) {
+        return index + 1 >= BUCKET_COUNT ? Long.MAX_VALUE : lowestValue(index + 1) - 1;
+    }
+
+    /**
+     * Counts copied from a histogram at one point in time.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long total, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return Mean latency in nanoseconds, 0 if empty
+         */
+        public long getMean() {
+            return count == 0 ? 0 : total / count;
+        }
+
+        /**
+         * @return Largest latency recorded in nanoseconds, 0 if empty
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile 0..100
+         * @return The latency below which the given share of values fall (upper bound of
+         * their bucket, capped at the maximum), 0 if empty
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -1,15 +1,25 @@
 package com.miroslava958.objectdetectionandassistance;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.Manifest;
 import android.content.pm.PackageManager;
-import android.content.res.AssetFileDescriptor;
+import android.content.res.Configuration;
+import android.hardware.camera2.CameraCharacteristics;
+import android.util.Size;
+import android.util.SizeF;
 import android.util.Log;
+import android.view.View;
 import android.widget.Button;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.OptIn;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.camera2.interop.Camera2CameraInfo;
+import androidx.camera.camera2.interop.ExperimentalCamera2Interop;
+import androidx.camera.core.Camera;
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.Preview;
@@ -17,25 +27,32 @@ import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.Lifecycle;
 
 import com.google.common.util.concurrent.ListenableFuture;
 
-import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
-import org.tensorflow.lite.support.common.FileUtil;
 
-import java.io.FileInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.Arrays;
-import java.util.List;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * MainActivity is the entry point of the Android application.
  * It initialises the layout, requests runtime camera permissions, and
  * starts the live camera preview using CameraX.
+ * The model is loaded on a background thread, so the preview appears straight
+ * away and detection starts once the interpreters are warm.
+ * A {@link PerformanceGovernor} checks the battery, temperature and inference time
+ * every few seconds and scales the analysis resolution, inference rate, interpreter
+ * threads and overlay up or down; only a resolution change rebinds the analysis.
  * The activity forms the base for integrating real-time object detection
  * and audio feedback to assist visually impaired users.
  *
@@ -46,18 +63,90 @@ import java.util.concurrent.ExecutionException;
  * Since: 2025-05-01
  */
 public class MainActivity extends AppCompatActivity {
+    // Model and labels in the assets folder
+    private static final String MODEL_ASSET = "efficientdet_lite0.tflite";
+    private static final String LABELS_ASSET = "labelmap.txt";
+    // Warm interpreters sharing the mapped model: one for the detector and a spare,
+    // so a new user of the model never waits for one to be built
+    private static final int INTERPRETER_POOL_SIZE = 2;
+    // Optional heavier model with the same labels for cascade mode, on its own 2 CPU threads;
+    // the app runs the fast model alone when it is not in the assets
+    private static final String REFINER_ASSET = "efficientdet_lite2.tflite";
+    private static final int REFINER_THREADS = 2;
+    // Metrics snapshot written when the app goes to the background
+    private static final String METRICS_FILE = "metrics.json";
+    // Opt-in frame recording for offline replay, enabled with launch extras:
+    // adb shell am start -n <package>/.MainActivity --ez recordFrames true --ei recordEvery 2
+    private static final String EXTRA_RECORD_FRAMES = "recordFrames";
+    private static final String EXTRA_RECORD_EVERY = "recordEvery";
+    private static final String RECORDINGS_DIR = "recordings";
+    // Segments of 256 MB, at most 2 GB kept, up to 4 frames waiting for the writer
+    private static final long RECORDING_SEGMENT_BYTES = 256L * 1024 * 1024;
+    private static final int RECORDING_MAX_SEGMENTS = 8;
+    private static final int RECORDING_BUFFERED_FRAMES = 4;
+    // Detection history in the app's private storage: segments of 16384 detections (about
+    // 400 KB), 4 in memory and at most 64 files, about a million detections or 25 MB
+    private static final String HISTORY_DIR = "history";
+    private static final int HISTORY_SEGMENT_ROWS = 16384;
+    private static final int HISTORY_MEMORY_SEGMENTS = 4;
+    private static final int HISTORY_MAX_FILES = 64;
+    // Performance tiers from the most to the least demanding: analysis size, inference rate,
+    // interpreter threads (at most the chosen backend's) and whether boxes are drawn
+    private static final PerformanceTier[] TIERS = {
+            new PerformanceTier("full", 640, 480, 15, 4, true),
+            new PerformanceTier("balanced", 640, 480, 10, 4, true),
+            new PerformanceTier("saver", 640, 480, 5, 2, false),
+            new PerformanceTier("minimal", 320, 240, 2, 1, false),
+    };
+    // Governor checked every 2 s: battery low at 20% and critical at 10% until 5 points above,
+    // inference may take 75% of its interval, steps down after 6 s too slow and up after 30 s
+    // at under 60% of the better tier's budget
+    private static final long GOVERNOR_INTERVAL_MS = 2000;
+    private static final int LOW_BATTERY_PERCENT = 20;
+    private static final int CRITICAL_BATTERY_PERCENT = 10;
+    private static final int BATTERY_HYSTERESIS = 5;
+    private static final double GOVERNOR_MAX_UTILISATION = 0.75;
+    private static final double GOVERNOR_RECOVER_FRACTION = 0.6;
+    private static final long GOVERNOR_DOWN_DELAY_NANOS = 6_000_000_000L;
+    private static final long GOVERNOR_UP_DELAY_NANOS = 30_000_000_000L;
     // PreviewView is the UI component that displays the camera feed
     private PreviewView previewView;
-    // TensorFlow Lite interpreter for running the object detection model
-    private Interpreter tflite;
-    // Label list corresponding to the model's output classes
-    private List<String> labels;
+    // Loads the model in the background while the camera preview starts
+    private ModelLoader modelLoader;
+    // Interpreters, labels and backend once loading has finished
+    private ModelLoader.LoadedModel model;
+    // Times each start-up phase from the moment the activity is created
+    private StartupReport startupReport;
+    // Camera frames for detection; the analyzer is attached when the model is ready
+    private ImageAnalysis imageAnalysis;
     // Custom view that overlays bounding boxes and labels on top of the camera preview
     private OverlayView overlayView;
     // Object detection engine that handles camera frame analysis and TFLite inference
     private ObjectDetector objectDetector;
     // Manages text-to-speech functionality to provide spoken feedback to the user
     private TextToSpeechManager ttsManager;
+    // Background thread delivering camera frames to the analyzer, keeping the UI thread free
+    private ExecutorService analysisExecutor;
+    // Records analysed frames when started with the recordFrames extra, otherwise null
+    private FrameRecorder frameRecorder;
+    // Objects seen, kept across sessions; null if its folder could not be opened
+    private DetectionHistory detectionHistory;
+    // Focal length and sensor width of the bound camera in mm for distance estimation, 0 if unknown
+    private float focalLengthMm = 0f;
+    private float sensorWidthMm = 0f;
+    // Camera provider once started, for rebinding the analysis at another resolution
+    private ProcessCameraProvider cameraProvider;
+    // Picks the performance tier from battery, temperature and inference time
+    private PerformanceGovernor governor;
+    // Tier whose resolution the analysis is bound with
+    private PerformanceTier boundTier;
+    // Runs the governor on the main thread while the activity is visible
+    private final Handler governorHandler = new Handler(Looper.getMainLooper());
+    private final Runnable governorTick = this::updateGovernor;
+    // Rebuilds interpreters for a new thread count off the main thread
+    private ExecutorService tierExecutor;
+    // Gyroscope and accelerometer for motion gating and compensation, read while the activity is visible
+    private MotionSensor motionSensor;
 
     /**
      * Called when the activity is first created.
@@ -68,6 +157,7 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        startupReport = new StartupReport(Clock.SYSTEM);
         // Set the user interface layout for this activity
         setContentView(R.layout.activity_main);
         // Link the OverlayView from layout to the variable
@@ -76,43 +166,37 @@ public class MainActivity extends AppCompatActivity {
         previewView = findViewById(R.id.previewView);
         // Initialise TextToSpeech
         ttsManager = new TextToSpeechManager(this);
+        // Single background thread for frame conversion
+        analysisExecutor = Executors.newSingleThreadExecutor();
+        tierExecutor = Executors.newSingleThreadExecutor();
+        motionSensor = new AndroidMotionSensor(this);
+        governor = new PerformanceGovernor(TIERS, new AndroidDeviceSignals(this), Clock.SYSTEM,
+                LOW_BATTERY_PERCENT, CRITICAL_BATTERY_PERCENT, BATTERY_HYSTERESIS, GOVERNOR_MAX_UTILISATION,
+                GOVERNOR_RECOVER_FRACTION, GOVERNOR_DOWN_DELAY_NANOS, GOVERNOR_UP_DELAY_NANOS);
 
-        // Load the model and label list
-        try (
-                // Open the TFLite model file from the assets folder
-                AssetFileDescriptor fileDescriptor = getAssets().openFd("efficientdet_lite0.tflite");
-
-                // Create input stream and channel to read the model data
-                FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
-                FileChannel fileChannel = inputStream.getChannel()
-        ) {
-            // Get the start and length of the file
-            long startOffset = fileDescriptor.getStartOffset();
-            long declaredLength = fileDescriptor.getDeclaredLength();
-            // Map the model file into memory
-            MappedByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
-            // Initialise the TFLite interpreter with the model
-            tflite = new Interpreter(buffer);
-
-            // Get input shape and data type for debug/logging purposes
-            int[] inputShape = tflite.getInputTensor(0).shape(); // e.g. [1, 320, 320, 3]
-            DataType inputType = tflite.getInputTensor(0).dataType(); // e.g. UINT8 or FLOAT32
-            Log.d("ModelInput", "Shape: " + Arrays.toString(inputShape) + ", Type: " + inputType);
-
-            // Load the label map from assets
-            labels = FileUtil.loadLabels(this, "labelmap.txt");
-
-            // Inform the user that the model has been successfully loaded
-            Toast.makeText(this, "Model loaded successfully!", Toast.LENGTH_SHORT).show();
+        // Load the model and label list in the background; detection starts once it is warm
+        modelLoader = new ModelLoader(this, MODEL_ASSET, LABELS_ASSET, INTERPRETER_POOL_SIZE,
+                REFINER_ASSET, REFINER_THREADS, startupReport);
+        modelLoader.load(new ModelLoader.Callback() {
+            @Override
+            public void onModelLoaded(ModelLoader.LoadedModel loaded) {
+                onModelReady(loaded);
+            }
 
-        } catch (IOException e) {
-            // Log the error and inform the user if the model failed to load
-            Log.e("ModelLoad", "Error loading model: " + e.getMessage(), e);
-            Toast.makeText(this, "Failed to load model", Toast.LENGTH_SHORT).show();
-        }
+            @Override
+            public void onModelFailed(Exception error) {
+                // Log the error and inform the user if the model failed to load
+                Log.e("ModelLoad", "Error loading model: " + error.getMessage(), error);
+                Toast.makeText(MainActivity.this, "Failed to load model", Toast.LENGTH_SHORT).show();
+            }
+        });
 
-        // Create object detector only after interpreter and labels are loaded
-        objectDetector = new ObjectDetector(this, tflite, labels, overlayView, ttsManager);
+        // Show the preview as soon as possible and record when the first frame appears
+        previewView.getPreviewStreamState().observe(this, state -> {
+            if (state == PreviewView.StreamState.STREAMING) {
+                startupReport.mark(StartupReport.Phase.FIRST_PREVIEW);
+            }
+        });
 
         // Check for camera permission and request if not granted
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA)
@@ -123,6 +207,15 @@ public class MainActivity extends AppCompatActivity {
             startCamera();
         }
 
+        // A long press on the preview asks the refinement model to scan the whole view
+        previewView.setOnLongClickListener(v -> {
+            if (objectDetector != null && objectDetector.requestRefinement()) {
+                Toast.makeText(this, "Looking closer...", Toast.LENGTH_SHORT).show();
+                return true;
+            }
+            return false;
+        });
+
         // Handle Stop App button click
         Button exitButton = findViewById(R.id.btnExit);
         exitButton.setOnClickListener(v -> {
@@ -131,6 +224,118 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    /**
+     * Called on the main thread once the interpreters are warm.
+     * Creates the object detector and attaches it to the camera frames.
+     *
+     * @param loaded The loaded model, owned by this activity from now on
+     */
+    private void onModelReady(ModelLoader.LoadedModel loaded) {
+        model = loaded;
+        BackendConfig backend = loaded.getBackend();
+        Interpreter interpreter = loaded.getInterpreters().peek();
+        // Input shape, type and quantization, which decide how frames are written into it
+        TensorSpec input = InterpreterFactory.describe(interpreter.getInputTensor(0)); // e.g. [1, 320, 320, 3] UINT8
+        Log.d("ModelInput", "Input: " + input + ", format: "
+                + InputFormat.forTensor(input, InputFormat.DEFAULT_MEAN, InputFormat.DEFAULT_STD)
+                + ", backend: " + backend);
+
+        objectDetector = new ObjectDetector(this, loaded.getInterpreters(), loaded.getRefiner(), loaded.getLabels(),
+                overlayView, ttsManager, startupReport);
+        objectDetector.setCameraIntrinsics(focalLengthMm, sensorWidthMm);
+        if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+            startMotionSensor();
+        }
+        applyTier(governor.getTier());
+        openHistory(loaded.getLabels().size());
+        if (getIntent().getBooleanExtra(EXTRA_RECORD_FRAMES, false)) {
+            startRecording(getIntent().getIntExtra(EXTRA_RECORD_EVERY, 1));
+        }
+        if (imageAnalysis != null) {
+            imageAnalysis.setAnalyzer(analysisExecutor, objectDetector);
+        }
+
+        // Inform the user that the model has been successfully loaded
+        Toast.makeText(this, "Model loaded successfully!", Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * Opens the detection history, reading what earlier sessions stored, and starts filling it.
+     *
+     * @param numClasses Number of labels of the model
+     */
+    private void openHistory(int numClasses) {
+        File directory = new File(getFilesDir(), HISTORY_DIR);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e("History", "Could not create " + directory);
+            return;
+        }
+        try {
+            detectionHistory = new DetectionHistory(directory, numClasses, HISTORY_SEGMENT_ROWS,
+                    HISTORY_MEMORY_SEGMENTS, HISTORY_MAX_FILES);
+            objectDetector.setHistory(detectionHistory);
+        } catch (IOException e) {
+            Log.e("History", "Could not open the detection history", e);
+        }
+    }
+
+    /**
+     * Stops filling the history and lets it write the detections still in memory on a background thread.
+     * setHistory(null) returns only when no append is in progress, so closing cannot overlap one.
+     */
+    private void closeHistory() {
+        objectDetector.setHistory(null);
+        final DetectionHistory history = detectionHistory;
+        detectionHistory = null;
+        new Thread(() -> {
+            history.close();
+            Log.i("History", "Stored " + history.getAppended() + " detections, dropped "
+                    + history.getDropped() + ", " + history.getBytesWritten() + " bytes");
+            if (history.getLastError() != null) {
+                Log.e("History", "Writing the history failed", history.getLastError());
+            }
+        }, "history-close").start();
+    }
+
+    /**
+     * Starts recording analysed frames and model outputs into the app's external
+     * recordings folder (retrieve with adb pull) for replay on a computer.
+     *
+     * @param sampleInterval Record every Nth analysed frame
+     */
+    private void startRecording(int sampleInterval) {
+        File directory = getExternalFilesDir(RECORDINGS_DIR);
+        if (directory == null) {
+            directory = new File(getFilesDir(), RECORDINGS_DIR);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e("Recorder", "Could not create " + directory);
+            return;
+        }
+        frameRecorder = new FrameRecorder(directory, "frames-" + System.currentTimeMillis(),
+                RECORDING_SEGMENT_BYTES, RECORDING_MAX_SEGMENTS, Math.max(1, sampleInterval),
+                RECORDING_BUFFERED_FRAMES);
+        objectDetector.setRecorder(frameRecorder);
+        Log.i("Recorder", "Recording every " + sampleInterval + " analysed frames to " + directory);
+    }
+
+    /**
+     * Stops recording and lets the writer finish the last segment on a background thread.
+     */
+    private void stopRecording() {
+        objectDetector.setRecorder(null);
+        final FrameRecorder recorder = frameRecorder;
+        frameRecorder = null;
+        new Thread(() -> {
+            recorder.close();
+            Log.i("Recorder", "Recorded " + recorder.getRecordedFrames() + " frames, dropped "
+                    + recorder.getDroppedFrames() + ", " + recorder.getBytesWritten() + " bytes");
+            if (recorder.getLastError() != null) {
+                Log.e("Recorder", "Recording failed", recorder.getLastError());
+            }
+        }, "recorder-close").start();
+    }
+
     /**
      * Called after the user responds to a permission request.
      * If permission granted, camera is started.
@@ -165,7 +370,7 @@ public class MainActivity extends AppCompatActivity {
         // When the camera provider is ready, initialise the camera
         cameraProviderFuture.addListener(() -> {
             try {
-                ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
+                cameraProvider = cameraProviderFuture.get();
 
                 // Create a Preview use case
                 Preview preview = new Preview.Builder().build();
@@ -174,16 +379,14 @@ public class MainActivity extends AppCompatActivity {
                 // Select the back camera
                 CameraSelector cameraSelector = CameraSelector.DEFAULT_BACK_CAMERA;
 
-                // Create ImageAnalysis and bind ObjectDetector to it
-                ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
-                        .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                        .build();
-
-                imageAnalysis.setAnalyzer(ContextCompat.getMainExecutor(this), objectDetector);
+                // Create ImageAnalysis; the ObjectDetector is bound to it once the model has loaded
+                boundTier = governor.getTier();
+                imageAnalysis = buildImageAnalysis(boundTier);
 
                 // Unbind any previous use cases before binding new ones
                 cameraProvider.unbindAll();
-                cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageAnalysis);
+                Camera camera = cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageAnalysis);
+                readIntrinsics(camera);
 
             } catch (ExecutionException | InterruptedException e) {
                 Log.e("CameraX", "Camera initialisation failed", e);
@@ -192,12 +395,179 @@ public class MainActivity extends AppCompatActivity {
         }, ContextCompat.getMainExecutor(this));
     }
 
+    /**
+     * Creates the analysis use case at a tier's resolution, attached to the detector if it is ready.
+     */
+    private ImageAnalysis buildImageAnalysis(PerformanceTier tier) {
+        boolean portrait = getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT;
+        // The target resolution is given in the display's orientation
+        Size size = portrait ? new Size(tier.getAnalysisHeight(), tier.getAnalysisWidth())
+                : new Size(tier.getAnalysisWidth(), tier.getAnalysisHeight());
+        ImageAnalysis analysis = new ImageAnalysis.Builder()
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .setTargetResolution(size)
+                .build();
+        if (objectDetector != null) {
+            analysis.setAnalyzer(analysisExecutor, objectDetector);
+        }
+        return analysis;
+    }
+
+    /**
+     * Runs the governor with the latest inference time and applies a new tier if it chose one.
+     */
+    private void updateGovernor() {
+        long latency = objectDetector != null ? objectDetector.getAverageInferenceNanos() : 0;
+        if (governor.update(latency)) {
+            Log.i("Governor", "Tier " + governor.getTier() + " after " + governor.getLastReason());
+            applyTier(governor.getTier());
+        }
+        governorHandler.postDelayed(governorTick, GOVERNOR_INTERVAL_MS);
+    }
+
+    /**
+     * Applies a performance tier. The inference rate and the overlay change at once and the
+     * interpreters are rebuilt for the tier's threads in the background, all without touching
+     * the camera; only a new analysis resolution rebinds the analysis use case (the preview stays).
+     *
+     * @param tier The tier to run at
+     */
+    private void applyTier(PerformanceTier tier) {
+        if (objectDetector != null) {
+            objectDetector.setTargetRate(tier.getInferenceHz());
+            objectDetector.setOverlayEnabled(tier.isOverlay());
+            objectDetector.getMetrics().setGauge(PipelineMetrics.Gauge.PERFORMANCE_TIER, governor.getTierIndex());
+        }
+        if (!tier.isOverlay()) {
+            overlayView.setResults(Collections.<DetectionResult>emptyList());
+        }
+        overlayView.setVisibility(tier.isOverlay() ? View.VISIBLE : View.GONE);
+
+        if (model != null) {
+            final ModelLoader.LoadedModel loaded = model;
+            final int threads = tier.getThreads();
+            tierExecutor.execute(() -> {
+                try {
+                    if (loaded.setThreads(threads)) {
+                        Log.i("Governor", "Interpreters rebuilt with " + loaded.getThreads() + " threads");
+                    }
+                } catch (RuntimeException e) {
+                    Log.e("Governor", "Could not rebuild interpreters: " + e.getMessage(), e);
+                }
+            });
+        }
+
+        if (cameraProvider != null && imageAnalysis != null && boundTier != null && boundTier.needsRebind(tier)) {
+            cameraProvider.unbind(imageAnalysis);
+            boundTier = tier;
+            imageAnalysis = buildImageAnalysis(tier);
+            cameraProvider.bindToLifecycle(this, CameraSelector.DEFAULT_BACK_CAMERA, imageAnalysis);
+        }
+    }
+
+    /**
+     * Reads the camera's focal length and sensor size, used to turn box sizes into distances.
+     * Cameras that do not report them keep the detector's typical-phone estimate.
+     *
+     * @param camera The bound camera
+     */
+    @OptIn(markerClass = ExperimentalCamera2Interop.class)
+    private void readIntrinsics(Camera camera) {
+        Camera2CameraInfo info = Camera2CameraInfo.from(camera.getCameraInfo());
+        float[] focalLengths = info.getCameraCharacteristic(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
+        SizeF sensorSize = info.getCameraCharacteristic(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE);
+        if (focalLengths == null || focalLengths.length == 0 || sensorSize == null) {
+            return;
+        }
+        focalLengthMm = focalLengths[0];
+        sensorWidthMm = sensorSize.getWidth();
+        if (objectDetector != null) {
+            objectDetector.setCameraIntrinsics(focalLengthMm, sensorWidthMm);
+        }
+    }
+
+    /**
+     * Called when the activity becomes visible.
+     * Starts checking the performance tier and reading the motion sensors.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        governorHandler.post(governorTick);
+        startMotionSensor();
+    }
+
+    /**
+     * Feeds the motion sensors to the detector once it exists; without them inference
+     * runs at the scheduler's rate and boxes move only with the tracker.
+     */
+    private void startMotionSensor() {
+        if (objectDetector != null && !motionSensor.start(objectDetector.getMotionListener())) {
+            Log.w("Motion", "No gyroscope or accelerometer, motion gating is off");
+        }
+    }
+
+    /**
+     * Called when the activity is no longer visible.
+     * Stops the governor and the motion sensors and saves a snapshot of the detection metrics for offline analysis.
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        governorHandler.removeCallbacks(governorTick);
+        motionSensor.stop();
+        if (objectDetector != null) {
+            exportMetrics(objectDetector.getMetrics().toJson());
+        }
+    }
+
+    /**
+     * Writes a metrics snapshot to metrics.json in the app's files folder
+     * (retrieve with adb pull), on a background thread.
+     *
+     * @param json The snapshot
+     */
+    private void exportMetrics(final String json) {
+        File directory = getExternalFilesDir(null);
+        final File file = new File(directory != null ? directory : getFilesDir(), METRICS_FILE);
+        new Thread(() -> {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                writer.write(json);
+            } catch (IOException e) {
+                Log.e("Metrics", "Could not write " + file, e);
+            }
+        }, "metrics-export").start();
+    }
+
     /**
      * Called when the activity is destroyed.
-     * Shut down TextToSpeech and release resources.
+     * Shut down the analysis threads and TextToSpeech and release resources.
      */
     @Override
     protected void onDestroy() {
+        if (analysisExecutor != null) {
+            analysisExecutor.shutdown();
+        }
+        if (tierExecutor != null) {
+            tierExecutor.shutdown();
+        }
+        if (frameRecorder != null) {
+            stopRecording();
+        }
+        if (objectDetector != null) {
+            objectDetector.shutdown();
+        }
+        // After the pipeline, so the publish stage is no longer appending
+        if (detectionHistory != null) {
+            closeHistory();
+        }
+        if (modelLoader != null) {
+            modelLoader.cancel();
+        }
+        // Interpreters still in use by the pipeline are closed when it returns them
+        if (model != null) {
+            model.close();
+        }
         if (ttsManager != null) {
             ttsManager.shutdown();
         }
@@ -0,0 +1,331 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.support.common.FileUtil;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the model off the main thread, so the camera preview can start straight away.
+ * On a background thread it memory-maps the model once, picks the backend, builds a
+ * small pool of interpreters sharing the mapped model, runs one warm-up inference on
+ * each and loads the labels. The result is delivered on the main thread.
+ * An optional refinement model for cascade mode gets one interpreter of its own,
+ * on a fixed number of CPU threads so it does not take the detector's.
+ * Each step is timed in the {@link StartupReport}.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class ModelLoader {
+
+    /**
+     * Receives the outcome of loading, on the main thread.
+     */
+    public interface Callback {
+        void onModelLoaded(LoadedModel model);
+
+        void onModelFailed(Exception error);
+    }
+
+    /**
+     * Everything needed to run detection, owned by whoever received it.
+     */
+    public static final class LoadedModel implements AutoCloseable {
+        private final InterpreterPool<Interpreter> interpreters;
+        private final InterpreterFactory factory;
+        private final List<String> labels;
+        private final BackendConfig backend;
+        // Refinement model and its factory, or null
+        private final Interpreter refiner;
+        private final InterpreterFactory refinerFactory;
+        // CPU threads of the pooled interpreters, changed by setThreads()
+        private int threads;
+
+        LoadedModel(InterpreterPool<Interpreter> interpreters, InterpreterFactory factory,
+                    List<String> labels, BackendConfig backend, Interpreter refiner,
+                    InterpreterFactory refinerFactory) {
+            this.interpreters = interpreters;
+            this.factory = factory;
+            this.labels = labels;
+            this.backend = backend;
+            this.refiner = refiner;
+            this.refinerFactory = refinerFactory;
+            this.threads = backend.getThreads();
+        }
+
+        public InterpreterPool<Interpreter> getInterpreters() {
+            return interpreters;
+        }
+
+        /**
+         * @return The warm refinement interpreter, or null if the app ships no refinement model
+         */
+        public Interpreter getRefiner() {
+            return refiner;
+        }
+
+        public List<String> getLabels() {
+            return labels;
+        }
+
+        public BackendConfig getBackend() {
+            return backend;
+        }
+
+        /**
+         * Rebuilds the pooled interpreters for another number of CPU threads and swaps them
+         * into the pool, where the detector picks them up from its next frame. Never goes
+         * above the thread count the backend was chosen with, and leaves GPU and NNAPI
+         * interpreters alone. Blocks while the new interpreters are built and warmed up,
+         * so call it off the main thread.
+         *
+         * @param maxThreads Most CPU threads to use
+         * @return true if the interpreters were rebuilt
+         */
+        public synchronized boolean setThreads(int maxThreads) {
+            int wanted = Math.max(1, Math.min(maxThreads, backend.getThreads()));
+            if (backend.getType() != BackendConfig.Type.CPU || wanted == threads) {
+                return false;
+            }
+            BackendConfig config = BackendConfig.cpu(wanted, backend.isXnnpack());
+            List<Interpreter> rebuilt = new ArrayList<>();
+            try {
+                for (int i = 0; i < interpreters.size(); i++) {
+                    rebuilt.add(factory.create(config));
+                    InterpreterFactory.warmUp(rebuilt.get(i));
+                }
+            } catch (RuntimeException e) {
+                for (Interpreter interpreter : rebuilt) {
+                    interpreter.close();
+                }
+                throw e;
+            }
+            interpreters.replace(rebuilt);
+            threads = wanted;
+            return true;
+        }
+
+        /**
+         * @return CPU threads of the pooled interpreters
+         */
+        public synchronized int getThreads() {
+            return threads;
+        }
+
+        /**
+         * Closes the interpreters (borrowed ones when they are returned), then their
+         * delegates once the last of them is closed.
+         */
+        @Override
+        public synchronized void close() {
+            interpreters.close(factory::close);
+            if (refiner != null) {
+                refiner.close();
+                refinerFactory.close();
+            }
+        }
+    }
+
+    private final Context context;
+    private final String modelAsset;
+    private final String labelsAsset;
+    private final int poolSize;
+    // Optional refinement model and its CPU threads
+    private final String refinerAsset;
+    private final int refinerThreads;
+    private final StartupReport report;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Only read and written on the main thread
+    private boolean cancelled = false;
+
+    /**
+     * @param context     Any context of the app
+     * @param modelAsset  The .tflite file in the assets folder
+     * @param labelsAsset The label file in the assets folder
+     * @param poolSize    Number of interpreters to build
+     * @param report      Receives the timing of each loading step
+     */
+    public ModelLoader(Context context, String modelAsset, String labelsAsset, int poolSize, StartupReport report) {
+        this(context, modelAsset, labelsAsset, poolSize, null, 1, report);
+    }
+
+    /**
+     * @param context        Any context of the app
+     * @param modelAsset     The .tflite file in the assets folder
+     * @param labelsAsset    The label file in the assets folder
+     * @param poolSize       Number of interpreters to build
+     * @param refinerAsset   A heavier model with the same labels for cascade mode; skipped if missing
+     * @param refinerThreads CPU threads of the refinement interpreter
+     * @param report         Receives the timing of each loading step
+     */
+    public ModelLoader(Context context, String modelAsset, String labelsAsset, int poolSize,
+                       String refinerAsset, int refinerThreads, StartupReport report) {
+        this.context = context.getApplicationContext();
+        this.modelAsset = modelAsset;
+        this.labelsAsset = labelsAsset;
+        this.poolSize = poolSize;
+        this.refinerAsset = refinerAsset;
+        this.refinerThreads = refinerThreads;
+        this.report = report;
+    }
+
+    /**
+     * Starts loading on a background thread. Call from the main thread.
+     *
+     * @param callback Called on the main thread once the model is ready or has failed
+     */
+    public void load(final Callback callback) {
+        Thread thread = new Thread(() -> {
+            LoadedModel model = null;
+            Exception error = null;
+            try {
+                model = loadBlocking();
+            } catch (Exception e) {
+                error = e;
+            }
+            final LoadedModel loaded = model;
+            final Exception failure = error;
+            mainHandler.post(() -> deliver(callback, loaded, failure));
+        }, "model-loader");
+        thread.start();
+    }
+
+    private void deliver(Callback callback, LoadedModel model, Exception error) {
+        if (cancelled) {
+            // Nobody is waiting any more - release what was built
+            if (model != null) {
+                model.close();
+            }
+            return;
+        }
+        if (model != null) {
+            report.mark(StartupReport.Phase.MODEL_READY);
+            callback.onModelLoaded(model);
+        } else {
+            callback.onModelFailed(error);
+        }
+    }
+
+    /**
+     * Drops the result of a load still in progress (it is closed when it arrives).
+     * Call from the main thread, e.g. in onDestroy.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private LoadedModel loadBlocking() throws IOException {
+        long start = report.now();
+        MappedByteBuffer buffer = mapModel(modelAsset);
+        report.record(StartupReport.Phase.MODEL_MAP, start);
+
+        // Pick the fastest backend (CPU threads/XNNPACK, GPU, NNAPI); cached after the first launch
+        start = report.now();
+        InterpreterFactory factory = new InterpreterFactory(buffer);
+        BackendSelector selector = new BackendSelector(factory,
+                InterpreterFactory.preferencesCache(context), 3, 5);
+        int maxThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+        BackendConfig backend = selector.select(InterpreterFactory.cacheKey(context),
+                BackendSelector.candidates(maxThreads, true));
+        report.record(StartupReport.Phase.BACKEND_SELECT, start);
+        report.put("backend", backend.toKey());
+        report.put("backendCached", String.valueOf(selector.isLastFromCache()));
+        Log.d("ModelLoad", "Backend: " + backend
+                + (selector.isLastFromCache() ? " (cached)" : " from " + selector.getLastResults()));
+
+        List<Interpreter> interpreters = new ArrayList<>();
+        try {
+            // Every interpreter shares the one mapped model
+            start = report.now();
+            for (int i = 0; i < poolSize; i++) {
+                interpreters.add(factory.create(backend));
+            }
+            report.record(StartupReport.Phase.INTERPRETER_INIT, start);
+            report.put("interpreters", String.valueOf(interpreters.size()));
+
+            // The first run plans memory and prepares kernels; time it on its own
+            start = report.now();
+            InterpreterFactory.warmUp(interpreters.get(0));
+            report.record(StartupReport.Phase.FIRST_INVOKE, start);
+            for (int i = 1; i < interpreters.size(); i++) {
+                InterpreterFactory.warmUp(interpreters.get(i));
+            }
+
+            start = report.now();
+            List<String> labels = FileUtil.loadLabels(context, labelsAsset);
+            report.record(StartupReport.Phase.LABELS, start);
+
+            InterpreterPool<Interpreter> pool = new InterpreterPool<>(interpreters, Interpreter::close);
+            Interpreter refiner = null;
+            InterpreterFactory refinerFactory = null;
+            if (refinerAsset != null) {
+                refinerFactory = loadRefiner();
+            }
+            if (refinerFactory != null) {
+                try {
+                    refiner = refinerFactory.create(BackendConfig.cpu(refinerThreads, true));
+                    InterpreterFactory.warmUp(refiner);
+                } catch (RuntimeException e) {
+                    // Detection still works without the cascade
+                    Log.e("ModelLoad", "Refinement model failed, cascade off: " + e.getMessage(), e);
+                    if (refiner != null) {
+                        refiner.close();
+                    }
+                    refinerFactory.close();
+                    refiner = null;
+                    refinerFactory = null;
+                }
+            }
+            report.put("refiner", refiner != null ? refinerAsset : "none");
+            return new LoadedModel(pool, factory, labels, backend, refiner, refinerFactory);
+        } catch (IOException | RuntimeException e) {
+            for (Interpreter interpreter : interpreters) {
+                interpreter.close();
+            }
+            factory.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Maps the refinement model if the app ships one.
+     *
+     * @return A factory for it, or null
+     */
+    private InterpreterFactory loadRefiner() {
+        try {
+            return new InterpreterFactory(mapModel(refinerAsset));
+        } catch (IOException e) {
+            Log.i("ModelLoad", "No refinement model, cascade off: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Maps the model file from the assets into memory (the asset must be stored uncompressed).
+     */
+    private MappedByteBuffer mapModel(String asset) throws IOException {
+        try (
+                // Open the TFLite model file from the assets folder
+                AssetFileDescriptor fileDescriptor = context.getAssets().openFd(asset);
+                // Create input stream and channel to read the model data
+                FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
+                FileChannel fileChannel = inputStream.getChannel()
+        ) {
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, fileDescriptor.getStartOffset(),
+                    fileDescriptor.getDeclaredLength());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the detection model outside the Android app: the desktop TensorFlow Lite
+ * runtime, or a stub producing synthetic outputs. Used by {@link ReplayEngine}
+ * so recorded frames can be processed on the host JVM.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public interface ModelRunner extends AutoCloseable {
+
+    /**
+     * @return The image input, shaped [1, height, width, 3], with its type and quantization
+     */
+    TensorSpec getInputSpec();
+
+    /**
+     * @return The output tensors in output index order, for decoder selection
+     */
+    List<TensorSpec> getOutputSpecs();
+
+    /**
+     * Runs the model once, like Interpreter.runForMultipleInputsOutputs.
+     *
+     * @param inputs  Input buffers
+     * @param outputs Output buffers keyed by output index
+     * @throws Exception if inference failed
+     */
+    void run(Object[] inputs, Map<Integer, Object> outputs) throws Exception;
+
+    /**
+     * Releases the model. Throws nothing checked, so runners can be closed by try-with-resources.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,146 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Moves the tracked boxes with the phone's rotation, so they stay on their objects while
+ * the user turns their head or hand instead of lagging until the next inference.
+ *
+ * Turning the camera by a small angle moves the whole scene across the image by the
+ * focal length times the tangent of the angle: rotation around the screen's y axis
+ * (turning left or right) moves it sideways, rotation around x (tilting) moves it up or
+ * down, and rotation around z (rolling) turns it around the centre of the view.
+ * Translation is ignored, as objects are normally much further away than the phone moves.
+ *
+ * {@link #apply} moves the tracks by the rotation since it last ran, on every published
+ * frame. Detections arrive later than their frame was captured, so {@link #update} first
+ * moves them by the rotation since capture that the tracks have already been moved by,
+ * then matches them to the tracks. The tracker's velocities then only follow the objects'
+ * own movement. The compensator keeps the rotation it last applied rather than a time,
+ * so an extrapolated rotation is corrected on the next call.
+ *
+ * Methods are synchronized so shifting the tracks and matching detections to them
+ * do not interleave.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class MotionCompensator {
+    // Rotations are limited to this many radians, beyond which the tangent grows without bound
+    private static final double MAX_ANGLE = 1.2;
+    // Shifts under this many pixels and rolls under this many radians are not applied
+    private static final float MIN_SHIFT_PX = 0.05f;
+    private static final float MIN_ROLL = 0.0005f;
+
+    private final MotionEstimator estimator;
+    // Rotation read from the estimator that the tracks have been moved up to
+    private final double[] applied = new double[3];
+    private boolean hasApplied = false;
+    // Scratch space for the current rotation and the resulting shift: x, y and roll
+    private final double[] rotation = new double[3];
+    private final float[] shift = new float[3];
+
+    /**
+     * @param estimator Gives the phone's rotation over time
+     */
+    public MotionCompensator(MotionEstimator estimator) {
+        this.estimator = estimator;
+    }
+
+    /**
+     * Moves the tracks by the rotation since the last call.
+     *
+     * @param tracker       The tracks
+     * @param nowNanos      Time the tracks are about to be predicted for
+     * @param focalLengthPx Focal length in view pixels, or NaN if unknown (nothing moves)
+     * @param viewWidth     Width of the view the boxes refer to
+     * @param viewHeight    Height of the view the boxes refer to
+     * @return true if the tracks were moved
+     */
+    public synchronized boolean apply(ObjectTracker tracker, long nowNanos, float focalLengthPx,
+                                      int viewWidth, int viewHeight) {
+        if (!estimator.getRotation(nowNanos, rotation)) {
+            return false;
+        }
+        if (!hasApplied || !(focalLengthPx > 0)) {
+            // Nothing to move yet: start from the current rotation
+            System.arraycopy(rotation, 0, applied, 0, 3);
+            hasApplied = true;
+            return false;
+        }
+        // Movements too small to apply add up until they are not
+        if (!imageShift(rotation[0] - applied[0], rotation[1] - applied[1], rotation[2] - applied[2],
+                focalLengthPx, shift)) {
+            return false;
+        }
+        System.arraycopy(rotation, 0, applied, 0, 3);
+        tracker.shift(shift[0], shift[1], shift[2], viewWidth / 2f, viewHeight / 2f);
+        return true;
+    }
+
+    /**
+     * Matches the detections of a frame to the tracks, after moving them by the rotation
+     * between the frame's capture and the last {@link #apply}.
+     *
+     * @param tracker        The tracks
+     * @param detections     Detections of the frame in view pixels; moved in place
+     * @param timestampNanos Time the frame was captured
+     * @param focalLengthPx  Focal length in view pixels, or NaN if unknown (nothing moves)
+     * @param viewWidth      Width of the view the boxes refer to
+     * @param viewHeight     Height of the view the boxes refer to
+     */
+    public synchronized void update(ObjectTracker tracker, DetectionBuffer detections, long timestampNanos,
+                                    float focalLengthPx, int viewWidth, int viewHeight) {
+        if (hasApplied && focalLengthPx > 0 && estimator.getRotation(timestampNanos, rotation)
+                && imageShift(applied[0] - rotation[0], applied[1] - rotation[1], applied[2] - rotation[2],
+                focalLengthPx, shift)) {
+            shift(detections, shift[0], shift[1], shift[2], viewWidth / 2f, viewHeight / 2f);
+        }
+        tracker.update(detections, timestampNanos);
+    }
+
+    /**
+     * Turns a camera rotation into the movement of the scene in the image.
+     *
+     * @param rotationX     Rotation around the screen's x axis in radians, counter-clockwise positive
+     * @param rotationY     Rotation around y
+     * @param rotationZ     Rotation around z
+     * @param focalLengthPx Focal length in view pixels
+     * @param out           Receives the shift right and down in pixels and the clockwise roll in radians
+     * @return false if the movement is too small to matter
+     */
+    public static boolean imageShift(double rotationX, double rotationY, double rotationZ, float focalLengthPx,
+                                     float[] out) {
+        out[0] = (float) (focalLengthPx * Math.tan(clamp(rotationY)));
+        out[1] = (float) (focalLengthPx * Math.tan(clamp(rotationX)));
+        out[2] = (float) clamp(rotationZ);
+        return Math.abs(out[0]) >= MIN_SHIFT_PX || Math.abs(out[1]) >= MIN_SHIFT_PX || Math.abs(out[2]) >= MIN_ROLL;
+    }
+
+    /**
+     * Moves boxes by a shift, then turns their centres around a point. Sizes are kept.
+     *
+     * @param boxes  Boxes to move in place
+     * @param dx     Shift to the right in pixels
+     * @param dy     Shift down in pixels
+     * @param roll   Clockwise rotation on screen in radians
+     * @param pivotX Centre of the rotation
+     * @param pivotY Centre of the rotation
+     */
+    public static void shift(DetectionBuffer boxes, float dx, float dy, float roll, float pivotX, float pivotY) {
+        float cos = (float) Math.cos(roll);
+        float sin = (float) Math.sin(roll);
+        for (int i = 0; i < boxes.size(); i++) {
+            float halfWidth = (boxes.getRight(i) - boxes.getLeft(i)) / 2;
+            float halfHeight = (boxes.getBottom(i) - boxes.getTop(i)) / 2;
+            float x = boxes.getLeft(i) + halfWidth + dx - pivotX;
+            float y = boxes.getTop(i) + halfHeight + dy - pivotY;
+            float centreX = pivotX + x * cos - y * sin;
+            float centreY = pivotY + x * sin + y * cos;
+            boxes.set(i, centreX - halfWidth, centreY - halfHeight, centreX + halfWidth, centreY + halfHeight,
+                    boxes.getScore(i), boxes.getClassId(i));
+        }
+    }
+
+    private static double clamp(double angle) {
+        return Math.max(-MAX_ANGLE, Math.min(MAX_ANGLE, angle));
+    }
+}
@@ -0,0 +1,221 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Follows how the phone moves from its gyroscope and accelerometer, for the
+ * {@link MotionGate} and the {@link MotionCompensator}.
+ *
+ * Rotation: gyroscope rates are integrated with the trapezoid rule into the rotation
+ * accumulated around each screen axis since sampling started. The gyroscope's bias is
+ * learnt while the phone is still (hand tremor averages out) and taken off every sample,
+ * and rates under a small dead band count as zero, so still boxes do not drift. The
+ * accumulated rotation of the last few hundred samples is kept in a ring, so the rotation
+ * at any recent time (e.g. when a frame was captured) is interpolated between samples;
+ * a little past the newest sample it is extrapolated at the latest rate. Samples further
+ * apart than a sensor pause are not integrated across.
+ *
+ * Stillness: the phone counts as moving while it turns faster than a threshold or its
+ * acceleration is further from gravity than another (footsteps show up there even when
+ * walking straight). It is still once neither has happened for a while, and only while
+ * both sensors keep delivering samples.
+ *
+ * Methods are synchronized because samples arrive on the sensor thread while the
+ * camera and pipeline threads read the estimates.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class MotionEstimator implements MotionSensor.Listener {
+    // Standard gravity, what a still accelerometer measures
+    private static final float GRAVITY = 9.81f;
+    // Gyroscope samples further apart than this are not integrated across (sensor paused)
+    private static final long MAX_GAP_NANOS = 100_000_000L;
+    // Rotation is extrapolated at most this far past the newest gyroscope sample
+    private static final long MAX_EXTRAPOLATION_NANOS = 50_000_000L;
+    // Weight of each still sample in the bias estimate, about the last second at 100 Hz
+    private static final float BIAS_GAIN = 0.01f;
+    // Marks a time that has not been seen yet
+    private static final long NONE = Long.MIN_VALUE;
+
+    // Angular speed in rad/s under which the gyroscope reads as zero
+    private final float deadband;
+    // Angular speed in rad/s and distance of the acceleration from gravity in m/s^2 above which the phone moves
+    private final float stillRotation;
+    private final float stillAcceleration;
+    // How long the phone has to stay calm to count as still
+    private final long stillHoldNanos;
+    // Samples older than this no longer show that the phone is still
+    private final long sampleTimeoutNanos;
+
+    // Ring of gyroscope sample times and the rotation accumulated up to each, 3 axes per sample
+    private final long[] times;
+    private final double[] angles;
+    // Index of the newest sample, and number of samples in the ring
+    private int head = -1;
+    private int count = 0;
+    // Latest gyroscope rates after the dead band
+    private float rateX;
+    private float rateY;
+    private float rateZ;
+    // Gyroscope bias learnt while still, rad/s
+    private float biasX;
+    private float biasY;
+    private float biasZ;
+    private long lastAccelerometerNanos = NONE;
+    // Last time either sensor showed movement, or when sampling started
+    private long movingNanos = NONE;
+
+    /**
+     * @param capacity           Gyroscope samples kept, e.g. 256 (over a second at 200 Hz)
+     * @param deadband           Angular speed in rad/s read as zero, e.g. 0.03
+     * @param stillRotation      Angular speed in rad/s above which the phone moves, e.g. 0.15
+     * @param stillAcceleration  Distance of the acceleration from gravity in m/s^2 above which it moves, e.g. 0.6
+     * @param stillHoldNanos     How long it has to stay calm to count as still, e.g. 1 s
+     * @param sampleTimeoutNanos Longest time without samples before it no longer counts as still
+     */
+    public MotionEstimator(int capacity, float deadband, float stillRotation, float stillAcceleration,
+                           long stillHoldNanos, long sampleTimeoutNanos) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("At least two samples are needed");
+        }
+        if (deadband < 0 || stillRotation < deadband || stillAcceleration <= 0) {
+            throw new IllegalArgumentException("Invalid motion thresholds");
+        }
+        this.deadband = deadband;
+        this.stillRotation = stillRotation;
+        this.stillAcceleration = stillAcceleration;
+        this.stillHoldNanos = stillHoldNanos;
+        this.sampleTimeoutNanos = sampleTimeoutNanos;
+        times = new long[capacity];
+        angles = new double[3 * capacity];
+    }
+
+    @Override
+    public synchronized void onGyroscope(long timestampNanos, float x, float y, float z) {
+        float speed = (float) Math.sqrt(x * x + y * y + z * z);
+        if (speed > stillRotation) {
+            moved(timestampNanos);
+        } else if (movingNanos == NONE) {
+            movingNanos = timestampNanos;
+        } else if (timestampNanos - movingNanos >= stillHoldNanos) {
+            biasX += BIAS_GAIN * (x - biasX);
+            biasY += BIAS_GAIN * (y - biasY);
+            biasZ += BIAS_GAIN * (z - biasZ);
+        }
+        x -= biasX;
+        y -= biasY;
+        z -= biasZ;
+        if (x * x + y * y + z * z < deadband * deadband) {
+            x = 0f;
+            y = 0f;
+            z = 0f;
+        }
+
+        double angleX = 0;
+        double angleY = 0;
+        double angleZ = 0;
+        if (count > 0) {
+            long elapsed = timestampNanos - times[head];
+            if (elapsed <= 0) {
+                return; // Out of order
+            }
+            angleX = angles[3 * head];
+            angleY = angles[3 * head + 1];
+            angleZ = angles[3 * head + 2];
+            if (elapsed <= MAX_GAP_NANOS) {
+                double halfSeconds = elapsed / 2e9;
+                angleX += (rateX + x) * halfSeconds;
+                angleY += (rateY + y) * halfSeconds;
+                angleZ += (rateZ + z) * halfSeconds;
+            }
+        }
+        head = (head + 1) % times.length;
+        count = Math.min(count + 1, times.length);
+        times[head] = timestampNanos;
+        angles[3 * head] = angleX;
+        angles[3 * head + 1] = angleY;
+        angles[3 * head + 2] = angleZ;
+        rateX = x;
+        rateY = y;
+        rateZ = z;
+    }
+
+    @Override
+    public synchronized void onAccelerometer(long timestampNanos, float x, float y, float z) {
+        float magnitude = (float) Math.sqrt(x * x + y * y + z * z);
+        if (Math.abs(magnitude - GRAVITY) > stillAcceleration) {
+            moved(timestampNanos);
+        } else if (movingNanos == NONE) {
+            movingNanos = timestampNanos;
+        }
+        lastAccelerometerNanos = Math.max(lastAccelerometerNanos, timestampNanos);
+    }
+
+    private void moved(long timestampNanos) {
+        movingNanos = Math.max(movingNanos, timestampNanos);
+    }
+
+    /**
+     * @param nowNanos Current time
+     * @return true if the phone has been still for the hold time, per recent samples of both sensors
+     */
+    public synchronized boolean isStill(long nowNanos) {
+        if (count == 0 || lastAccelerometerNanos == NONE) {
+            return false;
+        }
+        return nowNanos - times[head] <= sampleTimeoutNanos
+                && nowNanos - lastAccelerometerNanos <= sampleTimeoutNanos
+                && nowNanos - movingNanos >= stillHoldNanos;
+    }
+
+    /**
+     * Gives the rotation accumulated around each screen axis since sampling started, at a
+     * recent time. Differences between two times give the rotation in between; times
+     * before the oldest sample kept read as the oldest sample.
+     *
+     * @param timestampNanos Time to read the rotation at
+     * @param out            Receives the rotation around x, y and z in radians
+     * @return false if there are no gyroscope samples yet
+     */
+    public synchronized boolean getRotation(long timestampNanos, double[] out) {
+        if (count == 0) {
+            return false;
+        }
+        int oldest = (head - count + 1 + times.length) % times.length;
+        if (timestampNanos >= times[head]) {
+            double seconds = Math.min(timestampNanos - times[head], MAX_EXTRAPOLATION_NANOS) / 1e9;
+            out[0] = angles[3 * head] + rateX * seconds;
+            out[1] = angles[3 * head + 1] + rateY * seconds;
+            out[2] = angles[3 * head + 2] + rateZ * seconds;
+            return true;
+        }
+        if (timestampNanos <= times[oldest]) {
+            copyAngles(oldest, out);
+            return true;
+        }
+        // Binary search for the last sample at or before the time, in ring order
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (times[(oldest + mid) % times.length] <= timestampNanos) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int before = (oldest + low) % times.length;
+        int after = (before + 1) % times.length;
+        double fraction = (timestampNanos - times[before]) / (double) (times[after] - times[before]);
+        for (int axis = 0; axis < 3; axis++) {
+            double start = angles[3 * before + axis];
+            out[axis] = start + (angles[3 * after + axis] - start) * fraction;
+        }
+        return true;
+    }
+
+    private void copyAngles(int index, double[] out) {
+        out[0] = angles[3 * index];
+        out[1] = angles[3 * index + 1];
+        out[2] = angles[3 * index + 2];
+    }
+}
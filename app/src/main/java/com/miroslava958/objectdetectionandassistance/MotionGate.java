@@ -0,0 +1,64 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Slows inference down while the phone is still. When the user stands still, objects
+ * only change position by moving themselves, so a few inferences a second are enough
+ * and the tracker carries the boxes in between; as soon as the {@link MotionEstimator}
+ * sees the phone move again, every frame the scheduler picks is analysed.
+ *
+ * Checked before the {@link SceneChangeGate}: it only reads the sensor state, and a frame
+ * it holds back never becomes the scene gate's reference.
+ *
+ * Not thread-safe: call from the camera analyzer thread only.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class MotionGate {
+    // Marks that no frame has been analysed yet
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final MotionEstimator estimator;
+    // Shortest time between inferences while the phone is still
+    private final long stillIntervalNanos;
+    private long lastInferenceNanos = NONE;
+    private long skippedFrames;
+
+    /**
+     * @param estimator          Tells whether the phone is still
+     * @param stillIntervalNanos Shortest time between inferences while still, e.g. 250 ms for 4 Hz
+     */
+    public MotionGate(MotionEstimator estimator, long stillIntervalNanos) {
+        this.estimator = estimator;
+        this.stillIntervalNanos = stillIntervalNanos;
+    }
+
+    /**
+     * @param nowNanos Time of the frame
+     * @return false if the phone is still and the last inference is recent enough
+     */
+    public boolean shouldInfer(long nowNanos) {
+        if (lastInferenceNanos != NONE && nowNanos - lastInferenceNanos < stillIntervalNanos
+                && estimator.isStill(nowNanos)) {
+            skippedFrames++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records that a frame went through inference.
+     *
+     * @param nowNanos Time of the frame
+     */
+    public void recordInference(long nowNanos) {
+        lastInferenceNanos = nowNanos;
+    }
+
+    /**
+     * @return Frames held back because the phone was still
+     */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+}
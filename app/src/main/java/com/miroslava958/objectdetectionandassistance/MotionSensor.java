@@ -0,0 +1,50 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Source of gyroscope and accelerometer samples for the {@link MotionEstimator}.
+ * On the phone it is {@link AndroidMotionSensor}; tests play back recorded IMU traces.
+ *
+ * Samples are given in the axes of the screen as the user sees it: x to the right,
+ * y up and z out of the screen towards the user, whatever way the phone is held.
+ * Timestamps are on the System.nanoTime() clock used for camera frames.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public interface MotionSensor {
+
+    /**
+     * Receives the samples. Called on a single thread, in timestamp order per sensor.
+     */
+    interface Listener {
+
+        /**
+         * @param timestampNanos Time of the sample
+         * @param x              Angular velocity around x in rad/s, counter-clockwise positive
+         * @param y              Angular velocity around y in rad/s
+         * @param z              Angular velocity around z in rad/s
+         */
+        void onGyroscope(long timestampNanos, float x, float y, float z);
+
+        /**
+         * @param timestampNanos Time of the sample
+         * @param x              Acceleration along x in m/s^2, including gravity
+         * @param y              Acceleration along y in m/s^2
+         * @param z              Acceleration along z in m/s^2
+         */
+        void onAccelerometer(long timestampNanos, float x, float y, float z);
+    }
+
+    /**
+     * Starts delivering samples.
+     *
+     * @param listener Receives the samples until {@link #stop()}
+     * @return false if the device has no gyroscope or accelerometer
+     */
+    boolean start(Listener listener);
+
+    /**
+     * Stops delivering samples.
+     */
+    void stop();
+}
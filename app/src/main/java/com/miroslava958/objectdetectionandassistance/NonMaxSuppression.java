@@ -0,0 +1,184 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Class-aware greedy non-max suppression on flat primitive arrays.
+ * Candidates are collected with {@link #add}; {@link #run} sorts them by score and
+ * keeps each box unless a higher scoring box of the same class overlaps it by more
+ * than the IoU threshold. When more candidates arrive than fit, the lowest scoring
+ * one is replaced, so the best candidates are always kept.
+ *
+ * All storage is allocated up front, so a frame does not allocate.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class NonMaxSuppression {
+    // Boxes overlapping a kept box of the same class by more than this are removed
+    private final float iouThreshold;
+    // Most detections returned per frame
+    private final int maxDetections;
+
+    // Candidate boxes, scores and classes
+    private final float[] left;
+    private final float[] top;
+    private final float[] right;
+    private final float[] bottom;
+    private final float[] area;
+    private final float[] score;
+    private final int[] classId;
+    private int count = 0;
+    // Index of the lowest scoring candidate once full, or -1 if unknown
+    private int lowest = -1;
+
+    // Candidate indices sorted by score, and which ones were suppressed
+    private final int[] order;
+    private final boolean[] suppressed;
+
+    /**
+     * @param maxCandidates Most candidates considered per frame
+     * @param iouThreshold  Overlap above which the lower scoring box is removed
+     * @param maxDetections Most detections returned per frame
+     */
+    public NonMaxSuppression(int maxCandidates, float iouThreshold, int maxDetections) {
+        if (maxCandidates <= 0 || maxDetections <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.iouThreshold = iouThreshold;
+        this.maxDetections = maxDetections;
+        left = new float[maxCandidates];
+        top = new float[maxCandidates];
+        right = new float[maxCandidates];
+        bottom = new float[maxCandidates];
+        area = new float[maxCandidates];
+        score = new float[maxCandidates];
+        classId = new int[maxCandidates];
+        order = new int[maxCandidates];
+        suppressed = new boolean[maxCandidates];
+    }
+
+    /**
+     * Removes all candidates.
+     */
+    public void reset() {
+        count = 0;
+        lowest = -1;
+    }
+
+    /**
+     * Adds a candidate box.
+     */
+    public void add(float left, float top, float right, float bottom, float score, int classId) {
+        int i;
+        if (count < this.score.length) {
+            i = count++;
+        } else {
+            if (lowest < 0) {
+                lowest = 0;
+                for (int j = 1; j < count; j++) {
+                    if (this.score[j] < this.score[lowest]) {
+                        lowest = j;
+                    }
+                }
+            }
+            if (score <= this.score[lowest]) {
+                return;
+            }
+            i = lowest;
+            lowest = -1;
+        }
+        this.left[i] = left;
+        this.top[i] = top;
+        this.right[i] = right;
+        this.bottom[i] = bottom;
+        this.area[i] = Math.max(0f, right - left) * Math.max(0f, bottom - top);
+        this.score[i] = score;
+        this.classId[i] = classId;
+    }
+
+    public int getCandidateCount() {
+        return count;
+    }
+
+    /**
+     * Suppresses overlapping candidates and writes the survivors, best first.
+     *
+     * @param out Receives the kept detections (cleared first)
+     * @return The number of detections kept
+     */
+    public int run(DetectionBuffer out) {
+        out.clear();
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            suppressed[i] = false;
+        }
+        sortByScore(0, count - 1);
+
+        int limit = Math.min(maxDetections, out.capacity());
+        for (int a = 0; a < count && out.size() < limit; a++) {
+            int i = order[a];
+            if (suppressed[i]) {
+                continue;
+            }
+            out.add(left[i], top[i], right[i], bottom[i], score[i], classId[i]);
+
+            for (int b = a + 1; b < count; b++) {
+                int j = order[b];
+                if (suppressed[j] || classId[j] != classId[i]) {
+                    continue;
+                }
+                float overlapWidth = Math.min(right[i], right[j]) - Math.max(left[i], left[j]);
+                float overlapHeight = Math.min(bottom[i], bottom[j]) - Math.max(top[i], top[j]);
+                if (overlapWidth <= 0 || overlapHeight <= 0) {
+                    continue;
+                }
+                float intersection = overlapWidth * overlapHeight;
+                if (intersection > iouThreshold * (area[i] + area[j] - intersection)) {
+                    suppressed[j] = true;
+                }
+            }
+        }
+        return out.size();
+    }
+
+    /**
+     * Sorts order[from..to] by descending score (quicksort, insertion sort for short ranges).
+     */
+    private void sortByScore(int from, int to) {
+        while (to - from > 16) {
+            float pivot = score[order[(from + to) >>> 1]];
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (score[order[i]] > pivot) {
+                    i++;
+                }
+                while (score[order[j]] < pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+            // Recurse into the smaller half to bound the stack depth
+            if (j - from < to - i) {
+                sortByScore(from, j);
+                from = i;
+            } else {
+                sortByScore(i, to);
+                to = j;
+            }
+        }
+        for (int i = from + 1; i <= to; i++) {
+            int index = order[i];
+            float value = score[index];
+            int j = i - 1;
+            while (j >= from && score[order[j]] < value) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = index;
+        }
+    }
+}
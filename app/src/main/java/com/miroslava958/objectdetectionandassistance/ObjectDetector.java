@@ -3,7 +3,6 @@ package com.miroslava958.objectdetectionandassistance;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.Context;
-import android.graphics.Bitmap;
 import android.graphics.RectF;
 import android.media.Image;
 import android.util.Log;
@@ -12,166 +11,718 @@ import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageProxy;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
-import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
-import org.tensorflow.lite.support.image.TensorImage;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 /**
  * ObjectDetector performs real-time image analysis using a TensorFlow Lite model.
- * It converts each camera frame into a Bitmap, runs inference, and provides
+ * It converts each camera frame into the model's RGB input (rotated upright and letterboxed,
+ * optionally cropped to the tracked objects), runs inference, and provides
  * Create bounding boxes and textual feedback of detected objects.
  *
+ * Work is split into a staged pipeline: the camera analyzer thread converts the frame,
+ * then inference, post-processing and publishing each run on their own background thread.
+ * Stale frames are dropped between stages and the overlay gets a single UI post per frame.
+ * Detections are tracked across frames, so frames skipped by the scheduler still
+ * update the overlay with boxes predicted by the tracker. The distance and approach
+ * of each tracked object decide which one is announced first.
+ * With a refinement model, a {@link CascadeController} runs it on crops around new and
+ * uncertain objects (or the whole frame on request) in an extra stage within a compute budget.
+ * While the phone is still, inference slows down ({@link MotionGate}); while it turns, the
+ * tracked boxes move with it ({@link MotionCompensator}).
+ * The objects published after each inference can be kept in a {@link DetectionHistory}.
+ * Every stage is timed in {@link PipelineMetrics}; verbose logs are compiled out
+ * unless {@link DebugLog#VERBOSE} is set.
+ *
  * Author: Miroslava Milcheva
  * Course: BSc Computing - Final Year Project
  */
 public class ObjectDetector implements ImageAnalysis.Analyzer {
 
-    private final Interpreter tflite;
+    // Records when the first detection result is ready
+    private final StartupReport startupReport;
     private final List<String> labels;
     private final Context context;
     private final OverlayView overlayView;
     private final TextToSpeechManager ttsManager;
-    // Counter for consecutive frames with no detections
-    private int noDetectionFrames = 0;
+    // Optional anchor list for models exported without box decoding
+    private static final String ANCHORS_ASSET = "anchors.txt";
+    // Conversion, inference, decoding with the policy and refinement, shared with the host tools
+    private final DetectionStages stages;
+    // Inference rate, and the slowest rate allowed under load. The camera runs at ~30 fps;
+    // the tracker predicts boxes for the frames in between
+    private static final double TARGET_RATE_HZ = 15;
+    private static final double MIN_RATE_HZ = 2;
+    // Share of time inference may use before the scheduler backs off
+    private static final double MAX_INFERENCE_UTILISATION = 0.75;
+    // Chooses which frames are analysed based on measured inference time
+    private final AdaptiveFrameScheduler scheduler =
+            new AdaptiveFrameScheduler(Clock.SYSTEM, TARGET_RATE_HZ, MIN_RATE_HZ, MAX_INFERENCE_UTILISATION);
+    // Speech: pending announcements, per-label cooldown, age limit, urgent box size, utterance timeout
+    private static final int SPEECH_QUEUE_SIZE = 4;
+    private static final long LABEL_COOLDOWN_NANOS = 5_000_000_000L;
+    private static final long SPEECH_MAX_AGE_NANOS = 2_000_000_000L;
+    private static final float URGENT_AREA_FRACTION = 0.35f;
+    private static final long UTTERANCE_TIMEOUT_NANOS = 10_000_000_000L;
+    // Objects closer than this, or reached sooner than this at their current speed, are urgent
+    private static final float URGENT_DISTANCE_METRES = 1.5f;
+    private static final float URGENT_TIME_TO_CONTACT_SECONDS = 2.5f;
+    // Typical object sizes for distance estimation
+    private static final String OBJECT_SIZES_ASSET = "object_sizes.txt";
+    // Distance and approach of the tracked objects being published
+    private final ProximityEstimator proximity;
+    // Camera focal length / sensor width, and the focal length in overlay pixels of the latest frame
+    private volatile float focalRatio = ProximityEstimator.DEFAULT_FOCAL_RATIO;
+    private volatile float viewFocalLengthPx = Float.NaN;
+    // Gives detections stable IDs and predicts their boxes between inference frames
+    private final ObjectTracker tracker;
+    // Tracked boxes predicted for the frame being published
+    private final DetectionBuffer trackedDetections;
+    // Results are published from the analyzer thread (predictions) and the publish stage
+    private final Object publishLock = new Object();
+    // Capture time and rotation of the frame being converted
+    private long frameTimestampNanos;
+    private int frameRotation;
+    // Opt-in recorder of analysed frames and model outputs for offline replay, or null
+    private volatile FrameRecorder recorder;
+    // Store of the objects published after each inference, or null
+    private volatile DetectionHistory history;
+    // Reused for every frame - wraps the camera planes without copying
+    private final YuvFrame yuvFrame = new YuvFrame();
+    // Skips inference while the scene is static: 16x12 luma blocks sampled every 4th pixel,
+    // inference when 3% of them moved by more than 6 levels, and at least every 2 s
+    private final SceneChangeGate sceneGate = new SceneChangeGate(16, 12, 4, 6, 0.03f, 2_000_000_000L);
+    // Follows the phone's rotation and stillness: 256 gyroscope samples, rates under 0.03 rad/s
+    // read as zero, still after 1 s under 0.15 rad/s and within 0.6 m/s^2 of gravity
+    private final MotionEstimator motion =
+            new MotionEstimator(256, 0.03f, 0.15f, 0.6f, 1_000_000_000L, 200_000_000L);
+    // Inference at most 4 times a second while the phone is still
+    private final MotionGate motionGate = new MotionGate(motion, 250_000_000L);
+    // Moves the tracked boxes with the phone's rotation between inferences
+    private final MotionCompensator motionCompensator = new MotionCompensator(motion);
+    // Frames are letterboxed so objects keep their shape
+    private static final InputTransform.ScaleMode SCALE_MODE = InputTransform.ScaleMode.LETTERBOX;
+    // Rotation, region and letterbox of the frame being converted
+    private final InputTransform inputTransform;
+    // Crops inference to the tracked objects, with a whole frame every 4th inference
+    private final RoiSelector roiSelector = new RoiSelector(0.25f, 0.4f, 0.6f, 4);
+    // Region chosen by the ROI selector, in upright frame pixels
+    private final float[] roi = new float[4];
+    // Per-class thresholds, hidden classes and limits; a single threshold if the app ships no policy
+    private static final String POLICY_ASSET = "detection_policy.txt";
+    // Tracked boxes at the time of the frame being post-processed, for the exit thresholds
+    private final DetectionBuffer policyTracks;
+    // Cascade: up to 2 crops per frame and 25 ms of refinement per analysed frame on average
+    // (saved up to 150 ms); tracks scoring under 0.6 are looked at again every second; crops get
+    // a 30% margin and at least a quarter of the shorter side; boxes overlapping by half are merged
+    private static final int CASCADE_MAX_REGIONS = 2;
+    private static final long CASCADE_BUDGET_NANOS = 25_000_000L;
+    private static final long CASCADE_MAX_CREDIT_NANOS = 150_000_000L;
+    private static final float CASCADE_CONFIDENT_SCORE = 0.6f;
+    private static final long CASCADE_REFRESH_NANOS = 1_000_000_000L;
+    private static final float CASCADE_MARGIN = 0.3f;
+    private static final float CASCADE_MIN_SIZE = 0.25f;
+    private static final float CASCADE_MERGE_IOU = 0.5f;
+    // Decides where the heavier model runs with its own interpreter; null without one
+    private final CascadeController cascade;
+    // Tracked boxes at the time of the frame being refined
+    private final DetectionBuffer refineTracks;
+    // Background stages: inference, post-processing, refinement in cascade mode, and publishing
+    private final FramePipeline<InferenceContext> pipeline;
+    // Created once so submitting a frame does not allocate a lambda per frame
+    private final FramePipeline.FrameWriter<InferenceContext> convertFrame;
+    // Result sets exchanged between the publish stage and the UI thread
+    private final TripleBuffer<ResultSet> resultSets;
+    // Created once so posting to the UI thread does not allocate a lambda per frame
+    private final Runnable showResults;
+    // Whether boxes are sent to the overlay; off in the power-saving tiers
+    private volatile boolean overlayEnabled = true;
+    // Decides which tracked objects to announce and when
+    private final SpeechScheduler speechScheduler;
+    // Stage latencies, counters and the timelines of the last few seconds of frames
+    private static final int TIMELINE_FRAMES = 120;
+    private final PipelineMetrics metrics = new PipelineMetrics(Clock.SYSTEM, TIMELINE_FRAMES);
+
+    /**
+     * A reusable set of results shown by the overlay.
+     */
+    private static final class ResultSet {
+        final DetectionResult[] pool;
+        final List<DetectionResult> results;
+
+        ResultSet(int size) {
+            pool = new DetectionResult[size];
+            results = new ArrayList<>(size);
+            for (int i = 0; i < pool.length; i++) {
+                pool[i] = new DetectionResult(new RectF(), null, 0f);
+            }
+        }
+    }
 
+    /**
+     * Constructs the ObjectDetector without a refinement model.
+     */
+    public ObjectDetector(Context context, InterpreterPool<Interpreter> interpreters, List<String> labels,
+                          OverlayView overlayView, TextToSpeechManager ttsManager, StartupReport startupReport) {
+        this(context, interpreters, null, labels, overlayView, ttsManager, startupReport);
+    }
 
     /**
      * Constructs the ObjectDetector with the necessary components.
      *
      * @param context      The app context (used for Toasts and UI updates)
-     * @param tflite       The TensorFlow Lite model interpreter
+     * @param interpreters Warm TensorFlow Lite interpreters for the model
+     * @param refiner      Warm interpreter of a heavier model with the same labels for cascade mode, or null
      * @param labels       A list of label names for detected classes
      * @param overlayView  The custom view used to draw detection bounding boxes
      * @param ttsManager  Manages text-to-speech functionality to provide spoken feedback to the user
+     * @param startupReport Start-up timing, completed with the first detection result
      */
-    public ObjectDetector(Context context, Interpreter tflite, List<String> labels, OverlayView overlayView, TextToSpeechManager ttsManager) {
+    public ObjectDetector(Context context, InterpreterPool<Interpreter> interpreters, Interpreter refiner,
+                          List<String> labels, OverlayView overlayView, TextToSpeechManager ttsManager,
+                          StartupReport startupReport) {
         this.context = context;
-        this.tflite = tflite;
+        this.startupReport = startupReport;
         this.labels = labels;
         this.overlayView = overlayView;
         this.ttsManager = ttsManager;
+
+        // Read the model's input size and pick the decoder for its outputs; the warm interpreters
+        // share the mapped model and the inference stage borrows one per frame
+        ModelRunner model = new PooledRunner(interpreters);
+        stages = new DetectionStages(model, labels.size(), loadAnchors(context), loadPolicy(context, labels),
+                SCALE_MODE);
+        int maxDetections = stages.getMaxDetections();
+        Log.d("ObjectDetector", "Input " + model.getInputSpec() + ", outputs " + model.getOutputSpecs()
+                + ", max detections " + maxDetections);
+
+        tracker = new ObjectTracker(maxDetections, maxDetections, 0.3f, 2, 5);
+        trackedDetections = new DetectionBuffer(maxDetections);
+        policyTracks = new DetectionBuffer(maxDetections);
+        proximity = loadProximityEstimator(context, labels, maxDetections);
+        inputTransform = new InputTransform(stages.getInputWidth(), stages.getInputHeight(), SCALE_MODE);
+        refineTracks = new DetectionBuffer(maxDetections);
+        if (refiner != null) {
+            ModelRunner refinerRunner = new InterpreterRunner(refiner);
+            TensorSpec refineInput = refinerRunner.getInputSpec(); // [1, height, width, 3]
+            int refineWidth = refineInput.getDim(2);
+            int refineHeight = refineInput.getDim(1);
+            cascade = new CascadeController(CASCADE_MAX_REGIONS, refineWidth, refineHeight, maxDetections,
+                    CASCADE_BUDGET_NANOS, CASCADE_MAX_CREDIT_NANOS, CASCADE_CONFIDENT_SCORE, CASCADE_REFRESH_NANOS,
+                    CASCADE_MARGIN, CASCADE_MIN_SIZE, CASCADE_MERGE_IOU, Clock.SYSTEM);
+            stages.setCascade(refinerRunner, labels.size(), cascade);
+            Log.d("ObjectDetector", "Cascade with a " + refineWidth + "x" + refineHeight + " refinement model");
+        } else {
+            cascade = null;
+        }
+        convertFrame = slot -> {
+            long start = System.nanoTime();
+            stages.convert(yuvFrame, inputTransform, frameTimestampNanos, slot);
+            if (cascade != null) {
+                // The tracked boxes are replaced by the publish stage
+                synchronized (publishLock) {
+                    stages.planRefinements(trackedDetections, slot);
+                }
+                stages.convertRefinements(yuvFrame, slot);
+            }
+            recordStage(slot, PipelineMetrics.Stage.CONVERT, System.nanoTime() - start);
+            // Copy the planes before the camera image is released; a slot reused after
+            // a drop gives back the recording it still holds, unless it was begun by an earlier recorder
+            FrameRecorder frameRecorder = recorder;
+            if (frameRecorder != null) {
+                frameRecorder.cancel(slot.getRecording());
+                slot.setRecording(frameRecorder.begin(yuvFrame, frameTimestampNanos, frameRotation));
+            }
+            return true;
+        };
+        resultSets = new TripleBuffer<>(new ResultSet(maxDetections), new ResultSet(maxDetections),
+                new ResultSet(maxDetections));
+        showResults = () -> overlayView.setResults(resultSets.consume().results);
+        overlayView.setMetrics(metrics);
+        ttsManager.setMetrics(metrics);
+        this.speechScheduler = new SpeechScheduler(ttsManager, Clock.SYSTEM, labels,
+                SPEECH_QUEUE_SIZE, LABEL_COOLDOWN_NANOS, SPEECH_MAX_AGE_NANOS, URGENT_AREA_FRACTION,
+                UTTERANCE_TIMEOUT_NANOS, URGENT_DISTANCE_METRES, URGENT_TIME_TO_CONTACT_SECONDS);
+
+        List<FramePipeline.Stage<InferenceContext>> pipelineStages = new ArrayList<>();
+        pipelineStages.add(this::infer);
+        pipelineStages.add(this::postProcess);
+        if (cascade != null) {
+            pipelineStages.add(this::refine);
+        }
+        pipelineStages.add(this::publish);
+        pipeline = new StagedFramePipeline<>("detector", stages::newContext, pipelineStages,
+                error -> Log.e("ObjectDetector", "Detection failed: " + error.getMessage(), error),
+                cascade != null ? this::discard : null);
+        pipeline.start();
+    }
+
+    /**
+     * Gives back the refinement budget of a frame the pipeline dropped before its refinement ran.
+     */
+    private void discard(InferenceContext frame) {
+        cascade.cancel(frame.getCascadePlan());
+    }
+
+    /**
+     * Describes the interpreter's output tensors for decoder selection.
+     */
+    private static List<TensorSpec> outputSpecs(Interpreter tflite) {
+        List<TensorSpec> specs = new ArrayList<>();
+        for (int i = 0; i < tflite.getOutputTensorCount(); i++) {
+            specs.add(InterpreterFactory.describe(tflite.getOutputTensor(i)));
+        }
+        return specs;
+    }
+
+    /**
+     * Loads the anchor list if the app ships one (only needed for raw SSD outputs).
+     *
+     * @return The anchors, or null if there is no anchor file
+     */
+    private static float[] loadAnchors(Context context) {
+        try (InputStream in = context.getAssets().open(ANCHORS_ASSET)) {
+            return DetectionDecoders.readAnchors(in);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Loads the detection policy if the app ships one.
+     *
+     * @return The compiled policy, or one threshold for every class
+     */
+    private static DetectionPolicy loadPolicy(Context context, List<String> labels) {
+        try (InputStream in = context.getAssets().open(POLICY_ASSET)) {
+            return DetectionPolicy.read(in, labels);
+        } catch (IOException e) {
+            Log.w("ObjectDetector", "Using a single threshold: " + e.getMessage());
+            return DetectionPolicy.uniform(DetectionPolicy.DEFAULT_THRESHOLD);
+        }
+    }
+
+    /**
+     * Loads the typical object sizes used for distance estimation.
+     *
+     * @return The estimator; without the size list it still detects approaching objects
+     */
+    private static ProximityEstimator loadProximityEstimator(Context context, List<String> labels, int maxTracks) {
+        try (InputStream in = context.getAssets().open(OBJECT_SIZES_ASSET)) {
+            return ProximityEstimator.read(in, labels, maxTracks);
+        } catch (IOException e) {
+            Log.w("ObjectDetector", "No distance estimates: " + e.getMessage());
+            float[] unknown = new float[labels.size()];
+            Arrays.fill(unknown, Float.NaN);
+            return new ProximityEstimator(unknown, unknown, maxTracks);
+        }
     }
 
     /**
-     * Converts the camera image to a Bitmap, processes it through the model,
-     * and draws bounding boxes and labels for high-confidence detections.
+     * Converts the camera image to the model input and queues it for detection.
+     * Runs on the camera analyzer thread; the image is released as soon as it is converted.
      *
      * @param imageProxy The input image from CameraX
      */
     @Override
     public void analyze(@NonNull ImageProxy imageProxy) {
-        Log.d("TFLite", "analyze() called for a new frame.");
+        if (DebugLog.VERBOSE) {
+            Log.d("TFLite", "analyze() called for a new frame.");
+        }
+        long now = System.nanoTime();
+
+        // Skip inference on frames the scheduler does not need and move the tracked boxes instead
+        if (!scheduler.shouldRun()) {
+            metrics.increment(PipelineMetrics.Counter.FRAMES_SKIPPED);
+            imageProxy.close();
+            publishTracks(now, false);
+            return;
+        }
+
+        // The phone is still: fewer inferences, the tracked boxes stay where they were
+        if (!motionGate.shouldInfer(now)) {
+            metrics.increment(PipelineMetrics.Counter.FRAMES_STILL);
+            imageProxy.close();
+            publishTracks(now, false);
+            return;
+        }
+
         @SuppressLint("UnsafeOptInUsageError")
         Image mediaImage = imageProxy.getImage();
 
         if (mediaImage != null) {
             try {
-                // Convert the YUV image to RGB Bitmap
-                Bitmap bitmap = ImageUtils.toBitmapFromYUV(mediaImage);
-
-                // Resize to model input size
-                Bitmap resized = Bitmap.createScaledBitmap(bitmap, 320, 320, true);
-                TensorImage tensorImage = new TensorImage(DataType.UINT8);
-                tensorImage.load(resized);
-
-                // Prepare output arrays
-                float[][][] outputBoxes = new float[1][25][4];      // Bounding boxes
-                float[][] outputScores = new float[1][25];          // Confidence scores
-                float[][] outputClasses = new float[1][25];         // Class indices
-                float[] numDetections = new float[1];               // Number of detections
-
-                // Prepare input/output for model
-                Object[] inputs = new Object[]{tensorImage.getBuffer()};
-                Map<Integer, Object> outputs = new HashMap<>();
-                outputs.put(0, outputBoxes);
-                outputs.put(1, outputClasses);
-                outputs.put(2, outputScores);
-                outputs.put(3, numDetections);
-
-                // Run the model
-                tflite.runForMultipleInputsOutputs(inputs, outputs);
-
-                // Log raw model output to check if inference is working
-                Log.d("TFLite", "numDetections: " + numDetections[0]);
-
-                if (outputScores[0][0] > 0) {
-                    Log.d("TFLite", "First detection - Score: " + outputScores[0][0] +
-                            ", Class: " + outputClasses[0][0]);
+                // Wrap the YUV planes; convertFrame writes them into a free pipeline slot
+                ImageUtils.toYuvFrame(mediaImage, yuvFrame);
+                // Nothing moved since the last inference: the tracked boxes are still right
+                if (!sceneGate.shouldInfer(yuvFrame, now)) {
+                    metrics.increment(PipelineMetrics.Counter.FRAMES_UNCHANGED);
+                    publishTracks(now, false);
+                    return;
+                }
+                frameRotation = imageProxy.getImageInfo().getRotationDegrees();
+                prepareInput(frameRotation);
+                frameTimestampNanos = now;
+                metrics.increment(PipelineMetrics.Counter.FRAMES_ANALYSED);
+                if (pipeline.submit(convertFrame)) {
+                    motionGate.recordInference(now);
                 } else {
-                    Log.d("TFLite", "No high-confidence detections in this frame.");
+                    sceneGate.reset(); // Dropped, so the gate's reference was never analysed
                 }
+            } catch (Exception e) {
+                Log.e("ObjectDetector", "Detection failed: " + e.getMessage(), e);
+            } finally {
+                imageProxy.close(); // Always release the image
+            }
+        } else {
+            imageProxy.close(); // Safeguard if mediaImage is null
+        }
+    }
 
-                // Collect results
-                List<DetectionResult> results = new ArrayList<>();
-                List<String> detectedLabels = new ArrayList<>();  // Collect all detected labels
+    /**
+     * Sets up the input transform for the current frame: upright rotation,
+     * the region to analyse (whole frame or around the tracked objects) and the overlay size.
+     *
+     * @param rotationDegrees Clockwise rotation that makes the frame upright
+     */
+    private void prepareInput(int rotationDegrees) {
+        int width = yuvFrame.getWidth();
+        int height = yuvFrame.getHeight();
+        inputTransform.update(width, height, rotationDegrees);
+        inputTransform.setViewSize(overlayView.getWidth(), overlayView.getHeight());
 
-                Log.d("Output", "Model returned numDetections: " + numDetections[0]);
+        boolean useRoi;
+        synchronized (publishLock) {
+            useRoi = roiSelector.select(trackedDetections, inputTransform, roi);
+        }
+        if (useRoi) {
+            inputTransform.update(width, height, rotationDegrees, roi[0], roi[1], roi[2], roi[3]);
+        }
+    }
 
-                for (int i = 0; i < numDetections[0]; i++) {
-                    float score = outputScores[0][i];
-                    if (score > 0.7f) {
-                        int labelIndex = (int) outputClasses[0][i];
-                        String label = (labelIndex >= 0 && labelIndex < labels.size()) ? labels.get(labelIndex) : "Unknown";
+    /**
+     * Inference stage - runs the model on the converted frame.
+     */
+    private void infer(InferenceContext frame) throws Exception {
+        long start = System.nanoTime();
+        stages.infer(frame);
+        long latency = System.nanoTime() - start;
+        scheduler.recordInference(latency);
+        recordStage(frame, PipelineMetrics.Stage.INVOKE, latency);
 
-                        Log.d("Detection", "Class index: " + labelIndex + ", Label: " + label + ", Score: " + score);
+        FrameRecorder.Entry recording = frame.getRecording();
+        FrameRecorder frameRecorder = recorder;
+        if (recording != null && frameRecorder != null) {
+            frame.setRecording(null);
+            frameRecorder.commit(recording, frame.getOutputs());
+        }
+    }
 
-                        float[] box = outputBoxes[0][i]; // top, left, bottom, right
+    /**
+     * Post-processing stage - keeps the detections the policy allows, mapped back to the
+     * overlay through the frame's input transform, and matches them to the tracked objects.
+     */
+    private void postProcess(InferenceContext frame) {
+        long start = System.nanoTime();
+        tracker.predict(frame.getTimestampNanos(), policyTracks);
+        int kept = stages.postProcess(frame, policyTracks);
+        metrics.add(PipelineMetrics.Counter.DETECTIONS, kept);
 
-                        Log.d("BoxDebug", "Raw box: top=" + box[0] + ", left=" + box[1] + ", bottom=" + box[2] + ", right=" + box[3]);
-                        Log.d("BoxDebug", "Label: " + label + " Score: " + score);
+        // Log the decoded output to check if inference is working
+        if (DebugLog.VERBOSE) {
+            DetectionBuffer decoded = frame.getDecoded();
+            if (decoded.size() > 0) {
+                Log.d("TFLite", "Detections: " + kept + ", best - Score: " + decoded.getScore(0)
+                        + ", Class: " + decoded.getClassId(0));
+            } else {
+                Log.d("TFLite", "No high-confidence detections in this frame.");
+            }
+        }
+        viewFocalLengthPx = ProximityEstimator.focalLengthPx(focalRatio, frame.getTransform());
+        // In cascade mode the refinement stage merges its detections first
+        if (cascade == null) {
+            updateTracks(frame);
+        }
+        recordStage(frame, PipelineMetrics.Stage.DECODE, System.nanoTime() - start);
 
-                        // Scale the coordinates to match the bitmap size
-                        int previewWidth = overlayView.getWidth();
-                        int previewHeight = overlayView.getHeight();
+        if (startupReport.markFirstResult()) {
+            Log.i("Startup", startupReport.toJson());
+        }
+    }
 
-                        float left = Math.max(0f, box[1]) * previewWidth;
-                        float top = Math.max(0f, box[0]) * previewHeight;
-                        float right = Math.min(1f, box[3]) * previewWidth;
-                        float bottom = Math.min(1f, box[2]) * previewHeight;
+    /**
+     * Refinement stage (cascade mode) - runs the refinement model on the frame's planned
+     * regions with its own interpreter, merges the results and matches them to the tracked objects.
+     */
+    private void refine(InferenceContext frame) throws Exception {
+        long start = System.nanoTime();
+        int regions = frame.getRefinementCount();
+        if (regions > 0) {
+            tracker.predict(frame.getTimestampNanos(), refineTracks);
+            metrics.add(PipelineMetrics.Counter.REFINED_REGIONS, regions);
+        }
+        // Also without regions, so the frame's plan counts as used
+        stages.refine(frame, refineTracks);
+        updateTracks(frame);
+        recordStage(frame, PipelineMetrics.Stage.REFINE, System.nanoTime() - start);
+    }
 
-                        RectF rect = new RectF(left, top, right, bottom);
+    /**
+     * Matches the frame's detections to the tracks, moved by the phone's rotation since the frame was captured.
+     */
+    private void updateTracks(InferenceContext frame) {
+        motionCompensator.update(tracker, frame.getDetections(), frame.getTimestampNanos(), viewFocalLengthPx,
+                overlayView.getWidth(), overlayView.getHeight());
+    }
 
-                        results.add(new DetectionResult(rect, label, score));
-                        detectedLabels.add(label);
+    /**
+     * Publish stage - shows the tracked objects and speaks new labels.
+     */
+    private void publish(InferenceContext frame) {
+        long start = System.nanoTime();
+        publishTracks(start, true);
+        long end = System.nanoTime();
+        recordStage(frame, PipelineMetrics.Stage.PUBLISH, end - start);
 
-                        Log.d("TFLite", "Detected: " + label + " (" + score + ")");
-                    }
-                }
+        metrics.recordFrame(frame.getTimestampNanos(), end - frame.getTimestampNanos(), frame.getStageNanos());
+        metrics.increment(PipelineMetrics.Counter.FRAMES_PUBLISHED);
+        metrics.setGauge(PipelineMetrics.Gauge.FRAMES_DROPPED, pipeline.getDroppedFrames());
+        metrics.setGauge(PipelineMetrics.Gauge.FRAMES_FAILED, pipeline.getFailedFrames());
+        metrics.setGauge(PipelineMetrics.Gauge.INFERENCE_RATE_MILLIHZ,
+                (long) (scheduler.getCurrentRateHz() * 1000));
+    }
 
-                // Speak new object labels
-                if (!detectedLabels.isEmpty()) {
-                    noDetectionFrames = 0; // Reset counter if objects are detected
-                    ttsManager.speakMultiple(detectedLabels);
-                } else {
-                    noDetectionFrames++; // Increment if no objects detected
-
-                    // Clear last spoken labels only after 3 empty frames
-                    if (noDetectionFrames > 3) {
-                        Log.d("TTS", "Multiple empty frames - clearing spoken labels.");
-                        ttsManager.clearLastSpokenLabels();
-                        noDetectionFrames = 0; // Reset counter after clearing
-                    }
+    /**
+     * Records a stage duration in the metrics and in the frame's own timeline.
+     */
+    private void recordStage(InferenceContext frame, PipelineMetrics.Stage stage, long nanos) {
+        frame.getStageNanos()[stage.ordinal()] = nanos;
+        metrics.recordStage(stage, nanos);
+    }
+
+    /**
+     * Fills a result set with the tracked boxes predicted for the given time
+     * and posts it to the UI thread once.
+     *
+     * @param nowNanos Time to predict the boxes for
+     * @param speak    Whether to update speech (only after a real inference)
+     */
+    private void publishTracks(long nowNanos, boolean speak) {
+        synchronized (publishLock) {
+            motionCompensator.apply(tracker, nowNanos, viewFocalLengthPx, overlayView.getWidth(),
+                    overlayView.getHeight());
+            tracker.predict(nowNanos, trackedDetections);
+            proximity.update(trackedDetections, nowNanos, viewFocalLengthPx, overlayView.getWidth(),
+                    overlayView.getHeight());
+            boolean overlay = overlayEnabled;
+            if (overlay) {
+                ResultSet resultSet = resultSets.getBack();
+                List<DetectionResult> results = resultSet.results;
+                results.clear();
+
+                for (int i = 0; i < trackedDetections.size(); i++) {
+                    int labelIndex = trackedDetections.getClassId(i);
+                    String label = (labelIndex >= 0 && labelIndex < labels.size())
+                            ? labels.get(labelIndex) : "Unknown";
+
+                    DetectionResult result = resultSet.pool[i];
+                    result.set(trackedDetections.getLeft(i), trackedDetections.getTop(i),
+                            trackedDetections.getRight(i), trackedDetections.getBottom(i),
+                            label, trackedDetections.getScore(i), trackedDetections.getTrackId(i));
+                    result.setProximity(proximity.getDistance(i), proximity.getMotion(i));
+                    results.add(result);
                 }
+            }
 
-                // Pass results to OverlayView
-                if (context instanceof Activity) {
-                    ((Activity) context).runOnUiThread(() -> {
-                        overlayView.setResults(results);
-                    });
+            // Announce new objects, most important first, and keep them in the history
+            if (speak) {
+                speechScheduler.update(trackedDetections, proximity, overlayView.getWidth(),
+                        overlayView.getHeight());
+                metrics.setGauge(PipelineMetrics.Gauge.SPEECH_QUEUE_DEPTH, speechScheduler.getPendingCount());
+                DetectionHistory detectionHistory = history;
+                if (detectionHistory != null) {
+                    detectionHistory.append(trackedDetections, System.currentTimeMillis(), overlayView.getWidth(),
+                            overlayView.getHeight());
                 }
+            }
+            metrics.setGauge(PipelineMetrics.Gauge.TRACKED_OBJECTS, trackedDetections.size());
 
-            } catch (Exception e) {
-                Log.e("ObjectDetector", "Detection failed: " + e.getMessage(), e);
+            // Pass results to OverlayView - only post if the UI has taken the previous set
+            if (overlay && resultSets.publish() && context instanceof Activity) {
+                ((Activity) context).runOnUiThread(showResults);
+            }
+        }
+    }
+
+    /**
+     * Changes how often frames are analysed, e.g. 10 Hz when only speech is needed
+     * or 30 Hz for a smooth overlay. The scheduler still backs off under load.
+     *
+     * @param hz The target inference rate
+     */
+    public void setTargetRate(double hz) {
+        scheduler.setTargetRate(hz);
+    }
+
+    /**
+     * Turns drawing boxes on or off; tracking and speech carry on either way.
+     * Call from the UI thread, which hides the overlay view itself.
+     *
+     * @param enabled Whether results are sent to the overlay
+     */
+    public void setOverlayEnabled(boolean enabled) {
+        overlayEnabled = enabled;
+    }
+
+    /**
+     * @return Recent average inference time in nanoseconds, 0 before the first inference
+     */
+    public long getAverageInferenceNanos() {
+        return scheduler.getAverageLatencyNanos();
+    }
+
+    /**
+     * Sets the camera's intrinsics for distance estimation; a typical phone camera is
+     * assumed until they are known.
+     *
+     * @param focalLengthMm Focal length of the lens in mm
+     * @param sensorWidthMm Width of the sensor in mm, along the camera frame's width
+     */
+    public void setCameraIntrinsics(float focalLengthMm, float sensorWidthMm) {
+        if (focalLengthMm > 0 && sensorWidthMm > 0) {
+            focalRatio = focalLengthMm / sensorWidthMm;
+        }
+    }
+
+    /**
+     * Asks the refinement model to look at the whole of the next frame it can afford,
+     * e.g. when the user wants a more thorough scan.
+     *
+     * @return false if there is no refinement model
+     */
+    public boolean requestRefinement() {
+        if (cascade == null) {
+            return false;
+        }
+        cascade.requestRefinement();
+        return true;
+    }
+
+    /**
+     * Starts or stops recording analysed frames and their model outputs.
+     * The caller owns the recorder and closes it after stopping.
+     *
+     * @param recorder The recorder, or null to stop
+     */
+    public void setRecorder(FrameRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Starts or stops keeping the objects published after each inference.
+     * The caller owns the history and closes it after stopping: this waits for an append
+     * in progress, so once it returns no other thread is appending to the old history.
+     *
+     * @param history The history, or null to stop
+     */
+    public void setHistory(DetectionHistory history) {
+        synchronized (publishLock) {
+            this.history = history;
+        }
+    }
+
+    /**
+     * @return Receives gyroscope and accelerometer samples, e.g. from an {@link AndroidMotionSensor}
+     */
+    public MotionSensor.Listener getMotionListener() {
+        return motion;
+    }
+
+    /**
+     * @return Stage latencies, counters and recent frame timelines, exportable as JSON
+     */
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stops the background pipeline threads.
+     * Should be called from the activity's onDestroy method.
+     */
+    public void shutdown() {
+        pipeline.shutdown();
+    }
+
+    /**
+     * Runs the model with an interpreter borrowed from the pool for each frame, through
+     * the {@link ModelRunner} interface of the detection stages. The pool stays owned by the caller.
+     */
+    private static final class PooledRunner implements ModelRunner {
+        private final InterpreterPool<Interpreter> interpreters;
+
+        PooledRunner(InterpreterPool<Interpreter> interpreters) {
+            this.interpreters = interpreters;
+        }
+
+        @Override
+        public TensorSpec getInputSpec() {
+            return InterpreterFactory.describe(interpreters.peek().getInputTensor(0));
+        }
+
+        @Override
+        public List<TensorSpec> getOutputSpecs() {
+            return outputSpecs(interpreters.peek());
+        }
+
+        @Override
+        public void run(Object[] inputs, Map<Integer, Object> outputs) throws InterruptedException {
+            Interpreter interpreter = interpreters.acquire();
+            try {
+                interpreter.runForMultipleInputsOutputs(inputs, outputs);
             } finally {
-                imageProxy.close(); // Always release the image
+                interpreters.release(interpreter);
             }
-        } else {
-            imageProxy.close(); // Safeguard if mediaImage is null
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Runs an interpreter through the {@link ModelRunner} interface used by the cascade.
+     * The interpreter stays owned by the caller.
+     */
+    private static final class InterpreterRunner implements ModelRunner {
+        private final Interpreter interpreter;
+
+        InterpreterRunner(Interpreter interpreter) {
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        public TensorSpec getInputSpec() {
+            return InterpreterFactory.describe(interpreter.getInputTensor(0));
+        }
+
+        @Override
+        public List<TensorSpec> getOutputSpecs() {
+            return outputSpecs(interpreter);
+        }
+
+        @Override
+        public void run(Object[] inputs, Map<Integer, Object> outputs) {
+            interpreter.runForMultipleInputsOutputs(inputs, outputs);
+        }
+
+        @Override
+        public void close() {
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,330 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Lightweight multi-object tracker giving detections stable track IDs.
+ * Detections are matched to existing tracks by IoU (same class only), each track
+ * follows a constant-velocity model for its centre and size, and tracks need a few
+ * hits before they are shown (birth) and a few misses before they are removed (death).
+ * Between inference frames {@link #predict} moves the boxes along their velocity,
+ * so inference can run on every Nth frame while the overlay stays smooth.
+ *
+ * All state lives in preallocated primitive arrays; updating and predicting do not allocate.
+ * Methods are synchronized because updates and predictions come from different threads.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class ObjectTracker {
+    // Smoothing of the velocity estimate (0 = keep old, 1 = use newest measurement only)
+    private static final float VELOCITY_GAIN = 0.5f;
+    // Smoothing of the box position towards the new measurement
+    private static final float POSITION_GAIN = 0.8f;
+    // Predictions are not extrapolated further than this after the last measurement
+    private static final long MAX_PREDICTION_NANOS = 500_000_000L;
+
+    private final int maxTracks;
+    private final int maxDetections;
+    // Minimum IoU between a predicted track and a detection to match them
+    private final float iouThreshold;
+    // Hits needed before a track is reported
+    private final int minHits;
+    // Consecutive missed updates before a track is removed
+    private final int maxMisses;
+
+    // Track state, one entry per slot
+    private final boolean[] active;
+    private final int[] trackId;
+    private final int[] classId;
+    private final float[] score;
+    private final float[] centreX;
+    private final float[] centreY;
+    private final float[] width;
+    private final float[] height;
+    // Velocities in pixels per second
+    private final float[] velocityX;
+    private final float[] velocityY;
+    private final float[] velocityW;
+    private final float[] velocityH;
+    private final long[] updatedNanos;
+    private final int[] hits;
+    private final int[] misses;
+
+    // Scratch space for association
+    private final float[] iou;
+    private final boolean[] trackMatched;
+    private final boolean[] detectionMatched;
+
+    private int nextTrackId = 1;
+
+    /**
+     * @param maxTracks     Maximum number of tracks kept at once
+     * @param maxDetections Maximum number of detections passed to one update
+     * @param iouThreshold  Minimum IoU to associate a detection with a track
+     * @param minHits       Matches needed before a track is reported
+     * @param maxMisses     Missed updates tolerated before a track is dropped
+     */
+    public ObjectTracker(int maxTracks, int maxDetections, float iouThreshold, int minHits, int maxMisses) {
+        this.maxTracks = maxTracks;
+        this.maxDetections = maxDetections;
+        this.iouThreshold = iouThreshold;
+        this.minHits = minHits;
+        this.maxMisses = maxMisses;
+
+        active = new boolean[maxTracks];
+        trackId = new int[maxTracks];
+        classId = new int[maxTracks];
+        score = new float[maxTracks];
+        centreX = new float[maxTracks];
+        centreY = new float[maxTracks];
+        width = new float[maxTracks];
+        height = new float[maxTracks];
+        velocityX = new float[maxTracks];
+        velocityY = new float[maxTracks];
+        velocityW = new float[maxTracks];
+        velocityH = new float[maxTracks];
+        updatedNanos = new long[maxTracks];
+        hits = new int[maxTracks];
+        misses = new int[maxTracks];
+
+        iou = new float[maxTracks * maxDetections];
+        trackMatched = new boolean[maxTracks];
+        detectionMatched = new boolean[maxDetections];
+    }
+
+    /**
+     * Matches the detections of a new inference frame to the tracks.
+     * Matched tracks are corrected, unmatched detections start new tracks
+     * and unmatched tracks count a miss.
+     *
+     * @param detections     Detections of the frame (boxes in overlay pixels)
+     * @param timestampNanos Time the frame was captured
+     */
+    public synchronized void update(DetectionBuffer detections, long timestampNanos) {
+        int count = Math.min(detections.size(), maxDetections);
+
+        // IoU between every predicted track box and every detection of the same class
+        for (int t = 0; t < maxTracks; t++) {
+            trackMatched[t] = false;
+            if (!active[t]) {
+                continue;
+            }
+            float dt = seconds(timestampNanos - updatedNanos[t]);
+            float cx = centreX[t] + velocityX[t] * dt;
+            float cy = centreY[t] + velocityY[t] * dt;
+            float w = Math.max(1f, width[t] + velocityW[t] * dt);
+            float h = Math.max(1f, height[t] + velocityH[t] * dt);
+            for (int d = 0; d < count; d++) {
+                iou[t * maxDetections + d] = detections.getClassId(d) == classId[t]
+                        ? iou(cx - w / 2, cy - h / 2, cx + w / 2, cy + h / 2,
+                        detections.getLeft(d), detections.getTop(d),
+                        detections.getRight(d), detections.getBottom(d))
+                        : 0f;
+            }
+        }
+        for (int d = 0; d < count; d++) {
+            detectionMatched[d] = false;
+        }
+
+        // Greedy association: repeatedly take the best remaining pair
+        while (true) {
+            int bestTrack = -1;
+            int bestDetection = -1;
+            float best = iouThreshold;
+            for (int t = 0; t < maxTracks; t++) {
+                if (!active[t] || trackMatched[t]) {
+                    continue;
+                }
+                for (int d = 0; d < count; d++) {
+                    float value = iou[t * maxDetections + d];
+                    if (!detectionMatched[d] && value >= best) {
+                        best = value;
+                        bestTrack = t;
+                        bestDetection = d;
+                    }
+                }
+            }
+            if (bestTrack < 0) {
+                break;
+            }
+            trackMatched[bestTrack] = true;
+            detectionMatched[bestDetection] = true;
+            correct(bestTrack, detections, bestDetection, timestampNanos);
+        }
+
+        // Tracks without a detection count a miss; tentative tracks die at once
+        for (int t = 0; t < maxTracks; t++) {
+            if (active[t] && !trackMatched[t]) {
+                misses[t]++;
+                if (misses[t] > maxMisses || hits[t] < minHits) {
+                    active[t] = false;
+                }
+            }
+        }
+
+        // Unmatched detections start new tentative tracks
+        for (int d = 0; d < count; d++) {
+            if (!detectionMatched[d]) {
+                start(detections, d, timestampNanos);
+            }
+        }
+    }
+
+    /**
+     * Writes the confirmed tracks, moved to the given time, into a buffer.
+     *
+     * @param timestampNanos Time to predict the boxes for
+     * @param out            Receives one entry per confirmed track, with its track ID
+     * @return Number of tracks written
+     */
+    public synchronized int predict(long timestampNanos, DetectionBuffer out) {
+        out.clear();
+        for (int t = 0; t < maxTracks; t++) {
+            if (!active[t] || hits[t] < minHits) {
+                continue;
+            }
+            long elapsed = Math.min(Math.max(0L, timestampNanos - updatedNanos[t]), MAX_PREDICTION_NANOS);
+            float dt = seconds(elapsed);
+            float cx = centreX[t] + velocityX[t] * dt;
+            float cy = centreY[t] + velocityY[t] * dt;
+            float w = Math.max(1f, width[t] + velocityW[t] * dt);
+            float h = Math.max(1f, height[t] + velocityH[t] * dt);
+            int index = out.add(cx - w / 2, cy - h / 2, cx + w / 2, cy + h / 2, score[t], classId[t]);
+            if (index < 0) {
+                break;
+            }
+            out.setTrackId(index, trackId[t]);
+        }
+        return out.size();
+    }
+
+    /**
+     * Moves every track by a camera movement: a shift, then a rotation around a point.
+     * Velocities turn with the rotation, so tracks keep moving the way they did in the scene.
+     *
+     * @param dx     Shift to the right in pixels
+     * @param dy     Shift down in pixels
+     * @param roll   Clockwise rotation on screen in radians
+     * @param pivotX Centre of the rotation
+     * @param pivotY Centre of the rotation
+     */
+    public synchronized void shift(float dx, float dy, float roll, float pivotX, float pivotY) {
+        float cos = (float) Math.cos(roll);
+        float sin = (float) Math.sin(roll);
+        for (int t = 0; t < maxTracks; t++) {
+            if (!active[t]) {
+                continue;
+            }
+            float x = centreX[t] + dx - pivotX;
+            float y = centreY[t] + dy - pivotY;
+            centreX[t] = pivotX + x * cos - y * sin;
+            centreY[t] = pivotY + x * sin + y * cos;
+            float vx = velocityX[t];
+            velocityX[t] = vx * cos - velocityY[t] * sin;
+            velocityY[t] = vx * sin + velocityY[t] * cos;
+        }
+    }
+
+    /**
+     * Removes every track, e.g. when the camera restarts.
+     */
+    public synchronized void reset() {
+        for (int t = 0; t < maxTracks; t++) {
+            active[t] = false;
+        }
+    }
+
+    /**
+     * @return Number of tracks currently kept, including tentative ones
+     */
+    public synchronized int getActiveTracks() {
+        int count = 0;
+        for (int t = 0; t < maxTracks; t++) {
+            if (active[t]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void correct(int t, DetectionBuffer detections, int d, long timestampNanos) {
+        float measuredX = (detections.getLeft(d) + detections.getRight(d)) / 2;
+        float measuredY = (detections.getTop(d) + detections.getBottom(d)) / 2;
+        float measuredW = detections.getRight(d) - detections.getLeft(d);
+        float measuredH = detections.getBottom(d) - detections.getTop(d);
+
+        float dt = seconds(timestampNanos - updatedNanos[t]);
+        if (dt > 0) {
+            // Predict to this frame, then blend towards the measurement
+            float predictedX = centreX[t] + velocityX[t] * dt;
+            float predictedY = centreY[t] + velocityY[t] * dt;
+            float predictedW = width[t] + velocityW[t] * dt;
+            float predictedH = height[t] + velocityH[t] * dt;
+            float newX = predictedX + POSITION_GAIN * (measuredX - predictedX);
+            float newY = predictedY + POSITION_GAIN * (measuredY - predictedY);
+            float newW = predictedW + POSITION_GAIN * (measuredW - predictedW);
+            float newH = predictedH + POSITION_GAIN * (measuredH - predictedH);
+
+            velocityX[t] += VELOCITY_GAIN * ((newX - centreX[t]) / dt - velocityX[t]);
+            velocityY[t] += VELOCITY_GAIN * ((newY - centreY[t]) / dt - velocityY[t]);
+            velocityW[t] += VELOCITY_GAIN * ((newW - width[t]) / dt - velocityW[t]);
+            velocityH[t] += VELOCITY_GAIN * ((newH - height[t]) / dt - velocityH[t]);
+
+            centreX[t] = newX;
+            centreY[t] = newY;
+            width[t] = newW;
+            height[t] = newH;
+        } else {
+            centreX[t] = measuredX;
+            centreY[t] = measuredY;
+            width[t] = measuredW;
+            height[t] = measuredH;
+        }
+        score[t] = detections.getScore(d);
+        updatedNanos[t] = timestampNanos;
+        hits[t]++;
+        misses[t] = 0;
+    }
+
+    private void start(DetectionBuffer detections, int d, long timestampNanos) {
+        for (int t = 0; t < maxTracks; t++) {
+            if (active[t]) {
+                continue;
+            }
+            active[t] = true;
+            trackId[t] = nextTrackId++;
+            classId[t] = detections.getClassId(d);
+            score[t] = detections.getScore(d);
+            centreX[t] = (detections.getLeft(d) + detections.getRight(d)) / 2;
+            centreY[t] = (detections.getTop(d) + detections.getBottom(d)) / 2;
+            width[t] = detections.getRight(d) - detections.getLeft(d);
+            height[t] = detections.getBottom(d) - detections.getTop(d);
+            velocityX[t] = 0f;
+            velocityY[t] = 0f;
+            velocityW[t] = 0f;
+            velocityH[t] = 0f;
+            updatedNanos[t] = timestampNanos;
+            hits[t] = 1;
+            misses[t] = 0;
+            return;
+        }
+        // No free slot: the detection stays untracked this frame
+    }
+
+    private static float seconds(long nanos) {
+        return nanos / 1e9f;
+    }
+
+    /**
+     * Intersection over union of two boxes given as left, top, right, bottom.
+     */
+    static float iou(float l1, float t1, float r1, float b1, float l2, float t2, float r2, float b2) {
+        float iw = Math.min(r1, r2) - Math.max(l1, l2);
+        float ih = Math.min(b1, b2) - Math.max(t1, t2);
+        if (iw <= 0 || ih <= 0) {
+            return 0f;
+        }
+        float intersection = iw * ih;
+        float union = (r1 - l1) * (b1 - t1) + (r2 - l2) * (b2 - t2) - intersection;
+        return union > 0 ? intersection / union : 0f;
+    }
+}
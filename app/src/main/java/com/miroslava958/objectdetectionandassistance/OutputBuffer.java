@@ -0,0 +1,52 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A model output tensor received as a direct ByteBuffer, in the tensor's own type.
+ * {@link FloatOutputBuffer} holds FLOAT32 outputs and {@link QuantizedOutputBuffer}
+ * 8-bit ones; decoders read the flat array of either directly on hot loops and use
+ * {@link #get(int)} for the few values they need as real numbers.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public abstract class OutputBuffer {
+
+    /**
+     * Creates the buffer matching an output tensor's type and quantization.
+     *
+     * @param spec The output tensor
+     * @param size Number of elements in the tensor
+     * @return A float or quantized buffer
+     */
+    public static OutputBuffer forTensor(TensorSpec spec, int size) {
+        if (spec == null || !spec.isQuantized()) {
+            return new FloatOutputBuffer(size);
+        }
+        return new QuantizedOutputBuffer(size, spec.getDataType(), spec.getScale(), spec.getZeroPoint());
+    }
+
+    /**
+     * Rewinds the buffer so the interpreter can write a new output into it.
+     *
+     * @return The buffer to pass to the interpreter
+     */
+    public abstract ByteBuffer prepare();
+
+    /**
+     * Copies the latest output into the flat array in one bulk operation.
+     */
+    public abstract void load();
+
+    /**
+     * @param index Element index
+     * @return The real value of that element as of the last {@link #load()}
+     */
+    public abstract float get(int index);
+
+    /**
+     * @return Number of elements in the tensor
+     */
+    public abstract int size();
+}
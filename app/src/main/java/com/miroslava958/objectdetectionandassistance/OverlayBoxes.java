@@ -0,0 +1,212 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * The boxes shown by the overlay, kept in primitive arrays so updating and drawing
+ * do not allocate. Boxes glide from where they were shown at the last update to
+ * their new position over the time between updates, matched by track ID, so the
+ * overlay moves smoothly at the display rate while results arrive more slowly.
+ *
+ * Each update also reports the region that changed (the union of the boxes shown
+ * before and after it), so the view only redraws that part of the screen.
+ *
+ * Updates and reads must happen on the same thread (the UI thread).
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class OverlayBoxes {
+    // Longest time a box takes to reach its new position
+    static final long MAX_GLIDE_NANOS = 200_000_000L;
+
+    private final int capacity;
+    // Boxes being shown: start and end of each glide (left, top, right, bottom), with the
+    // track ID and label of each box. The next* arrays are filled by an update and then swapped in
+    private float[] from;
+    private float[] to;
+    private int[] trackIds;
+    private String[] labels;
+    private int count = 0;
+    private float[] nextFrom;
+    private float[] nextTo;
+    private int[] nextTrackIds;
+    private String[] nextLabels;
+    private int nextCount = 0;
+    // Positions shown when the current update arrived
+    private final float[] shown;
+    // When the current glide started, how long it lasts and whether any box moves
+    private long updateNanos = 0;
+    private long glideNanos = 0;
+    private boolean moving = false;
+
+    /**
+     * @param capacity Most boxes shown at once
+     */
+    public OverlayBoxes(int capacity) {
+        this.capacity = capacity;
+        from = new float[capacity * 4];
+        to = new float[capacity * 4];
+        trackIds = new int[capacity];
+        labels = new String[capacity];
+        nextFrom = new float[capacity * 4];
+        nextTo = new float[capacity * 4];
+        nextTrackIds = new int[capacity];
+        nextLabels = new String[capacity];
+        shown = new float[capacity * 4];
+    }
+
+    /**
+     * Starts collecting a new set of boxes.
+     */
+    public void beginUpdate() {
+        nextCount = 0;
+    }
+
+    /**
+     * Adds a box to the set being collected; boxes beyond the capacity are ignored.
+     *
+     * @param trackId Stable ID of the tracked object, or -1 to show the box without gliding
+     * @param label   Text shown with the box
+     */
+    public void add(float left, float top, float right, float bottom, int trackId, String label) {
+        if (nextCount == capacity) {
+            return;
+        }
+        int b = nextCount * 4;
+        nextTo[b] = left;
+        nextTo[b + 1] = top;
+        nextTo[b + 2] = right;
+        nextTo[b + 3] = bottom;
+        nextTrackIds[nextCount] = trackId;
+        nextLabels[nextCount] = label;
+        nextCount++;
+    }
+
+    /**
+     * Replaces the shown boxes with the collected ones. Boxes of objects already shown
+     * start gliding from their current position.
+     *
+     * @param nowNanos Time of the update
+     * @param dirty    Receives the changed region (left, top, right, bottom)
+     * @return false if nothing was shown before or after, so nothing needs redrawing
+     */
+    public boolean endUpdate(long nowNanos, float[] dirty) {
+        positionsAt(nowNanos, shown);
+        dirty[0] = Float.MAX_VALUE;
+        dirty[1] = Float.MAX_VALUE;
+        dirty[2] = -Float.MAX_VALUE;
+        dirty[3] = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            union(dirty, shown, i * 4);
+        }
+
+        for (int i = 0; i < nextCount; i++) {
+            int b = i * 4;
+            int previous = indexOf(nextTrackIds[i]);
+            float[] start = previous >= 0 ? shown : nextTo;
+            int s = previous >= 0 ? previous * 4 : b;
+            nextFrom[b] = start[s];
+            nextFrom[b + 1] = start[s + 1];
+            nextFrom[b + 2] = start[s + 2];
+            nextFrom[b + 3] = start[s + 3];
+            union(dirty, nextTo, b);
+        }
+        boolean changed = count > 0 || nextCount > 0;
+        moving = false;
+        for (int i = 0; i < nextCount * 4; i++) {
+            if (nextFrom[i] != nextTo[i]) {
+                moving = true;
+                break;
+            }
+        }
+
+        // Swap the buffers
+        float[] swapFrom = from;
+        from = nextFrom;
+        nextFrom = swapFrom;
+        float[] swapTo = to;
+        to = nextTo;
+        nextTo = swapTo;
+        int[] swapIds = trackIds;
+        trackIds = nextTrackIds;
+        nextTrackIds = swapIds;
+        String[] swapLabels = labels;
+        labels = nextLabels;
+        nextLabels = swapLabels;
+        count = nextCount;
+
+        // Glide over the time since the previous update, the expected time to the next one
+        glideNanos = updateNanos == 0 ? 0 : Math.min(MAX_GLIDE_NANOS, Math.max(0, nowNanos - updateNanos));
+        updateNanos = nowNanos;
+        return changed;
+    }
+
+    private int indexOf(int trackId) {
+        if (trackId < 0) {
+            return -1;
+        }
+        for (int i = 0; i < count; i++) {
+            if (trackIds[i] == trackId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void union(float[] bounds, float[] boxes, int b) {
+        bounds[0] = Math.min(bounds[0], boxes[b]);
+        bounds[1] = Math.min(bounds[1], boxes[b + 1]);
+        bounds[2] = Math.max(bounds[2], boxes[b + 2]);
+        bounds[3] = Math.max(bounds[3], boxes[b + 3]);
+    }
+
+    /**
+     * Computes where the boxes are shown at a given time.
+     *
+     * @param nowNanos Time to draw for
+     * @param out      Receives 4 values per box, at least {@link #size()} * 4 long
+     * @return true while boxes are still gliding, so another frame should be drawn
+     */
+    public boolean positionsAt(long nowNanos, float[] out) {
+        float t = glideNanos == 0 ? 1f : Math.min(1f, (nowNanos - updateNanos) / (float) glideNanos);
+        if (t < 0) {
+            t = 0;
+        }
+        for (int i = 0; i < count * 4; i++) {
+            out[i] = from[i] + (to[i] - from[i]) * t;
+        }
+        return moving && t < 1f;
+    }
+
+    /**
+     * Computes the region covered by the boxes for the whole glide, to redraw while they move.
+     *
+     * @param out Receives left, top, right, bottom
+     * @return false if there are no boxes
+     */
+    public boolean getGlideBounds(float[] out) {
+        if (count == 0) {
+            return false;
+        }
+        out[0] = Float.MAX_VALUE;
+        out[1] = Float.MAX_VALUE;
+        out[2] = -Float.MAX_VALUE;
+        out[3] = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            union(out, from, i * 4);
+            union(out, to, i * 4);
+        }
+        return true;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getTrackId(int index) {
+        return trackIds[index];
+    }
+
+    public String getLabel(int index) {
+        return labels[index];
+    }
+}
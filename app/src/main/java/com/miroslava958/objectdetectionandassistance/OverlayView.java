@@ -1,6 +1,7 @@
 package com.miroslava958.objectdetectionandassistance;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -10,23 +11,57 @@ import android.view.View;
 
 import androidx.annotation.NonNull;
 
-import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A view that draws bounding boxes and labels on top of the camera preview.
  * The class makes the visual feedback accessible and easy to interpret for users with low vision.
  * Designed to overlay object detection output from TensorFlow Lite on the live camera feed.
  *
+ * Drawing is kept cheap so it stays flat as the number of objects grows: boxes are held
+ * in primitive arrays ({@link OverlayBoxes}) and glide smoothly between updates, each label
+ * is rendered once into a cached bitmap instead of laying out shadowed text every frame,
+ * and only the region where boxes changed is invalidated.
+ *
  * @author Miroslava
  */
 public class OverlayView extends View {
-    // List of detection results on the view
-    private List<DetectionResult> results = new ArrayList<>();
+    // Most boxes drawn at once
+    private static final int MAX_BOXES = 64;
+    // Rendered labels kept; least recently drawn ones are dropped beyond this
+    private static final int LABEL_CACHE_SIZE = 32;
+    // Label position relative to the box, and the lowest baseline so it stays on screen
+    private static final float LABEL_OFFSET_X = 10;
+    private static final float LABEL_OFFSET_Y = 15;
+    private static final float MIN_LABEL_BASELINE = 50;
+    // Boxes shown, their target positions and glide between updates
+    private final OverlayBoxes boxes = new OverlayBoxes(MAX_BOXES);
+    // Box positions for the frame being drawn
+    private final float[] drawn = new float[MAX_BOXES * 4];
+    // Region to redraw after an update or while boxes glide, in view pixels
+    private final float[] dirty = new float[4];
     // Paint for drawing the bounding boxes
     private final Paint boxPaint = new Paint();
     // Paint for drawing the text labels
     private final Paint textPaint = new Paint();
+    // Labels rendered with their shadow, by text, in least recently drawn order
+    private final Map<String, Bitmap> labelCache =
+            new LinkedHashMap<String, Bitmap>(LABEL_CACHE_SIZE * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Bitmap> eldest) {
+                    return size() > LABEL_CACHE_SIZE;
+                }
+            };
+    // Space around the text in a label bitmap for the shadow, and the baseline within it
+    private final float labelPadding;
+    private final float labelBaseline;
+    private final int labelHeight;
+    // Widest label drawn so far, to include labels in the invalidated region
+    private float maxLabelWidth = 0;
+    // Receives the drawing time of each frame, if set
+    private PipelineMetrics metrics;
 
     /**
      * Constructor used when creating the view from layout.
@@ -50,16 +85,63 @@ public class OverlayView extends View {
         textPaint.setFakeBoldText(true); // Bold for emphasis
         textPaint.setShadowLayer(6.0f, 2.0f, 2.0f, Color.BLACK); // Add shadow for contrast
         textPaint.setAntiAlias(true); // Smooth text edges
+
+        // Shadow radius plus offset on every side
+        labelPadding = 8;
+        Paint.FontMetrics metrics = textPaint.getFontMetrics();
+        labelBaseline = labelPadding - metrics.ascent;
+        labelHeight = (int) Math.ceil(labelBaseline + metrics.descent + labelPadding);
     }
 
     /**
-     * Sets the list of results to be drawn.
+     * Sets the results to be drawn. The list is copied, so the caller can reuse it.
      *
      * @param results A list of DetectionResult objects to be visualised
      */
     public void setResults(List<DetectionResult> results) {
-        this.results = results;
-        invalidate(); // Request redraw of the view
+        boxes.beginUpdate();
+        for (int i = 0; i < results.size(); i++) {
+            DetectionResult result = results.get(i);
+            RectF box = result.getBoundingBox();
+            boxes.add(box.left, box.top, box.right, box.bottom, result.getTrackId(), result.getLabel());
+            // Render new labels now, so their width is known for the invalidated region
+            if (result.getLabel() != null) {
+                label(result.getLabel());
+            }
+        }
+        if (boxes.endUpdate(System.nanoTime(), dirty)) {
+            invalidateRegion(dirty, false);
+        }
+    }
+
+    /**
+     * Sets where drawing times are recorded.
+     *
+     * @param metrics The detection pipeline's metrics
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Invalidates a box region grown to cover the stroke and the labels drawn with the boxes.
+     *
+     * @param region      Left, top, right and bottom of the boxes
+     * @param onAnimation Redraw on the next display frame instead of straight away
+     */
+    private void invalidateRegion(float[] region, boolean onAnimation) {
+        float stroke = boxPaint.getStrokeWidth();
+        float labelTop = Math.max(region[1] - LABEL_OFFSET_Y, MIN_LABEL_BASELINE) - labelBaseline;
+        float lowestLabelTop = Math.max(region[3] - LABEL_OFFSET_Y, MIN_LABEL_BASELINE) - labelBaseline;
+        int left = (int) Math.floor(region[0] - stroke);
+        int top = (int) Math.floor(Math.min(region[1], labelTop) - stroke);
+        int right = (int) Math.ceil(region[2] + LABEL_OFFSET_X + maxLabelWidth + stroke);
+        int bottom = (int) Math.ceil(Math.max(region[3], lowestLabelTop + labelHeight) + stroke);
+        if (onAnimation) {
+            postInvalidateOnAnimation(left, top, right, bottom);
+        } else {
+            invalidate(left, top, right, bottom);
+        }
     }
 
     /**
@@ -70,19 +152,54 @@ public class OverlayView extends View {
     @Override
     protected void onDraw(@NonNull Canvas canvas) {
         super.onDraw(canvas);
+        long start = System.nanoTime();
 
-        for (DetectionResult result : results) {
-            RectF box = result.getBoundingBox();
+        boolean gliding = boxes.positionsAt(start, drawn);
+        for (int i = 0; i < boxes.size(); i++) {
+            int b = i * 4;
+            float left = drawn[b];
+            float top = drawn[b + 1];
 
             // Draw the bounding box
-            canvas.drawRect(box, boxPaint);
+            canvas.drawRect(left, top, drawn[b + 2], drawn[b + 3], boxPaint);
 
             // Draw the label slightly above the top-left of the box (ensure it's visible on screen)
-            float labelY = Math.max(box.top - 15, 50); // Prevent text from going above the screen
-            canvas.drawText(result.getLabel(), box.left + 10, labelY, textPaint);
+            String text = boxes.getLabel(i);
+            Bitmap label = text != null ? label(text) : null;
+            if (label != null) {
+                float baseline = Math.max(top - LABEL_OFFSET_Y, MIN_LABEL_BASELINE);
+                canvas.drawBitmap(label, left + LABEL_OFFSET_X - labelPadding, baseline - labelBaseline, null);
+            }
 
             // Log for debugging
-            android.util.Log.d("Overlay", "Drawing " + result.getLabel() + " at " + box);
+            if (DebugLog.VERBOSE) {
+                android.util.Log.d("Overlay", "Drawing " + text + " at " + left + "," + top);
+            }
+        }
+
+        // Keep drawing the glide at the display rate, only where the boxes move
+        if (gliding && boxes.getGlideBounds(dirty)) {
+            invalidateRegion(dirty, true);
+        }
+
+        if (metrics != null) {
+            metrics.recordStage(PipelineMetrics.Stage.DRAW, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the label rendered with its shadow, rendering it the first time it is shown.
+     */
+    private Bitmap label(String text) {
+        Bitmap bitmap = labelCache.get(text);
+        if (bitmap == null) {
+            float width = textPaint.measureText(text);
+            bitmap = Bitmap.createBitmap((int) Math.ceil(width + 2 * labelPadding), labelHeight,
+                    Bitmap.Config.ARGB_8888);
+            new Canvas(bitmap).drawText(text, labelPadding, labelBaseline, textPaint);
+            labelCache.put(text, bitmap);
+            maxLabelWidth = Math.max(maxLabelWidth, width + labelPadding);
         }
+        return bitmap;
     }
-}
\ No newline at end of file
+}
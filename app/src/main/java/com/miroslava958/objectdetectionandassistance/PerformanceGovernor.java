@@ -0,0 +1,219 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Chooses the {@link PerformanceTier} the app runs at during a long walk, from the
+ * battery, the thermal status and the measured inference time.
+ *
+ * Tiers are ordered from the most to the least demanding. The device signals set
+ * the most demanding tier allowed: a warm device is held one tier down per thermal
+ * level (the lowest from SEVERE up), a low battery allows at most the second lowest
+ * tier and a critical battery the lowest, unless the phone is charging. These limits
+ * apply straight away. Within them, inference slower than the tier's time budget
+ * (its share of time per inference at the tier's rate) for a while steps down one
+ * tier. Moving back up waits for the signals to allow it for a longer time; a tier
+ * left because inference was too slow also needs inference comfortably inside the
+ * better tier's budget.
+ *
+ * Hysteresis keeps the tier from oscillating: battery levels have to recover past a
+ * margin before they stop counting as low, the latency thresholds for stepping down
+ * and up are apart, and each move waits for its condition to hold since the last change.
+ *
+ * Plain Java with the platform behind {@link DeviceSignals} and a pluggable
+ * {@link Clock}, so whole walks can be simulated on the JVM.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class PerformanceGovernor {
+
+    /**
+     * Why the tier last changed.
+     */
+    public enum Reason {
+        START,
+        THERMAL,
+        BATTERY,
+        LATENCY,
+        RECOVERED
+    }
+
+    // Marks a condition that is not currently holding
+    private static final long NOT_SINCE = Long.MIN_VALUE;
+
+    private final PerformanceTier[] tiers;
+    private final DeviceSignals signals;
+    private final Clock clock;
+    // Battery percentages at or below which the battery is low or critical when not charging,
+    // and how far above them it has to recover to count as normal again
+    private final int lowBatteryPercent;
+    private final int criticalBatteryPercent;
+    private final int batteryHysteresis;
+    // Share of the time between inferences that inference may take before stepping down
+    private final double maxUtilisation;
+    // Fraction of the better tier's budget the latency has to be under to step up
+    private final double recoverFraction;
+    // How long inference has to be slow before stepping down, and things calm before stepping up
+    private final long downDelayNanos;
+    private final long upDelayNanos;
+
+    // Index of the current tier, 0 is the most demanding
+    private int tier = 0;
+    // Most demanding tier allowed after inference was too slow, relaxed as it speeds up
+    private int latencyFloor = 0;
+    private boolean batteryLow = false;
+    private boolean batteryCritical = false;
+    // Since when inference has been over budget, and since when a better tier has been possible
+    private long slowSince = NOT_SINCE;
+    private long recoverableSince = NOT_SINCE;
+    private Reason lastReason = Reason.START;
+    private int changes = 0;
+
+    /**
+     * @param tiers                  Tiers from the most to the least demanding, at least one
+     * @param signals                Battery and thermal status of the device
+     * @param clock                  Time source
+     * @param lowBatteryPercent      Battery level at or below which the app saves power, e.g. 20
+     * @param criticalBatteryPercent Battery level at or below which it runs at the lowest tier, e.g. 10
+     * @param batteryHysteresis      Percentage points above a level the battery must reach to leave it, e.g. 5
+     * @param maxUtilisation         Share of the time per inference it may take before stepping down, e.g. 0.75
+     * @param recoverFraction        Fraction of the better tier's budget to stay under before stepping up, e.g. 0.6
+     * @param downDelayNanos         How long inference must be slow before stepping down
+     * @param upDelayNanos           How long a better tier must be possible before stepping up
+     */
+    public PerformanceGovernor(PerformanceTier[] tiers, DeviceSignals signals, Clock clock,
+                               int lowBatteryPercent, int criticalBatteryPercent, int batteryHysteresis,
+                               double maxUtilisation, double recoverFraction,
+                               long downDelayNanos, long upDelayNanos) {
+        if (tiers.length == 0) {
+            throw new IllegalArgumentException("At least one tier is needed");
+        }
+        if (criticalBatteryPercent > lowBatteryPercent || batteryHysteresis < 0) {
+            throw new IllegalArgumentException("Invalid battery levels");
+        }
+        if (maxUtilisation <= 0 || recoverFraction <= 0 || recoverFraction >= 1) {
+            throw new IllegalArgumentException("Invalid latency thresholds");
+        }
+        this.tiers = tiers.clone();
+        this.signals = signals;
+        this.clock = clock;
+        this.lowBatteryPercent = lowBatteryPercent;
+        this.criticalBatteryPercent = criticalBatteryPercent;
+        this.batteryHysteresis = batteryHysteresis;
+        this.maxUtilisation = maxUtilisation;
+        this.recoverFraction = recoverFraction;
+        this.downDelayNanos = downDelayNanos;
+        this.upDelayNanos = upDelayNanos;
+    }
+
+    /**
+     * Reads the device signals and moves to another tier if needed. Call every few seconds.
+     *
+     * @param latencyNanos Recent average inference time, or 0 if there is none yet
+     * @return true if the tier changed
+     */
+    public synchronized boolean update(long latencyNanos) {
+        long now = clock.nanoTime();
+        int last = tiers.length - 1;
+
+        // The device signals set the most demanding tier allowed, and apply at once
+        int thermal = signals.getThermalStatus();
+        int thermalLimit = thermal >= DeviceSignals.THERMAL_SEVERE ? last : Math.min(Math.max(thermal, 0), last);
+        updateBattery();
+        int batteryLimit = batteryCritical ? last : batteryLow ? Math.max(0, last - 1) : 0;
+        int limit = Math.max(thermalLimit, batteryLimit);
+        if (limit > tier) {
+            return switchTo(limit, thermalLimit >= batteryLimit ? Reason.THERMAL : Reason.BATTERY);
+        }
+
+        // Inference that cannot keep up with the tier's rate steps down one tier after a while
+        if (latencyNanos > budgetNanos(tier) && tier < last) {
+            recoverableSince = NOT_SINCE;
+            if (slowSince == NOT_SINCE) {
+                slowSince = now;
+            }
+            if (now - slowSince < downDelayNanos) {
+                return false;
+            }
+            latencyFloor = tier + 1;
+            return switchTo(tier + 1, Reason.LATENCY);
+        }
+        slowSince = NOT_SINCE;
+
+        // Step back up one tier once the signals allow it for long enough, and after slow
+        // inference only when the better tier's budget would be met with room to spare
+        boolean recoverable = tier > Math.max(limit, latencyFloor)
+                || (tier > limit && latencyNanos < recoverFraction * budgetNanos(tier - 1));
+        if (recoverable) {
+            if (recoverableSince == NOT_SINCE) {
+                recoverableSince = now;
+            }
+            if (now - recoverableSince < upDelayNanos) {
+                return false;
+            }
+            latencyFloor = Math.min(latencyFloor, tier - 1);
+            return switchTo(tier - 1, Reason.RECOVERED);
+        }
+        recoverableSince = NOT_SINCE;
+        return false;
+    }
+
+    /**
+     * Updates the low and critical battery states, each left only above its level plus the margin.
+     */
+    private void updateBattery() {
+        int percent = signals.getBatteryPercent();
+        if (percent < 0 || signals.isCharging()) {
+            batteryLow = false;
+            batteryCritical = false;
+            return;
+        }
+        batteryLow = percent <= (batteryLow ? lowBatteryPercent + batteryHysteresis - 1 : lowBatteryPercent);
+        batteryCritical = percent <= (batteryCritical
+                ? criticalBatteryPercent + batteryHysteresis - 1 : criticalBatteryPercent);
+    }
+
+    /**
+     * @return The longest inference time a tier can sustain at its rate
+     */
+    private double budgetNanos(int index) {
+        return maxUtilisation * 1_000_000_000.0 / tiers[index].getInferenceHz();
+    }
+
+    private boolean switchTo(int index, Reason reason) {
+        tier = index;
+        lastReason = reason;
+        changes++;
+        slowSince = NOT_SINCE;
+        recoverableSince = NOT_SINCE;
+        return true;
+    }
+
+    /**
+     * @return The tier to run at
+     */
+    public synchronized PerformanceTier getTier() {
+        return tiers[tier];
+    }
+
+    /**
+     * @return Index of the current tier, 0 being the most demanding
+     */
+    public synchronized int getTierIndex() {
+        return tier;
+    }
+
+    public synchronized Reason getLastReason() {
+        return lastReason;
+    }
+
+    /**
+     * @return Number of tier changes so far
+     */
+    public synchronized int getChanges() {
+        return changes;
+    }
+
+    public synchronized boolean isBatteryLow() {
+        return batteryLow;
+    }
+}
@@ -0,0 +1,80 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * One level of work the app can run at: the camera analysis resolution, the
+ * target inference rate, the interpreter's CPU threads and whether boxes are drawn.
+ * The {@link PerformanceGovernor} moves between tiers ordered from the most to
+ * the least demanding.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public final class PerformanceTier {
+
+    private final String name;
+    // Camera analysis size, longer side first
+    private final int analysisWidth;
+    private final int analysisHeight;
+    private final double inferenceHz;
+    private final int threads;
+    private final boolean overlay;
+
+    /**
+     * @param name           Short name for logs and metrics, e.g. "full"
+     * @param analysisWidth  Longer side of the camera analysis frames in pixels
+     * @param analysisHeight Shorter side of the camera analysis frames in pixels
+     * @param inferenceHz    Target inference rate
+     * @param threads        Most CPU threads the interpreters may use
+     * @param overlay        Whether boxes are drawn over the preview
+     */
+    public PerformanceTier(String name, int analysisWidth, int analysisHeight, double inferenceHz,
+                           int threads, boolean overlay) {
+        if (analysisWidth <= 0 || analysisHeight <= 0 || inferenceHz <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Invalid tier " + name);
+        }
+        this.name = name;
+        this.analysisWidth = analysisWidth;
+        this.analysisHeight = analysisHeight;
+        this.inferenceHz = inferenceHz;
+        this.threads = threads;
+        this.overlay = overlay;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getAnalysisWidth() {
+        return analysisWidth;
+    }
+
+    public int getAnalysisHeight() {
+        return analysisHeight;
+    }
+
+    public double getInferenceHz() {
+        return inferenceHz;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean isOverlay() {
+        return overlay;
+    }
+
+    /**
+     * @param other Another tier
+     * @return true if switching to it needs the camera analysis rebound at a new resolution
+     */
+    public boolean needsRebind(PerformanceTier other) {
+        return analysisWidth != other.analysisWidth || analysisHeight != other.analysisHeight;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + analysisWidth + "x" + analysisHeight + ", " + inferenceHz + " Hz, "
+                + threads + " threads, overlay " + (overlay ? "on" : "off") + ")";
+    }
+}
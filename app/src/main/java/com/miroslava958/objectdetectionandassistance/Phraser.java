@@ -0,0 +1,77 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.List;
+
+/**
+ * Builds the short announcement for an object: its label, where it is and, when it
+ * matters, how close it is - "person left", "chair ahead, close", "car right, approaching".
+ * A few words per object keep each utterance well under a second, so speech keeps up
+ * with what the camera sees.
+ *
+ * Every phrase is built once up front, so announcing allocates nothing and the same
+ * object in the same place always gives the same string, which lets the speech engine
+ * cache the audio per phrase.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class Phraser {
+    // Where the object is, from the centre of its box
+    public static final int LEFT = 0;
+    public static final int AHEAD = 1;
+    public static final int RIGHT = 2;
+    // What is said about its distance
+    public static final int PLAIN = 0;
+    public static final int CLOSE = 1;
+    public static final int APPROACHING = 2;
+
+    private static final String[] DIRECTIONS = {"left", "ahead", "right"};
+    private static final String[] QUALIFIERS = {"", ", close", ", approaching"};
+    // Centres in the outer part of the view on each side are left or right
+    private static final float SIDE_FRACTION = 0.35f;
+
+    // Phrase for each class, direction and qualifier
+    private final String[] phrases;
+
+    /**
+     * @param labels Label text for each class ID
+     */
+    public Phraser(List<String> labels) {
+        phrases = new String[labels.size() * DIRECTIONS.length * QUALIFIERS.length];
+        for (int c = 0; c < labels.size(); c++) {
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                for (int q = 0; q < QUALIFIERS.length; q++) {
+                    phrases[index(c, d, q)] = labels.get(c) + " " + DIRECTIONS[d] + QUALIFIERS[q];
+                }
+            }
+        }
+    }
+
+    private static int index(int classId, int direction, int qualifier) {
+        return (classId * DIRECTIONS.length + direction) * QUALIFIERS.length + qualifier;
+    }
+
+    /**
+     * Gives the direction of an object seen from the camera.
+     *
+     * @param centreX   Horizontal centre of the object's box
+     * @param viewWidth Width of the view the box refers to
+     * @return {@link #LEFT}, {@link #AHEAD} or {@link #RIGHT}
+     */
+    public static int direction(float centreX, int viewWidth) {
+        if (centreX < viewWidth * SIDE_FRACTION) {
+            return LEFT;
+        }
+        return centreX > viewWidth * (1 - SIDE_FRACTION) ? RIGHT : AHEAD;
+    }
+
+    /**
+     * @param classId   Class of the object
+     * @param direction {@link #LEFT}, {@link #AHEAD} or {@link #RIGHT}
+     * @param qualifier {@link #PLAIN}, {@link #CLOSE} or {@link #APPROACHING}
+     * @return The phrase, always the same instance for the same arguments
+     */
+    public String phrase(int classId, int direction, int qualifier) {
+        return phrases[index(classId, direction, qualifier)];
+    }
+}
@@ -0,0 +1,223 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Low-overhead metrics for the detection pipeline: a latency histogram per stage,
+ * one for the time from an announcement to its first audio, event counters,
+ * gauges (values that go up and down, such as the speech queue depth) and a ring
+ * of recent frame timelines.
+ *
+ * Recording never locks or allocates, so it is always on, unlike the verbose
+ * logs. A snapshot can be written as JSON for offline analysis.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class PipelineMetrics {
+
+    /**
+     * Timed stages. The YUV conversion also resizes into the model input,
+     * so CONVERT covers both. REFINE only runs in cascade mode.
+     */
+    public enum Stage {
+        CONVERT,
+        INVOKE,
+        DECODE,
+        REFINE,
+        PUBLISH,
+        DRAW
+    }
+
+    /**
+     * Events counted since start.
+     */
+    public enum Counter {
+        FRAMES_ANALYSED,
+        FRAMES_SKIPPED,
+        FRAMES_UNCHANGED,     // Frames not analysed because the scene had not changed
+        FRAMES_STILL,         // Frames not analysed because the phone was still
+        REFINED_REGIONS,      // Crops or whole frames run through the refinement model
+        FRAMES_PUBLISHED,
+        DETECTIONS,
+        SPEECH_CACHE_HITS,    // Announcements played from a synthesised clip
+        SPEECH_CACHE_MISSES   // Announcements synthesised while speaking
+    }
+
+    /**
+     * Latest values of quantities that can go down as well as up.
+     */
+    public enum Gauge {
+        FRAMES_DROPPED,
+        FRAMES_FAILED,
+        SPEECH_QUEUE_DEPTH,
+        TRACKED_OBJECTS,
+        INFERENCE_RATE_MILLIHZ,
+        PERFORMANCE_TIER
+    }
+
+    // Cached because values() copies the array on every call
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final Gauge[] GAUGES = Gauge.values();
+    // Number of stage durations carried per frame
+    public static final int STAGE_COUNT = STAGES.length;
+
+    private final Clock clock;
+    private final long startNanos;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGE_COUNT];
+    private final LatencyHistogram frameLatency = new LatencyHistogram();
+    private final LatencyHistogram speechLatency = new LatencyHistogram();
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTERS.length);
+    private final AtomicLongArray gauges = new AtomicLongArray(GAUGES.length);
+    private final FrameTimeline timeline;
+
+    /**
+     * @param clock            Time source, used for the uptime in snapshots
+     * @param timelineCapacity Number of recent frame timelines kept
+     */
+    public PipelineMetrics(Clock clock, int timelineCapacity) {
+        this.clock = clock;
+        this.startNanos = clock.nanoTime();
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        timeline = new FrameTimeline(timelineCapacity, STAGE_COUNT);
+    }
+
+    /**
+     * Records how long one run of a stage took.
+     */
+    public void recordStage(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * Records a finished frame in the end-to-end histogram and the timeline.
+     *
+     * @param timestampNanos Capture time of the frame
+     * @param latencyNanos   Time from capture to result
+     * @param stageNanos     Duration of each stage, indexed by {@link Stage#ordinal()}
+     */
+    public void recordFrame(long timestampNanos, long latencyNanos, long[] stageNanos) {
+        frameLatency.record(latencyNanos);
+        timeline.record(timestampNanos, latencyNanos, stageNanos);
+    }
+
+    /**
+     * Records the time from asking for an announcement to its audio starting.
+     */
+    public void recordTimeToFirstAudio(long nanos) {
+        speechLatency.record(nanos);
+    }
+
+    public void increment(Counter counter) {
+        counters.incrementAndGet(counter.ordinal());
+    }
+
+    public void add(Counter counter, long amount) {
+        counters.addAndGet(counter.ordinal(), amount);
+    }
+
+    public void setGauge(Gauge gauge, long value) {
+        gauges.set(gauge.ordinal(), value);
+    }
+
+    public long getCounter(Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    public long getGauge(Gauge gauge) {
+        return gauges.get(gauge.ordinal());
+    }
+
+    /**
+     * @return A copy of one stage's histogram
+     */
+    public LatencyHistogram.Snapshot getStage(Stage stage) {
+        return histograms[stage.ordinal()].snapshot();
+    }
+
+    /**
+     * @return A copy of the capture-to-result histogram
+     */
+    public LatencyHistogram.Snapshot getFrameLatency() {
+        return frameLatency.snapshot();
+    }
+
+    /**
+     * @return A copy of the announcement-to-audio histogram
+     */
+    public LatencyHistogram.Snapshot getTimeToFirstAudio() {
+        return speechLatency.snapshot();
+    }
+
+    public FrameTimeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * Writes a snapshot of every metric as JSON. Latencies are in microseconds;
+     * timeline capture times are relative to when the metrics were created.
+     *
+     * @return The snapshot as a JSON object
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(4096);
+        json.append("{\"uptimeMs\":").append((clock.nanoTime() - startNanos) / 1_000_000L);
+
+        json.append(",\"counters\":{");
+        for (int i = 0; i < COUNTERS.length; i++) {
+            appendName(json, i, COUNTERS[i]).append(counters.get(i));
+        }
+        json.append("},\"gauges\":{");
+        for (int i = 0; i < GAUGES.length; i++) {
+            appendName(json, i, GAUGES[i]).append(gauges.get(i));
+        }
+
+        json.append("},\"stages\":{");
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            appendName(json, i, STAGES[i]);
+            appendHistogram(json, histograms[i].snapshot());
+        }
+        json.append("},\"frameLatency\":");
+        appendHistogram(json, frameLatency.snapshot());
+        json.append(",\"timeToFirstAudio\":");
+        appendHistogram(json, speechLatency.snapshot());
+
+        json.append(",\"timeline\":[");
+        long[][] frames = timeline.snapshot();
+        for (int f = 0; f < frames.length; f++) {
+            long[] frame = frames[f];
+            if (f > 0) {
+                json.append(',');
+            }
+            json.append("{\"timestampMs\":").append((frame[0] - startNanos) / 1_000_000L)
+                    .append(",\"latencyUs\":").append(frame[1] / 1000);
+            for (int i = 0; i < STAGE_COUNT; i++) {
+                json.append(",\"").append(STAGES[i].name().toLowerCase(Locale.ROOT)).append("Us\":")
+                        .append(frame[2 + i] / 1000);
+            }
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static StringBuilder appendName(StringBuilder json, int index, Enum<?> name) {
+        if (index > 0) {
+            json.append(',');
+        }
+        return json.append('"').append(name.name().toLowerCase(Locale.ROOT)).append("\":");
+    }
+
+    private static void appendHistogram(StringBuilder json, LatencyHistogram.Snapshot snapshot) {
+        json.append("{\"count\":").append(snapshot.getCount())
+                .append(",\"meanUs\":").append(snapshot.getMean() / 1000)
+                .append(",\"p50Us\":").append(snapshot.getPercentile(50) / 1000)
+                .append(",\"p90Us\":").append(snapshot.getPercentile(90) / 1000)
+                .append(",\"p99Us\":").append(snapshot.getPercentile(99) / 1000)
+                .append(",\"maxUs\":").append(snapshot.getMax() / 1000)
+                .append('}');
+    }
+}
@@ -0,0 +1,381 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Estimates how far away each tracked object is and whether it is coming closer,
+ * from a single camera.
+ *
+ * Distance uses the pinhole model: an object of real height H metres that appears
+ * h pixels tall is f * H / h metres away, where f is the focal length in the same
+ * pixels. Each class has a typical height and width; the height is used unless the
+ * box is cut off by the top or bottom of the view, then the width. A box cut off on
+ * every side gives an upper bound, as the object is larger than what is visible.
+ *
+ * Approach uses the growth of the box over time, which needs no real size: an object
+ * moving at constant speed towards the camera grows at a rate of 1 / time-to-contact.
+ * The growth rate is the slope of log box size over the last second of a track,
+ * fitted by least squares, so single noisy boxes do not flip the result.
+ *
+ * All state lives in preallocated primitive arrays; updating does not allocate.
+ * Not thread-safe: call from one thread at a time (the detector's publish lock).
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class ProximityEstimator {
+    // Direction of travel reported for each object
+    public static final int RECEDING = -1;
+    public static final int STEADY = 0;
+    public static final int APPROACHING = 1;
+
+    // Focal length / sensor width of a typical phone main camera, used without intrinsics
+    public static final float DEFAULT_FOCAL_RATIO = 0.8f;
+    // Boxes this close to the view edge are treated as cut off
+    private static final float EDGE_MARGIN = 2f;
+    // Size samples kept per track, and the time they cover
+    private static final int HISTORY = 16;
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+    // Samples closer together than this (e.g. a prediction right after an update) are skipped
+    private static final long MIN_SAMPLE_NANOS = 10_000_000L;
+    // Shortest history the direction is reported for
+    private static final long MIN_SPAN_NANOS = 300_000_000L;
+    // Growth rate (per second) beyond which an object is approaching or receding:
+    // 0.15 means contact in under about 7 seconds at the current speed
+    private static final float MOTION_RATE = 0.15f;
+    // Smoothing of the distance estimate (1 = newest measurement only)
+    private static final float DISTANCE_GAIN = 0.3f;
+    // Which box side the size history follows
+    private static final int AXIS_NONE = -1;
+    private static final int AXIS_HEIGHT = 0;
+    private static final int AXIS_WIDTH = 1;
+
+    // Typical size of each class in metres, by class ID; NaN = unknown
+    private final float[] classHeight;
+    private final float[] classWidth;
+
+    // Per-track state, one entry per slot
+    private final int maxTracks;
+    private final int[] slotTrack;
+    private final boolean[] slotUsed;
+    private final boolean[] slotSeen;
+    private final int[] slotAxis;
+    private final float[] slotDistance;
+    // Ring of (time, log size) samples, HISTORY per slot
+    private final long[] sampleNanos;
+    private final float[] sampleLogSize;
+    private final int[] sampleStart;
+    private final int[] sampleCount;
+
+    // Results of the last update, by index in the buffer
+    private float[] distance = new float[0];
+    private float[] timeToContact = new float[0];
+    private int[] motion = new int[0];
+
+    /**
+     * @param classHeight Typical height of each class in metres, NaN if unknown
+     * @param classWidth  Typical width of each class in metres, NaN if unknown
+     * @param maxTracks   Most objects followed at once
+     */
+    public ProximityEstimator(float[] classHeight, float[] classWidth, int maxTracks) {
+        if (classHeight.length != classWidth.length || maxTracks <= 0) {
+            throw new IllegalArgumentException("Invalid estimator settings");
+        }
+        this.classHeight = classHeight;
+        this.classWidth = classWidth;
+        this.maxTracks = maxTracks;
+        slotTrack = new int[maxTracks];
+        slotUsed = new boolean[maxTracks];
+        slotSeen = new boolean[maxTracks];
+        slotAxis = new int[maxTracks];
+        slotDistance = new float[maxTracks];
+        sampleNanos = new long[maxTracks * HISTORY];
+        sampleLogSize = new float[maxTracks * HISTORY];
+        sampleStart = new int[maxTracks];
+        sampleCount = new int[maxTracks];
+    }
+
+    /**
+     * Reads typical object sizes and compiles them for a model's labels.
+     * One class per line as "label: height width" in metres, '-' for an unknown
+     * dimension; '#' starts a comment. Classes not listed have no distance.
+     *
+     * @param in        The size list
+     * @param labels    The model's labels, indexed by class ID
+     * @param maxTracks Most objects followed at once
+     * @throws IOException if reading fails, a line is malformed or a label is not in the list
+     */
+    public static ProximityEstimator read(InputStream in, List<String> labels, int maxTracks) throws IOException {
+        float[] height = new float[labels.size()];
+        float[] width = new float[labels.size()];
+        Arrays.fill(height, Float.NaN);
+        Arrays.fill(width, Float.NaN);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            int colon = line.indexOf(':');
+            String[] sizes = colon < 0 ? new String[0] : line.substring(colon + 1).trim().split("\\s+");
+            if (sizes.length != 2) {
+                throw new IOException("Line " + lineNumber + ": expected 'label: height width': " + line);
+            }
+            String label = line.substring(0, colon).trim();
+            int id = -1;
+            for (int c = 0; c < labels.size() && id < 0; c++) {
+                if (labels.get(c).equalsIgnoreCase(label)) {
+                    id = c;
+                }
+            }
+            if (id < 0) {
+                throw new IOException("Line " + lineNumber + ": unknown label '" + label + "'");
+            }
+            try {
+                height[id] = size(sizes[0]);
+                width[id] = size(sizes[1]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + ": invalid size: " + line, e);
+            }
+        }
+        return new ProximityEstimator(height, width, maxTracks);
+    }
+
+    private static float size(String value) {
+        if (value.equals("-")) {
+            return Float.NaN;
+        }
+        float metres = Float.parseFloat(value);
+        if (!(metres > 0)) {
+            throw new NumberFormatException("Size must be positive: " + value);
+        }
+        return metres;
+    }
+
+    /**
+     * Converts camera intrinsics to a focal length in overlay pixels.
+     *
+     * @param focalRatio Focal length divided by the sensor width (both in mm); the sensor
+     *                   width is along the camera frame's width, before rotation
+     * @param transform  The frame's transform, with the view size set
+     * @return The focal length in view pixels, or NaN without a view mapping
+     */
+    public static float focalLengthPx(float focalRatio, InputTransform transform) {
+        if (!transform.hasViewMapping()) {
+            return Float.NaN;
+        }
+        return focalRatio * transform.getFrameWidth() * transform.getViewScale();
+    }
+
+    /**
+     * Updates the estimates from the tracked objects of one frame. Results are read
+     * by the objects' index in the buffer until the next update.
+     *
+     * @param tracked       Tracked objects with their track IDs (boxes in view pixels)
+     * @param nowNanos      Time of the boxes
+     * @param focalLengthPx Focal length in view pixels, or NaN if unknown (no distances)
+     * @param viewWidth     Width of the view the boxes refer to
+     * @param viewHeight    Height of the view the boxes refer to
+     */
+    public void update(DetectionBuffer tracked, long nowNanos, float focalLengthPx, int viewWidth, int viewHeight) {
+        if (distance.length < tracked.capacity()) {
+            distance = new float[tracked.capacity()];
+            timeToContact = new float[tracked.capacity()];
+            motion = new int[tracked.capacity()];
+        }
+        Arrays.fill(slotSeen, false);
+
+        for (int i = 0; i < tracked.size(); i++) {
+            distance[i] = Float.NaN;
+            timeToContact[i] = Float.POSITIVE_INFINITY;
+            motion[i] = STEADY;
+            int slot = slotFor(tracked.getTrackId(i));
+            if (slot < 0) {
+                continue;
+            }
+            slotSeen[slot] = true;
+
+            float left = tracked.getLeft(i);
+            float top = tracked.getTop(i);
+            float right = tracked.getRight(i);
+            float bottom = tracked.getBottom(i);
+            float w = right - left;
+            float h = bottom - top;
+            boolean heightVisible = top > EDGE_MARGIN && bottom < viewHeight - EDGE_MARGIN && h > 0;
+            boolean widthVisible = left > EDGE_MARGIN && right < viewWidth - EDGE_MARGIN && w > 0;
+
+            // Distance from the typical size along an uncut side
+            int classId = tracked.getClassId(i);
+            float realHeight = classId >= 0 && classId < classHeight.length ? classHeight[classId] : Float.NaN;
+            float realWidth = classId >= 0 && classId < classWidth.length ? classWidth[classId] : Float.NaN;
+            float measured = Float.NaN;
+            if (heightVisible && !Float.isNaN(realHeight)) {
+                measured = focalLengthPx * realHeight / h;
+            } else if (widthVisible && !Float.isNaN(realWidth)) {
+                measured = focalLengthPx * realWidth / w;
+            } else if (!heightVisible && !widthVisible) {
+                // Cut off everywhere: the object is at most this far
+                float fromHeight = focalLengthPx * realHeight / Math.max(h, 1f);
+                float fromWidth = focalLengthPx * realWidth / Math.max(w, 1f);
+                measured = Float.isNaN(fromHeight) ? fromWidth
+                        : Float.isNaN(fromWidth) ? fromHeight : Math.min(fromHeight, fromWidth);
+            }
+            if (Float.isNaN(measured) || Float.isInfinite(measured)) {
+                slotDistance[slot] = Float.NaN;
+            } else if (Float.isNaN(slotDistance[slot])) {
+                slotDistance[slot] = measured;
+            } else {
+                slotDistance[slot] += DISTANCE_GAIN * (measured - slotDistance[slot]);
+            }
+            distance[i] = slotDistance[slot];
+
+            // Growth of the box along one uncut side
+            int axis = heightVisible ? AXIS_HEIGHT : widthVisible ? AXIS_WIDTH : AXIS_NONE;
+            addSample(slot, axis, nowNanos, axis == AXIS_HEIGHT ? h : w);
+            float rate = growthRate(slot);
+            if (rate > 0) {
+                timeToContact[i] = 1f / rate;
+            }
+            if (!Float.isNaN(rate)) {
+                motion[i] = rate > MOTION_RATE ? APPROACHING : rate < -MOTION_RATE ? RECEDING : STEADY;
+            }
+        }
+
+        // Forget objects that are no longer tracked
+        for (int s = 0; s < maxTracks; s++) {
+            if (!slotSeen[s]) {
+                slotUsed[s] = false;
+            }
+        }
+    }
+
+    /**
+     * Finds the slot of a track, claiming a free one for a new track.
+     *
+     * @return The slot, or -1 if the track has no ID or every slot is in use
+     */
+    private int slotFor(int trackId) {
+        if (trackId < 0) {
+            return -1;
+        }
+        int free = -1;
+        for (int s = 0; s < maxTracks; s++) {
+            if (slotUsed[s] && slotTrack[s] == trackId) {
+                return s;
+            }
+            if (!slotUsed[s] && free < 0) {
+                free = s;
+            }
+        }
+        if (free >= 0) {
+            slotUsed[free] = true;
+            slotTrack[free] = trackId;
+            slotAxis[free] = AXIS_NONE;
+            slotDistance[free] = Float.NaN;
+            sampleCount[free] = 0;
+        }
+        return free;
+    }
+
+    private void addSample(int slot, int axis, long nowNanos, float size) {
+        if (axis != slotAxis[slot] || axis == AXIS_NONE) {
+            // Sizes along different sides are not comparable: start a new history
+            slotAxis[slot] = axis;
+            sampleCount[slot] = 0;
+            if (axis == AXIS_NONE) {
+                return;
+            }
+        }
+        int base = slot * HISTORY;
+        // Drop samples that left the window, or the oldest if the ring is full
+        while (sampleCount[slot] > 0
+                && (nowNanos - sampleNanos[base + sampleStart[slot]] > WINDOW_NANOS || sampleCount[slot] == HISTORY)) {
+            sampleStart[slot] = (sampleStart[slot] + 1) % HISTORY;
+            sampleCount[slot]--;
+        }
+        if (sampleCount[slot] > 0) {
+            int last = base + (sampleStart[slot] + sampleCount[slot] - 1) % HISTORY;
+            if (nowNanos - sampleNanos[last] < MIN_SAMPLE_NANOS) {
+                return;
+            }
+        } else {
+            sampleStart[slot] = 0;
+        }
+        int next = base + (sampleStart[slot] + sampleCount[slot]) % HISTORY;
+        sampleNanos[next] = nowNanos;
+        sampleLogSize[next] = (float) Math.log(size);
+        sampleCount[slot]++;
+    }
+
+    /**
+     * Least-squares slope of log size over time, per second.
+     *
+     * @return The growth rate, or NaN if the history is too short
+     */
+    private float growthRate(int slot) {
+        int count = sampleCount[slot];
+        if (count < 3) {
+            return Float.NaN;
+        }
+        int base = slot * HISTORY;
+        long first = sampleNanos[base + sampleStart[slot]];
+        long last = sampleNanos[base + (sampleStart[slot] + count - 1) % HISTORY];
+        if (last - first < MIN_SPAN_NANOS) {
+            return Float.NaN;
+        }
+        double meanT = 0;
+        double meanS = 0;
+        for (int k = 0; k < count; k++) {
+            int index = base + (sampleStart[slot] + k) % HISTORY;
+            meanT += (sampleNanos[index] - first) / 1e9;
+            meanS += sampleLogSize[index];
+        }
+        meanT /= count;
+        meanS /= count;
+        double covariance = 0;
+        double variance = 0;
+        for (int k = 0; k < count; k++) {
+            int index = base + (sampleStart[slot] + k) % HISTORY;
+            double t = (sampleNanos[index] - first) / 1e9 - meanT;
+            covariance += t * (sampleLogSize[index] - meanS);
+            variance += t * t;
+        }
+        return (float) (covariance / variance);
+    }
+
+    /**
+     * @return Estimated distance in metres of the object at an index, NaN if unknown
+     */
+    public float getDistance(int index) {
+        return distance[index];
+    }
+
+    /**
+     * @return Seconds until the object at an index reaches the camera at its current
+     * approach speed, or infinity if it is not approaching
+     */
+    public float getTimeToContact(int index) {
+        return timeToContact[index];
+    }
+
+    /**
+     * @return {@link #APPROACHING}, {@link #RECEDING} or {@link #STEADY} (also while unsure)
+     */
+    public int getMotion(int index) {
+        return motion[index];
+    }
+}
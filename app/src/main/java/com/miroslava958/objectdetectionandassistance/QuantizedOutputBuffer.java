@@ -0,0 +1,106 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A UINT8 or INT8 model output received as a direct ByteBuffer and read as a flat byte
+ * array, so fully quantized models need no float copy of their outputs.
+ *
+ * Decoders compare quantized values as keys: the unsigned byte value, with the sign bit
+ * flipped for INT8, which keeps the order of the real values (the scale is positive).
+ * A score threshold becomes one key threshold per frame through {@link #keyAbove(float)},
+ * and only values that pass are turned back into real numbers.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class QuantizedOutputBuffer extends OutputBuffer {
+    // Buffer the interpreter writes into
+    private final ByteBuffer buffer;
+    // Flat copy of the latest output
+    private final byte[] values;
+    // XOR applied to the unsigned byte to get its key: 0x80 for INT8, 0 for UINT8
+    private final int keyMask;
+    private final float scale;
+    // Zero point in key units
+    private final int keyZeroPoint;
+
+    /**
+     * @param size      Number of elements in the tensor
+     * @param dataType  UINT8 or INT8
+     * @param scale     Quantization scale
+     * @param zeroPoint Quantization zero point
+     */
+    public QuantizedOutputBuffer(int size, TensorSpec.DataType dataType, float scale, int zeroPoint) {
+        if (dataType == TensorSpec.DataType.FLOAT32 || !(scale > 0)) {
+            throw new IllegalArgumentException("Invalid quantized output " + dataType + ", scale " + scale);
+        }
+        boolean signed = dataType == TensorSpec.DataType.INT8;
+        buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        values = new byte[size];
+        keyMask = signed ? 0x80 : 0;
+        this.scale = scale;
+        keyZeroPoint = zeroPoint + (signed ? 128 : 0);
+    }
+
+    @Override
+    public ByteBuffer prepare() {
+        buffer.rewind();
+        return buffer;
+    }
+
+    /**
+     * Copies the latest output into the flat array.
+     *
+     * @return The flat array of raw values, valid until the next call
+     */
+    public byte[] read() {
+        buffer.rewind();
+        buffer.get(values);
+        buffer.rewind();
+        return values;
+    }
+
+    @Override
+    public void load() {
+        read();
+    }
+
+    @Override
+    public float get(int index) {
+        return dequantize((values[index] & 0xFF) ^ keyMask);
+    }
+
+    /**
+     * @return The mask turning a raw byte b into its key, (b &amp; 0xFF) ^ mask
+     */
+    public int getKeyMask() {
+        return keyMask;
+    }
+
+    /**
+     * @param key A value's key
+     * @return Its real value
+     */
+    public float dequantize(int key) {
+        return (key - keyZeroPoint) * scale;
+    }
+
+    /**
+     * Turns a threshold on real values into one on keys.
+     *
+     * @param threshold Threshold on real values
+     * @return The key k such that a value is above the threshold exactly when its key is above k,
+     * from -1 (every value passes) to 255 (none does)
+     */
+    public int keyAbove(float threshold) {
+        double key = Math.floor(threshold / (double) scale + keyZeroPoint);
+        return (int) Math.max(-1, Math.min(255, key));
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+}
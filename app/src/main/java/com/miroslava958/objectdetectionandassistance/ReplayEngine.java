@@ -0,0 +1,405 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays recorded frames through the same {@link DetectionStages} as {@link ObjectDetector} -
+ * YUV conversion into the letterboxed model input, inference, decoding, post-processing
+ * and tracking - without a camera, so performance and stability can be measured
+ * on the host JVM and compared between versions.
+ *
+ * Two pacing modes:
+ * - FAST runs every frame through the steps one after another as fast as possible
+ *   (nothing is dropped, so results are repeatable)
+ * - REALTIME feeds frames at their recorded times into a {@link StagedFramePipeline}
+ *   built like the app's, so frame drops and latency match what the device would see
+ *
+ * With a {@link SceneChangeGate} set, frames the gate finds unchanged skip inference as
+ * they do in the app; in FAST mode the tracked boxes are still predicted for them.
+ * With a refinement model set, frames also go through the cascade's refinement step.
+ *
+ * Boxes are reported in upright frame pixels.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class ReplayEngine {
+
+    /**
+     * How frames are fed into the pipeline.
+     */
+    public enum Pacing {
+        FAST,
+        REALTIME
+    }
+
+    // Recent frame timelines kept in the metrics
+    private static final int TIMELINE_FRAMES = 1000;
+
+    private final DetectionStages stages;
+    // Skips inference on frames that did not change, or null to analyse every frame
+    private SceneChangeGate sceneGate;
+    // Decides where the refinement model runs in cascade mode, or null
+    private CascadeController cascade;
+
+    // State of the current run
+    private ObjectTracker tracker;
+    private DetectionBuffer tracked;
+    // Tracked boxes at the time of the frame being post-processed
+    private DetectionBuffer policyTracks;
+    // Tracked boxes for planning and refining the cascade's regions
+    private DetectionBuffer planTracks;
+    private DetectionBuffer refineTracks;
+    private DetectionStability stability;
+    private PipelineMetrics metrics;
+    // Frame being submitted to the pipeline and its timestamp and rotation
+    private final YuvFrame frame = new YuvFrame();
+    private long frameTimestampNanos;
+    private int frameRotation;
+    // Frame timestamps are wall-clock times when paced in real time
+    private boolean realtime;
+    // Created once so submitting a frame does not allocate a lambda per frame
+    private final FramePipeline.FrameWriter<InferenceContext> convertFrame = slot -> {
+        convert(slot);
+        return true;
+    };
+
+    /**
+     * @param runner         Runs the model
+     * @param numClasses     Number of labels
+     * @param anchors        Anchors for raw SSD outputs, or null
+     * @param scoreThreshold Minimum detection score
+     * @param scaleMode      How frames are fitted into the model input
+     */
+    public ReplayEngine(ModelRunner runner, int numClasses, float[] anchors, float scoreThreshold,
+                        InputTransform.ScaleMode scaleMode) {
+        this(runner, numClasses, anchors, DetectionPolicy.uniform(scoreThreshold), scaleMode);
+    }
+
+    /**
+     * @param runner     Runs the model
+     * @param numClasses Number of labels
+     * @param anchors    Anchors for raw SSD outputs, or null
+     * @param policy     Decides which detections are kept
+     * @param scaleMode  How frames are fitted into the model input
+     */
+    public ReplayEngine(ModelRunner runner, int numClasses, float[] anchors, DetectionPolicy policy,
+                        InputTransform.ScaleMode scaleMode) {
+        this.stages = new DetectionStages(runner, numClasses, anchors, policy, scaleMode);
+    }
+
+    /**
+     * @param sceneGate Skips inference on unchanged frames, or null to analyse every frame
+     */
+    public void setSceneGate(SceneChangeGate sceneGate) {
+        this.sceneGate = sceneGate;
+    }
+
+    /**
+     * Turns on cascade mode.
+     *
+     * @param refiner    The refinement model, with the same labels as the main model
+     * @param numClasses Number of labels
+     * @param cascade    Decides where the refinement model runs
+     */
+    public void setCascade(ModelRunner refiner, int numClasses, CascadeController cascade) {
+        stages.setCascade(refiner, numClasses, cascade);
+        this.cascade = cascade;
+    }
+
+    /**
+     * Replays every frame of a source from the start.
+     *
+     * @param source The frames
+     * @param pacing FAST or REALTIME
+     * @return Throughput, latency and stability of the run
+     * @throws Exception if a frame fails in FAST mode
+     */
+    public Report run(FrameSource source, Pacing pacing) throws Exception {
+        int maxDetections = stages.getMaxDetections();
+        tracker = new ObjectTracker(maxDetections, maxDetections, 0.3f, 2, 5);
+        tracked = new DetectionBuffer(maxDetections);
+        policyTracks = new DetectionBuffer(maxDetections);
+        planTracks = new DetectionBuffer(maxDetections);
+        refineTracks = new DetectionBuffer(maxDetections);
+        stability = new DetectionStability(maxDetections);
+        metrics = new PipelineMetrics(Clock.SYSTEM, TIMELINE_FRAMES);
+        realtime = pacing == Pacing.REALTIME;
+        if (sceneGate != null) {
+            sceneGate.reset();
+        }
+        source.rewind();
+
+        long start = System.nanoTime();
+        Report report = pacing == Pacing.FAST ? runFast(source) : runRealtime(source);
+        report.wallNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private Report runFast(FrameSource source) throws Exception {
+        InferenceContext context = stages.newContext();
+        Report report = new Report(metrics, stability);
+        while (source.next(frame)) {
+            report.frames++;
+            frameTimestampNanos = source.getTimestampNanos();
+            frameRotation = source.getRotationDegrees();
+            if (sceneGate != null && !sceneGate.shouldInfer(frame, frameTimestampNanos)) {
+                report.unchanged++;
+                metrics.increment(PipelineMetrics.Counter.FRAMES_UNCHANGED);
+                tracker.predict(frameTimestampNanos, tracked);
+                stability.update(tracked);
+                continue;
+            }
+            metrics.increment(PipelineMetrics.Counter.FRAMES_ANALYSED);
+            convert(context);
+            infer(context);
+            postProcess(context);
+            if (cascade != null) {
+                refine(context);
+            }
+            publish(context);
+            report.processed++;
+        }
+        return report;
+    }
+
+    private Report runRealtime(FrameSource source) {
+        final Report report = new Report(metrics, stability);
+        List<FramePipeline.Stage<InferenceContext>> pipelineStages = new ArrayList<>();
+        pipelineStages.add(this::infer);
+        pipelineStages.add(this::postProcess);
+        if (cascade != null) {
+            pipelineStages.add(this::refine);
+        }
+        pipelineStages.add(this::publish);
+        StagedFramePipeline<InferenceContext> pipeline = new StagedFramePipeline<>("replay",
+                stages::newContext, pipelineStages, error -> report.lastError = error,
+                cascade != null ? slot -> cascade.cancel(slot.getCascadePlan()) : null);
+        pipeline.start();
+        try {
+            long startNanos = System.nanoTime();
+            long firstTimestamp = 0;
+            while (source.next(frame)) {
+                long timestamp = source.getTimestampNanos();
+                if (report.frames == 0) {
+                    firstTimestamp = timestamp;
+                }
+                // Wait until the frame would have arrived from the camera
+                long due = startNanos + (timestamp - firstTimestamp);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                report.frames++;
+                // The tracker belongs to the stage threads here, so unchanged frames are only counted
+                if (sceneGate != null && !sceneGate.shouldInfer(frame, due)) {
+                    report.unchanged++;
+                    metrics.increment(PipelineMetrics.Counter.FRAMES_UNCHANGED);
+                    continue;
+                }
+                metrics.increment(PipelineMetrics.Counter.FRAMES_ANALYSED);
+                frameTimestampNanos = due;
+                frameRotation = source.getRotationDegrees();
+                if (!pipeline.submit(convertFrame) && sceneGate != null) {
+                    sceneGate.reset();
+                }
+            }
+            waitForIdle(pipeline);
+        } finally {
+            pipeline.shutdown();
+        }
+        report.processed = pipeline.getCompletedFrames();
+        report.dropped = pipeline.getDroppedFrames();
+        report.failed = pipeline.getFailedFrames();
+        return report;
+    }
+
+    /**
+     * Waits until every submitted frame has been completed, dropped or failed.
+     */
+    private static void waitForIdle(FramePipeline<?> pipeline) {
+        while (pipeline.getCompletedFrames() + pipeline.getDroppedFrames() + pipeline.getFailedFrames()
+                < pipeline.getSubmittedFrames()) {
+            LockSupport.parkNanos(1_000_000L);
+        }
+    }
+
+    /**
+     * Convert step - the current frame into the slot's model input, with boxes mapped
+     * back to upright frame pixels.
+     */
+    private void convert(InferenceContext slot) {
+        long start = System.nanoTime();
+        InputTransform transform = slot.getTransform();
+        transform.update(frame.getWidth(), frame.getHeight(), frameRotation);
+        transform.setViewSize(transform.getUprightWidth(), transform.getUprightHeight());
+        stages.convert(frame, transform, frameTimestampNanos, slot);
+        if (cascade != null) {
+            tracker.predict(frameTimestampNanos, planTracks);
+            stages.planRefinements(planTracks, slot);
+            stages.convertRefinements(frame, slot);
+        }
+        recordStage(slot, PipelineMetrics.Stage.CONVERT, System.nanoTime() - start);
+    }
+
+    private void infer(InferenceContext slot) throws Exception {
+        long start = System.nanoTime();
+        stages.infer(slot);
+        recordStage(slot, PipelineMetrics.Stage.INVOKE, System.nanoTime() - start);
+    }
+
+    private void postProcess(InferenceContext slot) {
+        long start = System.nanoTime();
+        tracker.predict(slot.getTimestampNanos(), policyTracks);
+        int kept = stages.postProcess(slot, policyTracks);
+        metrics.add(PipelineMetrics.Counter.DETECTIONS, kept);
+        // In cascade mode the refinement step merges its detections first
+        if (cascade == null) {
+            tracker.update(slot.getDetections(), slot.getTimestampNanos());
+        }
+        recordStage(slot, PipelineMetrics.Stage.DECODE, System.nanoTime() - start);
+    }
+
+    private void refine(InferenceContext slot) throws Exception {
+        long start = System.nanoTime();
+        int regions = slot.getRefinementCount();
+        if (regions > 0) {
+            tracker.predict(slot.getTimestampNanos(), refineTracks);
+            metrics.add(PipelineMetrics.Counter.REFINED_REGIONS, regions);
+        }
+        // Also without regions, so the frame's plan counts as used
+        stages.refine(slot, refineTracks);
+        tracker.update(slot.getDetections(), slot.getTimestampNanos());
+        recordStage(slot, PipelineMetrics.Stage.REFINE, System.nanoTime() - start);
+    }
+
+    private void publish(InferenceContext slot) {
+        long start = System.nanoTime();
+        tracker.predict(slot.getTimestampNanos(), tracked);
+        stability.update(tracked);
+        long[] stageNanos = slot.getStageNanos();
+        recordStage(slot, PipelineMetrics.Stage.PUBLISH, System.nanoTime() - start);
+
+        // Without pacing the frame's timestamp is the recording's, so latency is the sum of the stages
+        long latency = 0;
+        if (realtime) {
+            latency = System.nanoTime() - slot.getTimestampNanos();
+        } else {
+            for (long nanos : stageNanos) {
+                latency += nanos;
+            }
+        }
+        metrics.recordFrame(slot.getTimestampNanos(), latency, stageNanos);
+        metrics.increment(PipelineMetrics.Counter.FRAMES_PUBLISHED);
+    }
+
+    private void recordStage(InferenceContext slot, PipelineMetrics.Stage stage, long nanos) {
+        slot.getStageNanos()[stage.ordinal()] = nanos;
+        metrics.recordStage(stage, nanos);
+    }
+
+    /**
+     * Outcome of one replay.
+     */
+    public static final class Report {
+        private final PipelineMetrics metrics;
+        private final DetectionStability stability;
+        private long frames;
+        private long processed;
+        private long unchanged;
+        private long dropped;
+        private long failed;
+        private long wallNanos;
+        private volatile Throwable lastError;
+
+        Report(PipelineMetrics metrics, DetectionStability stability) {
+            this.metrics = metrics;
+            this.stability = stability;
+        }
+
+        /**
+         * @return Frames read from the source
+         */
+        public long getFrames() {
+            return frames;
+        }
+
+        /**
+         * @return Frames that went through every step
+         */
+        public long getProcessed() {
+            return processed;
+        }
+
+        /**
+         * @return Frames the scene change gate kept out of inference
+         */
+        public long getUnchanged() {
+            return unchanged;
+        }
+
+        /**
+         * @return Frames dropped because the pipeline was busy (REALTIME only)
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return The last error thrown by a stage (REALTIME only), or null
+         */
+        public Throwable getLastError() {
+            return lastError;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * @return Processed frames per second of wall time
+         */
+        public double getFps() {
+            return wallNanos == 0 ? 0 : processed * 1e9 / wallNanos;
+        }
+
+        public PipelineMetrics getMetrics() {
+            return metrics;
+        }
+
+        public DetectionStability getStability() {
+            return stability;
+        }
+
+        /**
+         * @return The report, per-stage latency percentiles and recent timelines as JSON
+         */
+        public String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"frames\":%d,\"processed\":%d,\"unchanged\":%d,\"dropped\":%d,\"failed\":%d,\"wallMs\":%d,\"fps\":%.2f,"
+                            + "\"stability\":{\"distinctTracks\":%d,\"meanTrackLength\":%.2f,"
+                            + "\"meanJitter\":%.4f,\"flickerRate\":%.4f},\"metrics\":%s}",
+                    frames, processed, unchanged, dropped, failed, wallNanos / 1_000_000L, getFps(),
+                    stability.getDistinctTracks(), stability.getMeanTrackLength(),
+                    stability.getMeanJitter(), stability.getFlickerRate(), metrics.toJson());
+        }
+
+        @Override
+        public String toString() {
+            LatencyHistogram.Snapshot invoke = metrics.getStage(PipelineMetrics.Stage.INVOKE);
+            return String.format(Locale.ROOT,
+                    "%d frames, %d processed, %d unchanged, %d dropped, %.1f fps, invoke p50 %.2f ms p99 %.2f ms, "
+                            + "%d objects, %.1f frames per object, jitter %.3f, flicker %.3f",
+                    frames, processed, unchanged, dropped, getFps(), invoke.getPercentile(50) / 1e6,
+                    invoke.getPercentile(99) / 1e6, stability.getDistinctTracks(),
+                    stability.getMeanTrackLength(), stability.getMeanJitter(), stability.getFlickerRate());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Chooses the region of the frame to run inference on.
+ * While objects are being tracked, inference can be restricted to a region around
+ * them: the same model input then covers fewer camera pixels, so small objects get
+ * more input resolution for the same compute. The region is the union of the
+ * tracked boxes plus a margin, grown to the model's aspect ratio. Every few
+ * inferences the whole frame is used again so new objects are still found.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class RoiSelector {
+    // Margin added on each side of the tracked boxes, as a share of their union size
+    private final float margin;
+    // Smallest region, as a share of the shorter frame side
+    private final float minSizeFraction;
+    // Regions covering more than this share of the frame are not worth cropping
+    private final float maxAreaFraction;
+    // Every Nth inference looks at the whole frame
+    private final int fullFrameInterval;
+    // Inferences since the whole frame was last used
+    private int sinceFullFrame = 0;
+
+    /**
+     * @param margin            Margin around the tracked boxes, as a share of their union size
+     * @param minSizeFraction   Smallest region side, as a share of the shorter frame side
+     * @param maxAreaFraction   Use the whole frame when the region would cover more than this share
+     * @param fullFrameInterval Use the whole frame at least every this many inferences
+     */
+    public RoiSelector(float margin, float minSizeFraction, float maxAreaFraction, int fullFrameInterval) {
+        if (fullFrameInterval < 1) {
+            throw new IllegalArgumentException("Full frame interval must be at least 1");
+        }
+        this.margin = margin;
+        this.minSizeFraction = minSizeFraction;
+        this.maxAreaFraction = maxAreaFraction;
+        this.fullFrameInterval = fullFrameInterval;
+    }
+
+    /**
+     * Picks the region for the next inference.
+     *
+     * @param tracked   Tracked boxes in view pixels
+     * @param transform Transform updated for the whole frame, with the view size set
+     * @param roi       Receives {left, top, right, bottom} in upright frame pixels
+     * @return true if a region was chosen, false to use the whole frame
+     */
+    public boolean select(DetectionBuffer tracked, InputTransform transform, float[] roi) {
+        if (tracked.size() == 0 || !transform.hasViewMapping() || sinceFullFrame >= fullFrameInterval - 1) {
+            sinceFullFrame = 0;
+            return false;
+        }
+        float frameWidth = transform.getUprightWidth();
+        float frameHeight = transform.getUprightHeight();
+
+        // Union of the tracked boxes in upright frame pixels
+        float left = Float.MAX_VALUE;
+        float top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE;
+        float bottom = -Float.MAX_VALUE;
+        for (int i = 0; i < tracked.size(); i++) {
+            left = Math.min(left, transform.viewToUprightX(tracked.getLeft(i)));
+            top = Math.min(top, transform.viewToUprightY(tracked.getTop(i)));
+            right = Math.max(right, transform.viewToUprightX(tracked.getRight(i)));
+            bottom = Math.max(bottom, transform.viewToUprightY(tracked.getBottom(i)));
+        }
+
+        float minSize = minSizeFraction * Math.min(frameWidth, frameHeight);
+        float width = Math.max(minSize, (right - left) * (1 + 2 * margin));
+        float height = Math.max(minSize, (bottom - top) * (1 + 2 * margin));
+
+        // Grow to the model aspect ratio so no input pixels are wasted on padding
+        float aspect = (float) transform.getModelWidth() / transform.getModelHeight();
+        if (width < height * aspect) {
+            width = height * aspect;
+        } else {
+            height = width / aspect;
+        }
+        width = Math.min(width, frameWidth);
+        height = Math.min(height, frameHeight);
+
+        if (width * height > maxAreaFraction * frameWidth * frameHeight) {
+            sinceFullFrame = 0;
+            return false;
+        }
+
+        // Centre on the objects, then shift back inside the frame
+        float centreX = (left + right) / 2;
+        float centreY = (top + bottom) / 2;
+        float roiLeft = Math.max(0f, Math.min(frameWidth - width, centreX - width / 2));
+        float roiTop = Math.max(0f, Math.min(frameHeight - height, centreY - height / 2));
+        roi[0] = roiLeft;
+        roi[1] = roiTop;
+        roi[2] = roiLeft + width;
+        roi[3] = roiTop + height;
+        sinceFullFrame++;
+        return true;
+    }
+
+    /**
+     * Starts again from a whole-frame inference.
+     */
+    public void reset() {
+        sinceFullFrame = 0;
+    }
+}
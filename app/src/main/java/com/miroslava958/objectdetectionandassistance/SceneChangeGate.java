@@ -0,0 +1,177 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decides whether a camera frame differs enough from the last analysed one to be worth
+ * running inference on. When the user stands still the camera keeps delivering nearly
+ * identical frames; for those the tracked boxes of the last inference are still right,
+ * so the tracker alone can carry them forward.
+ *
+ * The frame is reduced to a small signature: the mean luma of each block of a coarse
+ * grid, read straight from the Y plane of the camera buffer (every few pixels, no copy,
+ * chroma ignored). A block has changed when its mean moved by more than a few luma
+ * levels, which averages away sensor noise. Inference runs when enough of the blocks
+ * changed, when the frame size changed, or when too long has passed since the last
+ * inference so new objects are never missed for long. The signature of a frame that goes
+ * through inference becomes the reference for the following frames, so slow drift still
+ * adds up to a change.
+ *
+ * Sampling a 640x480 frame every 4th pixel reads ~19,000 bytes, a few tens of microseconds,
+ * against the tens of milliseconds of an inference.
+ *
+ * Not thread-safe: call from the camera analyzer thread only.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class SceneChangeGate {
+    // Signature grid size in blocks
+    private final int gridWidth;
+    private final int gridHeight;
+    // Every Nth pixel of every Nth row is read
+    private final int sampleStep;
+    // Mean luma change (0-255) above which a block has changed
+    private final int blockThreshold;
+    // Share of changed blocks at which the frame goes through inference
+    private final float changedFraction;
+    // Longest time between inferences, however static the scene
+    private final long maxSkipNanos;
+
+    // Block means of the current frame and of the last frame that went through inference
+    private final int[] signature;
+    private final int[] reference;
+    // Size of the reference frame; 0 = no reference yet
+    private int referenceWidth;
+    private int referenceHeight;
+    private long referenceNanos;
+    // Share of blocks that changed in the last frame checked
+    private float lastChange;
+    private long inferredFrames;
+    private long skippedFrames;
+
+    /**
+     * @param gridWidth       Signature columns
+     * @param gridHeight      Signature rows
+     * @param sampleStep      Read every this many pixels across and down, 1 = every pixel
+     * @param blockThreshold  Mean luma change (0-255) above which a block has changed
+     * @param changedFraction Run inference when at least this share of the blocks changed
+     * @param maxSkipNanos    Run inference at least this often, however static the scene
+     */
+    public SceneChangeGate(int gridWidth, int gridHeight, int sampleStep, int blockThreshold,
+                           float changedFraction, long maxSkipNanos) {
+        if (gridWidth < 1 || gridHeight < 1) {
+            throw new IllegalArgumentException("Grid must have at least one block");
+        }
+        if (sampleStep < 1) {
+            throw new IllegalArgumentException("Sample step must be at least 1");
+        }
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.sampleStep = sampleStep;
+        this.blockThreshold = blockThreshold;
+        this.changedFraction = changedFraction;
+        this.maxSkipNanos = maxSkipNanos;
+        this.signature = new int[gridWidth * gridHeight];
+        this.reference = new int[gridWidth * gridHeight];
+    }
+
+    /**
+     * Checks one frame. If it goes through inference its signature becomes the new reference,
+     * so call this only for frames that will be analysed when it returns true.
+     *
+     * @param frame          The camera frame; only the Y plane is read, its position is not changed
+     * @param timestampNanos Capture time of the frame
+     * @return true to run inference, false to keep the previous detections
+     */
+    public boolean shouldInfer(YuvFrame frame, long timestampNanos) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        computeSignature(frame.getYBuffer(), frame.getYRowStride(), width, height);
+
+        boolean infer;
+        if (width != referenceWidth || height != referenceHeight
+                || timestampNanos - referenceNanos >= maxSkipNanos) {
+            lastChange = 1f;
+            infer = true;
+        } else {
+            int changed = 0;
+            for (int i = 0; i < signature.length; i++) {
+                if (Math.abs(signature[i] - reference[i]) > blockThreshold) {
+                    changed++;
+                }
+            }
+            lastChange = (float) changed / signature.length;
+            infer = lastChange >= changedFraction;
+        }
+
+        if (infer) {
+            System.arraycopy(signature, 0, reference, 0, signature.length);
+            referenceWidth = width;
+            referenceHeight = height;
+            referenceNanos = timestampNanos;
+            inferredFrames++;
+        } else {
+            skippedFrames++;
+        }
+        return infer;
+    }
+
+    /**
+     * Mean sampled luma of each grid block, read with absolute gets from the buffer's position.
+     */
+    private void computeSignature(ByteBuffer yBuffer, int rowStride, int width, int height) {
+        int base = yBuffer.position();
+        int block = 0;
+        for (int by = 0; by < gridHeight; by++) {
+            int top = by * height / gridHeight;
+            int bottom = (by + 1) * height / gridHeight;
+            for (int bx = 0; bx < gridWidth; bx++) {
+                int left = bx * width / gridWidth;
+                int right = (bx + 1) * width / gridWidth;
+                int sum = 0;
+                int count = 0;
+                for (int y = top; y < bottom; y += sampleStep) {
+                    int row = base + y * rowStride;
+                    for (int x = left; x < right; x += sampleStep) {
+                        sum += yBuffer.get(row + x) & 0xFF;
+                        count++;
+                    }
+                }
+                signature[block++] = count == 0 ? 0 : sum / count;
+            }
+        }
+    }
+
+    /**
+     * Forgets the reference, so the next frame goes through inference.
+     * Call when the camera restarts or the last inference was lost.
+     */
+    public void reset() {
+        referenceWidth = 0;
+        referenceHeight = 0;
+    }
+
+    /**
+     * @return Share of blocks (0-1) that changed in the last frame checked; 1 when inference was forced
+     */
+    public float getLastChange() {
+        return lastChange;
+    }
+
+    public long getInferredFrames() {
+        return inferredFrames;
+    }
+
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * @return Share of checked frames that were skipped
+     */
+    public double getSkipRate() {
+        long total = inferredFrames + skippedFrames;
+        return total == 0 ? 0 : (double) skippedFrames / total;
+    }
+}
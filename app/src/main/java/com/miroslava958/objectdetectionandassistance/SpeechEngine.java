@@ -0,0 +1,37 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * A text-to-speech engine as seen by the {@link SpeechScheduler}.
+ * Implemented by {@link TextToSpeechManager} on Android; tests use a fake engine.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public interface SpeechEngine {
+
+    /**
+     * Notified when an utterance has finished (or failed) playing.
+     */
+    interface Listener {
+        void onUtteranceDone(String utteranceId);
+    }
+
+    /**
+     * @param listener Receives utterance completion, may be called on any thread
+     */
+    void setListener(Listener listener);
+
+    /**
+     * @return true once the engine can speak
+     */
+    boolean isReady();
+
+    /**
+     * Starts speaking.
+     *
+     * @param text        The words to say
+     * @param flush       true to interrupt whatever is playing, false to queue after it
+     * @param utteranceId Passed back to the listener when done
+     */
+    void speak(String text, boolean flush, String utteranceId);
+}
@@ -0,0 +1,415 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decides what to announce and when, based on the tracked objects.
+ * Each new track is offered once into a small bounded queue that holds at most
+ * one pending announcement per object. Announcements are ranked by priority
+ * (how close the object is, or how soon it will reach the user, plus how central
+ * it is), dropped when their object disappears or they wait too long, and
+ * rate-limited per label with a cooldown. Without a distance estimate the box
+ * area stands in for proximity. Urgent items (objects very close or about to be
+ * reached) interrupt a non-urgent announcement with a flush.
+ *
+ * Each announcement is a short phrase from the {@link Phraser} with the object's
+ * direction and, for close or approaching objects, a word about its distance.
+ * Only one utterance is given to the engine at a time, so the engine queue never
+ * grows and speech does not lag behind what the camera sees.
+ * Plain Java with a {@link Clock}, so it can be tested with a fake engine.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class SpeechScheduler implements SpeechEngine.Listener {
+    // Weight of closeness vs centrality in the priority
+    private static final float CLOSENESS_WEIGHT = 0.7f;
+    private static final float CENTRALITY_WEIGHT = 0.3f;
+    // Objects at this distance or closer get the full proximity score
+    private static final float NEAR_DISTANCE_METRES = 1f;
+    // Objects moving away matter less
+    private static final float RECEDING_FACTOR = 0.5f;
+
+    private final SpeechEngine engine;
+    private final Clock clock;
+    private final List<String> labels;
+    // Short position-aware phrase for each object
+    private final Phraser phraser;
+    private final long labelCooldownNanos;
+    private final long maxQueueAgeNanos;
+    private final float urgentAreaFraction;
+    private final float urgentDistanceMetres;
+    private final float urgentTimeToContactSeconds;
+    private final long utteranceTimeoutNanos;
+
+    // Pending announcements, unordered; the highest priority is searched on dispatch
+    private final int[] pendingTrack;
+    private final int[] pendingClass;
+    private final float[] pendingPriority;
+    private final boolean[] pendingUrgent;
+    // Direction and distance word spoken with each pending announcement (Phraser constants)
+    private final int[] pendingDirection;
+    private final int[] pendingQualifier;
+    private final long[] pendingSince;
+    private int pendingCount = 0;
+
+    // Last time each class was announced, indexed by class ID
+    private final long[] lastSpokenNanos;
+    // Tracks that have been announced and are still visible
+    private int[] announced;
+    private int[] announcedScratch;
+    private int announcedCount = 0;
+
+    // The utterance currently playing
+    private boolean speaking = false;
+    private boolean speakingUrgent = false;
+    private long speakingSince;
+    private String currentUtteranceId;
+    private int utteranceCounter = 0;
+
+    // Statistics
+    private long spokenCount = 0;
+    private long staleCount = 0;
+    private long rateLimitedCount = 0;
+    private long preemptedCount = 0;
+
+    /**
+     * @param engine                The speech engine
+     * @param clock                 Time source
+     * @param labels                Label text for each class ID
+     * @param capacity              Maximum number of pending announcements
+     * @param labelCooldownNanos    Minimum time between two announcements of the same label
+     * @param maxQueueAgeNanos      Pending announcements older than this are dropped
+     * @param urgentAreaFraction    Boxes covering this share of the view are urgent
+     * @param utteranceTimeoutNanos Assume an utterance ended if no completion arrives by then
+     */
+    public SpeechScheduler(SpeechEngine engine, Clock clock, List<String> labels, int capacity,
+                           long labelCooldownNanos, long maxQueueAgeNanos, float urgentAreaFraction,
+                           long utteranceTimeoutNanos) {
+        this(engine, clock, labels, capacity, labelCooldownNanos, maxQueueAgeNanos, urgentAreaFraction,
+                utteranceTimeoutNanos, 0f, 0f);
+    }
+
+    /**
+     * @param engine                     The speech engine
+     * @param clock                      Time source
+     * @param labels                     Label text for each class ID
+     * @param capacity                   Maximum number of pending announcements
+     * @param labelCooldownNanos         Minimum time between two announcements of the same label
+     * @param maxQueueAgeNanos           Pending announcements older than this are dropped
+     * @param urgentAreaFraction         Boxes covering this share of the view are urgent when
+     *                                   their distance is unknown
+     * @param utteranceTimeoutNanos      Assume an utterance ended if no completion arrives by then
+     * @param urgentDistanceMetres       Objects estimated this close are urgent
+     * @param urgentTimeToContactSeconds Approaching objects reached within this time are urgent
+     */
+    public SpeechScheduler(SpeechEngine engine, Clock clock, List<String> labels, int capacity,
+                           long labelCooldownNanos, long maxQueueAgeNanos, float urgentAreaFraction,
+                           long utteranceTimeoutNanos, float urgentDistanceMetres,
+                           float urgentTimeToContactSeconds) {
+        this.engine = engine;
+        this.clock = clock;
+        this.labels = labels;
+        this.phraser = new Phraser(labels);
+        this.labelCooldownNanos = labelCooldownNanos;
+        this.maxQueueAgeNanos = maxQueueAgeNanos;
+        this.urgentAreaFraction = urgentAreaFraction;
+        this.utteranceTimeoutNanos = utteranceTimeoutNanos;
+        this.urgentDistanceMetres = urgentDistanceMetres;
+        this.urgentTimeToContactSeconds = urgentTimeToContactSeconds;
+
+        pendingTrack = new int[capacity];
+        pendingClass = new int[capacity];
+        pendingPriority = new float[capacity];
+        pendingUrgent = new boolean[capacity];
+        pendingDirection = new int[capacity];
+        pendingQualifier = new int[capacity];
+        pendingSince = new long[capacity];
+        lastSpokenNanos = new long[labels.size()];
+        Arrays.fill(lastSpokenNanos, Long.MIN_VALUE);
+        announced = new int[16];
+        announcedScratch = new int[16];
+
+        engine.setListener(this);
+    }
+
+    /**
+     * Feeds the objects tracked in the latest frame and starts the next announcement if possible.
+     *
+     * @param tracked    Tracked objects with their track IDs (boxes in view pixels)
+     * @param viewWidth  Width of the view the boxes refer to
+     * @param viewHeight Height of the view the boxes refer to
+     */
+    public void update(DetectionBuffer tracked, int viewWidth, int viewHeight) {
+        update(tracked, null, viewWidth, viewHeight);
+    }
+
+    /**
+     * Feeds the objects tracked in the latest frame with their estimated proximity
+     * and starts the next announcement if possible.
+     *
+     * @param tracked    Tracked objects with their track IDs (boxes in view pixels)
+     * @param proximity  Distance and approach of the same objects, by index, or null
+     * @param viewWidth  Width of the view the boxes refer to
+     * @param viewHeight Height of the view the boxes refer to
+     */
+    public synchronized void update(DetectionBuffer tracked, ProximityEstimator proximity, int viewWidth,
+                                    int viewHeight) {
+        long now = clock.nanoTime();
+        forgetMissingTracks(tracked);
+
+        float viewArea = Math.max(1f, (float) viewWidth * viewHeight);
+        for (int i = 0; i < tracked.size(); i++) {
+            int trackId = tracked.getTrackId(i);
+            int classId = tracked.getClassId(i);
+            if (trackId < 0 || classId < 0 || classId >= labels.size() || isAnnounced(trackId)) {
+                continue;
+            }
+            float left = tracked.getLeft(i);
+            float top = tracked.getTop(i);
+            float right = tracked.getRight(i);
+            float bottom = tracked.getBottom(i);
+
+            float area = Math.min(1f, (right - left) * (bottom - top) / viewArea);
+            // 1 at the centre of the view, 0 in the corners
+            float dx = ((left + right) / 2 - viewWidth / 2f) / Math.max(1f, viewWidth / 2f);
+            float dy = ((top + bottom) / 2 - viewHeight / 2f) / Math.max(1f, viewHeight / 2f);
+            float centrality = Math.max(0f, 1f - (float) Math.sqrt((dx * dx + dy * dy) / 2));
+
+            // Closeness from the distance if known, else from the box area, raised for
+            // objects that will soon be reached
+            float closeness = area;
+            boolean close = area >= urgentAreaFraction;
+            boolean urgent = close;
+            int motion = ProximityEstimator.STEADY;
+            if (proximity != null) {
+                float distance = proximity.getDistance(i);
+                float timeToContact = proximity.getTimeToContact(i);
+                motion = proximity.getMotion(i);
+                if (!Float.isNaN(distance)) {
+                    closeness = Math.min(1f, NEAR_DISTANCE_METRES / Math.max(distance, 0.01f));
+                    close = distance <= urgentDistanceMetres;
+                    urgent = close;
+                }
+                if (motion == ProximityEstimator.APPROACHING) {
+                    closeness = Math.max(closeness, Math.min(1f, urgentTimeToContactSeconds / timeToContact));
+                    urgent |= timeToContact <= urgentTimeToContactSeconds;
+                }
+            }
+            int qualifier = close ? Phraser.CLOSE
+                    : motion == ProximityEstimator.APPROACHING ? Phraser.APPROACHING : Phraser.PLAIN;
+
+            float priority = CLOSENESS_WEIGHT * closeness + CENTRALITY_WEIGHT * centrality;
+            if (motion == ProximityEstimator.RECEDING) {
+                priority *= RECEDING_FACTOR;
+            }
+            offer(trackId, classId, priority, urgent, Phraser.direction((left + right) / 2, viewWidth), qualifier, now);
+        }
+
+        expireStale(now);
+        dispatch(now);
+    }
+
+    @Override
+    public synchronized void onUtteranceDone(String utteranceId) {
+        if (utteranceId != null && utteranceId.equals(currentUtteranceId)) {
+            speaking = false;
+            currentUtteranceId = null;
+            dispatch(clock.nanoTime());
+        }
+    }
+
+    /**
+     * Adds or refreshes the pending announcement of a track.
+     */
+    private void offer(int trackId, int classId, float priority, boolean urgent, int direction, int qualifier,
+                       long now) {
+        for (int i = 0; i < pendingCount; i++) {
+            if (pendingTrack[i] == trackId) {
+                // At most one pending utterance per object - refresh it
+                pendingPriority[i] = priority;
+                pendingUrgent[i] = urgent;
+                pendingDirection[i] = direction;
+                pendingQualifier[i] = qualifier;
+                return;
+            }
+        }
+        if (!urgent && inCooldown(classId, now)) {
+            rateLimitedCount++;
+            return;
+        }
+        int slot = pendingCount;
+        if (pendingCount == pendingTrack.length) {
+            // Queue full: replace the lowest priority entry if the new one ranks higher
+            slot = lowestPriority();
+            if (pendingPriority[slot] >= priority && !(urgent && !pendingUrgent[slot])) {
+                return;
+            }
+        } else {
+            pendingCount++;
+        }
+        pendingTrack[slot] = trackId;
+        pendingClass[slot] = classId;
+        pendingPriority[slot] = priority;
+        pendingUrgent[slot] = urgent;
+        pendingDirection[slot] = direction;
+        pendingQualifier[slot] = qualifier;
+        pendingSince[slot] = now;
+    }
+
+    /**
+     * Speaks the best pending announcement if the engine is free,
+     * or interrupts a non-urgent one for an urgent item.
+     */
+    private void dispatch(long now) {
+        if (!engine.isReady()) {
+            return;
+        }
+        if (speaking && now - speakingSince > utteranceTimeoutNanos) {
+            speaking = false; // Completion never arrived
+        }
+        while (pendingCount > 0) {
+            int best = highestPriority();
+            boolean urgent = pendingUrgent[best];
+            if (speaking && (speakingUrgent || !urgent)) {
+                return; // Wait for the current utterance
+            }
+            int classId = pendingClass[best];
+            int trackId = pendingTrack[best];
+            String phrase = phraser.phrase(classId, pendingDirection[best], pendingQualifier[best]);
+            remove(best);
+
+            if (!urgent && inCooldown(classId, now)) {
+                rateLimitedCount++;
+                continue;
+            }
+            if (speaking) {
+                preemptedCount++;
+            }
+            currentUtteranceId = "speech-" + (++utteranceCounter);
+            speaking = true;
+            speakingUrgent = urgent;
+            speakingSince = now;
+            lastSpokenNanos[classId] = now;
+            markAnnounced(trackId);
+            spokenCount++;
+            engine.speak(phrase, urgent, currentUtteranceId);
+            return;
+        }
+    }
+
+    private boolean inCooldown(int classId, long now) {
+        long last = lastSpokenNanos[classId];
+        return last != Long.MIN_VALUE && now - last < labelCooldownNanos;
+    }
+
+    /**
+     * Drops pending announcements of objects that are gone and forgets their announced state.
+     */
+    private void forgetMissingTracks(DetectionBuffer tracked) {
+        for (int i = pendingCount - 1; i >= 0; i--) {
+            if (!contains(tracked, pendingTrack[i])) {
+                remove(i);
+                staleCount++;
+            }
+        }
+        int kept = 0;
+        for (int i = 0; i < announcedCount; i++) {
+            if (contains(tracked, announced[i])) {
+                announcedScratch[kept++] = announced[i];
+            }
+        }
+        int[] swap = announced;
+        announced = announcedScratch;
+        announcedScratch = swap;
+        announcedCount = kept;
+    }
+
+    private void expireStale(long now) {
+        for (int i = pendingCount - 1; i >= 0; i--) {
+            if (now - pendingSince[i] > maxQueueAgeNanos) {
+                remove(i);
+                staleCount++;
+            }
+        }
+    }
+
+    private static boolean contains(DetectionBuffer tracked, int trackId) {
+        for (int i = 0; i < tracked.size(); i++) {
+            if (tracked.getTrackId(i) == trackId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isAnnounced(int trackId) {
+        for (int i = 0; i < announcedCount; i++) {
+            if (announced[i] == trackId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void markAnnounced(int trackId) {
+        if (announcedCount == announced.length) {
+            announced = Arrays.copyOf(announced, announced.length * 2);
+            announcedScratch = new int[announced.length];
+        }
+        announced[announcedCount++] = trackId;
+    }
+
+    private int highestPriority() {
+        int best = 0;
+        for (int i = 1; i < pendingCount; i++) {
+            // Urgent items always come first
+            if (pendingUrgent[i] != pendingUrgent[best] ? pendingUrgent[i] : pendingPriority[i] > pendingPriority[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private int lowestPriority() {
+        int worst = 0;
+        for (int i = 1; i < pendingCount; i++) {
+            if (pendingUrgent[i] != pendingUrgent[worst] ? pendingUrgent[worst] : pendingPriority[i] < pendingPriority[worst]) {
+                worst = i;
+            }
+        }
+        return worst;
+    }
+
+    private void remove(int index) {
+        int last = --pendingCount;
+        pendingTrack[index] = pendingTrack[last];
+        pendingClass[index] = pendingClass[last];
+        pendingPriority[index] = pendingPriority[last];
+        pendingUrgent[index] = pendingUrgent[last];
+        pendingDirection[index] = pendingDirection[last];
+        pendingQualifier[index] = pendingQualifier[last];
+        pendingSince[index] = pendingSince[last];
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    public synchronized long getSpokenCount() {
+        return spokenCount;
+    }
+
+    public synchronized long getStaleCount() {
+        return staleCount;
+    }
+
+    public synchronized long getRateLimitedCount() {
+        return rateLimitedCount;
+    }
+
+    public synchronized long getPreemptedCount() {
+        return preemptedCount;
+    }
+}
@@ -0,0 +1,107 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decoder for models with the TFLite detection post-processing op built in
+ * (SSD MobileNet, EfficientDet-Lite). The model already decodes boxes and runs
+ * non-max suppression, so this only applies the score threshold.
+ *
+ * Outputs: boxes [1, N, 4] as (top, left, bottom, right), classes [1, N],
+ * scores [1, N] and the number of valid detections [1]. The output order
+ * differs between exported models, so the index of each output is given.
+ * Each output may be FLOAT32 or quantized; quantized boxes and classes are only
+ * dequantized for detections above the threshold.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class SsdDetectionDecoder implements DetectionDecoder {
+    // Number of detections the model returns
+    private final int maxDetections;
+    private final OutputBuffer boxes;
+    private final OutputBuffer classes;
+    private final OutputBuffer scores;
+    private final OutputBuffer count;
+    // Output buffers keyed by output index
+    private final Map<Integer, Object> outputs = new HashMap<>();
+
+    /**
+     * Decoder for the EfficientDet-Lite0 output order: boxes, classes, scores, count.
+     *
+     * @param maxDetections Number of detections the model returns
+     */
+    public SsdDetectionDecoder(int maxDetections) {
+        this(maxDetections, 0, 1, 2, 3);
+    }
+
+    /**
+     * @param maxDetections Number of detections the model returns
+     * @param boxesIndex    Output index of the boxes
+     * @param classesIndex  Output index of the class indices
+     * @param scoresIndex   Output index of the scores
+     * @param countIndex    Output index of the detection count
+     */
+    public SsdDetectionDecoder(int maxDetections, int boxesIndex, int classesIndex, int scoresIndex, int countIndex) {
+        this(maxDetections, boxesIndex, classesIndex, scoresIndex, countIndex, null);
+    }
+
+    /**
+     * @param maxDetections Number of detections the model returns
+     * @param boxesIndex    Output index of the boxes
+     * @param classesIndex  Output index of the class indices
+     * @param scoresIndex   Output index of the scores
+     * @param countIndex    Output index of the detection count
+     * @param specs         Output tensors in output index order, giving their types, or null if all are FLOAT32
+     */
+    public SsdDetectionDecoder(int maxDetections, int boxesIndex, int classesIndex, int scoresIndex, int countIndex,
+                               List<TensorSpec> specs) {
+        this.maxDetections = maxDetections;
+        boxes = OutputBuffer.forTensor(specs == null ? null : specs.get(boxesIndex), maxDetections * 4);
+        classes = OutputBuffer.forTensor(specs == null ? null : specs.get(classesIndex), maxDetections);
+        scores = OutputBuffer.forTensor(specs == null ? null : specs.get(scoresIndex), maxDetections);
+        count = OutputBuffer.forTensor(specs == null ? null : specs.get(countIndex), 1);
+        outputs.put(boxesIndex, boxes.prepare());
+        outputs.put(classesIndex, classes.prepare());
+        outputs.put(scoresIndex, scores.prepare());
+        outputs.put(countIndex, count.prepare());
+    }
+
+    @Override
+    public Map<Integer, Object> prepareOutputs() {
+        boxes.prepare();
+        classes.prepare();
+        scores.prepare();
+        count.prepare();
+        return outputs;
+    }
+
+    @Override
+    public int decode(float scoreThreshold, DetectionBuffer out) {
+        out.clear();
+        boxes.load();
+        classes.load();
+        scores.load();
+        count.load();
+        int limit = Math.min((int) count.get(0), maxDetections);
+
+        for (int i = 0; i < limit; i++) {
+            float score = scores.get(i);
+            if (score > scoreThreshold) {
+                int b = i * 4; // top, left, bottom, right
+                if (out.add(boxes.get(b + 1), boxes.get(b), boxes.get(b + 3), boxes.get(b + 2), score,
+                        Math.round(classes.get(i))) < 0) {
+                    break; // Buffer full
+                }
+            }
+        }
+        return out.size();
+    }
+
+    @Override
+    public int getMaxDetections() {
+        return maxDetections;
+    }
+}
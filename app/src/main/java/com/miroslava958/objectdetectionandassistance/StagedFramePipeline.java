@@ -0,0 +1,257 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link FramePipeline} built from a fixed list of stages.
+ * Each stage has its own thread and a hand-off queue holding at most one frame.
+ * If a frame arrives while the next stage still has one waiting, the waiting
+ * (stale) frame is dropped and its slot recycled. Slots are preallocated, so
+ * running frames through the pipeline does not allocate.
+ *
+ * @param <T> The per-frame slot type
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class StagedFramePipeline<T> implements FramePipeline<T> {
+
+    /**
+     * Creates the slot objects when the pipeline is built.
+     *
+     * @param <T> The slot type
+     */
+    public interface SlotFactory<T> {
+        T create();
+    }
+
+    // Wraps a slot with the time it entered the pipeline
+    private static final class Slot<T> {
+        final T value;
+        long submitNanos;
+
+        Slot(T value) {
+            this.value = value;
+        }
+    }
+
+    private final List<Stage<T>> stages;
+    private final ErrorListener errorListener;
+    private final DiscardListener<T> discardListener;
+    private final String name;
+    // Slots not currently in use
+    private final BlockingQueue<Slot<T>> freeSlots;
+    // queues.get(i) feeds stage i, holding at most one frame
+    private final List<BlockingQueue<Slot<T>>> queues = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+
+    // Statistics
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    private volatile boolean running = false;
+
+    /**
+     * @param name          Prefix used for the stage thread names
+     * @param slotFactory   Creates the reusable frame slots
+     * @param stages        The stages after the convert step, in order
+     * @param errorListener Notified when the writer or a stage throws
+     */
+    public StagedFramePipeline(String name, SlotFactory<T> slotFactory, List<Stage<T>> stages,
+                               ErrorListener errorListener) {
+        this(name, slotFactory, stages, errorListener, null);
+    }
+
+    /**
+     * @param name            Prefix used for the stage thread names
+     * @param slotFactory     Creates the reusable frame slots
+     * @param stages          The stages after the convert step, in order
+     * @param errorListener   Notified when the writer or a stage throws
+     * @param discardListener Notified of each written frame that does not finish, or null
+     */
+    public StagedFramePipeline(String name, SlotFactory<T> slotFactory, List<Stage<T>> stages,
+                               ErrorListener errorListener, DiscardListener<T> discardListener) {
+        if (stages.isEmpty()) {
+            throw new IllegalArgumentException("Pipeline needs at least one stage");
+        }
+        this.name = name;
+        this.stages = new ArrayList<>(stages);
+        this.errorListener = errorListener;
+        this.discardListener = discardListener;
+
+        // One slot per stage, one per queue, and one being written: never runs dry
+        int slotCount = 2 * stages.size() + 1;
+        freeSlots = new ArrayBlockingQueue<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            freeSlots.add(new Slot<>(slotFactory.create()));
+        }
+        for (int i = 0; i < stages.size(); i++) {
+            queues.add(new ArrayBlockingQueue<>(1));
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < stages.size(); i++) {
+            final int index = i;
+            Thread thread = new Thread(() -> runStage(index), name + "-stage-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    @Override
+    public boolean submit(FrameWriter<T> writer) {
+        submitted.incrementAndGet();
+        Slot<T> slot = freeSlots.poll();
+        if (slot == null) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        slot.submitNanos = System.nanoTime();
+        try {
+            if (!writer.write(slot.value)) {
+                dropped.incrementAndGet();
+                discard(slot);
+                return false;
+            }
+        } catch (Exception e) {
+            fail(slot, e);
+            return false;
+        }
+        handOff(queues.get(0), slot);
+        return true;
+    }
+
+    /**
+     * Loop run by each stage thread.
+     */
+    private void runStage(int index) {
+        BlockingQueue<Slot<T>> input = queues.get(index);
+        BlockingQueue<Slot<T>> output = index + 1 < queues.size() ? queues.get(index + 1) : null;
+        Stage<T> stage = stages.get(index);
+
+        while (running) {
+            Slot<T> slot;
+            try {
+                slot = input.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                stage.process(slot.value);
+            } catch (Exception e) {
+                fail(slot, e);
+                continue;
+            }
+            if (output != null) {
+                handOff(output, slot);
+            } else {
+                finish(slot);
+            }
+        }
+    }
+
+    /**
+     * Puts the slot into a hand-off queue, dropping the stale frame waiting there if needed.
+     */
+    private void handOff(BlockingQueue<Slot<T>> queue, Slot<T> slot) {
+        while (!queue.offer(slot)) {
+            Slot<T> stale = queue.poll();
+            if (stale != null) {
+                dropped.incrementAndGet();
+                discard(stale);
+            }
+        }
+    }
+
+    private void finish(Slot<T> slot) {
+        long latency = System.nanoTime() - slot.submitNanos;
+        completed.incrementAndGet();
+        totalLatency.addAndGet(latency);
+        long max;
+        while (latency > (max = maxLatency.get()) && !maxLatency.compareAndSet(max, latency)) {
+            // Retry until the maximum is updated
+        }
+        freeSlots.offer(slot);
+    }
+
+    private void fail(Slot<T> slot, Exception e) {
+        failed.incrementAndGet();
+        discard(slot);
+        if (errorListener != null) {
+            errorListener.onError(e);
+        }
+    }
+
+    /**
+     * Recycles the slot of a frame that did not go through every stage.
+     */
+    private void discard(Slot<T> slot) {
+        if (discardListener != null) {
+            discardListener.onDiscarded(slot.value);
+        }
+        freeSlots.offer(slot);
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        running = false;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        threads.clear();
+    }
+
+    @Override
+    public long getSubmittedFrames() {
+        return submitted.get();
+    }
+
+    @Override
+    public long getCompletedFrames() {
+        return completed.get();
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return dropped.get();
+    }
+
+    @Override
+    public long getFailedFrames() {
+        return failed.get();
+    }
+
+    @Override
+    public long getAverageLatencyNanos() {
+        long count = completed.get();
+        return count == 0 ? 0 : totalLatency.get() / count;
+    }
+
+    @Override
+    public long getMaxLatencyNanos() {
+        return maxLatency.get();
+    }
+}
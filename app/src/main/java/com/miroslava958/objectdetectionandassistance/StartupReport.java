@@ -0,0 +1,190 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Records how long each part of app start-up takes, relative to the moment the
+ * activity was created: mapping the model, choosing the backend, building the
+ * interpreters, the first (warm-up) inference, and the milestones the user
+ * notices - first camera preview and first detection result.
+ *
+ * Phases may be recorded from any thread. The report can be written as JSON
+ * so start-up can be compared between builds and devices.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class StartupReport {
+
+    /**
+     * Start-up phases, in the order they normally happen.
+     * Milestones (first preview, model ready, first result) have no duration.
+     */
+    public enum Phase {
+        MODEL_MAP,
+        BACKEND_SELECT,
+        INTERPRETER_INIT,
+        FIRST_INVOKE,
+        LABELS,
+        FIRST_PREVIEW,
+        MODEL_READY,
+        FIRST_RESULT
+    }
+
+    private final Clock clock;
+    // Time the report was created, the origin of every phase
+    private final long originNanos;
+    // Start (relative to the origin) and duration of each phase, -1 if not recorded
+    private final long[] startNanos = new long[Phase.values().length];
+    private final long[] durationNanos = new long[Phase.values().length];
+    // Extra facts about the start-up, such as the chosen backend
+    private final Map<String, String> attributes = new LinkedHashMap<>();
+    // Read without locking on the detection path, so recording first result stays cheap
+    private volatile boolean firstResultRecorded = false;
+
+    /**
+     * @param clock Time source; the report's origin is the time of construction
+     */
+    public StartupReport(Clock clock) {
+        this.clock = clock;
+        this.originNanos = clock.nanoTime();
+        for (int i = 0; i < startNanos.length; i++) {
+            startNanos[i] = -1;
+            durationNanos[i] = -1;
+        }
+    }
+
+    /**
+     * @return The current time, to pass to {@link #record} when the phase ends
+     */
+    public long now() {
+        return clock.nanoTime();
+    }
+
+    /**
+     * Records a phase that started at the given time and ends now.
+     * Recording a phase again replaces the earlier value.
+     *
+     * @param phase      The phase
+     * @param startNanos Value of {@link #now()} when the phase started
+     */
+    public synchronized void record(Phase phase, long startNanos) {
+        long end = clock.nanoTime();
+        this.startNanos[phase.ordinal()] = startNanos - originNanos;
+        this.durationNanos[phase.ordinal()] = end - startNanos;
+    }
+
+    /**
+     * Records a milestone the first time it is reached; later calls are ignored.
+     *
+     * @param phase The milestone
+     * @return true if this call recorded it
+     */
+    public synchronized boolean mark(Phase phase) {
+        int index = phase.ordinal();
+        if (startNanos[index] >= 0) {
+            return false;
+        }
+        startNanos[index] = clock.nanoTime() - originNanos;
+        durationNanos[index] = 0;
+        if (phase == Phase.FIRST_RESULT) {
+            firstResultRecorded = true;
+        }
+        return true;
+    }
+
+    /**
+     * Marks the first detection result. Called for every result, so it only
+     * takes the lock until the first one has been recorded.
+     *
+     * @return true if this call recorded it
+     */
+    public boolean markFirstResult() {
+        return !firstResultRecorded && mark(Phase.FIRST_RESULT);
+    }
+
+    /**
+     * Adds a fact to the report, such as the backend or the number of interpreters.
+     */
+    public synchronized void put(String key, String value) {
+        attributes.put(key, value);
+    }
+
+    /**
+     * @return Time from the origin to the start of the phase, or -1 if not recorded
+     */
+    public synchronized long getStartNanos(Phase phase) {
+        return startNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return Duration of the phase (0 for milestones), or -1 if not recorded
+     */
+    public synchronized long getDurationNanos(Phase phase) {
+        return durationNanos[phase.ordinal()];
+    }
+
+    /**
+     * Writes the report as JSON, for example:
+     * {"phases":[{"name":"model_map","startMs":1.20,"durationMs":3.40}],"attributes":{"backend":"CPU:4:xnnpack"}}
+     * Phases that were not recorded are left out.
+     *
+     * @return The report as a JSON object
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{\"phases\":[");
+        boolean first = true;
+        for (Phase phase : Phase.values()) {
+            int index = phase.ordinal();
+            if (startNanos[index] < 0) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"name\":\"").append(phase.name().toLowerCase(Locale.ROOT))
+                    .append("\",\"startMs\":").append(millis(startNanos[index]))
+                    .append(",\"durationMs\":").append(millis(durationNanos[index]))
+                    .append('}');
+        }
+        json.append("],\"attributes\":{");
+        first = true;
+        for (Map.Entry<String, String> entry : attributes.entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendString(json, entry.getKey());
+            json.append(':');
+            appendString(json, entry.getValue());
+        }
+        return json.append("}}").toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1e6);
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
@@ -0,0 +1,145 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.Arrays;
+
+/**
+ * Name, shape, element type and quantization of one model tensor, read from the
+ * interpreter when the model is loaded. Plain Java, so decoder selection and the
+ * input and output kernels can be tested without TensorFlow Lite.
+ *
+ * A quantized value q stands for the real value (q - zeroPoint) * scale.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class TensorSpec {
+
+    /**
+     * Element types the pipeline reads and writes.
+     */
+    public enum DataType {
+        FLOAT32(4),
+        UINT8(1),
+        INT8(1);
+
+        private final int bytes;
+
+        DataType(int bytes) {
+            this.bytes = bytes;
+        }
+
+        public int getBytes() {
+            return bytes;
+        }
+    }
+
+    private final String name;
+    private final int[] shape;
+    private final DataType dataType;
+    // Quantization parameters; a scale of 0 means the model gives none
+    private final float scale;
+    private final int zeroPoint;
+
+    /**
+     * A FLOAT32 tensor.
+     *
+     * @param name  Tensor name from the model (may be empty)
+     * @param shape Tensor dimensions, e.g. [1, 25, 4]
+     */
+    public TensorSpec(String name, int[] shape) {
+        this(name, shape, DataType.FLOAT32, 0f, 0);
+    }
+
+    /**
+     * @param name      Tensor name from the model (may be empty)
+     * @param shape     Tensor dimensions, e.g. [1, 25, 4]
+     * @param dataType  Element type
+     * @param scale     Quantization scale, or 0 if the tensor has none
+     * @param zeroPoint Quantization zero point
+     */
+    public TensorSpec(String name, int[] shape, DataType dataType, float scale, int zeroPoint) {
+        if (scale < 0 || Float.isNaN(scale)) {
+            throw new IllegalArgumentException("Invalid quantization scale " + scale);
+        }
+        this.name = name == null ? "" : name;
+        this.shape = shape.clone();
+        this.dataType = dataType;
+        this.scale = scale;
+        this.zeroPoint = zeroPoint;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getRank() {
+        return shape.length;
+    }
+
+    /**
+     * @param index Dimension index; negative values count from the end
+     * @return The size of that dimension
+     */
+    public int getDim(int index) {
+        return shape[index < 0 ? shape.length + index : index];
+    }
+
+    /**
+     * @return The number of elements in the tensor
+     */
+    public int getElementCount() {
+        int count = 1;
+        for (int dim : shape) {
+            count *= dim;
+        }
+        return count;
+    }
+
+    public DataType getDataType() {
+        return dataType;
+    }
+
+    /**
+     * @return true for 8-bit tensors, read through their scale and zero point
+     */
+    public boolean isQuantized() {
+        return dataType != DataType.FLOAT32;
+    }
+
+    /**
+     * @return The quantization scale, 1 when the tensor has none
+     */
+    public float getScale() {
+        return scale > 0 ? scale : 1f;
+    }
+
+    /**
+     * @return The quantization zero point, 0 when the tensor has no scale
+     */
+    public int getZeroPoint() {
+        return scale > 0 ? zeroPoint : 0;
+    }
+
+    /**
+     * @return true if the model gives quantization parameters for the tensor
+     */
+    public boolean hasQuantization() {
+        return scale > 0;
+    }
+
+    /**
+     * Checks whether the name contains a word, ignoring case.
+     */
+    public boolean nameContains(String word) {
+        return name.toLowerCase().contains(word);
+    }
+
+    @Override
+    public String toString() {
+        if (!isQuantized()) {
+            return name + Arrays.toString(shape);
+        }
+        return name + Arrays.toString(shape) + " " + dataType
+                + (hasQuantization() ? " (scale " + scale + ", zero point " + zeroPoint + ")" : "");
+    }
+}
@@ -2,26 +2,51 @@ package com.miroslava958.objectdetectionandassistance;
 
 import android.content.Context;
 import android.speech.tts.TextToSpeech;
+import android.speech.tts.UtteranceProgressListener;
 import android.util.Log;
 
-import java.util.HashSet;
-import java.util.List;
+import java.io.File;
 import java.util.Locale;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages text-to-speech functionality for the app.
  * Initialises the TTS and provides a method to speak text.
+ * Acts as the {@link SpeechEngine} driven by the {@link SpeechScheduler},
+ * reporting back when each utterance has finished.
+ *
+ * Phrases that are spoken repeatedly ("person left") are synthesised to audio files
+ * while the engine is idle and afterwards played back as earcons, which starts much
+ * sooner than synthesising them again; {@link UtteranceCache} decides which clips are
+ * kept. The time from each announcement to its first audio is recorded in the metrics.
  * Handles shutdown of the TTS.
  *
  * Author: Miroslava Milcheva
  * Course: BSc Computing - Final Year Project
  */
-public class TextToSpeechManager {
+public class TextToSpeechManager implements SpeechEngine {
     private TextToSpeech tts;
-    private boolean isInitialised = false;
-    private final Set<String> lastSpokenLabels = new HashSet<>();
-
+    private volatile boolean isInitialised = false;
+    // Told when an utterance finishes so the next one can start
+    private volatile Listener listener;
+    // Clips of synthesised phrases in the app's cache folder: phrases remembered,
+    // total clip size, and how often a phrase is spoken before it gets a clip
+    private static final String CLIP_DIR = "utterances";
+    private static final int CACHED_PHRASES = 64;
+    private static final long CACHED_BYTES = 8L * 1024 * 1024;
+    private static final int USES_BEFORE_CACHING = 1;
+    // Utterance IDs of synthesis requests start with this
+    private static final String SYNTHESIS_PREFIX = "synthesis-";
+    private final File clipDir;
+    private final UtteranceCache cache;
+    // The announcement playing and the phrase being synthesised to a clip, or null
+    private String speaking;
+    private String synthesising;
+    // When each playing announcement was requested, by utterance ID
+    private final Map<String, Long> requestNanos = new ConcurrentHashMap<>();
+    // Receives the time to first audio and cache hits, if set
+    private volatile PipelineMetrics metrics;
 
     /**
      * Constructor that initialises the TextToSpeech engine.
@@ -29,6 +54,18 @@ public class TextToSpeechManager {
      * @param context The application context.
      */
     public TextToSpeechManager(Context context) {
+        // Earcons do not survive the engine, so clips from earlier runs are of no use
+        clipDir = new File(context.getCacheDir(), CLIP_DIR);
+        File[] stale = clipDir.listFiles();
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+        clipDir.mkdirs();
+        cache = new UtteranceCache(CACHED_PHRASES, CACHED_BYTES, USES_BEFORE_CACHING,
+                clipId -> clipFile(clipId).delete());
+
         tts = new TextToSpeech(context.getApplicationContext(), status -> {
             if (status == TextToSpeech.SUCCESS) {
                 // Set the TTS language to UK English
@@ -45,42 +82,176 @@ public class TextToSpeechManager {
                 if (!isInitialised) {
                     Log.e("TTS", "Language not supported or missing data");
                 }
+
+                // Report finished utterances to the scheduler
+                tts.setOnUtteranceProgressListener(new UtteranceProgressListener() {
+                    @Override
+                    public void onStart(String utteranceId) {
+                        recordFirstAudio(utteranceId);
+                    }
+
+                    @Override
+                    public void onDone(String utteranceId) {
+                        notifyDone(utteranceId, true);
+                    }
+
+                    @Override
+                    public void onError(String utteranceId) {
+                        notifyDone(utteranceId, false);
+                    }
+
+                    @Override
+                    public void onStop(String utteranceId, boolean interrupted) {
+                        notifyDone(utteranceId, false);
+                    }
+                });
             } else {
                 Log.e("TTS", "Initialisation failed");
             }
         });
     }
 
+    private void recordFirstAudio(String utteranceId) {
+        Long requested = requestNanos.remove(utteranceId);
+        PipelineMetrics current = metrics;
+        if (requested != null && current != null) {
+            long nanos = System.nanoTime() - requested;
+            current.recordTimeToFirstAudio(nanos);
+            if (DebugLog.VERBOSE) {
+                Log.d("TTS", "First audio of " + utteranceId + " after " + nanos / 1_000_000 + " ms");
+            }
+        }
+    }
+
+    private void notifyDone(String utteranceId, boolean success) {
+        if (utteranceId != null && utteranceId.startsWith(SYNTHESIS_PREFIX)) {
+            onSynthesisDone(success);
+            return;
+        }
+        requestNanos.remove(utteranceId);
+        synchronized (this) {
+            // A flushed announcement may report its end after the next one started
+            if (utteranceId != null && utteranceId.equals(speaking)) {
+                speaking = null;
+            }
+        }
+        Listener current = listener;
+        if (current != null) {
+            current.onUtteranceDone(utteranceId);
+        }
+        synthesizeNext();
+    }
+
+    private File clipFile(int clipId) {
+        return new File(clipDir, "clip-" + clipId + ".wav");
+    }
+
+    private static String earcon(int clipId) {
+        return "[clip-" + clipId + "]";
+    }
+
     /**
-     * Speaks only new labels from the current detection results.
-     *
-     * @param currentLabels List of detected labels in the current frame
+     * Synthesises the next phrase waiting for a clip, if the engine is idle.
      */
-    public void speakMultiple(List<String> currentLabels) {
-        if (!isInitialised || currentLabels == null || currentLabels.isEmpty()) return;
+    private synchronized void synthesizeNext() {
+        if (speaking != null || synthesising != null || !isInitialised) {
+            return;
+        }
+        String phrase = cache.nextToSynthesize();
+        if (phrase == null) {
+            return;
+        }
+        int clipId = cache.clipId(phrase);
+        synthesising = phrase;
+        int result = tts.synthesizeToFile(phrase, null, clipFile(clipId), SYNTHESIS_PREFIX + clipId);
+        if (result != TextToSpeech.SUCCESS) {
+            synthesising = null;
+            cache.failed(phrase);
+        }
+    }
 
-        Set<String> currentSet = new HashSet<>(currentLabels);
+    /**
+     * Registers a finished clip as an earcon so the phrase can be played from it.
+     */
+    private void onSynthesisDone(boolean success) {
+        synchronized (this) {
+            String phrase = synthesising;
+            synthesising = null;
+            if (phrase == null) {
+                return;
+            }
+            int clipId = cache.clipId(phrase);
+            File file = clipFile(clipId);
+            if (success && file.length() > 0) {
+                // Registered before it is marked ready, so a ready clip can always be played
+                tts.addEarcon(earcon(clipId), file);
+                if (!cache.synthesized(phrase, file.length())) {
+                    file.delete();
+                }
+            } else {
+                cache.failed(phrase);
+                file.delete();
+            }
+        }
+        synthesizeNext();
+    }
 
-        // Find only the new labels, not already spoken
-        currentSet.removeAll(lastSpokenLabels);
+    /**
+     * Sets where the time to first audio and cache use are recorded.
+     *
+     * @param metrics The detection pipeline's metrics
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
 
-        if (!currentSet.isEmpty()) {
-            String toSpeak = String.join(", ", currentSet);
-            tts.speak("I see a " + toSpeak, TextToSpeech.QUEUE_ADD, null, null);
-            Log.d("TTS", "Speaking: " + toSpeak);
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
 
-            // Update the spoken history
-            lastSpokenLabels.clear();
-            lastSpokenLabels.addAll(currentLabels);
-        }
-        Log.d("TTS", "Last spoken labels: " + lastSpokenLabels);
+    @Override
+    public boolean isReady() {
+        return isInitialised;
     }
 
     /**
-     * Clears the history of last spoken labels to avoid repeated announcements.
+     * Speaks a single utterance, from its clip if it has one.
+     *
+     * @param text        The words to say
+     * @param flush       true to interrupt the current utterance, false to queue after it
+     * @param utteranceId Reported to the listener when the utterance ends
      */
-    public void clearLastSpokenLabels() {
-        lastSpokenLabels.clear();
+    @Override
+    public void speak(String text, boolean flush, String utteranceId) {
+        if (!isInitialised) return;
+
+        requestNanos.put(utteranceId, System.nanoTime());
+        int clipId;
+        int queueMode;
+        synchronized (this) {
+            speaking = utteranceId;
+            clipId = cache.lookup(text);
+            // Announcements never wait for a clip being synthesised; it is retried later
+            queueMode = flush || synthesising != null ? TextToSpeech.QUEUE_FLUSH : TextToSpeech.QUEUE_ADD;
+        }
+        PipelineMetrics current = metrics;
+        int result = clipId >= 0 ? tts.playEarcon(earcon(clipId), queueMode, null, utteranceId)
+                : tts.speak(text, queueMode, null, utteranceId);
+        if (result == TextToSpeech.ERROR) {
+            // No callback will come for it: report it failed as onError would, so neither the
+            // listener nor clip synthesis waits for it
+            Log.w("TTS", "Could not queue " + utteranceId);
+            notifyDone(utteranceId, false);
+            return;
+        }
+        if (current != null) {
+            current.increment(clipId >= 0 ? PipelineMetrics.Counter.SPEECH_CACHE_HITS
+                    : PipelineMetrics.Counter.SPEECH_CACHE_MISSES);
+        }
+        if (DebugLog.VERBOSE) {
+            Log.d("TTS", "Speaking: " + text + (flush ? " (urgent)" : "") + (clipId >= 0 ? " (cached)" : ""));
+        }
     }
 
     /**
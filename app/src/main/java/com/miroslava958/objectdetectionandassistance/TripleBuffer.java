@@ -0,0 +1,73 @@
+package com.miroslava958.objectdetectionandassistance;
+
+/**
+ * Hands objects from one producer thread to one consumer thread without copying.
+ * The producer fills the back buffer and publishes it; the consumer takes the newest
+ * published buffer. The buffer the consumer holds is never handed back to the producer
+ * until the consumer takes a newer one, so both sides can work without sharing data.
+ *
+ * @param <T> The buffer type
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class TripleBuffer<T> {
+    private final Object lock = new Object();
+    // Filled by the producer
+    private T back;
+    // Published, waiting for the consumer
+    private T pending;
+    // Held by the consumer
+    private T front;
+    // True while a published buffer has not been taken yet
+    private boolean hasPending = false;
+
+    public TripleBuffer(T first, T second, T third) {
+        this.back = first;
+        this.pending = second;
+        this.front = third;
+    }
+
+    /**
+     * @return The buffer the producer may write into
+     */
+    public T getBack() {
+        synchronized (lock) {
+            return back;
+        }
+    }
+
+    /**
+     * Publishes the back buffer. If the consumer has not taken the previous one yet,
+     * that one is replaced and becomes the new back buffer.
+     *
+     * @return true if the consumer needs to be notified (nothing was pending before)
+     */
+    public boolean publish() {
+        synchronized (lock) {
+            T swap = pending;
+            pending = back;
+            back = swap;
+            boolean notify = !hasPending;
+            hasPending = true;
+            return notify;
+        }
+    }
+
+    /**
+     * Takes the newest published buffer.
+     *
+     * @return The buffer the consumer now holds
+     */
+    public T consume() {
+        synchronized (lock) {
+            if (hasPending) {
+                T swap = front;
+                front = pending;
+                pending = swap;
+                hasPending = false;
+            }
+            return front;
+        }
+    }
+}
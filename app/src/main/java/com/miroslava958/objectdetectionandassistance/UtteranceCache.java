@@ -0,0 +1,214 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of which phrases have been synthesised to audio clips, so a phrase
+ * heard before plays back straight away instead of being synthesised again.
+ *
+ * Each phrase looked up gets a clip ID (used to name its audio file). Phrases used
+ * often enough are queued for synthesis, which the speech engine does while it is
+ * idle; once a clip is ready, lookups return its ID. The least recently used phrases
+ * are dropped beyond a number of phrases or a total clip size, and the listener is
+ * told so it can delete the files. A clip being synthesised is never dropped.
+ *
+ * Plain Java and thread-safe, so the eviction logic can be tested on the JVM.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class UtteranceCache {
+
+    /**
+     * Told when a synthesised clip is dropped from the cache.
+     */
+    public interface Listener {
+        void onEvicted(int clipId);
+    }
+
+    private static final class Entry {
+        final int clipId;
+        int uses = 0;
+        boolean queued = false;   // Waiting for synthesis
+        boolean pending = false;  // Being synthesised
+        boolean ready = false;
+        long bytes = 0;
+
+        Entry(int clipId) {
+            this.clipId = clipId;
+        }
+    }
+
+    private final int maxPhrases;
+    private final long maxBytes;
+    private final int minUses;
+    private final Listener listener;
+    // Phrases in least recently used order
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Phrases waiting for synthesis, oldest first
+    private final ArrayDeque<String> wanted = new ArrayDeque<>();
+    private int nextClipId = 0;
+    private long bytes = 0;
+
+    // Statistics
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maxPhrases Most phrases remembered, with or without a clip
+     * @param maxBytes   Most bytes of clips kept
+     * @param minUses    Times a phrase must be spoken before it is synthesised to a clip
+     * @param listener   Deletes the clips that are dropped
+     */
+    public UtteranceCache(int maxPhrases, long maxBytes, int minUses, Listener listener) {
+        if (maxPhrases < 1 || maxBytes < 1 || minUses < 1) {
+            throw new IllegalArgumentException("Invalid cache settings");
+        }
+        this.maxPhrases = maxPhrases;
+        this.maxBytes = maxBytes;
+        this.minUses = minUses;
+        this.listener = listener;
+    }
+
+    /**
+     * Looks up a phrase about to be spoken.
+     *
+     * @return The ID of its clip, or -1 if it has to be synthesised live
+     */
+    public synchronized int lookup(String phrase) {
+        Entry entry = entries.get(phrase);
+        if (entry == null) {
+            entry = new Entry(nextClipId++);
+            entries.put(phrase, entry);
+        }
+        entry.uses++;
+        if (entry.ready) {
+            hits++;
+            return entry.clipId;
+        }
+        misses++;
+        if (!entry.queued && !entry.pending && entry.uses >= minUses) {
+            entry.queued = true;
+            wanted.addLast(phrase);
+        }
+        trim();
+        return -1;
+    }
+
+    /**
+     * Takes the next phrase to synthesise and marks it as being synthesised.
+     *
+     * @return The phrase, or null if nothing is waiting
+     */
+    public synchronized String nextToSynthesize() {
+        String phrase;
+        while ((phrase = wanted.pollFirst()) != null) {
+            Entry entry = entries.get(phrase);
+            if (entry != null && entry.queued) {
+                entry.queued = false;
+                entry.pending = true;
+                return phrase;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The clip ID of a remembered phrase, or -1
+     */
+    public synchronized int clipId(String phrase) {
+        Entry entry = entries.get(phrase);
+        return entry != null ? entry.clipId : -1;
+    }
+
+    /**
+     * Marks a phrase's clip as ready to play.
+     *
+     * @param phrase The phrase returned by {@link #nextToSynthesize}
+     * @param size   Size of the clip in bytes
+     * @return false if the clip is not kept (the phrase was dropped or the clip is
+     * larger than the whole cache), so the caller should delete it
+     */
+    public synchronized boolean synthesized(String phrase, long size) {
+        Entry entry = entries.get(phrase);
+        if (entry == null || !entry.pending) {
+            return false;
+        }
+        entry.pending = false;
+        if (size > maxBytes) {
+            entries.remove(phrase);
+            return false;
+        }
+        entry.ready = true;
+        entry.bytes = size;
+        bytes += size;
+        trim();
+        return entries.containsKey(phrase);
+    }
+
+    /**
+     * Gives up on a phrase's clip, e.g. because synthesis was interrupted. The phrase
+     * is queued again the next time it is spoken.
+     */
+    public synchronized void failed(String phrase) {
+        Entry entry = entries.get(phrase);
+        if (entry != null) {
+            entry.pending = false;
+        }
+    }
+
+    /**
+     * Drops least recently used phrases until the limits are met, skipping clips being synthesised.
+     */
+    private void trim() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxPhrases || bytes > maxBytes) && eldest.hasNext()) {
+            Entry entry = eldest.next().getValue();
+            if (entry.pending) {
+                continue;
+            }
+            eldest.remove();
+            if (entry.ready) {
+                bytes -= entry.bytes;
+                evictions++;
+                listener.onEvicted(entry.clipId);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Total size of the clips kept
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return Lookups answered with a ready clip
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Lookups that had to be synthesised live
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return Clips dropped to stay within the limits
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
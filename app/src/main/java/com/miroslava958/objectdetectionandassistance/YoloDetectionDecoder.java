@@ -0,0 +1,248 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decoder for YOLO-style grid outputs, with one row of attributes per candidate:
+ * box centre and size (cx, cy, w, h, normalised to the input), an optional
+ * objectness score (YOLOv5) and one score per class.
+ *
+ * YOLOv5 exports candidates as rows [1, N, 5 + C]; YOLOv8 exports attributes as
+ * rows [1, 4 + C, N]. For the second layout the best class is found one class row
+ * at a time, so memory is read sequentially. Boxes then go through class-aware
+ * non-max suppression.
+ *
+ * Fully quantized exports share one scale for boxes and scores. Their scores are
+ * compared as raw keys against thresholds quantized once per frame, and only
+ * candidates that pass have their box and score dequantized.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class YoloDetectionDecoder implements DetectionDecoder {
+    private final int candidates;
+    private final int classes;
+    private final boolean objectness;
+    private final boolean attributesFirst;
+    // Number of attributes per candidate
+    private final int attributes;
+    // The output, and the same buffer as a float or a quantized one
+    private final OutputBuffer buffer;
+    private final FloatOutputBuffer output;
+    private final QuantizedOutputBuffer quantized;
+    private final Map<Integer, Object> outputs = new HashMap<>();
+    private final NonMaxSuppression nms;
+    private final int maxDetections;
+    // Best class score (or its key when quantized) and index per candidate (attributes-first layout)
+    private final float[] bestScore;
+    private final int[] bestKey;
+    private final int[] bestClass;
+
+    /**
+     * @param candidates      Number of candidate boxes (N)
+     * @param classes         Number of classes (C)
+     * @param objectness      true if each candidate has an objectness score (YOLOv5)
+     * @param attributesFirst true for [1, attributes, N], false for [1, N, attributes]
+     * @param iouThreshold    Overlap threshold for non-max suppression
+     * @param maxCandidates   Most boxes passed into non-max suppression
+     * @param maxDetections   Most detections returned per frame
+     */
+    public YoloDetectionDecoder(int candidates, int classes, boolean objectness, boolean attributesFirst,
+                                float iouThreshold, int maxCandidates, int maxDetections) {
+        this(candidates, classes, objectness, attributesFirst, iouThreshold, maxCandidates, maxDetections, null);
+    }
+
+    /**
+     * @param candidates      Number of candidate boxes (N)
+     * @param classes         Number of classes (C)
+     * @param objectness      true if each candidate has an objectness score (YOLOv5)
+     * @param attributesFirst true for [1, attributes, N], false for [1, N, attributes]
+     * @param iouThreshold    Overlap threshold for non-max suppression
+     * @param maxCandidates   Most boxes passed into non-max suppression
+     * @param maxDetections   Most detections returned per frame
+     * @param spec            Output tensor giving its type, or null for FLOAT32
+     */
+    public YoloDetectionDecoder(int candidates, int classes, boolean objectness, boolean attributesFirst,
+                                float iouThreshold, int maxCandidates, int maxDetections, TensorSpec spec) {
+        this.candidates = candidates;
+        this.classes = classes;
+        this.objectness = objectness;
+        this.attributesFirst = attributesFirst;
+        this.attributes = 4 + (objectness ? 1 : 0) + classes;
+        this.maxDetections = maxDetections;
+        buffer = OutputBuffer.forTensor(spec, candidates * attributes);
+        output = buffer instanceof FloatOutputBuffer ? (FloatOutputBuffer) buffer : null;
+        quantized = buffer instanceof QuantizedOutputBuffer ? (QuantizedOutputBuffer) buffer : null;
+        outputs.put(0, buffer.prepare());
+        nms = new NonMaxSuppression(maxCandidates, iouThreshold, maxDetections);
+        bestScore = attributesFirst && output != null ? new float[candidates] : null;
+        bestKey = attributesFirst && quantized != null ? new int[candidates] : null;
+        bestClass = attributesFirst ? new int[candidates] : null;
+    }
+
+    @Override
+    public Map<Integer, Object> prepareOutputs() {
+        buffer.prepare();
+        return outputs;
+    }
+
+    @Override
+    public int decode(float scoreThreshold, DetectionBuffer out) {
+        nms.reset();
+        if (quantized != null) {
+            byte[] values = quantized.read();
+            if (attributesFirst) {
+                decodeAttributesFirst(values, scoreThreshold);
+            } else {
+                decodeCandidatesFirst(values, scoreThreshold);
+            }
+        } else {
+            float[] values = output.read();
+            if (attributesFirst) {
+                decodeAttributesFirst(values, scoreThreshold);
+            } else {
+                decodeCandidatesFirst(values, scoreThreshold);
+            }
+        }
+        return nms.run(out);
+    }
+
+    /**
+     * [1, N, attributes]: each candidate's attributes are contiguous.
+     */
+    private void decodeCandidatesFirst(float[] values, float scoreThreshold) {
+        int classStart = objectness ? 5 : 4;
+        for (int n = 0; n < candidates; n++) {
+            int row = n * attributes;
+            float objectScore = objectness ? values[row + 4] : 1f;
+            if (objectScore <= scoreThreshold) {
+                continue; // No class can score higher than the objectness
+            }
+            float best = 0f;
+            int bestIndex = -1;
+            for (int c = 0; c < classes; c++) {
+                float value = values[row + classStart + c];
+                if (value > best) {
+                    best = value;
+                    bestIndex = c;
+                }
+            }
+            float score = best * objectScore;
+            if (bestIndex >= 0 && score > scoreThreshold) {
+                addBox(values[row], values[row + 1], values[row + 2], values[row + 3], score, bestIndex);
+            }
+        }
+    }
+
+    /**
+     * [1, attributes, N]: each attribute is a contiguous row over all candidates.
+     */
+    private void decodeAttributesFirst(float[] values, float scoreThreshold) {
+        int classStart = objectness ? 5 : 4;
+        Arrays.fill(bestScore, 0f);
+        Arrays.fill(bestClass, -1);
+        for (int c = 0; c < classes; c++) {
+            int row = (classStart + c) * candidates;
+            for (int n = 0; n < candidates; n++) {
+                float value = values[row + n];
+                if (value > bestScore[n]) {
+                    bestScore[n] = value;
+                    bestClass[n] = c;
+                }
+            }
+        }
+        int objectRow = 4 * candidates;
+        for (int n = 0; n < candidates; n++) {
+            float score = objectness ? bestScore[n] * values[objectRow + n] : bestScore[n];
+            if (bestClass[n] >= 0 && score > scoreThreshold) {
+                addBox(values[n], values[candidates + n], values[2 * candidates + n], values[3 * candidates + n],
+                        score, bestClass[n]);
+            }
+        }
+    }
+
+    /**
+     * [1, N, attributes] quantized: scores compared as keys, passing candidates dequantized.
+     */
+    private void decodeCandidatesFirst(byte[] values, float scoreThreshold) {
+        int classStart = objectness ? 5 : 4;
+        int mask = quantized.getKeyMask();
+        int minKey = quantized.keyAbove(scoreThreshold);
+        // Class scores must be above 0, and without objectness above the threshold too
+        int startKey = objectness ? quantized.keyAbove(0f) : Math.max(quantized.keyAbove(0f), minKey);
+        for (int n = 0; n < candidates; n++) {
+            int row = n * attributes;
+            float objectScore = 1f;
+            if (objectness) {
+                int objectKey = (values[row + 4] & 0xFF) ^ mask;
+                if (objectKey <= minKey) {
+                    continue; // No class can score higher than the objectness
+                }
+                objectScore = quantized.dequantize(objectKey);
+            }
+            int best = startKey;
+            int bestIndex = -1;
+            for (int c = 0; c < classes; c++) {
+                int key = (values[row + classStart + c] & 0xFF) ^ mask;
+                if (key > best) {
+                    best = key;
+                    bestIndex = c;
+                }
+            }
+            if (bestIndex < 0) {
+                continue;
+            }
+            float score = quantized.dequantize(best) * objectScore;
+            if (score > scoreThreshold) {
+                addBox(quantized.get(row), quantized.get(row + 1), quantized.get(row + 2), quantized.get(row + 3),
+                        score, bestIndex);
+            }
+        }
+    }
+
+    /**
+     * [1, attributes, N] quantized: best class keys found row by row, passing candidates dequantized.
+     */
+    private void decodeAttributesFirst(byte[] values, float scoreThreshold) {
+        int classStart = objectness ? 5 : 4;
+        int mask = quantized.getKeyMask();
+        int startKey = objectness ? quantized.keyAbove(0f)
+                : Math.max(quantized.keyAbove(0f), quantized.keyAbove(scoreThreshold));
+        Arrays.fill(bestKey, startKey);
+        Arrays.fill(bestClass, -1);
+        for (int c = 0; c < classes; c++) {
+            int row = (classStart + c) * candidates;
+            for (int n = 0; n < candidates; n++) {
+                int key = (values[row + n] & 0xFF) ^ mask;
+                if (key > bestKey[n]) {
+                    bestKey[n] = key;
+                    bestClass[n] = c;
+                }
+            }
+        }
+        int objectRow = 4 * candidates;
+        for (int n = 0; n < candidates; n++) {
+            if (bestClass[n] < 0) {
+                continue;
+            }
+            float score = quantized.dequantize(bestKey[n]) * (objectness ? quantized.get(objectRow + n) : 1f);
+            if (score > scoreThreshold) {
+                addBox(quantized.get(n), quantized.get(candidates + n), quantized.get(2 * candidates + n),
+                        quantized.get(3 * candidates + n), score, bestClass[n]);
+            }
+        }
+    }
+
+    private void addBox(float centreX, float centreY, float width, float height, float score, int classId) {
+        float halfW = width / 2;
+        float halfH = height / 2;
+        nms.add(centreX - halfW, centreY - halfH, centreX + halfW, centreY + halfH, score, classId);
+    }
+
+    @Override
+    public int getMaxDetections() {
+        return maxDetections;
+    }
+}
@@ -0,0 +1,125 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Plain Java view of a single YUV_420_888 camera frame.
+ * Holds the three plane buffers together with their row and pixel strides,
+ * so frames can be processed without any Android classes (and tested on the JVM).
+ * The object is mutable and meant to be reused for every frame.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class YuvFrame {
+    // Frame dimensions in pixels
+    private int width;
+    private int height;
+    // Plane buffers - Y=luminance, U and V=chrominance (subsampled 2x2)
+    private ByteBuffer yBuffer;
+    private ByteBuffer uBuffer;
+    private ByteBuffer vBuffer;
+    // Bytes between the start of two rows in the Y plane
+    private int yRowStride;
+    // Bytes between the start of two rows in the U and V planes
+    private int uvRowStride;
+    // Bytes between two neighbouring chroma samples (1 = planar, 2 = semi-planar)
+    private int uvPixelStride;
+
+    /**
+     * Points this frame at a new set of planes.
+     *
+     * @param width         Frame width in pixels
+     * @param height        Frame height in pixels
+     * @param yBuffer       Luminance plane
+     * @param uBuffer       U (Cb) plane
+     * @param vBuffer       V (Cr) plane
+     * @param yRowStride    Row stride of the Y plane
+     * @param uvRowStride   Row stride of the U and V planes
+     * @param uvPixelStride Pixel stride of the U and V planes
+     * @return This frame, for chaining
+     */
+    public YuvFrame set(int width, int height,
+                        ByteBuffer yBuffer, ByteBuffer uBuffer, ByteBuffer vBuffer,
+                        int yRowStride, int uvRowStride, int uvPixelStride) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.yBuffer = yBuffer;
+        this.uBuffer = uBuffer;
+        this.vBuffer = vBuffer;
+        this.yRowStride = yRowStride;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        return this;
+    }
+
+    /**
+     * Points this frame at a planar I420 image: the Y plane, then the U and V planes at half
+     * the width and height (rounded up), each with rows packed without padding.
+     *
+     * @param width  Frame width in pixels
+     * @param height Frame height in pixels
+     * @param data   The image, {@link #i420Size} bytes from its position on
+     * @return This frame, for chaining
+     */
+    public YuvFrame setI420(int width, int height, ByteBuffer data) {
+        if (width <= 0 || height <= 0 || data.remaining() < i420Size(width, height)) {
+            throw new IllegalArgumentException("Not a " + width + "x" + height + " I420 image");
+        }
+        int chromaWidth = (width + 1) / 2;
+        int chromaSize = chromaWidth * ((height + 1) / 2);
+        int start = data.position();
+        return set(width, height, plane(data, start, width * height),
+                plane(data, start + width * height, chromaSize),
+                plane(data, start + width * height + chromaSize, chromaSize),
+                width, chromaWidth, 1);
+    }
+
+    /**
+     * @return Bytes in an I420 image of the given size
+     */
+    public static int i420Size(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    private static ByteBuffer plane(ByteBuffer data, int start, int length) {
+        ByteBuffer view = data.duplicate();
+        view.limit(start + length).position(start);
+        return view.slice();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public ByteBuffer getYBuffer() {
+        return yBuffer;
+    }
+
+    public ByteBuffer getUBuffer() {
+        return uBuffer;
+    }
+
+    public ByteBuffer getVBuffer() {
+        return vBuffer;
+    }
+
+    public int getYRowStride() {
+        return yRowStride;
+    }
+
+    public int getUvRowStride() {
+        return uvRowStride;
+    }
+
+    public int getUvPixelStride() {
+        return uvPixelStride;
+    }
+}
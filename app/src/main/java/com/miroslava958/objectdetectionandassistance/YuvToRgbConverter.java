@@ -0,0 +1,300 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Converts YUV_420_888 frames straight into a packed RGB model input buffer.
+ * Reads the Y, U and V planes directly (honouring row and pixel strides),
+ * crops, rotates and resizes with nearest-neighbour sampling (see {@link InputTransform}),
+ * and writes 3 channels per pixel in the model's {@link InputFormat}: raw bytes,
+ * normalised floats or quantized bytes, each through a lookup table in the same pass,
+ * into a reusable ByteBuffer. This replaces the old NV21 -> JPEG -> Bitmap -> scaled
+ * Bitmap round-trip, so no intermediate image is created for each frame.
+ *
+ * Colour conversion uses full-range BT.601 (JFIF), which is what the camera produces
+ * and what the previous JPEG path assumed.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class YuvToRgbConverter {
+    // Fixed-point (16.16) BT.601 full-range coefficients
+    private static final int SHIFT = 16;
+    private static final int ROUND = 1 << (SHIFT - 1);
+    private static final int V_TO_R = 91881;   // 1.402
+    private static final int U_TO_G = 22554;   // 0.344136
+    private static final int V_TO_G = 46802;   // 0.714136
+    private static final int U_TO_B = 116130;  // 1.772
+
+    // Size of the RGB output (model input size)
+    private final int outputWidth;
+    private final int outputHeight;
+    // How channel values are written
+    private final InputFormat format;
+
+    // Lookup tables mapping each output pixel to its source pixel:
+    // source x = colX[col] + rowX[row], source y = colY[col] + rowY[row]
+    private final int[] colX;
+    private final int[] colY;
+    private final int[] rowX;
+    private final int[] rowY;
+    // Output columns/rows that fall into letterbox padding
+    private final boolean[] colPad;
+    private final boolean[] rowPad;
+    // Crop the lookup tables were last built for (-1 = not built yet)
+    private int mapLeft = -1;
+    private int mapTop = -1;
+    private int mapWidth = -1;
+    private int mapHeight = -1;
+    // Transform the lookup tables were last built for, or null for a plain crop
+    private InputTransform mapTransform;
+    private int mapVersion;
+
+    /**
+     * Creates a converter for a fixed output size writing raw RGB bytes.
+     *
+     * @param outputWidth  Width of the RGB output in pixels
+     * @param outputHeight Height of the RGB output in pixels
+     */
+    public YuvToRgbConverter(int outputWidth, int outputHeight) {
+        this(outputWidth, outputHeight, InputFormat.RGB_BYTES);
+    }
+
+    /**
+     * Creates a converter for a fixed output size and input format.
+     *
+     * @param outputWidth  Width of the RGB output in pixels
+     * @param outputHeight Height of the RGB output in pixels
+     * @param format       How channel values are written
+     */
+    public YuvToRgbConverter(int outputWidth, int outputHeight, InputFormat format) {
+        if (outputWidth <= 0 || outputHeight <= 0) {
+            throw new IllegalArgumentException("Invalid output size " + outputWidth + "x" + outputHeight);
+        }
+        this.outputWidth = outputWidth;
+        this.outputHeight = outputHeight;
+        this.format = format;
+        this.colX = new int[outputWidth];
+        this.colY = new int[outputWidth];
+        this.rowX = new int[outputHeight];
+        this.rowY = new int[outputHeight];
+        this.colPad = new boolean[outputWidth];
+        this.rowPad = new boolean[outputHeight];
+    }
+
+    public int getOutputWidth() {
+        return outputWidth;
+    }
+
+    public int getOutputHeight() {
+        return outputHeight;
+    }
+
+    public InputFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Number of bytes the output buffer needs to hold one RGB image.
+     *
+     * @return Output width * height * 3 * bytes per channel
+     */
+    public int getOutputSize() {
+        return outputWidth * outputHeight * 3 * format.getBytesPerChannel();
+    }
+
+    /**
+     * Converts the whole frame, stretching it to the output size.
+     *
+     * @param frame The source YUV frame
+     * @param out   Destination buffer, at least {@link #getOutputSize()} bytes
+     */
+    public void convert(YuvFrame frame, ByteBuffer out) {
+        convert(frame, 0, 0, frame.getWidth(), frame.getHeight(), out);
+    }
+
+    /**
+     * Converts a crop of the frame, resizing it to the output size.
+     * The output buffer is rewound before writing and left positioned at the start,
+     * ready to be passed to the interpreter.
+     *
+     * @param frame      The source YUV frame
+     * @param cropLeft   Left edge of the crop in source pixels
+     * @param cropTop    Top edge of the crop in source pixels
+     * @param cropWidth  Width of the crop in source pixels
+     * @param cropHeight Height of the crop in source pixels
+     * @param out        Destination buffer, at least {@link #getOutputSize()} bytes, in native
+     *                   byte order for float input
+     * @throws IllegalArgumentException if the crop does not fit inside the frame
+     */
+    public void convert(YuvFrame frame, int cropLeft, int cropTop, int cropWidth, int cropHeight,
+                        ByteBuffer out) {
+        if (cropLeft < 0 || cropTop < 0 || cropWidth <= 0 || cropHeight <= 0
+                || cropLeft + cropWidth > frame.getWidth() || cropTop + cropHeight > frame.getHeight()) {
+            throw new IllegalArgumentException("Crop outside of frame");
+        }
+        checkOutput(out);
+        buildMaps(cropLeft, cropTop, cropWidth, cropHeight);
+        convertMapped(frame, out);
+    }
+
+    /**
+     * Converts the frame as described by an input transform: rotated upright,
+     * with its region stretched, letterboxed or center-cropped into the output.
+     * Letterbox padding is filled with black in the input format.
+     *
+     * @param frame     The source YUV frame
+     * @param transform Mapping from the frame to the output, updated for this frame's size
+     * @param out       Destination buffer, at least {@link #getOutputSize()} bytes
+     * @throws IllegalArgumentException if the transform does not match the frame or output
+     */
+    public void convert(YuvFrame frame, InputTransform transform, ByteBuffer out) {
+        if (transform.getFrameWidth() != frame.getWidth() || transform.getFrameHeight() != frame.getHeight()
+                || transform.getModelWidth() != outputWidth || transform.getModelHeight() != outputHeight) {
+            throw new IllegalArgumentException("Transform does not match the frame or output size");
+        }
+        checkOutput(out);
+        buildMaps(transform);
+        convertMapped(frame, out);
+    }
+
+    private void checkOutput(ByteBuffer out) {
+        if (out.capacity() < getOutputSize()) {
+            throw new IllegalArgumentException("Output buffer too small");
+        }
+        if (format.getFloatTable() != null && out.order() != ByteOrder.nativeOrder()) {
+            throw new IllegalArgumentException("Float input needs a native order buffer");
+        }
+    }
+
+    /**
+     * Samples the source pixel chosen by the lookup tables for every output pixel,
+     * and writes its channels through the format's table.
+     */
+    private void convertMapped(YuvFrame frame, ByteBuffer out) {
+        ByteBuffer yBuffer = frame.getYBuffer();
+        ByteBuffer uBuffer = frame.getUBuffer();
+        ByteBuffer vBuffer = frame.getVBuffer();
+        int yBase = yBuffer.position();
+        int uBase = uBuffer.position();
+        int vBase = vBuffer.position();
+        int yRowStride = frame.getYRowStride();
+        int uvRowStride = frame.getUvRowStride();
+        int uvPixelStride = frame.getUvPixelStride();
+        float[] floats = format.getFloatTable();
+        byte[] bytes = format.getByteTable();
+
+        int index = 0;
+        for (int row = 0; row < outputHeight; row++) {
+            int rx = rowX[row];
+            int ry = rowY[row];
+            boolean padRow = rowPad[row];
+
+            for (int col = 0; col < outputWidth; col++) {
+                int r;
+                int g;
+                int b;
+                if (padRow || colPad[col]) {
+                    r = 0;
+                    g = 0;
+                    b = 0;
+                } else {
+                    int sx = rx + colX[col];
+                    int sy = ry + colY[col];
+                    int uvOffset = (sy >> 1) * uvRowStride + (sx >> 1) * uvPixelStride;
+
+                    int y = (yBuffer.get(yBase + sy * yRowStride + sx) & 0xFF) << SHIFT;
+                    int u = (uBuffer.get(uBase + uvOffset) & 0xFF) - 128;
+                    int v = (vBuffer.get(vBase + uvOffset) & 0xFF) - 128;
+
+                    r = clamp((y + V_TO_R * v + ROUND) >> SHIFT);
+                    g = clamp((y - U_TO_G * u - V_TO_G * v + ROUND) >> SHIFT);
+                    b = clamp((y + U_TO_B * u + ROUND) >> SHIFT);
+                }
+
+                if (floats != null) {
+                    out.putFloat(index, floats[r]);
+                    out.putFloat(index + 4, floats[g]);
+                    out.putFloat(index + 8, floats[b]);
+                    index += 12;
+                } else if (bytes != null) {
+                    out.put(index++, bytes[r]);
+                    out.put(index++, bytes[g]);
+                    out.put(index++, bytes[b]);
+                } else {
+                    out.put(index++, (byte) r);
+                    out.put(index++, (byte) g);
+                    out.put(index++, (byte) b);
+                }
+            }
+        }
+        out.rewind();
+    }
+
+    /**
+     * Rebuilds the lookup tables for a plain crop if it has changed since the last frame.
+     * Each output pixel samples the source pixel under its centre.
+     */
+    private void buildMaps(int left, int top, int width, int height) {
+        if (mapTransform == null && left == mapLeft && top == mapTop && width == mapWidth && height == mapHeight) {
+            return;
+        }
+        for (int col = 0; col < outputWidth; col++) {
+            colX[col] = left + (int) (((2L * col + 1) * width) / (2L * outputWidth));
+            colY[col] = 0;
+            colPad[col] = false;
+        }
+        for (int row = 0; row < outputHeight; row++) {
+            rowX[row] = 0;
+            rowY[row] = top + (int) (((2L * row + 1) * height) / (2L * outputHeight));
+            rowPad[row] = false;
+        }
+        mapLeft = left;
+        mapTop = top;
+        mapWidth = width;
+        mapHeight = height;
+        mapTransform = null;
+    }
+
+    /**
+     * Rebuilds the lookup tables for a transform if it has changed since the last frame.
+     * Each output pixel samples the upright pixel under its centre, which is then
+     * rotated back to the sensor orientation the planes are stored in.
+     */
+    private void buildMaps(InputTransform transform) {
+        if (transform == mapTransform && transform.getVersion() == mapVersion) {
+            return;
+        }
+        int frameWidth = transform.getFrameWidth();
+        int frameHeight = transform.getFrameHeight();
+        int rotation = transform.getRotationDegrees();
+        float regionLeft = transform.getRegionLeft();
+        float regionRight = regionLeft + transform.getRegionWidth();
+        float regionTop = transform.getRegionTop();
+        float regionBottom = regionTop + transform.getRegionHeight();
+
+        for (int col = 0; col < outputWidth; col++) {
+            float x = transform.modelToUprightX(col + 0.5f);
+            colPad[col] = x < regionLeft || x >= regionRight;
+            int ux = Math.max(0, Math.min(transform.getUprightWidth() - 1, (int) x));
+            // Upright x comes from sensor x (0), sensor y (90, 270) or mirrored sensor x (180)
+            colX[col] = rotation == 0 ? ux : (rotation == 180 ? frameWidth - 1 - ux : 0);
+            colY[col] = rotation == 90 ? frameHeight - 1 - ux : (rotation == 270 ? ux : 0);
+        }
+        for (int row = 0; row < outputHeight; row++) {
+            float y = transform.modelToUprightY(row + 0.5f);
+            rowPad[row] = y < regionTop || y >= regionBottom;
+            int uy = Math.max(0, Math.min(transform.getUprightHeight() - 1, (int) y));
+            rowX[row] = rotation == 90 ? uy : (rotation == 270 ? frameWidth - 1 - uy : 0);
+            rowY[row] = rotation == 0 ? uy : (rotation == 180 ? frameHeight - 1 - uy : 0);
+        }
+        mapTransform = transform;
+        mapVersion = transform.getVersion();
+        mapLeft = -1;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
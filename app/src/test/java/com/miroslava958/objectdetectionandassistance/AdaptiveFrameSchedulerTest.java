@@ -0,0 +1,114 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveFrameSchedulerTest {
+
+    private static final long MS = 1_000_000L;
+    // Camera delivers frames at 30 fps
+    private static final long FRAME_INTERVAL = 33 * MS;
+
+    // Simulated time advanced by the test
+    private static final class FakeClock implements Clock {
+        long now = 0;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+    }
+
+    private FakeClock clock;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+    }
+
+    /**
+     * Plays camera frames for a duration with a fixed inference latency,
+     * feeding the latency back for every frame that runs.
+     *
+     * @return Number of inferences run
+     */
+    private int play(AdaptiveFrameScheduler scheduler, long durationNanos, long latencyNanos) {
+        int runs = 0;
+        long end = clock.now + durationNanos;
+        while (clock.now < end) {
+            if (scheduler.shouldRun()) {
+                scheduler.recordInference(latencyNanos);
+                runs++;
+            }
+            clock.now += FRAME_INTERVAL;
+        }
+        return runs;
+    }
+
+    @Test
+    public void testRunsAtTargetRateWithHeadroom() {
+        AdaptiveFrameScheduler scheduler = new AdaptiveFrameScheduler(clock, 10, 1, 0.75);
+
+        int runs = play(scheduler, 10_000 * MS, 20 * MS);
+
+        // 10 Hz target with 30 fps frames: every third frame, so ~100 runs in 10 s
+        assertTrue("runs " + runs, runs >= 95 && runs <= 105);
+        assertEquals(10.0, scheduler.getCurrentRateHz(), 0.01);
+        assertTrue(scheduler.getSkippedFrames() > scheduler.getAcceptedFrames());
+    }
+
+    @Test
+    public void testBacksOffUnderThrottlingAndRecovers() {
+        AdaptiveFrameScheduler scheduler = new AdaptiveFrameScheduler(clock, 30, 1, 0.75);
+
+        // Normal: 20 ms inference fits a 30 Hz target
+        play(scheduler, 5_000 * MS, 20 * MS);
+        assertEquals(30.0, scheduler.getCurrentRateHz(), 0.5);
+
+        // Thermal throttling: 120 ms inference must push the rate down to ~6 Hz
+        int throttledRuns = play(scheduler, 10_000 * MS, 120 * MS);
+        assertEquals(6.25, scheduler.getCurrentRateHz(), 0.3);
+        assertTrue("throttled runs " + throttledRuns, throttledRuns < 80);
+
+        // Headroom returns: the rate climbs back to the target
+        play(scheduler, 10_000 * MS, 20 * MS);
+        assertEquals(30.0, scheduler.getCurrentRateHz(), 0.5);
+    }
+
+    @Test
+    public void testBacksOffFasterThanItRecovers() {
+        AdaptiveFrameScheduler scheduler = new AdaptiveFrameScheduler(clock, 30, 1, 0.75);
+        scheduler.recordInference(20 * MS);
+
+        // A single slow sample moves the average further than a single fast one
+        scheduler.recordInference(100 * MS);
+        long afterRise = scheduler.getAverageLatencyNanos();
+        scheduler.recordInference(20 * MS);
+        long afterFall = scheduler.getAverageLatencyNanos();
+
+        assertEquals(44 * MS, afterRise, MS);
+        assertTrue(afterRise - afterFall < afterRise - 20 * MS);
+    }
+
+    @Test
+    public void testNeverBelowMinimumRate() {
+        AdaptiveFrameScheduler scheduler = new AdaptiveFrameScheduler(clock, 30, 2, 0.5);
+        play(scheduler, 5_000 * MS, 2_000 * MS);
+        assertEquals(2.0, scheduler.getCurrentRateHz(), 0.01);
+    }
+
+    @Test
+    public void testTargetRateCanChange() {
+        AdaptiveFrameScheduler scheduler = new AdaptiveFrameScheduler(clock, 30, 1, 0.75);
+        play(scheduler, 1_000 * MS, 10 * MS);
+        scheduler.setTargetRate(10);
+        assertEquals(10.0, scheduler.getCurrentRateHz(), 0.01);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRatesRejected() {
+        new AdaptiveFrameScheduler(clock, 5, 10, 0.75);
+    }
+}
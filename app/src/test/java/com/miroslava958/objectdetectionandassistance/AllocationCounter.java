@@ -0,0 +1,34 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Test helper that measures the bytes allocated by the current thread.
+ * Relies on the HotSpot ThreadMXBean extension, which the host JVM running the unit tests provides.
+ */
+final class AllocationCounter {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private AllocationCounter() {
+    }
+
+    /**
+     * Bytes allocated by the current thread since it started.
+     */
+    static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Runs the task and returns the bytes it allocated, minus the cost of the measurement itself.
+     */
+    static long measure(Runnable task) {
+        long overheadStart = allocatedBytes();
+        long overhead = allocatedBytes() - overheadStart;
+
+        long start = allocatedBytes();
+        task.run();
+        return Math.max(0, allocatedBytes() - start - overhead);
+    }
+}
@@ -0,0 +1,144 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BackendSelectorTest {
+
+    // Fake device: fixed timings per configuration, optional missing GPU
+    private static final class FakeProbe implements BackendSelector.Probe {
+        final Map<BackendConfig, Long> timings = new HashMap<>();
+        final List<BackendConfig> measured = new ArrayList<>();
+        boolean hasGpu = false;
+        boolean nnapiCrashes = false;
+
+        @Override
+        public boolean isAvailable(BackendConfig config) {
+            return config.getType() != BackendConfig.Type.GPU || hasGpu;
+        }
+
+        @Override
+        public long measureNanos(BackendConfig config, int warmupRuns, int timedRuns) throws Exception {
+            measured.add(config);
+            if (config.getType() == BackendConfig.Type.NNAPI && nnapiCrashes) {
+                throw new IllegalStateException("NNAPI delegate failed to prepare");
+            }
+            Long nanos = timings.get(config);
+            if (nanos == null) {
+                throw new IllegalStateException("no timing");
+            }
+            return nanos;
+        }
+    }
+
+    private static final class MapCache implements BackendSelector.Cache {
+        final Map<String, String> values = new HashMap<>();
+
+        @Override
+        public String get(String key) {
+            return values.get(key);
+        }
+
+        @Override
+        public void put(String key, String value) {
+            values.put(key, value);
+        }
+    }
+
+    private FakeProbe probe;
+    private MapCache cache;
+    private BackendSelector selector;
+    private List<BackendConfig> candidates;
+
+    @Before
+    public void setUp() {
+        probe = new FakeProbe();
+        cache = new MapCache();
+        selector = new BackendSelector(probe, cache, 2, 3);
+        candidates = BackendSelector.candidates(4, true);
+        // CPU gets faster with threads, XNNPACK helps a little
+        for (BackendConfig config : candidates) {
+            if (config.getType() == BackendConfig.Type.CPU) {
+                long base = 80_000_000L / config.getThreads();
+                probe.timings.put(config, config.isXnnpack() ? base - 1_000_000L : base);
+            }
+        }
+        probe.timings.put(new BackendConfig(BackendConfig.Type.GPU, 1, false), 9_000_000L);
+        probe.timings.put(new BackendConfig(BackendConfig.Type.NNAPI, 1, false), 30_000_000L);
+    }
+
+    @Test
+    public void testCandidates() {
+        assertEquals(10, candidates.size());
+        assertEquals(BackendConfig.cpu(1, true), candidates.get(0));
+        assertEquals(2, BackendSelector.candidates(1, false).size());
+    }
+
+    @Test
+    public void testFastestCpuChosenWithoutGpu() {
+        BackendConfig chosen = selector.select("pixel/1", candidates);
+
+        assertEquals(BackendConfig.cpu(4, true), chosen);
+        assertFalse(selector.isLastFromCache());
+        assertEquals("not available", selector.getLastResults().get(8).getError());
+        assertEquals("CPU:4:xnnpack", cache.get("pixel/1"));
+    }
+
+    @Test
+    public void testGpuChosenWhenAvailableAndFastest() {
+        probe.hasGpu = true;
+        assertEquals(BackendConfig.Type.GPU, selector.select("pixel/1", candidates).getType());
+    }
+
+    @Test
+    public void testCachedChoiceSkipsProbe() {
+        cache.put("pixel/1", "CPU:2:plain");
+
+        BackendConfig chosen = selector.select("pixel/1", candidates);
+
+        assertEquals(BackendConfig.cpu(2, false), chosen);
+        assertTrue(selector.isLastFromCache());
+        assertTrue(probe.measured.isEmpty());
+    }
+
+    @Test
+    public void testNewAppVersionProbesAgain() {
+        cache.put("pixel/1", "CPU:2:plain");
+        selector.select("pixel/2", candidates);
+        assertFalse(probe.measured.isEmpty());
+    }
+
+    @Test
+    public void testCorruptCacheEntryIsIgnored() {
+        cache.put("pixel/1", "TPU:x");
+        assertEquals(BackendConfig.cpu(4, true), selector.select("pixel/1", candidates));
+        assertFalse(selector.isLastFromCache());
+    }
+
+    @Test
+    public void testFailingBackendFallsBackToCpu() {
+        probe.timings.clear();
+        probe.nnapiCrashes = true;
+
+        BackendConfig chosen = selector.select("pixel/1", candidates);
+
+        assertEquals(BackendConfig.Type.CPU, chosen.getType());
+        assertNull("Failed probes are not cached", cache.get("pixel/1"));
+    }
+
+    @Test
+    public void testKeyRoundTrip() {
+        for (BackendConfig config : candidates) {
+            assertEquals(config, BackendConfig.fromKey(config.toKey()));
+        }
+        assertNull(BackendConfig.fromKey(null));
+        assertNull(BackendConfig.fromKey("CPU:zero:plain"));
+    }
+}
@@ -0,0 +1,331 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CascadeControllerTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final long MS = 1_000_000L;
+    private static final long FRAME = 66 * MS;
+    private static final long BUDGET = 25 * MS;
+    private static final long MAX_CREDIT = 150 * MS;
+    private static final long REFRESH = 1000 * MS;
+
+    /**
+     * Clock moved only by the stub model.
+     */
+    private static final class FakeClock implements Clock {
+        long now = 0;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+    }
+
+    /**
+     * Refinement model with a 320x320 input that takes a fixed time and reports one
+     * object in the middle of whatever it is shown.
+     */
+    private static final class StubRefiner implements ModelRunner {
+        final FakeClock clock;
+        final long latencyNanos;
+        int runs = 0;
+
+        StubRefiner(FakeClock clock, long latencyNanos) {
+            this.clock = clock;
+            this.latencyNanos = latencyNanos;
+        }
+
+        @Override
+        public TensorSpec getInputSpec() {
+            return new TensorSpec("image", new int[]{1, 320, 320, 3}, TensorSpec.DataType.UINT8, 0f, 0);
+        }
+
+        @Override
+        public List<TensorSpec> getOutputSpecs() {
+            return Arrays.asList(
+                    new TensorSpec("boxes", new int[]{1, 10, 4}),
+                    new TensorSpec("classes", new int[]{1, 10}),
+                    new TensorSpec("scores", new int[]{1, 10}),
+                    new TensorSpec("count", new int[]{1}));
+        }
+
+        @Override
+        public void run(Object[] inputs, Map<Integer, Object> outputs) {
+            runs++;
+            clock.now += latencyNanos;
+            ByteBuffer boxes = ((ByteBuffer) outputs.get(0)).order(ByteOrder.nativeOrder());
+            boxes.putFloat(0.4f).putFloat(0.4f).putFloat(0.6f).putFloat(0.6f);
+            ((ByteBuffer) outputs.get(1)).order(ByteOrder.nativeOrder()).putFloat(2);
+            ((ByteBuffer) outputs.get(2)).order(ByteOrder.nativeOrder()).putFloat(0.9f);
+            ((ByteBuffer) outputs.get(3)).order(ByteOrder.nativeOrder()).putFloat(1);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private FakeClock clock;
+    private CascadeController cascade;
+    private InputTransform transform;
+    private DetectionBuffer tracked;
+    private final float[] regions = new float[8];
+    private CascadeController.Plan plan;
+    private long now;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        cascade = new CascadeController(2, 320, 320, 16, BUDGET, MAX_CREDIT, 0.6f, REFRESH, 0.3f, 0.25f, 0.5f, clock);
+        transform = new InputTransform(320, 320, InputTransform.ScaleMode.LETTERBOX);
+        transform.update(WIDTH, HEIGHT, 0);
+        transform.setViewSize(WIDTH, HEIGHT);
+        tracked = new DetectionBuffer(16);
+        plan = cascade.newPlan();
+        now = 0;
+    }
+
+    private void track(int trackId, float left, float top, float right, float bottom, float score) {
+        int index = tracked.add(left, top, right, bottom, score, 0);
+        tracked.setTrackId(index, trackId);
+    }
+
+    private int plan() {
+        now += FRAME;
+        return cascade.plan(tracked, transform, now, regions, plan);
+    }
+
+    /**
+     * Creates a refinement context whose transform holds a region of the frame, with the view equal to the frame.
+     */
+    private static InferenceContext region(float left, float top, float right, float bottom) {
+        InferenceContext context = new InferenceContext(320, 320, new SsdDetectionDecoder(10),
+                InputTransform.ScaleMode.LETTERBOX);
+        context.getTransform().update(WIDTH, HEIGHT, 0, left, top, right, bottom);
+        context.getTransform().setViewSize(WIDTH, HEIGHT);
+        return context;
+    }
+
+    @Test
+    public void testNewTrackRefinedOnceInACropAroundIt() {
+        track(1, 300, 200, 340, 260, 0.9f);
+        assertEquals(1, plan());
+        // A square crop containing the box with its margin, at least a quarter of the frame height
+        assertTrue(regions[0] <= 300 - 12 && regions[2] >= 340 + 12);
+        assertTrue(regions[1] <= 200 - 18 && regions[3] >= 260 + 18);
+        assertEquals(regions[2] - regions[0], regions[3] - regions[1], 0.01f);
+        assertTrue(regions[3] - regions[1] >= 120);
+        cascade.recordRefinement(10 * MS);
+
+        // A confident track is not looked at again
+        for (int i = 0; i < 30; i++) {
+            assertEquals(0, plan());
+        }
+    }
+
+    @Test
+    public void testNewTracksBeforeUncertainOnes() {
+        cascade = new CascadeController(1, 320, 320, 16, BUDGET, MAX_CREDIT, 0.6f, REFRESH, 0.3f, 0.25f, 0.5f,
+                clock);
+        track(1, 50, 50, 100, 100, 0.3f);
+        assertEquals(1, plan());
+        cascade.recordRefinement(10 * MS);
+        now += REFRESH;
+
+        // Track 1 is due again for its low score, but the new track 2 goes first
+        track(2, 500, 300, 560, 380, 0.9f);
+        assertEquals(1, plan());
+        assertTrue("Crop around track 2", regions[0] <= 500 && regions[2] >= 560 && regions[1] > 100);
+        cascade.recordRefinement(10 * MS);
+        assertEquals(1, plan());
+        assertTrue("Then track 1", regions[0] <= 50 && regions[3] >= 100 && regions[2] < 500);
+    }
+
+    @Test
+    public void testUncertainTrackRefreshed() {
+        track(1, 300, 200, 340, 260, 0.45f);
+        assertEquals(1, plan());
+        cascade.recordRefinement(10 * MS);
+        long refinedAt = now;
+        int plans = 0;
+        while (now - refinedAt < REFRESH - FRAME) {
+            plans += plan();
+        }
+        assertEquals("Not before the refresh time", 0, plans);
+        now = refinedAt + REFRESH - FRAME;
+        assertEquals(1, plan());
+    }
+
+    @Test
+    public void testNeighbouringTrackInsideCropNeedsNoRegionOfItsOwn() {
+        track(1, 300, 200, 340, 260, 0.9f);
+        track(2, 310, 210, 330, 240, 0.9f);
+        assertEquals(1, plan());
+        cascade.recordRefinement(10 * MS);
+        assertEquals(0, plan());
+    }
+
+    @Test
+    public void testUserRequestRefinesWholeFrame() {
+        track(1, 300, 200, 340, 260, 0.9f);
+        plan();
+        cascade.recordRefinement(10 * MS);
+        assertEquals(0, plan());
+
+        cascade.requestRefinement();
+        assertEquals(1, plan());
+        assertArrayEquals(new float[]{0, 0, WIDTH, HEIGHT}, Arrays.copyOf(regions, 4), 0f);
+        cascade.recordRefinement(10 * MS);
+        assertEquals("Served once", 0, plan());
+    }
+
+    @Test
+    public void testDroppedFrameGivesBackItsPlan() throws Exception {
+        track(1, 300, 200, 340, 260, 0.9f);
+        plan();
+        cascade.recordRefinement(10 * MS);
+        CascadeController.Plan dropped = cascade.newPlan();
+
+        // A new track is planned, then the pipeline drops the frame before its refinement
+        track(2, 50, 50, 100, 100, 0.9f);
+        long credit = cascade.getCreditNanos();
+        now += FRAME;
+        assertEquals(1, cascade.plan(tracked, transform, now, regions, dropped));
+        cascade.cancel(dropped);
+        cascade.cancel(dropped);
+        assertEquals("Given back once", credit + BUDGET, cascade.getCreditNanos());
+        // The next frame plans it again
+        assertEquals(1, plan());
+        assertTrue("Crop around track 2", regions[0] <= 50 && regions[2] >= 100);
+        assertEquals(2, cascade.getPlannedRegions());
+        cascade.recordRefinement(10 * MS);
+
+        // A user request is not lost with a dropped frame either
+        cascade.requestRefinement();
+        now += FRAME;
+        assertEquals(1, cascade.plan(tracked, transform, now, regions, dropped));
+        cascade.cancel(dropped);
+        assertEquals(1, plan());
+        assertArrayEquals(new float[]{0, 0, WIDTH, HEIGHT}, Arrays.copyOf(regions, 4), 0f);
+
+        // Once its refinement has run, a plan cannot be given back
+        InferenceContext frame = new InferenceContext(320, 320, new SsdDetectionDecoder(10),
+                InputTransform.ScaleMode.LETTERBOX);
+        frame.setCascadePlan(plan);
+        cascade.refine(frame, new StubRefiner(clock, 10 * MS), new DetectionPostProcessor(0.5f), null,
+                new DetectionBuffer(10));
+        cascade.cancel(plan);
+        assertEquals("Served once", 0, plan());
+    }
+
+    @Test
+    public void testBudgetLimitsAverageRefinementTime() {
+        // Every track needs a look on every frame, but one refinement takes 60 ms against 25 ms per frame
+        cascade = new CascadeController(2, 320, 320, 16, BUDGET, MAX_CREDIT, 0.6f, 1, 0.3f, 0.25f, 0.5f, clock);
+        track(1, 50, 50, 100, 100, 0.3f);
+        track(2, 500, 300, 560, 380, 0.3f);
+        int frames = 300;
+        long spent = 0;
+        for (int i = 0; i < frames; i++) {
+            int count = plan();
+            for (int r = 0; r < count; r++) {
+                cascade.recordRefinement(60 * MS);
+                spent += 60 * MS;
+            }
+        }
+        assertTrue("Spent " + spent / MS + " ms", spent <= frames * BUDGET + MAX_CREDIT);
+        assertTrue("Still runs regularly: " + spent / MS + " ms", spent >= frames * BUDGET - MAX_CREDIT - 60 * MS);
+        assertTrue(cascade.getBudgetLimitedFrames() > frames / 2);
+        assertEquals(60 * MS, cascade.getEstimateNanos());
+    }
+
+    @Test
+    public void testMergeReplacesRejectsAndAdds() {
+        DetectionBuffer fast = new DetectionBuffer(10);
+        fast.add(210, 110, 260, 160, 0.55f, 0);  // Confirmed by a better box
+        fast.add(330, 230, 360, 260, 0.65f, 1);  // Inside the crop, not confirmed: a false positive
+        fast.add(500, 400, 560, 460, 0.8f, 0);   // Outside the crop, kept
+        InferenceContext[] contexts = {region(200, 100, 400, 300), region(300, 100, 500, 300)};
+        DetectionBuffer first = contexts[0].getDetections();
+        first.add(212, 112, 258, 162, 0.85f, 0);
+        first.add(320, 150, 340, 170, 0.7f, 2);   // A small object the fast model missed
+        // The same small object seen in the overlapping crop, with a lower score
+        contexts[1].getDetections().add(321, 151, 341, 171, 0.6f, 2);
+
+        int count = cascade.merge(fast, contexts, 2, new DetectionBuffer(10));
+
+        assertEquals(3, count);
+        assertEquals(500, fast.getLeft(0), 0f);
+        assertEquals(212, fast.getLeft(1), 0f);
+        assertEquals(0.85f, fast.getScore(1), 0f);
+        assertEquals(2, fast.getClassId(2));
+        assertEquals(0.7f, fast.getScore(2), 0f);
+    }
+
+    @Test
+    public void testBoxCutByCropEdgeOnlyConfirms() {
+        DetectionBuffer fast = new DetectionBuffer(10);
+        fast.add(350, 150, 450, 250, 0.7f, 0);
+        InferenceContext[] contexts = {region(200, 100, 400, 300)};
+        // The refinement model sees the object cut off at the crop's right edge
+        contexts[0].getDetections().add(352, 150, 400, 250, 0.9f, 0);
+
+        cascade = new CascadeController(2, 320, 320, 16, BUDGET, MAX_CREDIT, 0.6f, REFRESH, 0.3f, 0.25f, 0.3f, clock);
+        assertEquals(1, cascade.merge(fast, contexts, 1, new DetectionBuffer(10)));
+        assertEquals("The whole fast box stays", 450, fast.getRight(0), 0f);
+        assertEquals(0.7f, fast.getScore(0), 0f);
+    }
+
+    @Test
+    public void testRefineRunsStubModelAndMerges() throws Exception {
+        StubRefiner refiner = new StubRefiner(clock, 40 * MS);
+        InferenceContext frame = new InferenceContext(320, 320, new SsdDetectionDecoder(10),
+                InputTransform.ScaleMode.LETTERBOX);
+        InferenceContext[] refinements = {region(200, 100, 400, 300), region(0, 0, 100, 100)};
+        frame.setRefinements(refinements);
+        frame.setRefinementCount(1);
+        frame.getDetections().add(270, 170, 330, 230, 0.6f, 2);
+
+        int count = cascade.refine(frame, refiner, new DetectionPostProcessor(0.5f), null, new DetectionBuffer(10));
+
+        assertEquals("Only the regions in use run", 1, refiner.runs);
+        assertEquals(40 * MS, cascade.getEstimateNanos());
+        // The refined box, the middle fifth of the crop, replaces the fast one
+        assertEquals(1, count);
+        DetectionBuffer merged = frame.getDetections();
+        assertEquals(280, merged.getLeft(0), 0.5f);
+        assertEquals(180, merged.getTop(0), 0.5f);
+        assertEquals(320, merged.getRight(0), 0.5f);
+        assertEquals(220, merged.getBottom(0), 0.5f);
+        assertEquals(0.9f, merged.getScore(0), 0f);
+    }
+
+    @Test
+    public void testPlanningDoesNotAllocate() {
+        for (int i = 0; i < 10; i++) {
+            track(i, 40 * i, 30 * i, 40 * i + 30, 30 * i + 40, 0.3f + 0.05f * i);
+        }
+        Runnable frames = () -> {
+            for (int i = 0; i < 1000; i++) {
+                int count = plan();
+                for (int r = 0; r < count; r++) {
+                    cascade.recordRefinement(20 * MS);
+                }
+            }
+        };
+        frames.run();
+        assertEquals(0, AllocationCounter.measure(frames));
+    }
+}
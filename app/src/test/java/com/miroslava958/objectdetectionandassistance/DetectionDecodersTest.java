@@ -0,0 +1,387 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+public class DetectionDecodersTest {
+
+    private static final float EPSILON = 1e-4f;
+
+    private static DetectionDecoder.Factory select(int numClasses, float[] anchors, TensorSpec... outputs) {
+        return DetectionDecoders.select(Arrays.asList(outputs), numClasses, anchors, 0.5f, 10);
+    }
+
+    /**
+     * Writes a flat float output the way the interpreter does.
+     */
+    private static void write(DetectionDecoder decoder, int index, float[] values) {
+        ByteBuffer buffer = ((ByteBuffer) decoder.prepareOutputs().get(index)).order(ByteOrder.nativeOrder());
+        for (float value : values) {
+            buffer.putFloat(value);
+        }
+    }
+
+    /**
+     * Quantizes values the way a fully quantized model's output would hold them.
+     *
+     * @return The raw bytes
+     */
+    private static byte[] quantize(float[] values, TensorSpec spec) {
+        boolean signed = spec.getDataType() == TensorSpec.DataType.INT8;
+        byte[] raw = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            long q = Math.round(values[i] / spec.getScale() + spec.getZeroPoint());
+            raw[i] = (byte) Math.max(signed ? -128 : 0, Math.min(signed ? 127 : 255, q));
+        }
+        return raw;
+    }
+
+    /**
+     * The real values the raw bytes stand for, as a float model giving the same outputs would return them.
+     */
+    private static float[] dequantize(byte[] raw, TensorSpec spec) {
+        boolean signed = spec.getDataType() == TensorSpec.DataType.INT8;
+        float[] values = new float[raw.length];
+        for (int i = 0; i < raw.length; i++) {
+            values[i] = ((signed ? raw[i] : raw[i] & 0xFF) - spec.getZeroPoint()) * spec.getScale();
+        }
+        return values;
+    }
+
+    private static void write(DetectionDecoder decoder, int index, byte[] raw) {
+        ((ByteBuffer) decoder.prepareOutputs().get(index)).put(raw);
+    }
+
+    private static void assertSameDetections(DetectionBuffer expected, DetectionBuffer actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getClassId(i), actual.getClassId(i));
+            assertEquals(expected.getScore(i), actual.getScore(i), EPSILON);
+            assertEquals(expected.getLeft(i), actual.getLeft(i), EPSILON);
+            assertEquals(expected.getTop(i), actual.getTop(i), EPSILON);
+            assertEquals(expected.getRight(i), actual.getRight(i), EPSILON);
+            assertEquals(expected.getBottom(i), actual.getBottom(i), EPSILON);
+        }
+    }
+
+    @Test
+    public void testSelectsPostProcessedHead() {
+        DetectionDecoder.Factory factory = select(90, null,
+                new TensorSpec("boxes", new int[]{1, 25, 4}),
+                new TensorSpec("classes", new int[]{1, 25}),
+                new TensorSpec("scores", new int[]{1, 25}),
+                new TensorSpec("count", new int[]{1}));
+        assertEquals(25, factory.getMaxDetections());
+        assertTrue(factory.create() instanceof SsdDetectionDecoder);
+    }
+
+    @Test
+    public void testPostProcessedOutputOrderFromNames() {
+        // TF2 exports: scores, boxes, count, classes
+        DetectionDecoder.Factory factory = select(90, null,
+                new TensorSpec("StatefulPartitionedCall:1", new int[]{1, 10}),
+                new TensorSpec("StatefulPartitionedCall:3", new int[]{1, 10, 4}),
+                new TensorSpec("StatefulPartitionedCall:0", new int[]{1}),
+                new TensorSpec("StatefulPartitionedCall:2", new int[]{1, 10}));
+        assertEquals(10, factory.getMaxDetections());
+
+        factory = select(90, null,
+                new TensorSpec("detection_scores", new int[]{1, 10}),
+                new TensorSpec("detection_boxes", new int[]{1, 10, 4}),
+                new TensorSpec("num_detections", new int[]{1}),
+                new TensorSpec("detection_classes", new int[]{1, 10}));
+        DetectionDecoder decoder = factory.create();
+        write(decoder, 0, new float[]{0.9f, 0.2f});
+        write(decoder, 1, new float[]{0.1f, 0.2f, 0.5f, 0.6f, 0, 0, 0, 0});
+        write(decoder, 2, new float[]{2});
+        write(decoder, 3, new float[]{17f, 3f});
+        DetectionBuffer out = new DetectionBuffer(10);
+
+        assertEquals(1, decoder.decode(0.5f, out));
+        assertEquals(17, out.getClassId(0));
+        assertEquals(0.9f, out.getScore(0), 0f);
+        // (top, left, bottom, right) becomes (left, top, right, bottom)
+        assertEquals(0.2f, out.getLeft(0), 0f);
+        assertEquals(0.1f, out.getTop(0), 0f);
+        assertEquals(0.6f, out.getRight(0), 0f);
+        assertEquals(0.5f, out.getBottom(0), 0f);
+    }
+
+    @Test
+    public void testAnchorDecoding() throws IOException {
+        float[] anchors = DetectionDecoders.readAnchors(new ByteArrayInputStream((
+                "# cy, cx, h, w\n"
+                        + "0.25, 0.25, 0.2, 0.2\n"
+                        + "0.75 0.75 0.4 0.2\n"
+                        + "0.76, 0.74, 0.4, 0.2\n").getBytes(StandardCharsets.UTF_8)));
+        assertEquals(12, anchors.length);
+
+        // 2 real classes plus background in column 0
+        DetectionDecoder.Factory factory = select(2, anchors,
+                new TensorSpec("raw_boxes", new int[]{1, 3, 4}),
+                new TensorSpec("raw_scores", new int[]{1, 3, 3}));
+        DetectionDecoder decoder = factory.create();
+        assertTrue(decoder instanceof AnchorDetectionDecoder);
+
+        float h = (float) Math.log(1.5) * 5f; // Encoded height: 1.5x the anchor
+        write(decoder, 0, new float[]{
+                1f, -1f, h, 0f,   // Shifted by a tenth of the anchor size
+                0f, 0f, 0f, 0f,
+                0f, 0f, 0f, 0f});
+        write(decoder, 1, new float[]{
+                5f, -1f, 3f,      // Background is ignored: class 1 (index 2) wins
+                0f, 2f, -4f,
+                0f, 1f, -4f});    // Overlaps the previous anchor, lower score: suppressed
+        DetectionBuffer out = new DetectionBuffer(10);
+
+        assertEquals(2, decoder.decode(0.6f, out));
+        assertEquals(1, out.getClassId(0));
+        assertEquals((float) (1 / (1 + Math.exp(-3))), out.getScore(0), EPSILON);
+        float centreY = 0.25f + 0.1f * 0.2f;
+        float centreX = 0.25f - 0.1f * 0.2f;
+        assertEquals(centreX - 0.1f, out.getLeft(0), EPSILON);
+        assertEquals(centreY - 0.15f, out.getTop(0), EPSILON);
+        assertEquals(centreX + 0.1f, out.getRight(0), EPSILON);
+        assertEquals(centreY + 0.15f, out.getBottom(0), EPSILON);
+        assertEquals(0, out.getClassId(1));
+        assertEquals(0.65f, out.getLeft(1), EPSILON);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAnchorModelWithoutAnchorsRejected() {
+        select(2, null, new TensorSpec("", new int[]{1, 3, 4}), new TensorSpec("", new int[]{1, 3, 3}));
+    }
+
+    @Test
+    public void testYoloV8Layout() {
+        // [1, 4 + 3, 4]: attributes first, no objectness
+        DetectionDecoder.Factory factory = select(3, null, new TensorSpec("output0", new int[]{1, 7, 4}));
+        DetectionDecoder decoder = factory.create();
+        assertTrue(decoder instanceof YoloDetectionDecoder);
+        write(decoder, 0, new float[]{
+                0.5f, 0.52f, 0.2f, 0.9f,   // cx
+                0.5f, 0.5f, 0.2f, 0.9f,    // cy
+                0.2f, 0.2f, 0.1f, 0.1f,    // w
+                0.4f, 0.4f, 0.1f, 0.1f,    // h
+                0.9f, 0.8f, 0.1f, 0.0f,    // class 0
+                0.0f, 0.1f, 0.1f, 0.3f,    // class 1
+                0.1f, 0.0f, 0.7f, 0.1f});  // class 2
+        DetectionBuffer out = new DetectionBuffer(10);
+
+        // Candidate 1 overlaps candidate 0 (same class), candidate 3 is below the threshold
+        assertEquals(2, decoder.decode(0.5f, out));
+        assertEquals(0, out.getClassId(0));
+        assertEquals(0.9f, out.getScore(0), 0f);
+        assertEquals(0.4f, out.getLeft(0), EPSILON);
+        assertEquals(0.3f, out.getTop(0), EPSILON);
+        assertEquals(0.6f, out.getRight(0), EPSILON);
+        assertEquals(0.7f, out.getBottom(0), EPSILON);
+        assertEquals(2, out.getClassId(1));
+    }
+
+    @Test
+    public void testYoloV5Layout() {
+        // [1, 3, 5 + 2]: one row per candidate with objectness
+        DetectionDecoder.Factory factory = select(2, null, new TensorSpec("output", new int[]{1, 3, 7}));
+        DetectionDecoder decoder = factory.create();
+        write(decoder, 0, new float[]{
+                0.3f, 0.3f, 0.2f, 0.2f, 0.9f, 0.1f, 0.9f,
+                0.7f, 0.7f, 0.2f, 0.2f, 0.4f, 0.9f, 0.1f,    // Low objectness
+                0.7f, 0.3f, 0.2f, 0.2f, 0.8f, 0.5f, 0.5f});  // 0.8 * 0.5 is below the threshold
+        DetectionBuffer out = new DetectionBuffer(10);
+
+        assertEquals(1, decoder.decode(0.5f, out));
+        assertEquals(1, out.getClassId(0));
+        assertEquals(0.81f, out.getScore(0), EPSILON);
+    }
+
+    @Test
+    public void testYoloLayoutsDecodeTheSame() {
+        int candidates = 300;
+        int classes = 5;
+        java.util.Random random = new java.util.Random(9);
+        float[][] rows = new float[candidates][4 + classes];
+        for (float[] row : rows) {
+            row[0] = random.nextFloat();
+            row[1] = random.nextFloat();
+            row[2] = 0.05f + random.nextFloat() * 0.2f;
+            row[3] = 0.05f + random.nextFloat() * 0.2f;
+            for (int c = 0; c < classes; c++) {
+                row[4 + c] = random.nextFloat();
+            }
+        }
+        float[] candidatesFirst = new float[candidates * (4 + classes)];
+        float[] attributesFirst = new float[candidates * (4 + classes)];
+        for (int n = 0; n < candidates; n++) {
+            for (int a = 0; a < 4 + classes; a++) {
+                candidatesFirst[n * (4 + classes) + a] = rows[n][a];
+                attributesFirst[a * candidates + n] = rows[n][a];
+            }
+        }
+        DetectionDecoder first = select(classes, null, new TensorSpec("", new int[]{1, candidates, 4 + classes})).create();
+        DetectionDecoder second = select(classes, null, new TensorSpec("", new int[]{1, 4 + classes, candidates})).create();
+        write(first, 0, candidatesFirst);
+        write(second, 0, attributesFirst);
+        DetectionBuffer a = new DetectionBuffer(10);
+        DetectionBuffer b = new DetectionBuffer(10);
+
+        assertEquals(first.decode(0.8f, a), second.decode(0.8f, b));
+        for (int i = 0; i < a.size(); i++) {
+            assertEquals(a.getScore(i), b.getScore(i), 0f);
+            assertEquals(a.getLeft(i), b.getLeft(i), 0f);
+            assertEquals(a.getClassId(i), b.getClassId(i));
+        }
+    }
+
+    @Test
+    public void testKeyThresholdMatchesDequantizedComparison() {
+        java.util.Random random = new java.util.Random(11);
+        QuantizedOutputBuffer[] buffers = {
+                new QuantizedOutputBuffer(1, TensorSpec.DataType.UINT8, 1 / 256f, 0),
+                new QuantizedOutputBuffer(1, TensorSpec.DataType.INT8, 1 / 256f, -128),
+                new QuantizedOutputBuffer(1, TensorSpec.DataType.INT8, 0.11f, 3),
+        };
+        for (QuantizedOutputBuffer buffer : buffers) {
+            for (int trial = 0; trial < 1000; trial++) {
+                float threshold = (random.nextFloat() - 0.3f) * 20f;
+                int minKey = buffer.keyAbove(threshold);
+                for (int raw = -128; raw < 128; raw++) {
+                    int key = (raw & 0xFF) ^ buffer.getKeyMask();
+                    assertEquals(buffer.dequantize(key) > threshold, key > minKey);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testQuantizedYoloMatchesFloat() {
+        int candidates = 400;
+        int classes = 6;
+        int attributes = 5 + classes;
+        java.util.Random random = new java.util.Random(12);
+        float[] values = new float[candidates * attributes];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextFloat();
+        }
+        for (boolean attributesFirst : new boolean[]{false, true}) {
+            int[] shape = attributesFirst ? new int[]{1, attributes, candidates} : new int[]{1, candidates, attributes};
+            TensorSpec spec = new TensorSpec("", shape, TensorSpec.DataType.INT8, 1 / 255f, -128);
+            byte[] raw = quantize(values, spec);
+            DetectionDecoder quantized = select(classes, null, spec).create();
+            DetectionDecoder reference = select(classes, null, new TensorSpec("", shape)).create();
+            write(quantized, 0, raw);
+            write(reference, 0, dequantize(raw, spec));
+            DetectionBuffer expected = new DetectionBuffer(10);
+            DetectionBuffer actual = new DetectionBuffer(10);
+
+            for (float threshold : new float[]{0.3f, 0.6f, 0.85f}) {
+                reference.decode(threshold, expected);
+                quantized.decode(threshold, actual);
+                assertTrue(expected.size() > 0);
+                assertSameDetections(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testQuantizedAnchorsMatchFloat() {
+        int anchorCount = 200;
+        java.util.Random random = new java.util.Random(13);
+        float[] anchors = new float[anchorCount * 4];
+        float[] encodings = new float[anchorCount * 4];
+        float[] logits = new float[anchorCount * 4];
+        for (int a = 0; a < anchorCount; a++) {
+            anchors[4 * a] = random.nextFloat();
+            anchors[4 * a + 1] = random.nextFloat();
+            anchors[4 * a + 2] = 0.05f + random.nextFloat() * 0.1f;
+            anchors[4 * a + 3] = 0.05f + random.nextFloat() * 0.1f;
+        }
+        for (int i = 0; i < encodings.length; i++) {
+            encodings[i] = random.nextFloat() * 4f - 2f;
+            logits[i] = random.nextFloat() * 10f - 7f;
+        }
+        TensorSpec boxSpec = new TensorSpec("", new int[]{1, anchorCount, 4}, TensorSpec.DataType.UINT8, 0.02f, 128);
+        TensorSpec scoreSpec = new TensorSpec("", new int[]{1, anchorCount, 4}, TensorSpec.DataType.INT8, 0.05f, 20);
+        byte[] rawBoxes = quantize(encodings, boxSpec);
+        byte[] rawLogits = quantize(logits, scoreSpec);
+        DetectionDecoder quantized = select(3, anchors, boxSpec, scoreSpec).create();
+        TensorSpec floats = new TensorSpec("", new int[]{1, anchorCount, 4});
+        DetectionDecoder reference = select(3, anchors, floats, floats).create();
+        write(quantized, 0, rawBoxes);
+        write(quantized, 1, rawLogits);
+        write(reference, 0, dequantize(rawBoxes, boxSpec));
+        write(reference, 1, dequantize(rawLogits, scoreSpec));
+        DetectionBuffer expected = new DetectionBuffer(10);
+        DetectionBuffer actual = new DetectionBuffer(10);
+
+        for (float threshold : new float[]{0.5f, 0.8f, 0.9f}) {
+            reference.decode(threshold, expected);
+            quantized.decode(threshold, actual);
+            assertTrue(expected.size() > 0);
+            assertSameDetections(expected, actual);
+        }
+    }
+
+    @Test
+    public void testQuantizedPostProcessedOutputs() {
+        TensorSpec scores = new TensorSpec("scores", new int[]{1, 4}, TensorSpec.DataType.UINT8, 1 / 256f, 0);
+        TensorSpec classes = new TensorSpec("classes", new int[]{1, 4}, TensorSpec.DataType.UINT8, 1f, 0);
+        DetectionDecoder decoder = select(90, null, new TensorSpec("boxes", new int[]{1, 4, 4}), classes, scores,
+                new TensorSpec("count", new int[]{1})).create();
+        write(decoder, 0, new float[]{0.1f, 0.2f, 0.5f, 0.6f, 0, 0, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0});
+        write(decoder, 1, new byte[]{17, 3, 0, 0});
+        write(decoder, 2, new byte[]{(byte) 230, 64, 0, 0});
+        write(decoder, 3, new float[]{2});
+        DetectionBuffer out = new DetectionBuffer(10);
+
+        assertEquals(1, decoder.decode(0.5f, out));
+        assertEquals(17, out.getClassId(0));
+        assertEquals(230 / 256f, out.getScore(0), 0f);
+        assertEquals(0.2f, out.getLeft(0), 0f);
+        assertEquals(2, decoder.decode(0.2f, out));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownOutputsRejected() {
+        List<TensorSpec> outputs = Arrays.asList(new TensorSpec("a", new int[]{1, 10}),
+                new TensorSpec("b", new int[]{1, 10}), new TensorSpec("c", new int[]{1, 10}));
+        DetectionDecoders.select(outputs, 3, null, 0.5f, 10);
+    }
+
+    @Test(expected = IOException.class)
+    public void testMalformedAnchorsRejected() throws IOException {
+        DetectionDecoders.readAnchors(new ByteArrayInputStream("0.5, 0.5, 0.1\n".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testDecodingDoesNotAllocate() {
+        DetectionDecoder decoder = select(80, null, new TensorSpec("", new int[]{1, 84, 2100})).create();
+        java.util.Random random = new java.util.Random(10);
+        float[] values = new float[84 * 2100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextFloat() * (i < 4 * 2100 ? 1f : 0.6f);
+        }
+        write(decoder, 0, values);
+        DetectionBuffer out = new DetectionBuffer(10);
+        Runnable frames = () -> {
+            for (int frame = 0; frame < 20; frame++) {
+                decoder.prepareOutputs();
+                decoder.decode(0.5f, out);
+            }
+        };
+        // Warm up so the JIT and class loading are out of the way
+        for (int i = 0; i < 20; i++) {
+            frames.run();
+        }
+        assertEquals(0, AllocationCounter.measure(frames));
+    }
+}
@@ -0,0 +1,226 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class DetectionHistoryTest {
+
+    private static final int CLASSES = 80;
+    private static final int PERSON = 0;
+    private static final int BENCH = 13;
+    // The last class
+    private static final int TOOTHBRUSH = 79;
+
+    private File directory;
+    private DetectionHistory history;
+    private final DetectionBuffer frame = new DetectionBuffer(10);
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("history").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        if (history != null) {
+            history.close();
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private int files() {
+        File[] files = directory.listFiles();
+        return files == null ? 0 : files.length;
+    }
+
+    /**
+     * Appends one frame holding one detection of a class, with its track ID.
+     */
+    private void append(int classId, int trackId, long timeMillis) {
+        frame.clear();
+        int i = frame.add(64, 48, 320, 240, 0.8f, classId);
+        frame.setTrackId(i, trackId);
+        history.append(frame, timeMillis, 640, 480);
+    }
+
+    @Test
+    public void testStoresQuantizedRowsAndQueriesNewestFirst() throws Exception {
+        history = new DetectionHistory(directory, CLASSES, 512, 2, 4);
+        frame.add(0, 0, 640, 480, 0.5f, PERSON);
+        frame.setTrackId(0, 7);
+        int bench = frame.add(160, 120, 480, 360, 0.9f, BENCH);
+        frame.setTrackId(bench, 8);
+        history.append(frame, 1000, 640, 480);
+        append(PERSON, 7, 2000);
+        append(TOOTHBRUSH, 9, 3000);
+
+        DetectionHistory.Rows rows = new DetectionHistory.Rows(10);
+        assertEquals(4, history.query(DetectionHistory.ANY_CLASS, 0, Long.MAX_VALUE, rows));
+        assertEquals(3000, rows.getTime(0));
+        assertEquals(TOOTHBRUSH, rows.getClassId(0));
+        assertEquals(1000, rows.getTime(3));
+
+        assertEquals(1, history.query(BENCH, 0, Long.MAX_VALUE, rows));
+        assertEquals(8, rows.getTrackId(0));
+        assertEquals(0.9f, rows.getScore(0), 1f / 255);
+        assertEquals(0.25f, rows.getLeft(0), 1e-4f);
+        assertEquals(0.25f, rows.getTop(0), 1e-4f);
+        assertEquals(0.75f, rows.getRight(0), 1e-4f);
+        assertEquals(0.75f, rows.getBottom(0), 1e-4f);
+
+        // Time ranges are inclusive at both ends
+        assertEquals(2, history.count(PERSON, 1000, 2000));
+        assertEquals(1, history.count(PERSON, 1001, 3000));
+        assertEquals(0, history.count(BENCH, 1001, 3000));
+        assertEquals(2000, history.lastSeen(PERSON, 0, 2500));
+        assertEquals(DetectionHistory.NONE, history.lastSeen(BENCH, 1500, 5000));
+        assertEquals(3000, history.lastSeen(DetectionHistory.ANY_CLASS, 0, Long.MAX_VALUE));
+
+        // A query stops when its rows are full
+        DetectionHistory.Rows two = new DetectionHistory.Rows(2);
+        assertEquals(2, history.query(DetectionHistory.ANY_CLASS, 0, Long.MAX_VALUE, two));
+        assertEquals(2000, two.getTime(1));
+    }
+
+    @Test
+    public void testFullSegmentsMoveToFilesAndAreReadAfterRestart() throws Exception {
+        // As many memory segments as rows appended, so the writer cannot fall behind a tight loop
+        history = new DetectionHistory(directory, CLASSES, 512, 4, 100);
+        // 2000 frames 100 ms apart: a bench every 100th frame, a person in all others
+        for (int i = 0; i < 2000; i++) {
+            append(i % 100 == 0 ? BENCH : PERSON, i % 100 == 0 ? 1 : 2, 100L * i);
+        }
+        assertEquals(2000, history.getAppended());
+        assertEquals(20, history.count(BENCH, 0, Long.MAX_VALUE));
+        assertEquals(199_900, history.lastSeen(PERSON, 0, Long.MAX_VALUE));
+        assertEquals(190_000, history.lastSeen(BENCH, 0, 195_000));
+        history.close();
+        assertNull(history.getLastError());
+        // Three full segments and the last 464 rows
+        assertEquals(4, files());
+        assertTrue(history.getBytesWritten() > 2000 * 23);
+
+        history = new DetectionHistory(directory, CLASSES, 512, 2, 100);
+        assertEquals(2000, history.count(DetectionHistory.ANY_CLASS, 0, Long.MAX_VALUE));
+        assertEquals(20, history.count(BENCH, 0, Long.MAX_VALUE));
+        assertEquals(5, history.count(BENCH, 50_000, 99_999));
+        // Whole blocks are counted from the class index, the rows at the ends one by one
+        assertEquals(1980, history.count(PERSON, 0, Long.MAX_VALUE));
+        assertEquals(1485, history.count(PERSON, 25_000, 174_999));
+        DetectionHistory.Rows rows = new DetectionHistory.Rows(30);
+        assertEquals(20, history.query(BENCH, 0, Long.MAX_VALUE, rows));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(10_000L * (19 - i), rows.getTime(i));
+            assertEquals(1, rows.getTrackId(i));
+        }
+
+        // New rows continue after the restored ones; earlier clock times are stored as the last
+        append(BENCH, 3, 100);
+        assertEquals(199_900, history.lastSeen(BENCH, 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testRetentionKeepsTheNewestSegments() throws Exception {
+        history = new DetectionHistory(directory, CLASSES, 256, 10, 3);
+        for (int i = 0; i < 256 * 10; i++) {
+            append(PERSON, 1, i);
+        }
+        history.close();
+        assertEquals(3, files());
+        // The last three segments of 256 rows
+        assertEquals(768, history.count(PERSON, 0, Long.MAX_VALUE));
+        assertEquals(0, history.count(PERSON, 0, 256 * 7 - 1));
+        assertEquals(1, history.count(PERSON, 0, 256 * 7));
+    }
+
+    @Test
+    public void testFilesCutShortAreDiscarded() throws Exception {
+        history = new DetectionHistory(directory, CLASSES, 256, 3, 10);
+        for (int i = 0; i < 600; i++) {
+            append(BENCH, 1, 1000L * i);
+        }
+        history.close();
+        File[] written = directory.listFiles();
+        assertEquals(3, written.length);
+        Arrays.sort(written);
+        // A crash while writing the newest file: the header is still empty
+        try (RandomAccessFile raf = new RandomAccessFile(written[2], "rw")) {
+            raf.writeInt(0);
+        }
+
+        history = new DetectionHistory(directory, CLASSES, 256, 2, 10);
+        assertEquals(512, history.count(BENCH, 0, Long.MAX_VALUE));
+        assertEquals(2, files());
+    }
+
+    @Test
+    public void testAppendingAndQueryingDoNotAllocate() throws Exception {
+        history = new DetectionHistory(directory, CLASSES, 1024, 4, 100);
+        DetectionHistory.Rows rows = new DetectionHistory.Rows(16);
+        long[] time = {0};
+        Runnable frames = () -> {
+            for (int i = 0; i < 3000; i++) {
+                frame.clear();
+                frame.add(10, 10, 50, 50, 0.7f, PERSON);
+                frame.add(100, 10, 150, 50, 0.6f, i % 50 == 0 ? BENCH : PERSON);
+                history.append(frame, time[0]++, 640, 480);
+                if (i % 10 == 0) {
+                    history.lastSeen(BENCH, time[0] - 60_000, time[0]);
+                    history.count(PERSON, time[0] - 1000, time[0]);
+                    history.query(BENCH, 0, time[0], rows);
+                }
+            }
+        };
+        frames.run();
+        assertEquals(0, AllocationCounter.measure(frames));
+    }
+
+    @Test
+    public void testQueriesSeeConsistentRowsWhileSegmentsAreWritten() throws Exception {
+        history = new DetectionHistory(directory, CLASSES, 1024, 4, 1000);
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            DetectionHistory.Rows rows = new DetectionHistory.Rows(64);
+            int lastCount = 0;
+            while (!Thread.currentThread().isInterrupted() && failure.get() == null) {
+                int count = history.count(DetectionHistory.ANY_CLASS, 0, Long.MAX_VALUE);
+                if (count < lastCount) {
+                    failure.set("Count went back from " + lastCount + " to " + count);
+                }
+                lastCount = count;
+                int read = history.query(BENCH, 0, Long.MAX_VALUE, rows);
+                for (int i = 0; i < read; i++) {
+                    if (rows.getClassId(i) != BENCH || rows.getTime(i) % 7 != 0
+                            || i > 0 && rows.getTime(i) >= rows.getTime(i - 1)) {
+                        failure.set("Inconsistent row " + i + " at " + rows.getTime(i));
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 100_000; i++) {
+            append(i % 7 == 0 ? BENCH : PERSON, 1, i);
+        }
+        reader.interrupt();
+        reader.join();
+        assertNull(failure.get());
+        assertEquals(history.getAppended(), history.count(DetectionHistory.ANY_CLASS, 0, Long.MAX_VALUE));
+        assertEquals(100_000, history.getAppended() + history.getDropped());
+    }
+}
@@ -0,0 +1,158 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DetectionPolicyTest {
+
+    private static final List<String> LABELS = Arrays.asList("person", "car", "potted plant", "vase", "cup");
+
+    private static DetectionPolicy policy(String text) throws IOException {
+        return DetectionPolicy.read(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), LABELS);
+    }
+
+    /**
+     * A 1000x1000 view with normalised boxes mapped straight onto it.
+     */
+    private static InputTransform view() {
+        InputTransform transform = new InputTransform(100, 100, InputTransform.ScaleMode.STRETCH);
+        transform.update(1000, 1000, 0);
+        transform.setViewSize(1000, 1000);
+        return transform;
+    }
+
+    @Test
+    public void testCompilesPerClassThresholds() throws IOException {
+        DetectionPolicy policy = policy("# Example\n"
+                + "default: enter=0.7 exit=0.6\n"
+                + "class Person: enter=0.5 exit=0.4  # lower for people\n"
+                + "class car: enter=0.55\n"
+                + "deny: potted plant, vase\n"
+                + "min_area: 0.01\n"
+                + "max_objects: 3\n");
+
+        assertEquals(0.5f, policy.getEnterThreshold(0), 0f);
+        assertEquals(0.4f, policy.getExitThreshold(0), 0f);
+        assertEquals(0.55f, policy.getExitThreshold(1), 0f);
+        assertEquals(0.7f, policy.getEnterThreshold(4), 0f);
+        assertEquals(0.6f, policy.getExitThreshold(4), 0f);
+        assertFalse(policy.accepts(2, 1.0f, false));
+        assertFalse(policy.accepts(3, 1.0f, true));
+        // Unknown class IDs use the default
+        assertEquals(0.7f, policy.getEnterThreshold(99), 0f);
+        assertEquals(0.4f, policy.getMinThreshold(), 0f);
+        assertEquals(0.01f, policy.getMinAreaFraction(), 0f);
+        assertEquals(3, policy.getMaxObjects());
+    }
+
+    @Test
+    public void testHysteresis() throws IOException {
+        DetectionPolicy policy = policy("class person: enter=0.5 exit=0.4\n");
+
+        assertFalse(policy.accepts(0, 0.45f, false));
+        assertTrue(policy.accepts(0, 0.45f, true));
+        assertFalse(policy.accepts(0, 0.35f, true));
+        assertTrue(policy.accepts(0, 0.55f, false));
+    }
+
+    @Test
+    public void testAllowListHidesEverythingElse() throws IOException {
+        DetectionPolicy policy = policy("allow: person, car\n");
+
+        assertTrue(policy.accepts(0, 0.9f, false));
+        assertTrue(policy.accepts(1, 0.9f, false));
+        assertFalse(policy.accepts(4, 0.99f, false));
+        assertFalse(policy.accepts(42, 0.99f, false));
+    }
+
+    @Test
+    public void testUniformPolicy() {
+        DetectionPolicy policy = DetectionPolicy.uniform(0.7f);
+
+        assertTrue(policy.accepts(5, 0.71f, false));
+        assertFalse(policy.accepts(5, 0.7f, true));
+        assertEquals(0.7f, policy.getMinThreshold(), 0f);
+        assertEquals(Integer.MAX_VALUE, policy.getMaxObjects());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsUnknownLabel() throws IOException {
+        policy("deny: potted plant, vaze\n");
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsExitAboveEnter() throws IOException {
+        policy("class cup: enter=0.5 exit=0.6\n");
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsUnknownSetting() throws IOException {
+        policy("max_boxes: 3\n");
+    }
+
+    @Test
+    public void testPostProcessorAppliesThePolicy() throws IOException {
+        DetectionPostProcessor postProcessor = new DetectionPostProcessor(policy(
+                "class person: enter=0.5 exit=0.4\ndeny: vase\nmin_area: 0.01\n"));
+        DetectionBuffer decoded = new DetectionBuffer(8);
+        decoded.add(0.1f, 0.1f, 0.3f, 0.3f, 0.45f, 0);  // person between exit and enter
+        decoded.add(0.5f, 0.5f, 0.7f, 0.7f, 0.9f, 3);   // vase, denied
+        decoded.add(0.0f, 0.0f, 0.05f, 0.05f, 0.9f, 4); // 0.25% of the view, too small
+        decoded.add(0.6f, 0.1f, 0.9f, 0.4f, 0.6f, 0);   // person above enter
+        DetectionBuffer out = new DetectionBuffer(8);
+
+        assertEquals(1, postProcessor.process(decoded, view(), out));
+        assertEquals(600, out.getLeft(0), 1e-3f);
+
+        // The weaker person stays while it continues a tracked object
+        DetectionBuffer tracked = new DetectionBuffer(4);
+        tracked.add(110, 110, 310, 310, 0.8f, 0);
+        assertEquals(2, postProcessor.process(decoded, view(), tracked, out));
+        // but not if the tracked object is of another class
+        DetectionBuffer trackedCup = new DetectionBuffer(4);
+        trackedCup.add(110, 110, 310, 310, 0.8f, 4);
+        assertEquals(1, postProcessor.process(decoded, view(), trackedCup, out));
+    }
+
+    @Test
+    public void testMaxObjectsKeepsTheStrongest() throws IOException {
+        DetectionPostProcessor postProcessor = new DetectionPostProcessor(policy("default: enter=0.3\nmax_objects: 2\n"));
+        DetectionBuffer decoded = new DetectionBuffer(8);
+        decoded.add(0.0f, 0.0f, 0.2f, 0.2f, 0.5f, 4);
+        decoded.add(0.2f, 0.2f, 0.4f, 0.4f, 0.9f, 4);
+        decoded.add(0.4f, 0.4f, 0.6f, 0.6f, 0.4f, 4);
+        decoded.add(0.6f, 0.6f, 0.8f, 0.8f, 0.7f, 4);
+        DetectionBuffer out = new DetectionBuffer(8);
+
+        assertEquals(2, postProcessor.process(decoded, view(), out));
+        assertEquals(0.9f, out.getScore(0), 0f);
+        assertEquals(0.7f, out.getScore(1), 0f);
+    }
+
+    @Test
+    public void testPostProcessingDoesNotAllocate() throws IOException {
+        final DetectionPostProcessor postProcessor = new DetectionPostProcessor(policy(
+                "class person: enter=0.5 exit=0.4\ndeny: vase\nmax_objects: 2\n"));
+        final DetectionBuffer decoded = new DetectionBuffer(8);
+        for (int i = 0; i < 6; i++) {
+            decoded.add(i * 0.1f, 0.1f, i * 0.1f + 0.1f, 0.3f, 0.3f + i * 0.1f, i % 5);
+        }
+        final DetectionBuffer tracked = new DetectionBuffer(4);
+        tracked.add(0, 100, 100, 300, 0.8f, 0);
+        final DetectionBuffer out = new DetectionBuffer(8);
+        final InputTransform transform = view();
+        Runnable process = () -> postProcessor.process(decoded, transform, tracked, out);
+        for (int i = 0; i < 50_000; i++) {
+            process.run();
+        }
+
+        assertEquals(0, AllocationCounter.measure(process));
+    }
+}
@@ -0,0 +1,138 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+
+public class DetectionPostProcessorTest {
+
+    // Recorded EfficientDet-Lite0 outputs for one frame: [top, left, bottom, right]
+    private static final float[][] BOXES = {
+            {0.10f, 0.20f, 0.60f, 0.50f},
+            {-0.05f, 0.70f, 0.40f, 1.10f},
+            {0.30f, 0.30f, 0.35f, 0.35f},
+            {0.50f, 0.00f, 0.90f, 0.25f},
+    };
+    private static final float[] CLASSES = {0f, 2f, 56f, 67f};
+    private static final float[] SCORES = {0.91f, 0.78f, 0.40f, 0.71f};
+
+    private static InferenceContext recordedFrame() {
+        InferenceContext context = new InferenceContext(320, 25);
+        writeOutputs(context, BOXES, CLASSES, SCORES);
+        return context;
+    }
+
+    /**
+     * Writes post-processed SSD outputs the way the interpreter does.
+     */
+    static void writeOutputs(InferenceContext context, float[][] boxes, float[] classes, float[] scores) {
+        Map<Integer, Object> outputs = context.getOutputs();
+        for (int i = 0; i < boxes.length; i++) {
+            output(outputs, 0).putFloat(i * 16, boxes[i][0]).putFloat(i * 16 + 4, boxes[i][1])
+                    .putFloat(i * 16 + 8, boxes[i][2]).putFloat(i * 16 + 12, boxes[i][3]);
+            output(outputs, 1).putFloat(i * 4, classes[i]);
+            output(outputs, 2).putFloat(i * 4, scores[i]);
+        }
+        output(outputs, 3).putFloat(0, boxes.length);
+    }
+
+    private static ByteBuffer output(Map<Integer, Object> outputs, int index) {
+        return ((ByteBuffer) outputs.get(index)).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Maps normalised coordinates straight onto a width x height view.
+     */
+    private static void identityView(InferenceContext context, int width, int height) {
+        context.getTransform().update(width, height, 0);
+        context.getTransform().setViewSize(width, height);
+    }
+
+    @Test
+    public void testThresholdAndScaling() {
+        InferenceContext context = recordedFrame();
+        DetectionPostProcessor postProcessor = new DetectionPostProcessor(0.7f);
+
+        identityView(context, 1000, 2000);
+        int kept = context.postProcess(postProcessor);
+        DetectionBuffer detections = context.getDetections();
+
+        assertEquals(3, kept);
+        assertEquals(0, detections.getClassId(0));
+        assertEquals(200f, detections.getLeft(0), 1e-3f);
+        assertEquals(200f, detections.getTop(0), 1e-3f);
+        assertEquals(500f, detections.getRight(0), 1e-3f);
+        assertEquals(1200f, detections.getBottom(0), 1e-3f);
+
+        // Boxes leaving the image are clamped to its edges
+        assertEquals(2, detections.getClassId(1));
+        assertEquals(0f, detections.getTop(1), 1e-3f);
+        assertEquals(1000f, detections.getRight(1), 1e-3f);
+
+        // The low score detection is skipped
+        assertEquals(67, detections.getClassId(2));
+        assertEquals(0.71f, detections.getScore(2), 1e-6f);
+    }
+
+    @Test
+    public void testBoxesMappedThroughLetterboxAndRotation() {
+        InferenceContext context = new InferenceContext(320, 320, new SsdDetectionDecoder(25),
+                InputTransform.ScaleMode.LETTERBOX);
+        InputTransform transform = context.getTransform();
+        // 640x480 sensor frame shown upright (480x640) on a 960x1280 view: the view is exactly 2x
+        transform.update(640, 480, 90);
+        transform.setViewSize(960, 1280);
+
+        // An object at upright (120..240, 320..480) as the model sees it in the letterboxed input,
+        // and a detection lying in the letterbox padding
+        float[][] boxes = {
+                {transform.uprightToModelY(320) / 320f, transform.uprightToModelX(120) / 320f,
+                        transform.uprightToModelY(480) / 320f, transform.uprightToModelX(240) / 320f},
+                {0.2f, 0.0f, 0.4f, 0.1f}
+        };
+        writeOutputs(context, boxes, new float[]{0f, 0f}, new float[]{0.9f, 0.9f});
+
+        assertEquals(1, context.postProcess(new DetectionPostProcessor(0.5f)));
+        DetectionBuffer detections = context.getDetections();
+        assertEquals(240f, detections.getLeft(0), 0.05f);
+        assertEquals(640f, detections.getTop(0), 0.05f);
+        assertEquals(480f, detections.getRight(0), 0.05f);
+        assertEquals(960f, detections.getBottom(0), 0.05f);
+    }
+
+    @Test
+    public void testBufferCapacityIsRespected() {
+        InferenceContext context = recordedFrame();
+        identityView(context, 100, 100);
+        context.postProcess(new DetectionPostProcessor(0.5f));
+        DetectionBuffer small = new DetectionBuffer(2);
+        int kept = new DetectionPostProcessor(0.5f).process(context.getDecoded(), context.getTransform(), small);
+        assertEquals(2, kept);
+    }
+
+    @Test
+    public void testSteadyStateLoopDoesNotAllocate() {
+        InferenceContext context = recordedFrame();
+        DetectionPostProcessor postProcessor = new DetectionPostProcessor(0.7f);
+        context.getTransform().update(640, 480, 90);
+        context.getTransform().setViewSize(1080, 1920);
+        Runnable frames = () -> {
+            for (int frame = 0; frame < 10_000; frame++) {
+                context.getOutputs();
+                context.postProcess(postProcessor);
+            }
+        };
+
+        // Warm up so the JIT and class loading are out of the way
+        for (int i = 0; i < 5; i++) {
+            frames.run();
+        }
+
+        long allocated = AllocationCounter.measure(frames);
+        assertEquals("Bytes allocated by 10,000 post-processed frames", 0, allocated);
+    }
+}
@@ -0,0 +1,87 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DetectionStagesTest {
+
+    /**
+     * SSD-shaped model with a square input that finds nothing.
+     */
+    private static final class EmptyRunner implements ModelRunner {
+        private final int size;
+
+        EmptyRunner(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public TensorSpec getInputSpec() {
+            return new TensorSpec("image", new int[]{1, size, size, 3}, TensorSpec.DataType.UINT8, 0f, 0);
+        }
+
+        @Override
+        public List<TensorSpec> getOutputSpecs() {
+            return Arrays.asList(
+                    new TensorSpec("boxes", new int[]{1, 10, 4}),
+                    new TensorSpec("classes", new int[]{1, 10}),
+                    new TensorSpec("scores", new int[]{1, 10}),
+                    new TensorSpec("count", new int[]{1}));
+        }
+
+        @Override
+        public void run(Object[] inputs, Map<Integer, Object> outputs) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void testRefinementsFollowTheConvertedFrame() throws Exception {
+        DetectionStages stages = new DetectionStages(new EmptyRunner(64), 80, null, DetectionPolicy.uniform(0.5f),
+                InputTransform.ScaleMode.LETTERBOX);
+        CascadeController cascade = new CascadeController(2, 32, 32, 10, 25_000_000L, 150_000_000L, 0.6f,
+                1_000_000_000L, 0.3f, 0.25f, 0.5f, Clock.SYSTEM);
+        stages.setCascade(new EmptyRunner(32), 80, cascade);
+        InferenceContext context = stages.newContext();
+        assertEquals(2, context.getRefinements().length);
+        assertNotNull(context.getCascadePlan());
+
+        byte[] data = new byte[YuvFrame.i420Size(128, 96)];
+        YuvFrame frame = new YuvFrame().setI420(128, 96, ByteBuffer.wrap(data));
+        InputTransform transform = new InputTransform(64, 64, InputTransform.ScaleMode.LETTERBOX);
+        transform.update(128, 96, 90);
+        transform.setViewSize(192, 256);
+        stages.convert(frame, transform, 1000, context);
+        assertEquals(1000, context.getTimestampNanos());
+        assertEquals(90, context.getTransform().getRotationDegrees());
+        assertEquals(192, context.getTransform().getViewWidth());
+
+        // A new track is cropped from the same upright frame and mapped to the same view
+        DetectionBuffer tracks = new DetectionBuffer(10);
+        tracks.setTrackId(tracks.add(60, 80, 100, 140, 0.9f, 0), 1);
+        assertEquals(1, stages.planRefinements(tracks, context));
+        assertEquals(1, context.getRefinementCount());
+        InputTransform region = context.getRefinements()[0].getTransform();
+        assertEquals(128, region.getFrameWidth());
+        assertEquals(90, region.getRotationDegrees());
+        assertEquals(192, region.getViewWidth());
+        assertEquals(256, region.getViewHeight());
+        assertTrue(region.getRegionWidth() < 96);
+        stages.convertRefinements(frame, context);
+
+        stages.infer(context);
+        assertEquals(0, stages.postProcess(context, null));
+        assertEquals(0, stages.refine(context, tracks));
+        // The plan is used, so the track is not planned again
+        assertEquals(0, stages.planRefinements(tracks, context));
+    }
+}
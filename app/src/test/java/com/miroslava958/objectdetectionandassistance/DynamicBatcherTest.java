@@ -0,0 +1,205 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DynamicBatcherTest {
+
+    private static final long MS = 1_000_000L;
+
+    /**
+     * Records the batches it is given and optionally blocks or fails them.
+     */
+    private static final class RecordingWorker implements DynamicBatcher.Worker<Integer> {
+        final List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        volatile CountDownLatch gate = null;
+        volatile CountDownLatch entered = null;
+        volatile boolean fail = false;
+
+        @Override
+        public void process(List<Integer> batch) throws Exception {
+            if (entered != null) {
+                entered.countDown();
+            }
+            if (gate != null) {
+                gate.await();
+            }
+            if (fail) {
+                throw new IllegalStateException("Model failed");
+            }
+            sizes.add(batch.size());
+            seen.addAll(batch);
+        }
+    }
+
+    private final List<Integer> dropped = Collections.synchronizedList(new ArrayList<>());
+    private final List<DynamicBatcher.Drop> reasons = Collections.synchronizedList(new ArrayList<>());
+    private DynamicBatcher<Integer> batcher;
+
+    private DynamicBatcher<Integer> create(RecordingWorker worker, int capacity, int maxBatch, long maxWaitNanos,
+                                           long maxQueueNanos) {
+        batcher = new DynamicBatcher<>("test", Collections.singletonList(worker), capacity, maxBatch,
+                maxWaitNanos, maxQueueNanos, (request, reason) -> {
+                    dropped.add(request);
+                    reasons.add(reason);
+                });
+        batcher.start();
+        return batcher;
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (batcher != null) {
+            batcher.shutdown(1000);
+        }
+    }
+
+    private static void awaitProcessed(DynamicBatcher<Integer> batcher, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (batcher.getProcessed() + batcher.getFailed() + batcher.getExpired() < count) {
+            assertTrue("Requests not processed in time", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testQueuedRequestsAreBatchedUpToTheLimit() throws Exception {
+        RecordingWorker worker = new RecordingWorker();
+        worker.gate = new CountDownLatch(1);
+        worker.entered = new CountDownLatch(1);
+        create(worker, 32, 4, 0, 10_000 * MS);
+
+        // The first request is taken alone; the next ten queue up behind it
+        assertTrue(batcher.submit(0));
+        assertTrue(worker.entered.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 10; i++) {
+            assertTrue(batcher.submit(i));
+        }
+        assertEquals(10, batcher.getQueueDepth());
+        worker.gate.countDown();
+        awaitProcessed(batcher, 11);
+
+        assertEquals(Integer.valueOf(1), worker.sizes.get(0));
+        for (int size : worker.sizes) {
+            assertTrue("Batch of " + size, size <= 4);
+        }
+        assertEquals(Integer.valueOf(4), worker.sizes.get(1));
+        // Every request processed once, in arrival order
+        for (int i = 0; i <= 10; i++) {
+            assertEquals(Integer.valueOf(i), worker.seen.get(i));
+        }
+        assertEquals(11, batcher.getSubmitted());
+        assertEquals(11, batcher.getProcessed());
+        assertTrue(dropped.isEmpty());
+    }
+
+    @Test
+    public void testLoneRequestWaitsForItsBatchAtMostTheWaitTime() throws Exception {
+        RecordingWorker worker = new RecordingWorker();
+        create(worker, 8, 4, 50 * MS, 1000 * MS);
+        long start = System.nanoTime();
+        assertTrue(batcher.submit(1));
+        awaitProcessed(batcher, 1);
+        long waited = System.nanoTime() - start;
+        assertTrue("Waited " + waited / MS + " ms", waited >= 45 * MS && waited < 1000 * MS);
+        assertEquals(Collections.singletonList(1), worker.sizes);
+
+        // A full batch does not wait
+        start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(batcher.submit(i));
+        }
+        awaitProcessed(batcher, 5);
+        assertTrue(System.nanoTime() - start < 45 * MS);
+        assertEquals(Integer.valueOf(4), worker.sizes.get(1));
+    }
+
+    @Test
+    public void testFullQueueRefusesRequests() throws Exception {
+        RecordingWorker worker = new RecordingWorker();
+        worker.gate = new CountDownLatch(1);
+        worker.entered = new CountDownLatch(1);
+        create(worker, 3, 2, 0, 10_000 * MS);
+        assertTrue(batcher.submit(0));
+        assertTrue(worker.entered.await(5, TimeUnit.SECONDS));
+        assertTrue(batcher.submit(1));
+        assertTrue(batcher.submit(2));
+        assertTrue(batcher.submit(3));
+        assertFalse("Queue of 3 is full", batcher.submit(4));
+        assertEquals(1, batcher.getRejected());
+
+        worker.gate.countDown();
+        awaitProcessed(batcher, 4);
+        assertTrue(batcher.submit(5));
+        awaitProcessed(batcher, 5);
+        assertFalse(worker.seen.contains(4));
+    }
+
+    @Test
+    public void testStaleRequestsAreDroppedWithoutProcessing() throws Exception {
+        RecordingWorker worker = new RecordingWorker();
+        worker.gate = new CountDownLatch(1);
+        worker.entered = new CountDownLatch(1);
+        create(worker, 8, 4, 0, 20 * MS);
+        assertTrue(batcher.submit(0));
+        assertTrue(worker.entered.await(5, TimeUnit.SECONDS));
+        assertTrue(batcher.submit(1));
+        assertTrue(batcher.submit(2));
+        Thread.sleep(50);
+        worker.gate.countDown();
+        awaitProcessed(batcher, 3);
+
+        assertEquals(Collections.singletonList(0), worker.seen);
+        assertEquals(2, batcher.getExpired());
+        assertEquals(2, dropped.size());
+        assertTrue(reasons.stream().allMatch(reason -> reason == DynamicBatcher.Drop.EXPIRED));
+    }
+
+    @Test
+    public void testFailedBatchDropsItsRequestsAndWorkerCarriesOn() throws Exception {
+        RecordingWorker worker = new RecordingWorker();
+        worker.fail = true;
+        create(worker, 8, 4, 0, 1000 * MS);
+        assertTrue(batcher.submit(7));
+        awaitProcessed(batcher, 1);
+        assertEquals(Collections.singletonList(7), dropped);
+        assertEquals(DynamicBatcher.Drop.FAILED, reasons.get(0));
+
+        worker.fail = false;
+        assertTrue(batcher.submit(8));
+        awaitProcessed(batcher, 2);
+        assertEquals(Collections.singletonList(8), worker.seen);
+        assertEquals(2, batcher.getBatches());
+    }
+
+    @Test
+    public void testShutdownDropsQueuedRequests() throws Exception {
+        RecordingWorker worker = new RecordingWorker();
+        worker.gate = new CountDownLatch(1);
+        worker.entered = new CountDownLatch(1);
+        create(worker, 8, 1, 0, 10_000 * MS);
+        assertTrue(batcher.submit(0));
+        assertTrue(worker.entered.await(5, TimeUnit.SECONDS));
+        assertTrue(batcher.submit(1));
+        assertTrue(batcher.submit(2));
+
+        worker.gate.countDown();
+        batcher.shutdown(1000);
+        assertFalse("Stopped batchers refuse requests", batcher.submit(3));
+        // The running batch finishes; whatever was still queued is dropped, nothing is lost
+        assertEquals(3, worker.seen.size() + dropped.size());
+        assertTrue(worker.seen.contains(0));
+        for (DynamicBatcher.Drop reason : reasons) {
+            assertEquals(DynamicBatcher.Drop.SHUTDOWN, reason);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FrameDetectorTest {
+
+    /**
+     * SSD-shaped model with a 64x64 input that reports one box and remembers the centre input pixel.
+     */
+    private static final class FakeRunner implements ModelRunner {
+        int centreRed = -1;
+
+        @Override
+        public TensorSpec getInputSpec() {
+            return new TensorSpec("image", new int[]{1, 64, 64, 3}, TensorSpec.DataType.UINT8, 0f, 0);
+        }
+
+        @Override
+        public List<TensorSpec> getOutputSpecs() {
+            return Arrays.asList(
+                    new TensorSpec("boxes", new int[]{1, 10, 4}),
+                    new TensorSpec("classes", new int[]{1, 10}),
+                    new TensorSpec("scores", new int[]{1, 10}),
+                    new TensorSpec("count", new int[]{1}));
+        }
+
+        @Override
+        public void run(Object[] inputs, Map<Integer, Object> outputs) {
+            centreRed = ((ByteBuffer) inputs[0]).get((32 * 64 + 32) * 3) & 0xFF;
+            // top, left, bottom, right in model input coordinates
+            ((ByteBuffer) outputs.get(0)).order(ByteOrder.nativeOrder())
+                    .putFloat(0.3f).putFloat(0.2f).putFloat(0.7f).putFloat(0.6f);
+            ((ByteBuffer) outputs.get(1)).order(ByteOrder.nativeOrder()).putFloat(3);
+            ((ByteBuffer) outputs.get(2)).order(ByteOrder.nativeOrder()).putFloat(0.9f);
+            ((ByteBuffer) outputs.get(3)).order(ByteOrder.nativeOrder()).putFloat(1);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * @return A grey I420 image of the given luminance, with neutral chroma
+     */
+    private static byte[] i420(int width, int height, int luma) {
+        byte[] data = new byte[YuvFrame.i420Size(width, height)];
+        Arrays.fill(data, 0, width * height, (byte) luma);
+        Arrays.fill(data, width * height, data.length, (byte) 128);
+        return data;
+    }
+
+    @Test
+    public void testI420PlanesAreSlicedFromOneBuffer() {
+        // Odd sizes round the chroma planes up
+        assertEquals(5 * 3 + 2 * 3 * 2, YuvFrame.i420Size(5, 3));
+        byte[] data = new byte[1 + YuvFrame.i420Size(5, 3)];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.position(1);
+        YuvFrame frame = new YuvFrame().setI420(5, 3, buffer);
+
+        assertEquals(5, frame.getYRowStride());
+        assertEquals(3, frame.getUvRowStride());
+        assertEquals(1, frame.getUvPixelStride());
+        assertEquals(15, frame.getYBuffer().remaining());
+        assertEquals(1, frame.getYBuffer().get(0));
+        assertEquals(16, frame.getUBuffer().get(0));
+        assertEquals(22, frame.getVBuffer().get(0));
+        assertEquals(6, frame.getVBuffer().remaining());
+        assertEquals("Caller's buffer untouched", 1, buffer.position());
+
+        try {
+            new YuvFrame().setI420(6, 3, ByteBuffer.wrap(data));
+            fail("Too short for 6x3");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testDetectionsAreInUprightFramePixels() throws Exception {
+        FakeRunner runner = new FakeRunner();
+        FrameDetector detector = new FrameDetector(runner, 80, null, DetectionPolicy.uniform(0.5f),
+                InputTransform.ScaleMode.LETTERBOX);
+        YuvFrame frame = new YuvFrame().setI420(128, 96, ByteBuffer.wrap(i420(128, 96, 200)));
+
+        // 128x96 is letterboxed into 64x48 with 8 rows of padding above and below
+        DetectionBuffer detections = detector.detect(frame, 0);
+        assertEquals(1, detections.size());
+        assertEquals(3, detections.getClassId(0));
+        assertEquals(25.6f, detections.getLeft(0), 1f);
+        assertEquals(76.8f, detections.getRight(0), 1f);
+        assertEquals(22.4f, detections.getTop(0), 1f);
+        assertEquals(73.6f, detections.getBottom(0), 1f);
+        assertEquals(200, runner.centreRed, 2);
+        assertTrue(detector.getStageNanos()[PipelineMetrics.Stage.INVOKE.ordinal()] > 0);
+
+        // Turned upright the frame is 96x128, padded left and right instead
+        detections = detector.detect(frame, 90);
+        assertEquals(1, detections.size());
+        assertEquals(9.6f, detections.getLeft(0), 1f);
+        assertEquals(60.8f, detections.getRight(0), 1f);
+        assertEquals(38.4f, detections.getTop(0), 1f);
+        assertEquals(89.6f, detections.getBottom(0), 1f);
+    }
+}
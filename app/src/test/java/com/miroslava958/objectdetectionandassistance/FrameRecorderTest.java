@@ -0,0 +1,196 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FrameRecorderTest {
+
+    private File directory;
+    private final Map<Integer, Object> outputs = new HashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("recorder").toFile();
+        ByteBuffer scores = ByteBuffer.allocateDirect(8).order(ByteOrder.nativeOrder());
+        scores.putFloat(0.25f).putFloat(0.75f);
+        outputs.put(0, scores);
+        outputs.put(1, ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder()).putFloat(0, 2));
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private File[] segments() {
+        File[] files = directory.listFiles();
+        Arrays.sort(files);
+        return files;
+    }
+
+    @Test
+    public void testRecordsFramesAndOutputs() throws Exception {
+        FrameRecorder recorder = new FrameRecorder(directory, "test", 1 << 20, 4, 1, 4);
+        for (int i = 0; i < 3; i++) {
+            FrameRecorder.Entry entry = recorder.begin(FrameRecordingTest.frame(16, 8, i), 1000 + i, 270);
+            assertNotNull(entry);
+            recorder.commit(entry, outputs);
+        }
+        recorder.close();
+
+        assertEquals(3, recorder.getRecordedFrames());
+        assertEquals(0, recorder.getDroppedFrames());
+        assertNull(recorder.getLastError());
+        File[] files = segments();
+        assertEquals(1, files.length);
+        // The preallocated segment is trimmed to the bytes written
+        assertEquals(recorder.getBytesWritten(), files[0].length());
+
+        try (FrameRecording recording = new FrameRecording(files[0])) {
+            assertEquals(3, recording.getFrameCount());
+            YuvFrame read = new YuvFrame();
+            for (int i = 0; i < 3; i++) {
+                recording.read(i, read);
+                assertEquals(1000 + i, recording.getTimestampNanos(i));
+                assertEquals(270, recording.getRotationDegrees(i));
+                assertEquals(FrameRecordingTest.frame(16, 8, i).getVBuffer().get(3),
+                        read.getVBuffer().get(read.getVBuffer().position() + 3));
+                assertEquals(2, recording.getOutputCount(i));
+                assertEquals(0.75f, recording.getOutput(i, 0).getFloat(4), 0f);
+                assertEquals(2f, recording.getOutput(i, 1).getFloat(0), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void testSamplesEveryNthFrame() throws Exception {
+        FrameRecorder recorder = new FrameRecorder(directory, "test", 1 << 20, 4, 3, 4);
+        int begun = 0;
+        for (int i = 0; i < 9; i++) {
+            FrameRecorder.Entry entry = recorder.begin(FrameRecordingTest.frame(16, 8, i), i, 0);
+            if (entry != null) {
+                begun++;
+                recorder.commit(entry, outputs);
+            }
+        }
+        recorder.close();
+
+        assertEquals(3, begun);
+        try (FrameRecording recording = new FrameRecording(segments()[0])) {
+            assertEquals(3, recording.getFrameCount());
+            assertEquals(3, recording.getTimestampNanos(1));
+        }
+    }
+
+    @Test
+    public void testDropsFramesInsteadOfWaiting() throws Exception {
+        FrameRecorder recorder = new FrameRecorder(directory, "test", 1 << 20, 4, 1, 2);
+        YuvFrame frame = FrameRecordingTest.frame(16, 8, 0);
+        FrameRecorder.Entry first = recorder.begin(frame, 0, 0);
+        FrameRecorder.Entry second = recorder.begin(frame, 1, 0);
+
+        assertNull(recorder.begin(frame, 2, 0));
+        assertEquals(1, recorder.getDroppedFrames());
+
+        // A cancelled entry is free again
+        recorder.cancel(second);
+        assertNotNull(recorder.begin(frame, 3, 0));
+        recorder.commit(first, outputs);
+        recorder.close();
+        assertEquals(1, recorder.getRecordedFrames());
+    }
+
+    @Test
+    public void testCloseKeepsTheCallersInterrupt() {
+        FrameRecorder recorder = new FrameRecorder(directory, "test", 1 << 20, 4, 1, 4);
+        Thread.currentThread().interrupt();
+        recorder.close();
+        // Clears the flag again for the next tests
+        assertTrue(Thread.interrupted());
+        recorder.close();
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void testEntriesOfAnEarlierRecorderAreIgnored() throws Exception {
+        YuvFrame frame = FrameRecordingTest.frame(16, 8, 0);
+        FrameRecorder earlier = new FrameRecorder(directory, "earlier", 1 << 20, 4, 1, 1);
+        FrameRecorder.Entry stale = earlier.begin(frame, 0, 0);
+        earlier.close();
+
+        // Recording restarted while a pipeline slot still held the earlier entry
+        FrameRecorder recorder = new FrameRecorder(directory, "later", 1 << 20, 4, 1, 1);
+        recorder.cancel(stale);
+        recorder.commit(stale, outputs);
+        FrameRecorder.Entry entry = recorder.begin(frame, 1, 0);
+        assertNotNull(entry);
+        assertNull("Only its own entry was free", recorder.begin(frame, 2, 0));
+        recorder.commit(entry, outputs);
+        recorder.close();
+        assertEquals(1, recorder.getRecordedFrames());
+    }
+
+    @Test
+    public void testRotatesAndDeletesOldSegments() throws Exception {
+        YuvFrame frame = FrameRecordingTest.frame(64, 48, 0);
+        long recordSize = FrameRecording.Writer.recordSize(frame) + 4 + 8 + 4 + 4;
+        // Room for two frames per segment, at most two segments kept
+        FrameRecorder recorder = new FrameRecorder(directory, "test",
+                FrameRecording.HEADER_SIZE + 2 * recordSize + 10, 2, 1, 1);
+        for (int i = 0; i < 7; i++) {
+            FrameRecorder.Entry entry;
+            while ((entry = recorder.begin(frame, i, 0)) == null) {
+                Thread.sleep(1); // Wait for the writer so every frame is kept
+            }
+            recorder.commit(entry, outputs);
+        }
+        recorder.close();
+
+        assertEquals(7, recorder.getRecordedFrames());
+        File[] files = segments();
+        assertEquals(2, files.length);
+        assertEquals("test-0002.odfr", files[0].getName());
+        assertEquals("test-0003.odfr", files[1].getName());
+        try (FrameRecording last = new FrameRecording(files[1])) {
+            assertEquals(1, last.getFrameCount());
+            assertEquals(6, last.getTimestampNanos(0));
+        }
+    }
+
+    @Test
+    public void testInterruptedRecordIsNotRead() throws Exception {
+        FrameRecorder recorder = new FrameRecorder(directory, "test", 1 << 20, 4, 1, 4);
+        recorder.commit(recorder.begin(FrameRecordingTest.frame(16, 8, 0), 0, 0), outputs);
+        recorder.close();
+        File file = segments()[0];
+
+        // A record whose size was never written, as after a crash: fields present, size zero
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        byte[] crashed = Arrays.copyOf(bytes, bytes.length * 2 - FrameRecording.HEADER_SIZE);
+        System.arraycopy(bytes, FrameRecording.HEADER_SIZE + 4, crashed, bytes.length + 4,
+                bytes.length - FrameRecording.HEADER_SIZE - 4);
+        Files.write(file.toPath(), crashed);
+
+        try (FrameRecording recording = new FrameRecording(file)) {
+            assertEquals(1, recording.getFrameCount());
+        }
+    }
+}
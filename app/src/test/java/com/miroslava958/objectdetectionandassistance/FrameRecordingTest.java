@@ -0,0 +1,210 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.*;
+
+public class FrameRecordingTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("frames", ".odfr");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Builds a semi-planar frame with padded rows whose pixels encode their position and the frame number.
+     */
+    static YuvFrame frame(int width, int height, int number) {
+        int rowStride = width + 8;
+        ByteBuffer y = ByteBuffer.allocateDirect(rowStride * height);
+        for (int i = 0; i < y.capacity(); i++) {
+            y.put(i, (byte) (i + number));
+        }
+        ByteBuffer vu = ByteBuffer.allocateDirect(rowStride * height / 2);
+        for (int i = 0; i < vu.capacity(); i++) {
+            vu.put(i, (byte) (i * 3 + number));
+        }
+        ByteBuffer v = vu.duplicate();
+        vu.position(1);
+        ByteBuffer u = vu.slice();
+        return new YuvFrame().set(width, height, y, u, v, rowStride, rowStride, 2);
+    }
+
+    /**
+     * Writes frames 33 ms apart, rotated by 90 degrees.
+     */
+    static void write(File file, int count, int width, int height) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            FrameRecording.Writer writer = new FrameRecording.Writer(out.getChannel());
+            for (int i = 0; i < count; i++) {
+                writer.write(frame(width, height, i), 1_000_000_000L + i * 33_000_000L, 90);
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTripKeepsPixelsAndStrides() throws IOException {
+        write(file, 3, 16, 8);
+
+        try (FrameRecording recording = new FrameRecording(file)) {
+            assertEquals(3, recording.getFrameCount());
+            YuvFrame read = new YuvFrame();
+            for (int n = 0; n < 3; n++) {
+                YuvFrame original = frame(16, 8, n);
+                recording.read(n, read);
+
+                assertEquals(16, read.getWidth());
+                assertEquals(8, read.getHeight());
+                assertEquals(original.getYRowStride(), read.getYRowStride());
+                assertEquals(2, read.getUvPixelStride());
+                assertEquals(1_000_000_000L + n * 33_000_000L, recording.getTimestampNanos(n));
+                assertEquals(90, recording.getRotationDegrees(n));
+                for (int row = 0; row < 8; row++) {
+                    for (int col = 0; col < 16; col++) {
+                        int index = row * read.getYRowStride() + col;
+                        assertEquals(original.getYBuffer().get(index),
+                                read.getYBuffer().get(read.getYBuffer().position() + index));
+                    }
+                }
+                for (int row = 0; row < 4; row++) {
+                    for (int col = 0; col < 8; col++) {
+                        int index = row * read.getUvRowStride() + col * 2;
+                        assertEquals(original.getUBuffer().get(index),
+                                read.getUBuffer().get(read.getUBuffer().position() + index));
+                        assertEquals(original.getVBuffer().get(index),
+                                read.getVBuffer().get(read.getVBuffer().position() + index));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConvertsLikeTheOriginalFrame() throws IOException {
+        write(file, 1, 64, 48);
+        YuvToRgbConverter converter = new YuvToRgbConverter(32, 32);
+        ByteBuffer expected = ByteBuffer.allocateDirect(converter.getOutputSize());
+        ByteBuffer actual = ByteBuffer.allocateDirect(converter.getOutputSize());
+
+        converter.convert(frame(64, 48, 0), expected);
+        try (FrameRecording recording = new FrameRecording(file)) {
+            converter.convert(recording.read(0, new YuvFrame()), actual);
+        }
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testStoresModelOutputs() throws IOException {
+        ByteBuffer boxes = ByteBuffer.allocateDirect(16).order(ByteOrder.LITTLE_ENDIAN);
+        boxes.putFloat(0.1f).putFloat(0.2f).putFloat(0.3f).putFloat(0.4f);
+        ByteBuffer count = ByteBuffer.allocateDirect(4).order(ByteOrder.LITTLE_ENDIAN);
+        count.putFloat(1);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            FrameRecording.Writer writer = new FrameRecording.Writer(out.getChannel());
+            writer.write(frame(16, 8, 0), 0, 0, new ByteBuffer[]{boxes, count});
+            writer.write(frame(16, 8, 1), 1, 0);
+        }
+
+        try (FrameRecording recording = new FrameRecording(file)) {
+            assertEquals(2, recording.getFrameCount());
+            assertEquals(2, recording.getOutputCount(0));
+            assertEquals(0, recording.getOutputCount(1));
+            ByteBuffer readBoxes = recording.getOutput(0, 0);
+            assertEquals(16, readBoxes.remaining());
+            assertEquals(0.3f, readBoxes.getFloat(8), 0f);
+            assertEquals(1f, recording.getOutput(0, 1).getFloat(0), 0f);
+            // The planes are unaffected by the outputs that follow them
+            YuvFrame read = recording.read(1, new YuvFrame());
+            assertEquals(frame(16, 8, 1).getYBuffer().get(5), read.getYBuffer().get(read.getYBuffer().position() + 5));
+        }
+    }
+
+    @Test
+    public void testReadsVersionOneRecords() throws IOException {
+        // Version 1 records end after the V plane
+        YuvFrame original = frame(16, 8, 0);
+        int size = (int) FrameRecording.Writer.recordSize(original) - 4;
+        ByteBuffer data = ByteBuffer.allocate(FrameRecording.HEADER_SIZE + size + 4).order(ByteOrder.LITTLE_ENDIAN);
+        FrameRecording.putFileHeader(data);
+        data.putInt(4, 1);
+        FrameRecording.putRecord(data, original, 5, 180);
+        data.putInt(FrameRecording.HEADER_SIZE, size - 4);
+        data.position(0).limit(FrameRecording.HEADER_SIZE + size);
+        try (FileChannel channel = new FileOutputStream(file).getChannel()) {
+            channel.write(data);
+        }
+
+        try (FrameRecording recording = new FrameRecording(file)) {
+            assertEquals(1, recording.getFrameCount());
+            assertEquals(0, recording.getOutputCount(0));
+            assertEquals(180, recording.getRotationDegrees(0));
+        }
+    }
+
+    @Test
+    public void testSequentialReadingAndRewind() throws IOException {
+        write(file, 2, 16, 8);
+
+        try (FrameRecording recording = new FrameRecording(file)) {
+            YuvFrame read = new YuvFrame();
+            assertTrue(recording.next(read));
+            assertEquals(1_000_000_000L, recording.getTimestampNanos());
+            assertTrue(recording.next(read));
+            assertEquals(1_033_000_000L, recording.getTimestampNanos());
+            assertFalse(recording.next(read));
+
+            recording.rewind();
+            assertTrue(recording.next(read));
+            assertEquals(1_000_000_000L, recording.getTimestampNanos());
+        }
+    }
+
+    @Test
+    public void testTruncatedLastFrameIsIgnored() throws IOException {
+        write(file, 3, 16, 8);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+
+        try (FrameRecording recording = new FrameRecording(file)) {
+            assertEquals(2, recording.getFrameCount());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherFiles() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[64]);
+        }
+        new FrameRecording(file).close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsNewerVersion() throws IOException {
+        write(file, 1, 16, 8);
+        try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+            ByteBuffer version = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            version.putInt(FrameRecording.VERSION + 1).flip();
+            channel.write(version, 4);
+        }
+        new FrameRecording(file).close();
+    }
+}
@@ -0,0 +1,108 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An IMU trace played back as a {@link MotionSensor}, shaped like a recording from a phone
+ * held by someone standing or walking: 100 Hz gyroscope and accelerometer in screen axes,
+ * with sensor noise, a small gyroscope bias and hand tremor. Segments are appended in
+ * order and samples are delivered up to a given time.
+ */
+final class ImuTrace implements MotionSensor {
+    static final long PERIOD = 10_000_000L;
+    private static final float GRAVITY = 9.81f;
+    // Gyroscope bias left after the phone's own calibration, rad/s
+    private static final float[] BIAS = {0.004f, -0.006f, 0.003f};
+
+    private final Random random = new Random(7);
+    // Sample times, and gyroscope x, y, z and accelerometer x, y, z of each
+    private final List<Long> times = new ArrayList<>();
+    private final List<float[]> values = new ArrayList<>();
+    private long end = 0;
+    private int next = 0;
+    private Listener listener;
+
+    /**
+     * Phone held still in front of the user: tremor and noise only.
+     */
+    ImuTrace still(long nanos) {
+        return turn(nanos, 0f, 0f, 0f);
+    }
+
+    /**
+     * Phone turning at a steady rate in rad/s around each screen axis.
+     */
+    ImuTrace turn(long nanos, float rateX, float rateY, float rateZ) {
+        for (long t = end; t < end + nanos; t += PERIOD) {
+            double tremor = 0.02 * Math.sin(2 * Math.PI * 9 * t / 1e9);
+            add(t, rateX + (float) tremor, rateY - (float) tremor, rateZ, 0f, GRAVITY, 0f);
+        }
+        end += nanos;
+        return this;
+    }
+
+    /**
+     * User walking with the phone held steady: footsteps at 2 Hz push the
+     * acceleration 2.5 m/s^2 either side of gravity, with a gentle sway.
+     */
+    ImuTrace walk(long nanos) {
+        for (long t = end; t < end + nanos; t += PERIOD) {
+            double phase = 2 * Math.PI * 2 * t / 1e9;
+            add(t, (float) (0.05 * Math.sin(phase)), (float) (0.08 * Math.sin(phase / 2)), 0f,
+                    (float) (0.6 * Math.cos(phase / 2)), GRAVITY + (float) (2.5 * Math.sin(phase)), 0f);
+        }
+        end += nanos;
+        return this;
+    }
+
+    /**
+     * Sensors delivering nothing, e.g. while the app was paused.
+     */
+    ImuTrace gap(long nanos) {
+        end += nanos;
+        return this;
+    }
+
+    private void add(long t, float gx, float gy, float gz, float ax, float ay, float az) {
+        times.add(t);
+        values.add(new float[]{
+                gx + BIAS[0] + noise(0.008f), gy + BIAS[1] + noise(0.008f), gz + BIAS[2] + noise(0.008f),
+                ax + noise(0.05f), ay + noise(0.05f), az + noise(0.05f)});
+    }
+
+    private float noise(float sigma) {
+        return (float) random.nextGaussian() * sigma;
+    }
+
+    /**
+     * @return Time the trace ends
+     */
+    long end() {
+        return end;
+    }
+
+    /**
+     * Delivers every sample up to and including a time.
+     */
+    void playUntil(long nanos) {
+        while (listener != null && next < times.size() && times.get(next) <= nanos) {
+            long t = times.get(next);
+            float[] v = values.get(next++);
+            listener.onGyroscope(t, v[0], v[1], v[2]);
+            listener.onAccelerometer(t, v[3], v[4], v[5]);
+        }
+    }
+
+    @Override
+    public boolean start(Listener listener) {
+        this.listener = listener;
+        return true;
+    }
+
+    @Override
+    public void stop() {
+        listener = null;
+    }
+}
@@ -0,0 +1,68 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InputFormatTest {
+
+    private static TensorSpec input(TensorSpec.DataType dataType, float scale, int zeroPoint) {
+        return new TensorSpec("image", new int[]{1, 320, 320, 3}, dataType, scale, zeroPoint);
+    }
+
+    @Test
+    public void testFloatTableNormalisesPixels() {
+        InputFormat format = InputFormat.forTensor(input(TensorSpec.DataType.FLOAT32, 0f, 0), 127.5f, 127.5f);
+        assertEquals(4, format.getBytesPerChannel());
+        float[] table = format.getFloatTable();
+        assertEquals(-1f, table[0], 0f);
+        assertEquals(1f, table[255], 0f);
+        for (int p = 0; p < 256; p++) {
+            assertEquals((p - 127.5) / 127.5, table[p], 1e-6);
+        }
+    }
+
+    @Test
+    public void testQuantizedTableIsWithinHalfAStep() {
+        float[][] params = {{0.0078125f, 0}, {0.0078125f, -1}, {0.01f, 10}, {0.02f, -20}};
+        for (float[] param : params) {
+            float scale = param[0];
+            int zeroPoint = (int) param[1];
+            InputFormat format = InputFormat.quantized(TensorSpec.DataType.INT8, scale, zeroPoint, 127.5f, 127.5f);
+            byte[] table = format.getByteTable();
+            for (int p = 0; p < 256; p++) {
+                double real = (p - 127.5) / 127.5;
+                double decoded = (table[p] - zeroPoint) * (double) scale;
+                boolean clamped = table[p] == -128 || table[p] == 127;
+                assertTrue("Pixel " + p + " with scale " + scale + " decodes to " + decoded,
+                        clamped || Math.abs(decoded - real) <= scale / 2 + 1e-6);
+                if (p > 0) {
+                    assertTrue("Order kept", table[p] >= table[p - 1]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUint8InputMatchingPixelsIsWrittenRaw() {
+        // EfficientDet-Lite input: (q - 127) / 128 is the [-1, 1] normalisation to within a step
+        InputFormat format = InputFormat.forTensor(input(TensorSpec.DataType.UINT8, 0.0078125f, 127),
+                InputFormat.DEFAULT_MEAN, InputFormat.DEFAULT_STD);
+        assertTrue(format.isRaw());
+        assertSame(InputFormat.RGB_BYTES, InputFormat.forTensor(input(TensorSpec.DataType.UINT8, 0f, 0), 0f, 1f));
+
+        // A model trained on [0, 1] inputs needs its own table
+        format = InputFormat.forTensor(input(TensorSpec.DataType.UINT8, 1 / 255f, 0), 127.5f, 127.5f);
+        assertFalse(format.isRaw());
+        assertEquals(0, format.getByteTable()[127]);
+    }
+
+    @Test
+    public void testInt8WithoutParametersShiftsPixels() {
+        InputFormat format = InputFormat.forTensor(input(TensorSpec.DataType.INT8, 0f, 0), 127.5f, 127.5f);
+        assertEquals(TensorSpec.DataType.INT8, format.getDataType());
+        for (int p = 0; p < 256; p++) {
+            assertEquals(p - 128, format.getByteTable()[p]);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+public class InputTransformTest {
+
+    private static final int[] ROTATIONS = {0, 90, 180, 270};
+    private static final float EPSILON = 1e-3f;
+
+    @Test
+    public void testSensorUprightRoundTrip() {
+        Random random = new Random(1);
+        float[] upright = new float[2];
+        float[] sensor = new float[2];
+        for (int rotation : ROTATIONS) {
+            InputTransform transform = new InputTransform(320, 320, InputTransform.ScaleMode.LETTERBOX);
+            transform.update(640, 480, rotation);
+            for (int i = 0; i < 100; i++) {
+                float x = random.nextFloat() * 640;
+                float y = random.nextFloat() * 480;
+                transform.sensorToUpright(x, y, upright);
+                assertTrue(upright[0] >= 0 && upright[0] <= transform.getUprightWidth());
+                assertTrue(upright[1] >= 0 && upright[1] <= transform.getUprightHeight());
+                transform.uprightToSensor(upright[0], upright[1], sensor);
+                assertEquals(x, sensor[0], EPSILON);
+                assertEquals(y, sensor[1], EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void testRotationSwapsUprightSize() {
+        InputTransform transform = new InputTransform(320, 320, InputTransform.ScaleMode.STRETCH);
+        transform.update(640, 480, 90);
+        assertEquals(480, transform.getUprightWidth());
+        assertEquals(640, transform.getUprightHeight());
+
+        // The sensor's top-left corner ends up top-right after a clockwise quarter turn
+        float[] upright = new float[2];
+        transform.sensorToUpright(0, 0, upright);
+        assertEquals(480f, upright[0], EPSILON);
+        assertEquals(0f, upright[1], EPSILON);
+
+        transform.update(640, 480, -90);
+        assertEquals(270, transform.getRotationDegrees());
+    }
+
+    @Test
+    public void testUprightModelRoundTripForEveryMode() {
+        Random random = new Random(2);
+        for (InputTransform.ScaleMode mode : InputTransform.ScaleMode.values()) {
+            for (int rotation : ROTATIONS) {
+                InputTransform transform = new InputTransform(320, 240, mode);
+                transform.update(1280, 720, rotation, 100, 50, 500, 350);
+                for (int i = 0; i < 100; i++) {
+                    float x = random.nextFloat() * 320;
+                    float y = random.nextFloat() * 240;
+                    float ux = transform.modelToUprightX(x);
+                    float uy = transform.modelToUprightY(y);
+                    assertEquals(mode + " " + rotation, x, transform.uprightToModelX(ux), EPSILON);
+                    assertEquals(mode + " " + rotation, y, transform.uprightToModelY(uy), EPSILON);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLetterboxKeepsAspectRatioAndPadsEvenly() {
+        InputTransform transform = new InputTransform(320, 320, InputTransform.ScaleMode.LETTERBOX);
+        transform.update(640, 480, 0);
+
+        // 640x480 -> 320x240 centred, 40 px of padding above and below
+        assertEquals(0f, transform.uprightToModelX(0), EPSILON);
+        assertEquals(320f, transform.uprightToModelX(640), EPSILON);
+        assertEquals(40f, transform.uprightToModelY(0), EPSILON);
+        assertEquals(280f, transform.uprightToModelY(480), EPSILON);
+        // A square stays square
+        assertEquals(transform.uprightToModelX(100) - transform.uprightToModelX(0),
+                transform.uprightToModelY(100) - transform.uprightToModelY(0), EPSILON);
+    }
+
+    @Test
+    public void testCenterCropCutsTheLongerSide() {
+        InputTransform transform = new InputTransform(320, 320, InputTransform.ScaleMode.CENTER_CROP);
+        transform.update(640, 480, 0);
+
+        assertEquals(80f, transform.getRegionLeft(), EPSILON);
+        assertEquals(0f, transform.getRegionTop(), EPSILON);
+        assertEquals(480f, transform.getRegionWidth(), EPSILON);
+        assertEquals(480f, transform.getRegionHeight(), EPSILON);
+        assertEquals(0f, transform.uprightToModelX(80), EPSILON);
+        assertEquals(320f, transform.uprightToModelX(560), EPSILON);
+    }
+
+    @Test
+    public void testRegionOfInterestIsClippedToFrame() {
+        InputTransform transform = new InputTransform(320, 320, InputTransform.ScaleMode.STRETCH);
+        transform.update(640, 480, 0, -50, 400, 200, 600);
+        assertEquals(0f, transform.getRegionLeft(), EPSILON);
+        assertEquals(400f, transform.getRegionTop(), EPSILON);
+        assertEquals(200f, transform.getRegionWidth(), EPSILON);
+        assertEquals(80f, transform.getRegionHeight(), EPSILON);
+    }
+
+    @Test
+    public void testModelBoxesMapBackToTheirViewPosition() {
+        // A portrait phone: 640x480 sensor frame rotated 90 degrees, shown on a 1080x2340 view
+        Random random = new Random(3);
+        for (InputTransform.ScaleMode mode : InputTransform.ScaleMode.values()) {
+            for (int rotation : ROTATIONS) {
+                InputTransform transform = new InputTransform(320, 320, mode);
+                transform.update(640, 480, rotation, 60, 90, 420, 500);
+                transform.setViewSize(1080, 2340);
+
+                for (int i = 0; i < 100; i++) {
+                    // A point of the analysed region, as the model would report it
+                    float ux = transform.getRegionLeft() + random.nextFloat() * transform.getRegionWidth();
+                    float uy = transform.getRegionTop() + random.nextFloat() * transform.getRegionHeight();
+                    float nx = transform.uprightToModelX(ux) / 320f;
+                    float ny = transform.uprightToModelY(uy) / 320f;
+
+                    float vx = transform.modelToViewX(nx);
+                    float vy = transform.modelToViewY(ny);
+                    float expectedX = Math.max(0f, Math.min(1080f, transform.uprightToViewX(ux)));
+                    float expectedY = Math.max(0f, Math.min(2340f, transform.uprightToViewY(uy)));
+                    assertEquals(mode + " " + rotation, expectedX, vx, 0.01f);
+                    assertEquals(mode + " " + rotation, expectedY, vy, 0.01f);
+
+                    if (vx > 0 && vx < 1080 && vy > 0 && vy < 2340) {
+                        assertEquals(ux, transform.viewToUprightX(vx), 0.01f);
+                        assertEquals(uy, transform.viewToUprightY(vy), 0.01f);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testViewFillsCentre() {
+        InputTransform transform = new InputTransform(320, 320, InputTransform.ScaleMode.LETTERBOX);
+        // Upright 480x640 (3:4) on a 1080x2340 view: scaled by 2340/640 and cut at the sides
+        transform.update(640, 480, 90);
+        transform.setViewSize(1080, 2340);
+        float scale = 2340f / 640f;
+        assertEquals(0f, transform.uprightToViewY(0), EPSILON);
+        assertEquals(2340f, transform.uprightToViewY(640), 0.01f);
+        assertEquals(540f, transform.uprightToViewX(240), 0.01f);
+        assertEquals(540f - 240 * scale, transform.uprightToViewX(0), 0.01f);
+    }
+
+    @Test
+    public void testBoxInLetterboxPaddingCollapses() {
+        InputTransform transform = new InputTransform(320, 320, InputTransform.ScaleMode.LETTERBOX);
+        transform.update(640, 480, 0);
+        transform.setViewSize(640, 480);
+        // The top 40 model rows are padding
+        assertEquals(transform.modelToViewY(0f), transform.modelToViewY(30f / 320f), EPSILON);
+        assertEquals(0f, transform.modelToViewY(0f), EPSILON);
+    }
+
+    @Test
+    public void testVersionChangesOnlyWithTheMapping() {
+        InputTransform transform = new InputTransform(320, 320, InputTransform.ScaleMode.LETTERBOX);
+        transform.update(640, 480, 90);
+        int version = transform.getVersion();
+        transform.update(640, 480, 90);
+        transform.setViewSize(100, 100);
+        assertEquals(version, transform.getVersion());
+        transform.update(640, 480, 0);
+        assertNotEquals(version, transform.getVersion());
+    }
+
+    @Test
+    public void testCopy() {
+        InputTransform transform = new InputTransform(320, 320, InputTransform.ScaleMode.LETTERBOX);
+        transform.update(640, 480, 270, 10, 20, 300, 400);
+        transform.setViewSize(1080, 1920);
+        InputTransform copy = new InputTransform(320, 320, InputTransform.ScaleMode.LETTERBOX);
+        copy.set(transform);
+        for (float n = 0f; n <= 1f; n += 0.125f) {
+            assertEquals(transform.modelToViewX(n), copy.modelToViewX(n), 0f);
+            assertEquals(transform.modelToViewY(n), copy.modelToViewY(n), 0f);
+        }
+        assertEquals(transform.getVersion(), copy.getVersion());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRotationRejected() {
+        new InputTransform(320, 320, InputTransform.ScaleMode.LETTERBOX).update(640, 480, 45);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyRegionRejected() {
+        new InputTransform(320, 320, InputTransform.ScaleMode.LETTERBOX).update(640, 480, 0, 700, 0, 800, 100);
+    }
+}
@@ -0,0 +1,159 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class InterpreterPoolTest {
+
+    // Records which instances were closed
+    private List<String> closed;
+    private InterpreterPool<String> pool;
+
+    @Before
+    public void setUp() {
+        closed = Collections.synchronizedList(new ArrayList<>());
+        pool = new InterpreterPool<>(Arrays.asList("a", "b"), closed::add);
+    }
+
+    @Test
+    public void testAcquireAndRelease() throws Exception {
+        String first = pool.acquire();
+        String second = pool.acquire();
+
+        assertNotEquals(first, second);
+        assertEquals(0, pool.available());
+        assertNull(pool.tryAcquire(10, TimeUnit.MILLISECONDS));
+
+        pool.release(first);
+        assertEquals(1, pool.available());
+        assertEquals(first, pool.tryAcquire(10, TimeUnit.MILLISECONDS));
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testAcquireWaitsForRelease() throws Exception {
+        final String first = pool.acquire();
+        final String second = pool.acquire();
+        final AtomicReference<String> borrowed = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                borrowed.set(pool.acquire());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        waiter.start();
+
+        assertFalse(done.await(50, TimeUnit.MILLISECONDS));
+        pool.release(second);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(second, borrowed.get());
+        pool.release(first);
+    }
+
+    @Test
+    public void testCloseClosesIdleNowAndBorrowedOnRelease() throws Exception {
+        String borrowed = pool.acquire();
+
+        pool.close();
+        assertEquals(1, closed.size());
+        assertFalse(closed.contains(borrowed));
+
+        pool.release(borrowed);
+        assertEquals(2, closed.size());
+        assertTrue(closed.contains(borrowed));
+
+        // Closing twice closes nothing again
+        pool.close();
+        assertEquals(2, closed.size());
+    }
+
+    @Test
+    public void testCloseCallbackWaitsForBorrowedInstances() throws Exception {
+        String borrowed = pool.acquire();
+        pool.replace(Arrays.asList("c", "d"));
+        String replacement = pool.acquire();
+        final List<String> closedBeforeCallback = new ArrayList<>();
+
+        pool.close(() -> closedBeforeCallback.addAll(closed));
+        assertTrue("Not run while instances are borrowed", closedBeforeCallback.isEmpty());
+        pool.release(borrowed);
+        assertTrue(closedBeforeCallback.isEmpty());
+        pool.release(replacement);
+        assertEquals(4, closedBeforeCallback.size());
+    }
+
+    @Test
+    public void testCloseCallbackRunsAtOnceWhenIdle() {
+        final List<String> closedBeforeCallback = new ArrayList<>();
+        pool.close(() -> closedBeforeCallback.addAll(closed));
+        assertEquals(2, closedBeforeCallback.size());
+    }
+
+    @Test
+    public void testReplaceSwapsIdleNowAndBorrowedOnRelease() throws Exception {
+        String borrowed = pool.acquire();
+
+        pool.replace(Arrays.asList("c", "d"));
+        assertEquals(1, closed.size());
+        assertFalse(closed.contains(borrowed));
+        assertEquals("c", pool.peek());
+
+        pool.release(borrowed);
+        assertEquals(2, closed.size());
+        assertTrue(closed.contains(borrowed));
+        assertEquals(2, pool.available());
+        assertTrue(Arrays.asList("c", "d").contains(pool.acquire()));
+
+        pool.close();
+        pool.replace(Arrays.asList("e", "f"));
+        assertTrue("Replacements of a closed pool are closed", closed.contains("e") && closed.contains("f"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAcquireAfterCloseFails() throws Exception {
+        pool.close();
+        pool.acquire();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyPoolRejected() {
+        new InterpreterPool<String>(Collections.<String>emptyList(), closed::add);
+    }
+
+    @Test
+    public void testBorrowingDoesNotAllocate() {
+        // Long warm-up so JIT compilation does not show up as allocation
+        for (int i = 0; i < 20_000; i++) {
+            borrowAndReturn();
+        }
+
+        long allocated = AllocationCounter.measure(() -> {
+            for (int i = 0; i < 1000; i++) {
+                borrowAndReturn();
+            }
+        });
+
+        assertEquals(0, allocated);
+    }
+
+    private void borrowAndReturn() {
+        try {
+            pool.release(pool.acquire());
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverEveryValueOnce() {
+        long previousHighest = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT - 1; i++) {
+            long lowest = LatencyHistogram.lowestValue(i);
+            long highest = LatencyHistogram.highestValue(i);
+            assertEquals(previousHighest + 1, lowest);
+            assertEquals(i, LatencyHistogram.bucketIndex(lowest));
+            assertEquals(i, LatencyHistogram.bucketIndex(highest));
+            // Each bucket spans at most 1/16 of its values
+            assertTrue(highest - lowest <= Math.max(0, lowest / 16));
+            previousHighest = highest;
+        }
+    }
+
+    @Test
+    public void testOutOfRangeValuesAreClamped() {
+        assertEquals(0, LatencyHistogram.bucketIndex(-5));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentilesWithinBucketPrecision() {
+        Random random = new Random(3);
+        long[] values = new long[10_000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal-ish latencies from ~100 us to ~100 ms
+            values[i] = (long) (1e5 * Math.pow(1000, random.nextDouble()));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(values.length, snapshot.getCount());
+        assertEquals(values[values.length - 1], snapshot.getMax());
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = snapshot.getPercentile(percentile);
+            assertTrue(percentile + ": " + estimate + " vs " + exact,
+                    estimate >= exact && estimate <= exact + exact / 16 + 1);
+        }
+        assertEquals(values[values.length - 1], snapshot.getPercentile(100));
+    }
+
+    @Test
+    public void testMeanAndEmptySnapshot() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencyHistogram.Snapshot empty = histogram.snapshot();
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getMean());
+        assertEquals(0, empty.getPercentile(99));
+
+        histogram.record(1000);
+        histogram.record(3000);
+        assertEquals(2000, histogram.snapshot().getMean());
+    }
+
+    @Test
+    public void testConcurrentRecordingLosesNothing() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long value = (t + 1) * 1000L;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    histogram.record(value);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(200_000, snapshot.getCount());
+        assertEquals(2500, snapshot.getMean());
+        assertEquals(4000, snapshot.getMax());
+    }
+}
@@ -0,0 +1,158 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+
+import static org.junit.Assert.*;
+
+public class MotionCompensatorTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    private static final long MS = 1_000_000L;
+    private static final long FRAME = 33 * MS;
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final float FOCAL = 500f;
+    private static final float BOX = 100f;
+
+    private MotionEstimator estimator;
+    private MotionCompensator compensator;
+    private ObjectTracker tracker;
+    private ImuTrace trace;
+    private final DetectionBuffer detections = new DetectionBuffer(25);
+    private final DetectionBuffer tracked = new DetectionBuffer(25);
+
+    @Before
+    public void setUp() {
+        estimator = new MotionEstimator(256, 0.03f, 0.15f, 0.6f, SECOND, 200 * MS);
+        compensator = new MotionCompensator(estimator);
+        tracker = new ObjectTracker(25, 25, 0.3f, 2, 5);
+        trace = new ImuTrace();
+        trace.start(estimator);
+    }
+
+    /**
+     * Where an object straight ahead at the start appears after the camera turned left by an angle.
+     */
+    private static float objectX(double turned) {
+        return (float) (WIDTH / 2f + FOCAL * Math.tan(turned));
+    }
+
+    private void detect(float centreX) {
+        detections.clear();
+        detections.add(centreX - BOX / 2, HEIGHT / 2f - BOX / 2, centreX + BOX / 2, HEIGHT / 2f + BOX / 2, 0.9f, 0);
+    }
+
+    @Test
+    public void testImageShiftDirections() {
+        float[] shift = new float[3];
+        assertTrue("Turning left moves the scene right", MotionCompensator.imageShift(0, 0.1, 0, FOCAL, shift));
+        assertEquals(FOCAL * Math.tan(0.1), shift[0], 0.01);
+        assertEquals(0f, shift[1], 0f);
+        assertTrue("Tilting up moves it down", MotionCompensator.imageShift(0.1, 0, 0, FOCAL, shift));
+        assertEquals(FOCAL * Math.tan(0.1), shift[1], 0.01);
+        assertFalse("Too small to move", MotionCompensator.imageShift(0, 0.00005, 0, FOCAL, shift));
+
+        // A quarter turn clockwise takes a box right of the centre to below it, keeping its size
+        DetectionBuffer boxes = new DetectionBuffer(1);
+        boxes.add(410, 235, 430, 245, 0.8f, 3);
+        MotionCompensator.shift(boxes, 0f, 0f, (float) (Math.PI / 2), 320, 240);
+        assertEquals(310, boxes.getLeft(0), 0.01);
+        assertEquals(330, boxes.getRight(0), 0.01);
+        assertEquals(335, boxes.getTop(0), 0.01);
+        assertEquals(345, boxes.getBottom(0), 0.01);
+        assertEquals(3, boxes.getClassId(0));
+    }
+
+    @Test
+    public void testTrackedBoxFollowsATurnBetweenInferences() {
+        // Still for a second, a quick 0.45 rad turn left over 300 ms with no inference, then still
+        trace.still(SECOND).turn(300 * MS, 0f, 1.5f, 0f).still(SECOND);
+        for (long t = 0; t < trace.end(); t += FRAME) {
+            trace.playUntil(t);
+            compensator.apply(tracker, t, FOCAL, WIDTH, HEIGHT);
+            if (t < 200 * MS) {
+                detect(objectX(0));
+                compensator.update(tracker, detections, t, FOCAL, WIDTH, HEIGHT);
+            }
+        }
+        long end = trace.end() - FRAME;
+        assertEquals(1, tracker.predict(end, tracked));
+        float centreX = (tracked.getLeft(0) + tracked.getRight(0)) / 2;
+        float expected = objectX(0.45);
+        // Within 10% of the 240 px the object moved across the view
+        assertEquals(expected, centreX, 24f);
+        assertEquals(HEIGHT / 2f, (tracked.getTop(0) + tracked.getBottom(0)) / 2, 5f);
+
+        // Without an estimate of the focal length nothing moves
+        tracker.reset();
+        compensator = new MotionCompensator(estimator);
+        assertFalse(compensator.apply(tracker, 0, Float.NaN, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void testLateDetectionsKeepTheirTrackOnTheObjectDuringATurn() {
+        float aligned = turnWithLateDetections(true);
+        tracker.reset();
+        float unaligned = turnWithLateDetections(false);
+        System.out.printf("Box error during a 1 rad/s turn: %.1f px compensated, %.1f px tracker only%n",
+                aligned, unaligned);
+        assertTrue("Off by " + aligned + " px", aligned < 25f);
+        assertTrue(aligned < unaligned / 2);
+    }
+
+    /**
+     * Turns left at 1 rad/s for half a second while detections of frames captured every
+     * 66 ms arrive 150 ms later, publishing the tracked box every frame.
+     *
+     * @return Largest distance in px between the published box and the object
+     */
+    private float turnWithLateDetections(boolean compensate) {
+        trace = new ImuTrace();
+        estimator = new MotionEstimator(256, 0.03f, 0.15f, 0.6f, SECOND, 200 * MS);
+        compensator = new MotionCompensator(estimator);
+        trace.start(estimator);
+        trace.still(SECOND).turn(500 * MS, 0f, 1f, 0f).still(500 * MS);
+
+        ArrayDeque<Long> pending = new ArrayDeque<>();
+        int trackId = -1;
+        float maxError = 0f;
+        for (long t = 0; t < trace.end(); t += FRAME) {
+            trace.playUntil(t);
+            if (compensate) {
+                compensator.apply(tracker, t, FOCAL, WIDTH, HEIGHT);
+            }
+            if ((t / FRAME) % 2 == 0) {
+                pending.add(t);
+            }
+            while (!pending.isEmpty() && pending.peek() + 150 * MS <= t) {
+                long captured = pending.poll();
+                detect(objectX(turned(captured)));
+                if (compensate) {
+                    compensator.update(tracker, detections, captured, FOCAL, WIDTH, HEIGHT);
+                } else {
+                    tracker.update(detections, captured);
+                }
+            }
+            if (tracker.predict(t, tracked) == 0) {
+                continue;
+            }
+            if (compensate) {
+                assertTrue("One track for the object", trackId < 0 || tracked.getTrackId(0) == trackId);
+                trackId = tracked.getTrackId(0);
+            }
+            float centreX = (tracked.getLeft(0) + tracked.getRight(0)) / 2;
+            maxError = Math.max(maxError, Math.abs(centreX - objectX(turned(t))));
+        }
+        return maxError;
+    }
+
+    /**
+     * @return How far the camera had turned at a time, in radians
+     */
+    private static double turned(long nanos) {
+        return Math.max(0, Math.min(nanos - SECOND, 500 * MS)) / (double) SECOND;
+    }
+}
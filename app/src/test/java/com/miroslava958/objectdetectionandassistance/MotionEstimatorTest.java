@@ -0,0 +1,130 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MotionEstimatorTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    private static final long MS = 1_000_000L;
+    private static final long FRAME = 33 * MS;
+
+    private MotionEstimator estimator;
+    private ImuTrace trace;
+    private final double[] rotation = new double[3];
+
+    @Before
+    public void setUp() {
+        estimator = new MotionEstimator(256, 0.03f, 0.15f, 0.6f, SECOND, 200 * MS);
+        trace = new ImuTrace();
+        trace.start(estimator);
+    }
+
+    @Test
+    public void testStillAfterTheHoldTime() {
+        trace.still(5 * SECOND);
+        trace.playUntil(500 * MS);
+        assertFalse("Not still before the hold time", estimator.isStill(500 * MS));
+        trace.playUntil(1500 * MS);
+        assertTrue(estimator.isStill(1500 * MS));
+        trace.playUntil(5 * SECOND);
+        assertTrue(estimator.isStill(5 * SECOND));
+    }
+
+    @Test
+    public void testWalkingIsNeverStill() {
+        trace.still(2 * SECOND).walk(10 * SECOND);
+        trace.playUntil(2 * SECOND);
+        assertTrue(estimator.isStill(2 * SECOND));
+        // The phone hardly turns while walking: the footsteps show it moves
+        for (long t = 2 * SECOND + 100 * MS; t < trace.end(); t += 100 * MS) {
+            trace.playUntil(t);
+            assertFalse("Still at " + t / MS + " ms", estimator.isStill(t));
+        }
+    }
+
+    @Test
+    public void testStillOnlyWhileSamplesArrive() {
+        trace.still(2 * SECOND).gap(SECOND).still(2 * SECOND);
+        trace.playUntil(2 * SECOND);
+        assertTrue(estimator.isStill(2 * SECOND));
+        assertFalse("Sensors stopped", estimator.isStill(2 * SECOND + 300 * MS));
+        trace.stop();
+        assertFalse(estimator.isStill(10 * SECOND));
+    }
+
+    @Test
+    public void testIntegratesRotationBetweenTimes() {
+        // Held still, turned left at 1 rad/s for half a second, then still again
+        trace.still(SECOND).turn(500 * MS, 0f, 1f, 0f).still(SECOND);
+        trace.playUntil(trace.end());
+
+        assertEquals(0.5, rotationBetween(SECOND, 1500 * MS)[1], 0.01);
+        assertEquals(0.25, rotationBetween(1125 * MS, 1375 * MS)[1], 0.01);
+        // Between samples the rotation is interpolated
+        assertEquals(0.0015, rotationBetween(1250 * MS, 1_251_500_000L)[1], 0.0005);
+        // Tremor and bias add a few milliradians before the bias is learnt: 2 px at a 500 px focal length
+        double[] rest = rotationBetween(1600 * MS, 2500 * MS);
+        assertEquals(0, rest[0], 0.005);
+        assertEquals(0, rest[1], 0.005);
+        assertEquals(0, rest[2], 0.005);
+    }
+
+    @Test
+    public void testBiasAndTremorDoNotDrift() {
+        trace.still(10 * SECOND);
+        trace.playUntil(trace.end());
+        double[] drift = rotationBetween(0, trace.end() - ImuTrace.PERIOD);
+        // Under 0.01 rad: 5 px after 10 s for a 500 px focal length
+        for (double axis : drift) {
+            assertEquals(0, axis, 0.01);
+        }
+    }
+
+    @Test
+    public void testNoRotationAcrossGapsOrBeyondTheLatestSample() {
+        trace.turn(SECOND, 0f, 0f, 0.5f).gap(SECOND).turn(SECOND, 0f, 0f, 0.5f);
+        trace.playUntil(trace.end());
+        assertEquals(0, rotationBetween(990 * MS, 2 * SECOND)[2], 1e-6);
+        assertEquals(1.0, rotationBetween(0, 3 * SECOND)[2], 0.02);
+        // Extrapolated for at most 50 ms at the latest rate
+        double[] later = rotationBetween(trace.end() - ImuTrace.PERIOD, trace.end() + SECOND);
+        assertEquals(0.5 * 0.05, later[2], 0.005);
+    }
+
+    @Test
+    public void testGateSlowsInferenceOnlyWhileStill() {
+        MotionGate gate = new MotionGate(estimator, 250 * MS);
+        trace.still(6 * SECOND).walk(4 * SECOND);
+        int stillInferences = 0;
+        int walkingInferences = 0;
+        for (long t = 0; t < trace.end(); t += FRAME) {
+            trace.playUntil(t);
+            if (gate.shouldInfer(t)) {
+                gate.recordInference(t);
+                if (t >= SECOND && t < 6 * SECOND) {
+                    stillInferences++;
+                } else if (t >= 6 * SECOND) {
+                    walkingInferences++;
+                }
+            }
+        }
+        // At most 4 Hz for the 5 s the phone counts as still, every frame while walking
+        assertTrue("Inferred " + stillInferences + " times while still", stillInferences <= 21);
+        assertTrue(stillInferences >= 15);
+        assertEquals(4 * SECOND / FRAME, walkingInferences, 3);
+        assertTrue(gate.getSkippedFrames() > 100);
+    }
+
+    private double[] rotationBetween(long from, long to) {
+        double[] start = new double[3];
+        assertTrue(estimator.getRotation(from, start));
+        assertTrue(estimator.getRotation(to, rotation));
+        for (int axis = 0; axis < 3; axis++) {
+            rotation[axis] -= start[axis];
+        }
+        return rotation;
+    }
+}
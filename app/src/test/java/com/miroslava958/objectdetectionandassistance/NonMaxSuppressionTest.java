@@ -0,0 +1,105 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+public class NonMaxSuppressionTest {
+
+    @Test
+    public void testOverlappingBoxesOfSameClassAreSuppressed() {
+        NonMaxSuppression nms = new NonMaxSuppression(16, 0.5f, 10);
+        DetectionBuffer out = new DetectionBuffer(10);
+        nms.add(0.10f, 0.10f, 0.50f, 0.50f, 0.80f, 0);
+        nms.add(0.12f, 0.11f, 0.52f, 0.50f, 0.90f, 0);   // Same object, higher score
+        nms.add(0.60f, 0.60f, 0.90f, 0.90f, 0.70f, 0);   // Another object
+        nms.add(0.12f, 0.11f, 0.52f, 0.50f, 0.60f, 3);   // Same place, other class
+
+        assertEquals(3, nms.run(out));
+        assertEquals(0.90f, out.getScore(0), 0f);
+        assertEquals(0.70f, out.getScore(1), 0f);
+        assertEquals(3, out.getClassId(2));
+    }
+
+    @Test
+    public void testKeepsBestCandidatesWhenFull() {
+        NonMaxSuppression nms = new NonMaxSuppression(4, 0.5f, 4);
+        DetectionBuffer out = new DetectionBuffer(4);
+        for (int i = 0; i < 10; i++) {
+            // Disjoint boxes with scores 0.1 .. 1.0
+            nms.add(i, 0, i + 0.5f, 1, (i + 1) / 10f, 0);
+        }
+        assertEquals(4, nms.run(out));
+        assertEquals(1.0f, out.getScore(0), 1e-6f);
+        assertEquals(0.7f, out.getScore(3), 1e-6f);
+    }
+
+    @Test
+    public void testMatchesBruteForceReference() {
+        Random random = new Random(4);
+        NonMaxSuppression nms = new NonMaxSuppression(2000, 0.45f, 100);
+        DetectionBuffer out = new DetectionBuffer(100);
+        int n = 1500;
+        float[][] boxes = new float[n][];
+        for (int i = 0; i < n; i++) {
+            float x = random.nextFloat() * 0.9f;
+            float y = random.nextFloat() * 0.9f;
+            float size = 0.02f + random.nextFloat() * 0.1f;
+            boxes[i] = new float[]{x, y, x + size, y + size, random.nextFloat(), random.nextInt(5)};
+            nms.add(boxes[i][0], boxes[i][1], boxes[i][2], boxes[i][3], boxes[i][4], (int) boxes[i][5]);
+        }
+        int kept = nms.run(out);
+
+        // Reference: repeatedly take the best remaining box and drop its overlaps
+        boolean[] removed = new boolean[n];
+        int expected = 0;
+        while (expected < 100) {
+            int best = -1;
+            for (int i = 0; i < n; i++) {
+                if (!removed[i] && (best < 0 || boxes[i][4] > boxes[best][4])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            assertEquals(boxes[best][4], out.getScore(expected), 0f);
+            expected++;
+            removed[best] = true;
+            for (int i = 0; i < n; i++) {
+                if (!removed[i] && boxes[i][5] == boxes[best][5]
+                        && ObjectTracker.iou(boxes[i][0], boxes[i][1], boxes[i][2], boxes[i][3],
+                        boxes[best][0], boxes[best][1], boxes[best][2], boxes[best][3]) > 0.45f) {
+                    removed[i] = true;
+                }
+            }
+        }
+        assertEquals(expected, kept);
+    }
+
+    @Test
+    public void testDoesNotAllocate() {
+        NonMaxSuppression nms = new NonMaxSuppression(1000, 0.5f, 25);
+        DetectionBuffer out = new DetectionBuffer(25);
+        Random random = new Random(5);
+        float[] values = new float[4000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextFloat();
+        }
+        Runnable frames = () -> {
+            for (int frame = 0; frame < 200; frame++) {
+                nms.reset();
+                for (int i = 0; i < 1000; i++) {
+                    float x = values[i] * 0.9f;
+                    float y = values[i + 1000] * 0.9f;
+                    nms.add(x, y, x + 0.1f, y + 0.1f, values[i + 2000], i % 7);
+                }
+                nms.run(out);
+            }
+        };
+        frames.run();
+        assertEquals(0, AllocationCounter.measure(frames));
+    }
+}
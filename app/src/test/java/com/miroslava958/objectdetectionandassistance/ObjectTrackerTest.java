@@ -0,0 +1,198 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+public class ObjectTrackerTest {
+
+    private static final long FRAME_NANOS = 33_333_333L;
+
+    /**
+     * A recorded scene: objects moving at constant velocity, seen by a noisy detector
+     * that sometimes misses an object (score dip or skipped frame).
+     */
+    private static final class Scene {
+        // Per object: class, start centre, velocity (px/frame), size
+        final int[] classes = {0, 0, 2};
+        final float[][] start = {{200, 600}, {700, 650}, {100, 1200}};
+        final float[][] velocity = {{3, 0}, {-2, 1}, {12, -1}};
+        final float[][] size = {{150, 400}, {140, 380}, {300, 180}};
+
+        float centreX(int object, int frame) {
+            return start[object][0] + velocity[object][0] * frame;
+        }
+
+        float centreY(int object, int frame) {
+            return start[object][1] + velocity[object][1] * frame;
+        }
+
+        /**
+         * Detector output for one frame.
+         */
+        void detect(int frame, Random random, float dropRate, DetectionBuffer out) {
+            out.clear();
+            for (int o = 0; o < classes.length; o++) {
+                if (random.nextFloat() < dropRate) {
+                    continue;
+                }
+                float cx = centreX(o, frame) + (float) random.nextGaussian() * 2f;
+                float cy = centreY(o, frame) + (float) random.nextGaussian() * 2f;
+                float w = size[o][0];
+                float h = size[o][1];
+                out.add(cx - w / 2, cy - h / 2, cx + w / 2, cy + h / 2, 0.9f, classes[o]);
+            }
+        }
+    }
+
+    /**
+     * Replays the scene, running inference every Nth frame and predicting in between.
+     * Returns {ID switches, max centre error in px of predicted frames, tracked object-frames}.
+     */
+    private static float[] replay(int inferenceEvery, float dropRate, int frames, long seed, boolean print) {
+        Scene scene = new Scene();
+        Random random = new Random(seed);
+        ObjectTracker tracker = new ObjectTracker(25, 25, 0.3f, 2, 5);
+        DetectionBuffer detections = new DetectionBuffer(25);
+        DetectionBuffer tracked = new DetectionBuffer(25);
+        int[] lastId = {-1, -1, -1};
+        int switches = 0;
+        int trackedFrames = 0;
+        float maxError = 0;
+        long computeNanos = 0;
+
+        for (int frame = 0; frame < frames; frame++) {
+            long timestamp = frame * FRAME_NANOS;
+            long start = System.nanoTime();
+            if (frame % inferenceEvery == 0) {
+                scene.detect(frame, random, dropRate, detections);
+                tracker.update(detections, timestamp);
+            }
+            tracker.predict(timestamp, tracked);
+            computeNanos += System.nanoTime() - start;
+
+            // Match tracked boxes to the true objects by nearest centre
+            for (int o = 0; o < 3; o++) {
+                float tx = scene.centreX(o, frame);
+                float ty = scene.centreY(o, frame);
+                int best = -1;
+                float bestDistance = 60f;
+                for (int i = 0; i < tracked.size(); i++) {
+                    if (tracked.getClassId(i) != scene.classes[o]) {
+                        continue;
+                    }
+                    float dx = (tracked.getLeft(i) + tracked.getRight(i)) / 2 - tx;
+                    float dy = (tracked.getTop(i) + tracked.getBottom(i)) / 2 - ty;
+                    float distance = (float) Math.sqrt(dx * dx + dy * dy);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = i;
+                    }
+                }
+                if (best < 0) {
+                    continue;
+                }
+                trackedFrames++;
+                int id = tracked.getTrackId(best);
+                if (lastId[o] != -1 && lastId[o] != id) {
+                    switches++;
+                }
+                lastId[o] = id;
+                if (frame > 30) {
+                    maxError = Math.max(maxError, bestDistance);
+                }
+            }
+        }
+        if (print) {
+            System.out.printf("Tracker (every %d, drop %.0f%%): %d ID switches, %.2f us per frame, max error %.1f px%n",
+                    inferenceEvery, dropRate * 100, switches, computeNanos / 1000.0 / frames, maxError);
+        }
+        return new float[]{switches, maxError, trackedFrames};
+    }
+
+    @Test
+    public void testStableIdsWithInferenceEveryThirdFrame() {
+        float[] result = replay(3, 0.15f, 300, 11L, true);
+        assertEquals("ID switches", 0f, result[0], 0f);
+        assertTrue("Predicted boxes stay close to the objects: " + result[1], result[1] < 25f);
+        // Objects are tracked in nearly every frame despite skipped inference and dropouts
+        assertTrue("tracked " + result[2], result[2] > 0.95f * 900);
+    }
+
+    @Test
+    public void testStableIdsWithInferenceEveryFrame() {
+        float[] result = replay(1, 0.2f, 300, 12L, true);
+        assertEquals(0f, result[0], 0f);
+    }
+
+    @Test
+    public void testBirthNeedsTwoHitsAndDeathNeedsMisses() {
+        ObjectTracker tracker = new ObjectTracker(8, 8, 0.3f, 2, 2);
+        DetectionBuffer detections = new DetectionBuffer(8);
+        DetectionBuffer tracked = new DetectionBuffer(8);
+        detections.add(100, 100, 200, 300, 0.9f, 0);
+
+        tracker.update(detections, 0);
+        assertEquals("Tentative track is not reported", 0, tracker.predict(0, tracked));
+
+        tracker.update(detections, FRAME_NANOS);
+        assertEquals(1, tracker.predict(FRAME_NANOS, tracked));
+        int id = tracked.getTrackId(0);
+
+        // Two missed frames keep the track (coasting), the third removes it
+        detections.clear();
+        tracker.update(detections, 2 * FRAME_NANOS);
+        tracker.update(detections, 3 * FRAME_NANOS);
+        assertEquals(1, tracker.predict(3 * FRAME_NANOS, tracked));
+        assertEquals(id, tracked.getTrackId(0));
+        tracker.update(detections, 4 * FRAME_NANOS);
+        assertEquals(0, tracker.predict(4 * FRAME_NANOS, tracked));
+    }
+
+    @Test
+    public void testClassesAreNotMixed() {
+        ObjectTracker tracker = new ObjectTracker(8, 8, 0.3f, 1, 0);
+        DetectionBuffer detections = new DetectionBuffer(8);
+        DetectionBuffer tracked = new DetectionBuffer(8);
+        detections.add(100, 100, 200, 200, 0.9f, 0);
+        tracker.update(detections, 0);
+        tracker.predict(0, tracked);
+        int personId = tracked.getTrackId(0);
+
+        // Same place, different class: a new track, the old one dies
+        detections.clear();
+        detections.add(100, 100, 200, 200, 0.9f, 56);
+        tracker.update(detections, FRAME_NANOS);
+        tracker.predict(FRAME_NANOS, tracked);
+        assertEquals(1, tracked.size());
+        assertNotEquals(personId, tracked.getTrackId(0));
+    }
+
+    @Test
+    public void testIou() {
+        assertEquals(1f, ObjectTracker.iou(0, 0, 10, 10, 0, 0, 10, 10), 1e-6f);
+        assertEquals(0f, ObjectTracker.iou(0, 0, 10, 10, 20, 20, 30, 30), 1e-6f);
+        assertEquals(25f / 175f, ObjectTracker.iou(0, 0, 10, 10, 5, 5, 15, 15), 1e-6f);
+    }
+
+    @Test
+    public void testUpdateAndPredictDoNotAllocate() {
+        ObjectTracker tracker = new ObjectTracker(25, 25, 0.3f, 2, 5);
+        DetectionBuffer detections = new DetectionBuffer(25);
+        DetectionBuffer tracked = new DetectionBuffer(25);
+        Scene scene = new Scene();
+        Random random = new Random(3);
+        Runnable frames = () -> {
+            for (int frame = 0; frame < 1000; frame++) {
+                scene.detect(frame % 100, random, 0f, detections);
+                tracker.update(detections, frame * FRAME_NANOS);
+                tracker.predict(frame * FRAME_NANOS, tracked);
+            }
+        };
+        frames.run();
+        // Scene.detect uses Random.nextGaussian, which does not allocate either
+        assertEquals(0, AllocationCounter.measure(frames));
+    }
+}
@@ -0,0 +1,129 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OverlayBoxesTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final OverlayBoxes boxes = new OverlayBoxes(8);
+    private final float[] dirty = new float[4];
+    private final float[] drawn = new float[32];
+
+    private void show(long nowNanos, float left, int trackId) {
+        boxes.beginUpdate();
+        boxes.add(left, 100, left + 50, 200, trackId, "cup");
+        boxes.endUpdate(nowNanos, dirty);
+    }
+
+    @Test
+    public void testFirstUpdateIsShownStraightAway() {
+        show(1000 * MS, 10, 1);
+
+        assertFalse(boxes.positionsAt(1000 * MS, drawn));
+        assertEquals(10, drawn[0], 0f);
+        assertEquals(1, boxes.size());
+        assertEquals("cup", boxes.getLabel(0));
+        assertArrayEquals(new float[]{10, 100, 60, 200}, dirty, 0f);
+    }
+
+    @Test
+    public void testBoxGlidesToItsNewPositionOverTheUpdateInterval() {
+        show(1000 * MS, 0, 1);
+        show(1100 * MS, 100, 1);
+
+        assertTrue(boxes.positionsAt(1100 * MS, drawn));
+        assertEquals(0, drawn[0], 1e-3f);
+        assertTrue(boxes.positionsAt(1150 * MS, drawn));
+        assertEquals(50, drawn[0], 1e-3f);
+        assertFalse(boxes.positionsAt(1200 * MS, drawn));
+        assertEquals(100, drawn[0], 1e-3f);
+        assertFalse(boxes.positionsAt(5000 * MS, drawn));
+        assertEquals(100, drawn[0], 1e-3f);
+    }
+
+    @Test
+    public void testNewGlideStartsWhereTheBoxIsShown() {
+        show(1000 * MS, 0, 1);
+        show(1100 * MS, 100, 1);
+        // Halfway to 100 when the next update arrives
+        show(1150 * MS, 200, 1);
+
+        boxes.positionsAt(1150 * MS, drawn);
+        assertEquals(50, drawn[0], 1e-3f);
+        boxes.positionsAt(1200 * MS, drawn);
+        assertEquals(200, drawn[0], 1e-3f);
+    }
+
+    @Test
+    public void testOtherObjectsDoNotGlide() {
+        show(1000 * MS, 0, 1);
+        show(1100 * MS, 100, 2);
+
+        assertFalse(boxes.positionsAt(1100 * MS, drawn));
+        assertEquals(100, drawn[0], 0f);
+        assertEquals(2, boxes.getTrackId(0));
+    }
+
+    @Test
+    public void testGlideIsCappedForSlowUpdates() {
+        show(1000 * MS, 0, 1);
+        show(3000 * MS, 100, 1);
+
+        boxes.positionsAt(3000 * MS + OverlayBoxes.MAX_GLIDE_NANOS, drawn);
+        assertEquals(100, drawn[0], 1e-3f);
+    }
+
+    @Test
+    public void testDirtyRegionCoversOldAndNewBoxes() {
+        show(1000 * MS, 0, 1);
+        show(1100 * MS, 300, 1);
+
+        // Shown at 0 when the update arrived, moving to 300
+        assertArrayEquals(new float[]{0, 100, 350, 200}, dirty, 0f);
+        float[] bounds = new float[4];
+        assertTrue(boxes.getGlideBounds(bounds));
+        assertArrayEquals(new float[]{0, 100, 350, 200}, bounds, 0f);
+
+        // Clearing still redraws where the box was, then nothing is left to redraw
+        boxes.beginUpdate();
+        assertTrue(boxes.endUpdate(1150 * MS, dirty));
+        assertEquals(150, dirty[0], 1e-3f);
+        assertEquals(0, boxes.size());
+        boxes.beginUpdate();
+        assertFalse(boxes.endUpdate(1200 * MS, dirty));
+        assertFalse(boxes.getGlideBounds(bounds));
+    }
+
+    @Test
+    public void testIgnoresBoxesBeyondCapacity() {
+        boxes.beginUpdate();
+        for (int i = 0; i < 12; i++) {
+            boxes.add(i, i, i + 1, i + 1, i, "box");
+        }
+        boxes.endUpdate(0, dirty);
+
+        assertEquals(8, boxes.size());
+    }
+
+    @Test
+    public void testUpdatingDoesNotAllocate() {
+        final long[] time = {0};
+        Runnable update = () -> {
+            time[0] += 33 * MS;
+            boxes.beginUpdate();
+            for (int i = 0; i < 8; i++) {
+                boxes.add(i * 10 + time[0] % 7, 0, i * 10 + 50, 50, i, "box");
+            }
+            boxes.endUpdate(time[0], dirty);
+            boxes.positionsAt(time[0] + 10 * MS, drawn);
+        };
+        for (int i = 0; i < 50_000; i++) {
+            update.run();
+        }
+
+        assertEquals(0, AllocationCounter.measure(update));
+    }
+}
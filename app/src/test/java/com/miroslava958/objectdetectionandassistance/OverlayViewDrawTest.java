@@ -0,0 +1,89 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the overlay's onDraw cost with real (native) graphics at 1, 10 and 50 boxes.
+ * Run with: ./gradlew :app:testDebugUnitTest --tests '*OverlayViewDrawTest'
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class OverlayViewDrawTest {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final String[] LABELS = {"person", "chair", "cup", "bottle", "laptop", "dog", "car"};
+
+    private static OverlayView newView() {
+        OverlayView view = new OverlayView(RuntimeEnvironment.getApplication(), null);
+        view.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, WIDTH, HEIGHT);
+        return view;
+    }
+
+    private static List<DetectionResult> results(int count, int frame) {
+        List<DetectionResult> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            float left = (i % 10) * 100 + frame % 20;
+            float top = (i / 10) * 300 + 100;
+            DetectionResult result = new DetectionResult(new RectF(), null, 0f);
+            result.set(left, top, left + 90, top + 250, LABELS[i % LABELS.length], 0.9f, i + 1);
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * @return Median onDraw time in microseconds
+     */
+    private static double drawCost(int boxes) {
+        OverlayView view = newView();
+        PipelineMetrics metrics = new PipelineMetrics(Clock.SYSTEM, 1);
+        view.setMetrics(metrics);
+        Canvas canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+
+        // Updates at 30 fps with the boxes moving, several draws per update as while gliding
+        int frames = 300;
+        for (int frame = 0; frame < frames; frame++) {
+            view.setResults(results(boxes, frame));
+            for (int draw = 0; draw < 2; draw++) {
+                view.draw(canvas);
+            }
+        }
+        LatencyHistogram.Snapshot draws = metrics.getStage(PipelineMetrics.Stage.DRAW);
+        assertEquals(frames * 2, draws.getCount());
+        return draws.getPercentile(50) / 1000.0;
+    }
+
+    @Test
+    public void testDrawCostStaysFlatAsBoxesGrow() {
+        // Warm up label rendering and the JIT
+        drawCost(50);
+
+        double one = drawCost(1);
+        double ten = drawCost(10);
+        double fifty = drawCost(50);
+        System.out.printf("Overlay draw p50: 1 box %.1f us, 10 boxes %.1f us, 50 boxes %.1f us%n", one, ten, fifty);
+
+        // Per-box cost only: no text layout or allocation that grows with the boxes. Five times
+        // the boxes must cost less than three times as much, measured on the same machine
+        assertTrue("50 boxes " + fifty + " us, 10 boxes " + ten + " us", fifty < 3 * ten);
+    }
+}
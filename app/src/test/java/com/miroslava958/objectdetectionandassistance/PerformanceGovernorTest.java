@@ -0,0 +1,211 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PerformanceGovernorTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    private static final long MS = 1_000_000L;
+    private static final long TICK = 2 * SECOND;
+    private static final long DOWN_DELAY = 6 * SECOND;
+    private static final long UP_DELAY = 30 * SECOND;
+    // Budgets at 75% utilisation: 50 ms at 15 Hz, 75 ms at 10 Hz, 150 ms at 5 Hz
+    private static final PerformanceTier[] TIERS = {
+            new PerformanceTier("full", 640, 480, 15, 4, true),
+            new PerformanceTier("balanced", 640, 480, 10, 4, true),
+            new PerformanceTier("saver", 640, 480, 5, 2, false),
+            new PerformanceTier("minimal", 320, 240, 2, 1, false),
+    };
+
+    /**
+     * Signals set by the test, with a clock it moves.
+     */
+    private static final class FakeDevice implements DeviceSignals, Clock {
+        long now = 0;
+        int battery = 80;
+        boolean charging = false;
+        int thermal = THERMAL_NONE;
+
+        @Override
+        public int getBatteryPercent() {
+            return battery;
+        }
+
+        @Override
+        public boolean isCharging() {
+            return charging;
+        }
+
+        @Override
+        public int getThermalStatus() {
+            return thermal;
+        }
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+    }
+
+    private FakeDevice device;
+    private PerformanceGovernor governor;
+
+    @Before
+    public void setUp() {
+        device = new FakeDevice();
+        governor = new PerformanceGovernor(TIERS, device, device, 20, 10, 5, 0.75, 0.6, DOWN_DELAY, UP_DELAY);
+    }
+
+    /**
+     * Moves on one tick and updates the governor.
+     */
+    private boolean tick(long latencyNanos) {
+        device.now += TICK;
+        return governor.update(latencyNanos);
+    }
+
+    /**
+     * Ticks for a while at a steady latency.
+     *
+     * @return Tier changes meanwhile
+     */
+    private int run(long nanos, long latencyNanos) {
+        int changes = 0;
+        for (long end = device.now + nanos; device.now < end; ) {
+            changes += tick(latencyNanos) ? 1 : 0;
+        }
+        return changes;
+    }
+
+    @Test
+    public void testStaysAtFullWhenCoolCharged() {
+        assertEquals(0, run(600 * SECOND, 30 * MS));
+        assertEquals("full", governor.getTier().getName());
+        assertEquals(PerformanceGovernor.Reason.START, governor.getLastReason());
+    }
+
+    @Test
+    public void testThermalDropsAtOnceAndRecoversOneTierAtATime() {
+        tick(30 * MS);
+        device.thermal = DeviceSignals.THERMAL_SEVERE;
+        assertTrue(tick(30 * MS));
+        assertEquals("minimal", governor.getTier().getName());
+        assertEquals(PerformanceGovernor.Reason.THERMAL, governor.getLastReason());
+
+        device.thermal = DeviceSignals.THERMAL_LIGHT;
+        assertEquals("Not before the up delay", 0, run(UP_DELAY, 30 * MS));
+        assertTrue(tick(30 * MS));
+        assertEquals("saver", governor.getTier().getName());
+        assertEquals(1, run(UP_DELAY + TICK, 30 * MS));
+        assertEquals("balanced", governor.getTier().getName());
+        assertEquals("Held by the light thermal status", 0, run(10 * UP_DELAY, 30 * MS));
+
+        device.thermal = DeviceSignals.THERMAL_NONE;
+        assertEquals(1, run(UP_DELAY + TICK, 30 * MS));
+        assertEquals("full", governor.getTier().getName());
+        assertEquals(PerformanceGovernor.Reason.RECOVERED, governor.getLastReason());
+    }
+
+    @Test
+    public void testLowBatteryHasHysteresisAndChargingLiftsIt() {
+        device.battery = 20;
+        assertTrue(tick(30 * MS));
+        assertEquals("saver", governor.getTier().getName());
+        assertEquals(PerformanceGovernor.Reason.BATTERY, governor.getLastReason());
+
+        // Flickering just above the level does not count as recovered
+        for (int i = 0; i < 60; i++) {
+            device.battery = 21 + i % 4;
+            assertFalse(tick(30 * MS));
+        }
+        assertTrue(governor.isBatteryLow());
+
+        device.battery = 10;
+        assertTrue(tick(30 * MS));
+        assertEquals("minimal", governor.getTier().getName());
+
+        device.charging = true;
+        tick(30 * MS);
+        assertFalse(governor.isBatteryLow());
+        assertEquals(3, run(4 * UP_DELAY, 30 * MS));
+        assertEquals("full", governor.getTier().getName());
+    }
+
+    @Test
+    public void testSlowInferenceStepsDownOnlyWhenItLasts() {
+        // A short spike over the 50 ms budget of the full tier
+        assertEquals(0, run(DOWN_DELAY - TICK, 80 * MS));
+        assertEquals(0, run(10 * SECOND, 30 * MS));
+
+        assertEquals(1, run(DOWN_DELAY + TICK, 60 * MS));
+        assertEquals("balanced", governor.getTier().getName());
+        assertEquals(PerformanceGovernor.Reason.LATENCY, governor.getLastReason());
+        // 60 ms fits the balanced budget of 75 ms but is not far enough under 50 ms to go back
+        assertEquals(0, run(20 * UP_DELAY, 60 * MS));
+
+        // Back to full once inference takes under 60% of its budget for long enough
+        assertEquals(1, run(UP_DELAY + TICK, 25 * MS));
+        assertEquals("full", governor.getTier().getName());
+    }
+
+    @Test
+    public void testLatencyOutsideTheBandDoesNotOscillate() {
+        // 45 ms fits the balanced budget, but is not under 60% of the full tier's
+        run(DOWN_DELAY + TICK, 60 * MS);
+        assertEquals("balanced", governor.getTier().getName());
+        assertEquals(0, run(3600 * SECOND, 45 * MS));
+    }
+
+    @Test
+    public void testSimulatedWalkHoldsTemperatureWithoutOscillating() {
+        // Two hours starting at 50% battery: the phone heats with the work it does and cools
+        // towards 25 C, reports its thermal status with 2 C of hysteresis, and inference
+        // slows down when it is hot
+        double temperature = 30;
+        double energyWh = 0.5 * 15;
+        int status = DeviceSignals.THERMAL_NONE;
+        double maxTemperature = 0;
+        long lastChange = 0;
+        int changes = 0;
+        boolean wasLow = false;
+        for (long t = 0; t < 7200 * SECOND; t += TICK) {
+            PerformanceTier tier = governor.getTier();
+            double latency = 0.040 * 4 / tier.getThreads() * (temperature > 42 ? 1.5 : 1);
+            double watts = 0.5 + tier.getInferenceHz() * latency * tier.getThreads() + (tier.isOverlay() ? 0.3 : 0);
+            temperature += (25 + watts * 6 - temperature) * TICK / (300.0 * SECOND);
+            energyWh -= (watts + 1.5) * TICK / (3600.0 * SECOND);
+            maxTemperature = Math.max(maxTemperature, temperature);
+
+            int[] thresholds = {36, 40, 44};
+            while (status < 3 && temperature >= thresholds[status]) {
+                status++;
+            }
+            while (status > 0 && temperature < thresholds[status - 1] - 2) {
+                status--;
+            }
+            device.thermal = status;
+            device.battery = (int) (energyWh / 15 * 100);
+            wasLow |= governor.isBatteryLow();
+
+            int before = governor.getTierIndex();
+            device.now = t;
+            if (governor.update((long) (latency * SECOND))) {
+                changes++;
+                if (governor.getTierIndex() < before) {
+                    assertTrue("Stepped up too soon at " + t / SECOND + " s", t - lastChange >= UP_DELAY);
+                }
+                lastChange = t;
+            }
+        }
+
+        assertTrue("Reached " + maxTemperature + " C", maxTemperature < 44);
+        assertTrue("Changed tier " + changes + " times", changes <= 10);
+        assertTrue(wasLow);
+        assertEquals("Battery critical at the end", "minimal", governor.getTier().getName());
+        System.out.printf("Governor: %d tier changes in 2 h, peak %.1f C, %.0f%% battery left%n",
+                changes, maxTemperature, energyWh / 15 * 100);
+    }
+}
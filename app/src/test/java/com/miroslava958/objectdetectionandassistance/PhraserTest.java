@@ -0,0 +1,32 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PhraserTest {
+
+    private final Phraser phraser = new Phraser(Arrays.asList("person", "chair", "traffic light"));
+
+    @Test
+    public void testPhrases() {
+        assertEquals("person left", phraser.phrase(0, Phraser.LEFT, Phraser.PLAIN));
+        assertEquals("chair ahead, close", phraser.phrase(1, Phraser.AHEAD, Phraser.CLOSE));
+        assertEquals("traffic light right, approaching", phraser.phrase(2, Phraser.RIGHT, Phraser.APPROACHING));
+        // The same phrase object every time, so it can be used as a cache key cheaply
+        assertSame(phraser.phrase(1, Phraser.LEFT, Phraser.PLAIN), phraser.phrase(1, Phraser.LEFT, Phraser.PLAIN));
+    }
+
+    @Test
+    public void testDirectionFromCentre() {
+        assertEquals(Phraser.LEFT, Phraser.direction(0, 1080));
+        assertEquals(Phraser.LEFT, Phraser.direction(370, 1080));
+        assertEquals(Phraser.AHEAD, Phraser.direction(380, 1080));
+        assertEquals(Phraser.AHEAD, Phraser.direction(540, 1080));
+        assertEquals(Phraser.AHEAD, Phraser.direction(700, 1080));
+        assertEquals(Phraser.RIGHT, Phraser.direction(710, 1080));
+        assertEquals(Phraser.RIGHT, Phraser.direction(1080, 1080));
+    }
+}
@@ -0,0 +1,131 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PipelineMetricsTest {
+
+    private static final long MS = 1_000_000L;
+    // Generous budget for one recorded sample, so the test holds on slow CI machines
+    private static final long MAX_NANOS_PER_SAMPLE = 500;
+
+    // Simulated time advanced by the test
+    private static final class FakeClock implements Clock {
+        long now = 0;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+    }
+
+    private FakeClock clock;
+    private PipelineMetrics metrics;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        metrics = new PipelineMetrics(clock, 4);
+    }
+
+    @Test
+    public void testCountersAndGauges() {
+        metrics.increment(PipelineMetrics.Counter.FRAMES_ANALYSED);
+        metrics.increment(PipelineMetrics.Counter.FRAMES_ANALYSED);
+        metrics.add(PipelineMetrics.Counter.DETECTIONS, 5);
+        metrics.setGauge(PipelineMetrics.Gauge.SPEECH_QUEUE_DEPTH, 3);
+        metrics.setGauge(PipelineMetrics.Gauge.SPEECH_QUEUE_DEPTH, 1);
+
+        assertEquals(2, metrics.getCounter(PipelineMetrics.Counter.FRAMES_ANALYSED));
+        assertEquals(5, metrics.getCounter(PipelineMetrics.Counter.DETECTIONS));
+        assertEquals(0, metrics.getCounter(PipelineMetrics.Counter.FRAMES_SKIPPED));
+        assertEquals(1, metrics.getGauge(PipelineMetrics.Gauge.SPEECH_QUEUE_DEPTH));
+    }
+
+    @Test
+    public void testStagesAreRecordedSeparately() {
+        metrics.recordStage(PipelineMetrics.Stage.INVOKE, 20 * MS);
+        metrics.recordStage(PipelineMetrics.Stage.INVOKE, 30 * MS);
+        metrics.recordStage(PipelineMetrics.Stage.CONVERT, 2 * MS);
+
+        assertEquals(2, metrics.getStage(PipelineMetrics.Stage.INVOKE).getCount());
+        assertEquals(25 * MS, metrics.getStage(PipelineMetrics.Stage.INVOKE).getMean());
+        assertEquals(1, metrics.getStage(PipelineMetrics.Stage.CONVERT).getCount());
+        assertEquals(0, metrics.getStage(PipelineMetrics.Stage.DRAW).getCount());
+    }
+
+    @Test
+    public void testTimelineKeepsMostRecentFrames() {
+        long[] stages = new long[PipelineMetrics.STAGE_COUNT];
+        for (int frame = 0; frame < 6; frame++) {
+            stages[0] = frame;
+            metrics.recordFrame(frame * 33 * MS, 40 * MS, stages);
+        }
+
+        long[][] frames = metrics.getTimeline().snapshot();
+        assertEquals(6, metrics.getTimeline().getRecordedCount());
+        assertEquals(4, frames.length);
+        for (int i = 0; i < frames.length; i++) {
+            assertEquals((i + 2) * 33 * MS, frames[i][0]);
+            assertEquals(40 * MS, frames[i][1]);
+            assertEquals(i + 2, frames[i][2]);
+        }
+        assertEquals(6, metrics.getFrameLatency().getCount());
+    }
+
+    @Test
+    public void testJsonSnapshot() {
+        metrics.increment(PipelineMetrics.Counter.FRAMES_SKIPPED);
+        metrics.setGauge(PipelineMetrics.Gauge.FRAMES_DROPPED, 7);
+        metrics.recordStage(PipelineMetrics.Stage.DECODE, 1500_000);
+        long[] stages = new long[PipelineMetrics.STAGE_COUNT];
+        stages[PipelineMetrics.Stage.INVOKE.ordinal()] = 25 * MS;
+        metrics.recordFrame(10 * MS, 30 * MS, stages);
+        clock.now = 2000 * MS;
+
+        String json = metrics.toJson();
+
+        assertTrue(json, json.startsWith("{\"uptimeMs\":2000,\"counters\":{\"frames_analysed\":0,"
+                + "\"frames_skipped\":1,"));
+        assertTrue(json, json.contains("\"gauges\":{\"frames_dropped\":7,"));
+        assertTrue(json, json.contains("\"decode\":{\"count\":1,\"meanUs\":1500,"));
+        assertTrue(json, json.contains("\"draw\":{\"count\":0,\"meanUs\":0,\"p50Us\":0,\"p90Us\":0,"
+                + "\"p99Us\":0,\"maxUs\":0}"));
+        assertTrue(json, json.endsWith("\"timeline\":[{\"timestampMs\":10,\"latencyUs\":30000,\"convertUs\":0,"
+                + "\"invokeUs\":25000,\"decodeUs\":0,\"refineUs\":0,\"publishUs\":0,\"drawUs\":0}]}"));
+    }
+
+    @Test
+    public void testRecordingIsCheapAndDoesNotAllocate() {
+        final long[] stages = new long[PipelineMetrics.STAGE_COUNT];
+        final int samples = 200_000;
+        // Warm up so JIT compilation is not measured
+        for (int round = 0; round < 5; round++) {
+            recordSamples(samples, stages);
+        }
+
+        long start = System.nanoTime();
+        recordSamples(samples, stages);
+        long nanosPerSample = (System.nanoTime() - start) / samples;
+
+        long allocated = AllocationCounter.measure(() -> recordSamples(samples, stages));
+
+        assertTrue("took " + nanosPerSample + " ns per sample", nanosPerSample < MAX_NANOS_PER_SAMPLE);
+        assertEquals(0, allocated);
+    }
+
+    /**
+     * Records one stage latency, one counter and, every 4th sample, a frame timeline.
+     */
+    private void recordSamples(int samples, long[] stages) {
+        for (int i = 0; i < samples; i++) {
+            metrics.recordStage(PipelineMetrics.Stage.INVOKE, 1000 + i);
+            metrics.increment(PipelineMetrics.Counter.FRAMES_ANALYSED);
+            if ((i & 3) == 0) {
+                metrics.recordFrame(i, 2000 + i, stages);
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the estimates against synthetic scenes: boxes are drawn from known distances
+ * with the pinhole model, so the true distance and time to contact are known.
+ */
+public class ProximityEstimatorTest {
+
+    private static final List<String> LABELS = Arrays.asList("person", "car", "chair", "cup");
+    private static final String SIZES = "person: 1.70 0.50\ncar: 1.50 -  # width depends on the angle\nchair: 0.90 0.50\n";
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 1920;
+    private static final float FOCAL_PX = 1500f;
+    private static final long FRAME_NANOS = 66_666_667L; // 15 Hz
+
+    private ProximityEstimator estimator;
+    private DetectionBuffer tracked;
+    private final Random random = new Random(3);
+
+    @Before
+    public void setUp() throws IOException {
+        estimator = ProximityEstimator.read(new ByteArrayInputStream(SIZES.getBytes(StandardCharsets.UTF_8)),
+                LABELS, 8);
+        tracked = new DetectionBuffer(8);
+    }
+
+    /**
+     * Adds the box of an object of the given real size at a distance, centred at (cx, cy),
+     * with every edge moved by up to noise * size pixels.
+     */
+    private void place(int trackId, int classId, float heightM, float widthM, float distanceM, float cx, float cy,
+                       float noise) {
+        float h = FOCAL_PX * heightM / distanceM;
+        float w = FOCAL_PX * widthM / distanceM;
+        int i = tracked.add(cx - w / 2 + jitter(w, noise), cy - h / 2 + jitter(h, noise),
+                cx + w / 2 + jitter(w, noise), cy + h / 2 + jitter(h, noise), 0.9f, classId);
+        tracked.setTrackId(i, trackId);
+    }
+
+    private float jitter(float size, float noise) {
+        return (random.nextFloat() * 2 - 1) * noise * size;
+    }
+
+    private void update(long nanos) {
+        estimator.update(tracked, nanos, FOCAL_PX, VIEW_WIDTH, VIEW_HEIGHT);
+    }
+
+    @Test
+    public void testDistanceFromKnownSizes() {
+        place(1, 0, 1.7f, 0.5f, 4f, 540, 960, 0);
+        place(2, 1, 1.5f, 4.0f, 12f, 300, 900, 0);
+        place(3, 3, 0.1f, 0.08f, 1f, 700, 900, 0);
+        update(0);
+
+        assertEquals(4f, estimator.getDistance(0), 0.01f);
+        assertEquals(12f, estimator.getDistance(1), 0.05f);
+        // No typical size for cups
+        assertTrue(Float.isNaN(estimator.getDistance(2)));
+        assertEquals(ProximityEstimator.STEADY, estimator.getMotion(0));
+        assertEquals(Float.POSITIVE_INFINITY, estimator.getTimeToContact(0), 0f);
+    }
+
+    @Test
+    public void testNoDistanceWithoutFocalLength() {
+        place(1, 0, 1.7f, 0.5f, 4f, 540, 960, 0);
+        estimator.update(tracked, 0, Float.NaN, VIEW_WIDTH, VIEW_HEIGHT);
+
+        assertTrue(Float.isNaN(estimator.getDistance(0)));
+    }
+
+    @Test
+    public void testWidthUsedWhenHeightIsCutOff() {
+        // A person at 0.8 m is 3188 px tall: the box is clipped to the view
+        float w = FOCAL_PX * 0.5f / 0.8f;
+        int i = tracked.add(540 - w / 2, 0, 540 + w / 2, VIEW_HEIGHT, 0.9f, 0);
+        tracked.setTrackId(i, 1);
+        update(0);
+
+        assertEquals(0.8f, estimator.getDistance(0), 0.01f);
+    }
+
+    @Test
+    public void testClippedEverywhereGivesUpperBound() {
+        int i = tracked.add(0, 0, VIEW_WIDTH, VIEW_HEIGHT, 0.9f, 2);
+        tracked.setTrackId(i, 1);
+        update(0);
+
+        // min(1500 * 0.9 / 1920, 1500 * 0.5 / 1080)
+        assertEquals(0.69f, estimator.getDistance(0), 0.01f);
+    }
+
+    @Test
+    public void testApproachingTimeToContact() {
+        // Walking towards a person at 1.2 m/s from 8 m, with 3% box noise
+        float speed = 1.2f;
+        for (int frame = 0; frame <= 45; frame++) {
+            float distance = 8f - speed * frame * FRAME_NANOS / 1e9f;
+            tracked.clear();
+            place(1, 0, 1.7f, 0.5f, distance, 540, 960, 0.03f);
+            update(frame * FRAME_NANOS);
+            if (frame == 45) {
+                assertEquals(ProximityEstimator.APPROACHING, estimator.getMotion(0));
+                assertEquals(distance, estimator.getDistance(0), distance * 0.1f);
+                // The growth rate is averaged over the last second, when the object was further away
+                float expected = (distance + speed * 0.5f) / speed;
+                assertEquals(expected, estimator.getTimeToContact(0), expected * 0.2f);
+            }
+        }
+    }
+
+    @Test
+    public void testRecedingAndStationary() {
+        for (int frame = 0; frame <= 30; frame++) {
+            float t = frame * FRAME_NANOS / 1e9f;
+            tracked.clear();
+            place(1, 1, 1.5f, 4.0f, 5f + 1.5f * t, 300, 900, 0.03f);
+            place(2, 2, 0.9f, 0.5f, 3f, 700, 1200, 0.03f);
+            update(frame * FRAME_NANOS);
+        }
+
+        assertEquals(ProximityEstimator.RECEDING, estimator.getMotion(0));
+        assertEquals(Float.POSITIVE_INFINITY, estimator.getTimeToContact(0), 0f);
+        assertEquals(ProximityEstimator.STEADY, estimator.getMotion(1));
+        assertEquals(3f, estimator.getDistance(1), 0.2f);
+    }
+
+    @Test
+    public void testNoDirectionFromShortHistory() {
+        for (int frame = 0; frame < 3; frame++) {
+            tracked.clear();
+            place(1, 0, 1.7f, 0.5f, 4f - frame, 540, 960, 0);
+            update(frame * FRAME_NANOS);
+        }
+
+        assertEquals(ProximityEstimator.STEADY, estimator.getMotion(0));
+    }
+
+    @Test
+    public void testNewTrackStartsFresh() {
+        for (int frame = 0; frame <= 20; frame++) {
+            tracked.clear();
+            place(1, 0, 1.7f, 0.5f, 8f - 0.3f * frame, 540, 960, 0);
+            update(frame * FRAME_NANOS);
+        }
+        assertEquals(ProximityEstimator.APPROACHING, estimator.getMotion(0));
+
+        // The object is lost and another one appears
+        tracked.clear();
+        update(21 * FRAME_NANOS);
+        place(2, 0, 1.7f, 0.5f, 2f, 540, 960, 0);
+        update(22 * FRAME_NANOS);
+
+        assertEquals(ProximityEstimator.STEADY, estimator.getMotion(0));
+        assertEquals(2f, estimator.getDistance(0), 0.01f);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsUnknownLabel() throws IOException {
+        ProximityEstimator.read(new ByteArrayInputStream("sofa: 0.8 2.0\n".getBytes(StandardCharsets.UTF_8)),
+                LABELS, 8);
+    }
+
+    @Test
+    public void testFocalLengthFromIntrinsics() {
+        InputTransform transform = new InputTransform(320, 320, InputTransform.ScaleMode.LETTERBOX);
+        transform.update(640, 480, 90);
+        assertTrue(Float.isNaN(ProximityEstimator.focalLengthPx(0.8f, transform)));
+
+        // Upright 480x640 fills a 1080x1920 view at 3x
+        transform.setViewSize(1080, 1920);
+        assertEquals(0.8f * 640 * 3, ProximityEstimator.focalLengthPx(0.8f, transform), 0.01f);
+    }
+
+    @Test
+    public void testUpdateDoesNotAllocate() {
+        for (int t = 0; t < 8; t++) {
+            place(t, t % 3, 1.7f, 0.5f, 2f + t, 100 + t * 100, 960, 0.03f);
+        }
+        final long[] now = {0};
+        Runnable frame = () -> {
+            now[0] += FRAME_NANOS;
+            update(now[0]);
+        };
+        for (int i = 0; i < 50_000; i++) {
+            frame.run();
+        }
+
+        assertEquals(0, AllocationCounter.measure(frame));
+    }
+}
@@ -0,0 +1,194 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ReplayEngineTest {
+
+    /**
+     * Stands in for the model: a 64x64 input and SSD outputs with one box
+     * drifting right by a little each frame.
+     */
+    private static final class FakeRunner implements ModelRunner {
+        final long latencyNanos;
+        int runs = 0;
+
+        FakeRunner(long latencyNanos) {
+            this.latencyNanos = latencyNanos;
+        }
+
+        @Override
+        public TensorSpec getInputSpec() {
+            return new TensorSpec("image", new int[]{1, 64, 64, 3}, TensorSpec.DataType.UINT8, 0f, 0);
+        }
+
+        @Override
+        public List<TensorSpec> getOutputSpecs() {
+            return Arrays.asList(
+                    new TensorSpec("boxes", new int[]{1, 10, 4}),
+                    new TensorSpec("classes", new int[]{1, 10}),
+                    new TensorSpec("scores", new int[]{1, 10}),
+                    new TensorSpec("count", new int[]{1}));
+        }
+
+        @Override
+        public void run(Object[] inputs, Map<Integer, Object> outputs) {
+            float shift = (runs++ % 100) * 0.002f;
+            ByteBuffer boxes = ((ByteBuffer) outputs.get(0)).order(ByteOrder.nativeOrder());
+            boxes.putFloat(0.3f).putFloat(0.2f + shift).putFloat(0.7f).putFloat(0.6f + shift);
+            ((ByteBuffer) outputs.get(1)).order(ByteOrder.nativeOrder()).putFloat(3);
+            ((ByteBuffer) outputs.get(2)).order(ByteOrder.nativeOrder()).putFloat(0.9f);
+            ((ByteBuffer) outputs.get(3)).order(ByteOrder.nativeOrder()).putFloat(1);
+            long end = System.nanoTime() + latencyNanos;
+            while (System.nanoTime() < end) {
+                Thread.yield();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("replay", ".odfr");
+        // 30 frames, 33 ms apart
+        FrameRecordingTest.write(file, 30, 64, 48);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testFastReplayProcessesEveryFrame() throws Exception {
+        FakeRunner runner = new FakeRunner(0);
+        ReplayEngine engine = new ReplayEngine(runner, 80, null, 0.5f, InputTransform.ScaleMode.LETTERBOX);
+
+        ReplayEngine.Report report;
+        try (FrameRecording recording = new FrameRecording(file)) {
+            report = engine.run(recording, ReplayEngine.Pacing.FAST);
+        }
+
+        assertEquals(30, report.getFrames());
+        assertEquals(30, report.getProcessed());
+        assertEquals(0, report.getDropped());
+        assertEquals(30, runner.runs);
+        assertTrue(report.getFps() > 0);
+        assertEquals(30, report.getMetrics().getStage(PipelineMetrics.Stage.INVOKE).getCount());
+        assertEquals(30, report.getMetrics().getCounter(PipelineMetrics.Counter.DETECTIONS));
+
+        // One object followed through the whole recording, shown from its second frame
+        DetectionStability stability = report.getStability();
+        assertEquals(1, stability.getDistinctTracks());
+        assertEquals(29, stability.getMeanTrackLength(), 1e-9);
+        assertEquals(1.0 / 29, stability.getFlickerRate(), 1e-9);
+        assertTrue(stability.getMeanJitter() > 0 && stability.getMeanJitter() < 0.05);
+        assertTrue(report.toJson(),
+                report.toJson().startsWith("{\"frames\":30,\"processed\":30,\"unchanged\":0,\"dropped\":0,"));
+    }
+
+    @Test
+    public void testReplayIsRepeatable() throws Exception {
+        ReplayEngine engine = new ReplayEngine(new FakeRunner(0), 80, null, 0.5f,
+                InputTransform.ScaleMode.LETTERBOX);
+        try (FrameRecording recording = new FrameRecording(file)) {
+            ReplayEngine.Report first = engine.run(recording, ReplayEngine.Pacing.FAST);
+            ReplayEngine.Report second = engine.run(recording, ReplayEngine.Pacing.FAST);
+
+            assertEquals(first.getProcessed(), second.getProcessed());
+            assertEquals(first.getStability().getDistinctTracks(), second.getStability().getDistinctTracks());
+        }
+    }
+
+    @Test
+    public void testSceneGateSkipsUnchangedFrames() throws Exception {
+        File still = File.createTempFile("still", ".odfr");
+        try {
+            try (FileOutputStream out = new FileOutputStream(still)) {
+                FrameRecording.Writer writer = new FrameRecording.Writer(out.getChannel());
+                for (int i = 0; i < 30; i++) {
+                    writer.write(FrameRecordingTest.frame(64, 48, 0), i * 33_000_000L, 90);
+                }
+            }
+            FakeRunner runner = new FakeRunner(0);
+            ReplayEngine engine = new ReplayEngine(runner, 80, null, 0.5f, InputTransform.ScaleMode.LETTERBOX);
+            // Refreshed every 10 frames however static the scene
+            engine.setSceneGate(new SceneChangeGate(8, 6, 2, 4, 0.05f, 330_000_000L));
+
+            ReplayEngine.Report report;
+            try (FrameRecording recording = new FrameRecording(still)) {
+                report = engine.run(recording, ReplayEngine.Pacing.FAST);
+            }
+
+            assertEquals(30, report.getFrames());
+            assertEquals(3, report.getProcessed());
+            assertEquals(27, report.getUnchanged());
+            assertEquals(3, runner.runs);
+            assertEquals(27, report.getMetrics().getCounter(PipelineMetrics.Counter.FRAMES_UNCHANGED));
+        } finally {
+            still.delete();
+        }
+    }
+
+    @Test
+    public void testCascadeRefinesWithinBudget() throws Exception {
+        FakeRunner runner = new FakeRunner(0);
+        FakeRunner refiner = new FakeRunner(2_000_000L);
+        ReplayEngine engine = new ReplayEngine(runner, 80, null, 0.5f, InputTransform.ScaleMode.LETTERBOX);
+        // 1 ms of refinement per frame against 2 ms per run: at most about every other frame
+        CascadeController cascade = new CascadeController(1, 64, 64, 25, 1_000_000L, 2_000_000L, 0.95f,
+                1, 0.3f, 0.25f, 0.5f, Clock.SYSTEM);
+        engine.setCascade(refiner, 80, cascade);
+
+        ReplayEngine.Report report;
+        try (FrameRecording recording = new FrameRecording(file)) {
+            report = engine.run(recording, ReplayEngine.Pacing.FAST);
+        }
+
+        assertEquals(30, report.getProcessed());
+        assertEquals(30, runner.runs);
+        assertEquals(30, report.getMetrics().getStage(PipelineMetrics.Stage.REFINE).getCount());
+        long refined = report.getMetrics().getCounter(PipelineMetrics.Counter.REFINED_REGIONS);
+        assertEquals(refined, refiner.runs);
+        assertTrue("refined " + refined, refined > 0 && refined <= 16);
+        assertTrue(report.getStability().getDistinctTracks() >= 1);
+    }
+
+    @Test
+    public void testRealtimeReplayDropsFramesWhenInferenceIsSlow() throws Exception {
+        // 80 ms inference against frames every 33 ms: the pipeline has to drop stale frames
+        ReplayEngine engine = new ReplayEngine(new FakeRunner(80_000_000L), 80, null, 0.5f,
+                InputTransform.ScaleMode.LETTERBOX);
+
+        ReplayEngine.Report report;
+        try (FrameRecording recording = new FrameRecording(file)) {
+            report = engine.run(recording, ReplayEngine.Pacing.REALTIME);
+        }
+
+        assertEquals(30, report.getFrames());
+        assertTrue("dropped " + report.getDropped(), report.getDropped() > 0);
+        assertEquals(30, report.getProcessed() + report.getDropped() + report.getFailed());
+        assertNull(report.getLastError());
+        // Paced at the recorded rate: about one second for 30 frames
+        assertTrue(report.getWallNanos() >= 29 * 33_000_000L);
+        long latency = report.getMetrics().getFrameLatency().getPercentile(50);
+        assertTrue("latency " + latency, latency >= 80_000_000L);
+    }
+}
@@ -0,0 +1,77 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RoiSelectorTest {
+
+    private InputTransform transform;
+    private DetectionBuffer tracked;
+    private final float[] roi = new float[4];
+
+    @Before
+    public void setUp() {
+        // Portrait phone: 640x480 sensor frame, upright 480x640, shown 2x on a 960x1280 view
+        transform = new InputTransform(320, 320, InputTransform.ScaleMode.LETTERBOX);
+        transform.update(640, 480, 90);
+        transform.setViewSize(960, 1280);
+        tracked = new DetectionBuffer(8);
+    }
+
+    @Test
+    public void testRegionCoversTrackedObjectsWithMargin() {
+        RoiSelector selector = new RoiSelector(0.25f, 0.2f, 0.6f, 4);
+        // One small object in the view, at upright (100..140, 200..260)
+        tracked.add(200, 400, 280, 520, 0.9f, 0);
+
+        assertTrue(selector.select(tracked, transform, roi));
+        assertTrue(roi[0] <= 100 && roi[1] <= 200 && roi[2] >= 140 && roi[3] >= 260);
+        // Square like the model input, and at least 20% of the shorter frame side
+        assertEquals(roi[2] - roi[0], roi[3] - roi[1], 1e-3f);
+        assertEquals(96f, roi[2] - roi[0], 1e-3f);
+
+        // The region can be fed back into the transform: the object now fills more of the input
+        float before = transform.uprightToModelX(140) - transform.uprightToModelX(100);
+        transform.update(640, 480, 90, roi[0], roi[1], roi[2], roi[3]);
+        float after = transform.uprightToModelX(140) - transform.uprightToModelX(100);
+        assertTrue("Object width in input pixels " + before + " -> " + after, after > 3 * before);
+    }
+
+    @Test
+    public void testRegionIsShiftedInsideFrame() {
+        RoiSelector selector = new RoiSelector(0.25f, 0.3f, 0.6f, 4);
+        tracked.add(0, 0, 60, 60, 0.9f, 0);
+        assertTrue(selector.select(tracked, transform, roi));
+        assertEquals(0f, roi[0], 1e-3f);
+        assertEquals(0f, roi[1], 1e-3f);
+    }
+
+    @Test
+    public void testWholeFrameEveryFewInferences() {
+        RoiSelector selector = new RoiSelector(0.25f, 0.2f, 0.6f, 3);
+        tracked.add(400, 600, 500, 700, 0.9f, 0);
+        assertTrue(selector.select(tracked, transform, roi));
+        assertTrue(selector.select(tracked, transform, roi));
+        assertFalse(selector.select(tracked, transform, roi));
+        assertTrue(selector.select(tracked, transform, roi));
+    }
+
+    @Test
+    public void testWholeFrameWithoutTracksOrForLargeRegions() {
+        RoiSelector selector = new RoiSelector(0.25f, 0.2f, 0.6f, 10);
+        assertFalse(selector.select(tracked, transform, roi));
+
+        tracked.add(100, 100, 900, 1200, 0.9f, 0);
+        assertFalse(selector.select(tracked, transform, roi));
+    }
+
+    @Test
+    public void testWholeFrameBeforeViewIsLaidOut() {
+        RoiSelector selector = new RoiSelector(0.25f, 0.2f, 0.6f, 10);
+        transform.setViewSize(0, 0);
+        tracked.add(200, 400, 280, 520, 0.9f, 0);
+        assertFalse(selector.select(tracked, transform, roi));
+    }
+}
@@ -0,0 +1,188 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SceneChangeGateTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final long FRAME = 33_000_000L;
+    private static final long MAX_SKIP = 2_000_000_000L;
+
+    private SceneChangeGate gate;
+    private Random random;
+
+    @Before
+    public void setUp() {
+        gate = new SceneChangeGate(16, 12, 4, 6, 0.03f, MAX_SKIP);
+        random = new Random(42);
+    }
+
+    /**
+     * Builds a frame of a lit gradient with an 80x80 dark object at objectX (negative = none),
+     * sensor noise of +-3 levels, padded rows and a Y plane that starts 7 bytes into its buffer.
+     */
+    private YuvFrame scene(int width, int height, int objectX, int brightness) {
+        int rowStride = width + 16;
+        ByteBuffer y = ByteBuffer.allocateDirect(7 + rowStride * height);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int luma = 60 + col * 100 / width + row * 40 / height + brightness;
+                if (col >= objectX && col < objectX + 80 && row >= 80 && row < 160) {
+                    luma = 20;
+                }
+                luma += random.nextInt(7) - 3;
+                y.put(7 + row * rowStride + col, (byte) Math.max(0, Math.min(255, luma)));
+            }
+        }
+        y.position(7);
+        ByteBuffer uv = ByteBuffer.allocateDirect(rowStride * height / 2);
+        return new YuvFrame().set(width, height, y, uv, uv, rowStride, rowStride, 2);
+    }
+
+    private YuvFrame scene(int objectX) {
+        return scene(WIDTH, HEIGHT, objectX, 0);
+    }
+
+    @Test
+    public void testStaticSceneWithNoiseIsSkipped() {
+        assertTrue("The first frame has nothing to compare with", gate.shouldInfer(scene(100), 0));
+        for (int i = 1; i <= 20; i++) {
+            assertFalse(gate.shouldInfer(scene(100), i * FRAME));
+            assertEquals(0f, gate.getLastChange(), 0f);
+        }
+        assertEquals(1, gate.getInferredFrames());
+        assertEquals(20, gate.getSkippedFrames());
+    }
+
+    @Test
+    public void testMovingObjectInfers() {
+        gate.shouldInfer(scene(100), 0);
+        for (int i = 1; i <= 10; i++) {
+            assertTrue("Frame " + i, gate.shouldInfer(scene(100 + i * 10), i * FRAME));
+            assertTrue(gate.getLastChange() >= 0.03f);
+        }
+    }
+
+    @Test
+    public void testObjectAppearingInfers() {
+        gate.shouldInfer(scene(-1), 0);
+        assertTrue(gate.shouldInfer(scene(200), FRAME));
+    }
+
+    @Test
+    public void testSmallLocalChangeIsSkipped() {
+        YuvFrame frame = scene(100);
+        gate.shouldInfer(frame, 0);
+        // A 10x10 light switching on touches at most four of the 192 blocks
+        ByteBuffer y = frame.getYBuffer();
+        for (int row = 10; row < 20; row++) {
+            for (int col = 290; col < 300; col++) {
+                y.put(7 + row * frame.getYRowStride() + col, (byte) 255);
+            }
+        }
+        assertFalse(gate.shouldInfer(frame, FRAME));
+        assertTrue(gate.getLastChange() > 0);
+    }
+
+    @Test
+    public void testExposureChangeInfers() {
+        gate.shouldInfer(scene(100), 0);
+        assertTrue(gate.shouldInfer(scene(WIDTH, HEIGHT, 100, 20), FRAME));
+    }
+
+    @Test
+    public void testSlowDriftAddsUpAgainstTheLastInferredFrame() {
+        gate.shouldInfer(scene(100), 0);
+        int inferredAt = -1;
+        for (int i = 1; i <= 20 && inferredAt < 0; i++) {
+            if (gate.shouldInfer(scene(WIDTH, HEIGHT, 100, i), i * FRAME)) {
+                inferredAt = i;
+            }
+        }
+        // One level per frame is never a change between neighbouring frames, but is after a few
+        assertTrue("Inferred at " + inferredAt, inferredAt >= 6 && inferredAt <= 8);
+    }
+
+    @Test
+    public void testMaxSkipForcesInference() {
+        YuvFrame frame = scene(100);
+        gate.shouldInfer(frame, 0);
+        assertFalse(gate.shouldInfer(frame, MAX_SKIP - 1));
+        assertTrue(gate.shouldInfer(frame, MAX_SKIP));
+        assertEquals(1f, gate.getLastChange(), 0f);
+        assertFalse(gate.shouldInfer(frame, MAX_SKIP + FRAME));
+    }
+
+    @Test
+    public void testFrameSizeChangeAndResetInfer() {
+        gate.shouldInfer(scene(100), 0);
+        assertTrue(gate.shouldInfer(scene(640, 480, 100, 0), FRAME));
+        assertFalse(gate.shouldInfer(scene(640, 480, 100, 0), 2 * FRAME));
+        gate.reset();
+        assertTrue(gate.shouldInfer(scene(640, 480, 100, 0), 3 * FRAME));
+    }
+
+    @Test
+    public void testReadsInPlaceWithoutAllocating() {
+        final YuvFrame frame = scene(100);
+        final long[] time = {0};
+        Runnable check = () -> {
+            for (int i = 0; i < 100; i++) {
+                gate.shouldInfer(frame, time[0] += FRAME);
+            }
+        };
+        check.run();
+        assertEquals(0, AllocationCounter.measure(check));
+        assertEquals("The buffer position is left where it was", 7, frame.getYBuffer().position());
+    }
+
+    @Test
+    public void testSkipRateOnRecordedSequence() throws IOException {
+        // Standing still for 2 s, an object crossing the view for 1 s, standing still again for 2 s
+        File file = File.createTempFile("scene", ".odfr");
+        try {
+            int frames = 0;
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                FrameRecording.Writer writer = new FrameRecording.Writer(out.getChannel());
+                for (int i = 0; i < 150; i++) {
+                    int objectX = i < 60 ? -1 : i < 90 ? (i - 60) * 8 : 232;
+                    writer.write(scene(objectX), i * FRAME, 90);
+                    frames++;
+                }
+            }
+
+            YuvFrame frame = new YuvFrame();
+            int inferredWhileMoving = 0;
+            long start = System.nanoTime();
+            try (FrameRecording recording = new FrameRecording(file)) {
+                for (int i = 0; recording.next(frame); i++) {
+                    boolean infer = gate.shouldInfer(frame, recording.getTimestampNanos());
+                    if (i > 60 && i < 90 && infer) {
+                        inferredWhileMoving++;
+                    }
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            assertEquals(frames, gate.getInferredFrames() + gate.getSkippedFrames());
+            assertEquals("Every frame of the crossing goes through inference", 29, inferredWhileMoving);
+            // The first frame, the crossing, its last position and one forced refresh
+            assertTrue("Inferred " + gate.getInferredFrames(), gate.getInferredFrames() <= 33);
+            assertTrue("Skip rate " + gate.getSkipRate(), gate.getSkipRate() > 0.75);
+            System.out.printf("Scene gate: %.0f%% of %d frames skipped, %.1f us per frame including reading%n",
+                    gate.getSkipRate() * 100, frames, elapsed / 1e3 / frames);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SpeechSchedulerTest {
+
+    private static final int VIEW = 1000;
+    private static final long MS = 1_000_000L;
+    private static final long COOLDOWN = 5000 * MS;
+    private static final long MAX_AGE = 2000 * MS;
+    private static final long TIMEOUT = 10_000 * MS;
+
+    private static final List<String> LABELS = Arrays.asList("person", "car", "chair", "dog", "cup", "tv");
+
+    /**
+     * Engine that records what it was asked to say; utterances finish only when the test says so.
+     */
+    private static final class FakeEngine implements SpeechEngine {
+        final List<String> spoken = new ArrayList<>();
+        final List<Boolean> flushes = new ArrayList<>();
+        String currentId;
+        Listener listener;
+        // Utterances the engine refuses to queue, reported failed at once like TextToSpeechManager does
+        int rejectNext;
+
+        @Override
+        public void setListener(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void speak(String text, boolean flush, String utteranceId) {
+            spoken.add(text);
+            flushes.add(flush);
+            currentId = utteranceId;
+            if (rejectNext > 0) {
+                rejectNext--;
+                listener.onUtteranceDone(utteranceId);
+            }
+        }
+
+        void finish() {
+            listener.onUtteranceDone(currentId);
+        }
+    }
+
+    private FakeEngine engine;
+    private long now;
+    private SpeechScheduler scheduler;
+    private DetectionBuffer tracked;
+
+    @Before
+    public void setUp() {
+        engine = new FakeEngine();
+        now = 0;
+        scheduler = new SpeechScheduler(engine, () -> now, LABELS, 3, COOLDOWN, MAX_AGE, 0.35f, TIMEOUT);
+        tracked = new DetectionBuffer(16);
+    }
+
+    /**
+     * Adds a square box of the given size centred at (cx, cy).
+     */
+    private void track(int trackId, int classId, float cx, float cy, float size) {
+        int index = tracked.add(cx - size / 2, cy - size / 2, cx + size / 2, cy + size / 2, 0.9f, classId);
+        tracked.setTrackId(index, trackId);
+    }
+
+    private void frame(long advanceMs) {
+        now += advanceMs * MS;
+        scheduler.update(tracked, VIEW, VIEW);
+    }
+
+    @Test
+    public void testSpeaksOneAtATimeInPriorityOrder() {
+        track(1, 0, 100, 100, 100);   // Small, in the corner
+        track(2, 1, 500, 500, 300);   // Large, central
+        track(3, 2, 500, 200, 150);
+        frame(0);
+
+        assertEquals(Arrays.asList("car ahead"), engine.spoken);
+        assertEquals(2, scheduler.getPendingCount());
+
+        frame(66);
+        assertEquals("Nothing more until the utterance ends", 1, engine.spoken.size());
+
+        engine.finish();
+        engine.finish();
+        assertEquals(Arrays.asList("car ahead", "chair ahead", "person left"), engine.spoken);
+        assertEquals(0, scheduler.getPendingCount());
+        assertFalse(engine.flushes.contains(true));
+    }
+
+    @Test
+    public void testRejectedUtteranceDoesNotHoldBackTheQueue() {
+        track(1, 0, 100, 100, 100);
+        track(2, 1, 500, 500, 300);
+        engine.rejectNext = 1;
+        frame(0);
+
+        // The car was refused, so the person goes out at once rather than after the timeout
+        assertEquals(Arrays.asList("car ahead", "person left"), engine.spoken);
+        assertEquals(0, scheduler.getPendingCount());
+        track(3, 2, 500, 200, 150);
+        frame(66);
+        assertEquals("Waits for the person", 2, engine.spoken.size());
+        engine.finish();
+        assertEquals("chair ahead", engine.spoken.get(2));
+    }
+
+    @Test
+    public void testQueueIsBoundedAndKeepsOnePerObject() {
+        track(1, 0, 500, 500, 200);
+        for (int i = 0; i < 5; i++) {
+            track(10 + i, 1 + i, 100 + i * 150, 900, 50 + i * 10);
+        }
+        // The same objects over many frames never grow the queue
+        for (int f = 0; f < 20; f++) {
+            frame(66);
+            assertTrue(scheduler.getPendingCount() <= 3);
+        }
+        assertEquals(3, scheduler.getPendingCount());
+        assertEquals(1, engine.spoken.size());
+
+        // The lowest priority objects (small and far from the centre) were the ones left out
+        engine.finish();
+        engine.finish();
+        engine.finish();
+        assertEquals(Arrays.asList("person ahead", "cup ahead", "dog ahead", "tv right"), engine.spoken);
+    }
+
+    @Test
+    public void testAnnouncementDroppedWhenObjectDisappears() {
+        track(1, 0, 500, 500, 300);
+        track(2, 1, 100, 100, 100);
+        frame(0);
+        assertEquals(1, scheduler.getPendingCount());
+
+        // The car leaves before the person announcement has finished
+        tracked.clear();
+        track(1, 0, 500, 500, 300);
+        frame(66);
+        assertEquals(0, scheduler.getPendingCount());
+        assertEquals(1, scheduler.getStaleCount());
+
+        engine.finish();
+        assertEquals(Arrays.asList("person ahead"), engine.spoken);
+    }
+
+    @Test
+    public void testAnnouncementDroppedWhenTooOld() {
+        track(1, 0, 500, 500, 300);
+        track(2, 1, 100, 100, 100);
+        frame(0);
+        // The first utterance takes longer than the queue age limit
+        frame(MAX_AGE / MS + 1);
+        assertEquals(0, scheduler.getPendingCount());
+        engine.finish();
+        assertEquals(1, engine.spoken.size());
+    }
+
+    @Test
+    public void testLabelCooldown() {
+        track(1, 0, 500, 500, 200);
+        frame(0);
+        engine.finish();
+
+        // A new person track (e.g. the same person re-detected) inside the cooldown is not announced
+        tracked.clear();
+        track(2, 0, 500, 500, 200);
+        frame(1000);
+        assertEquals(1, engine.spoken.size());
+        assertEquals(1, scheduler.getRateLimitedCount());
+
+        // After the cooldown a new person is announced
+        tracked.clear();
+        track(3, 0, 500, 500, 200);
+        frame(COOLDOWN / MS);
+        assertEquals(2, engine.spoken.size());
+    }
+
+    @Test
+    public void testTrackAnnouncedOnlyOnceWhileVisible() {
+        track(1, 0, 500, 500, 200);
+        for (int f = 0; f < 200; f++) {
+            frame(66);
+            engine.finish();
+        }
+        assertEquals(1, engine.spoken.size());
+    }
+
+    @Test
+    public void testUrgentObjectPreemptsWithFlush() {
+        track(1, 0, 100, 100, 100);
+        frame(0);
+        assertEquals(Boolean.FALSE, engine.flushes.get(0));
+
+        // Something very close appears while the person is being announced
+        track(2, 1, 500, 500, 700);
+        frame(66);
+        assertEquals(Arrays.asList("person left", "car ahead, close"), engine.spoken);
+        assertEquals(Boolean.TRUE, engine.flushes.get(1));
+        assertEquals(1, scheduler.getPreemptedCount());
+
+        // An urgent utterance is not interrupted by another one
+        track(3, 2, 500, 500, 650);
+        frame(66);
+        assertEquals(2, engine.spoken.size());
+        engine.finish();
+        assertEquals("chair ahead, close", engine.spoken.get(2));
+    }
+
+    @Test
+    public void testUrgentIgnoresCooldown() {
+        track(1, 1, 100, 100, 100);
+        frame(0);
+        engine.finish();
+
+        tracked.clear();
+        track(2, 1, 500, 500, 700);
+        frame(500);
+        assertEquals(2, engine.spoken.size());
+    }
+
+    @Test
+    public void testLateCompletionFromInterruptedUtteranceIsIgnored() {
+        track(1, 0, 100, 100, 100);
+        frame(0);
+        String interrupted = engine.currentId;
+        track(2, 1, 500, 500, 700);
+        track(3, 2, 800, 800, 100);
+        frame(66);
+
+        // The engine reports the flushed utterance as stopped after the urgent one started
+        engine.listener.onUtteranceDone(interrupted);
+        assertEquals(2, engine.spoken.size());
+    }
+
+    @Test
+    public void testMissingCompletionTimesOut() {
+        track(1, 0, 100, 100, 100);
+        track(2, 1, 900, 900, 100);
+        frame(0);
+        // No completion ever arrives; a new object is still announced after the timeout
+        tracked.clear();
+        track(3, 2, 500, 500, 100);
+        frame(TIMEOUT / MS + 1);
+        assertEquals(Arrays.asList("person left", "chair ahead"), engine.spoken);
+    }
+
+    /**
+     * Adds the box of an object of the given real size at a distance, for a 1000 px focal length.
+     */
+    private void place(int trackId, int classId, float heightM, float widthM, float distanceM, float cx, float cy) {
+        float h = 1000 * heightM / distanceM;
+        float w = 1000 * widthM / distanceM;
+        int index = tracked.add(cx - w / 2, cy - h / 2, cx + w / 2, cy + h / 2, 0.9f, classId);
+        tracked.setTrackId(index, trackId);
+    }
+
+    private ProximityEstimator estimator() throws IOException {
+        String sizes = "person: 1.70 0.50\ncar: 1.50 -\nchair: 0.90 0.50\n";
+        return ProximityEstimator.read(new ByteArrayInputStream(sizes.getBytes(StandardCharsets.UTF_8)), LABELS, 8);
+    }
+
+    @Test
+    public void testNearerObjectFirstEvenIfSmaller() throws IOException {
+        ProximityEstimator proximity = estimator();
+        scheduler = new SpeechScheduler(engine, () -> now, LABELS, 3, COOLDOWN, MAX_AGE, 0.35f, TIMEOUT, 1.5f, 2.5f);
+        // A car 6 m away covers more of the view than a person 2.5 m away
+        place(1, 1, 1.5f, 4.5f, 6f, 500, 300);
+        place(2, 0, 1.7f, 0.5f, 2.5f, 500, 700);
+        proximity.update(tracked, now, 1000f, VIEW, VIEW);
+        scheduler.update(tracked, proximity, VIEW, VIEW);
+
+        assertEquals(Arrays.asList("person ahead"), engine.spoken);
+        assertFalse(engine.flushes.get(0));
+    }
+
+    @Test
+    public void testApproachingObjectPreemptsWithFlush() throws IOException {
+        ProximityEstimator proximity = estimator();
+        scheduler = new SpeechScheduler(engine, () -> now, LABELS, 3, COOLDOWN, MAX_AGE, 0.35f, TIMEOUT, 1.5f, 2.5f);
+        place(1, 2, 0.9f, 0.5f, 3f, 300, 500);
+        proximity.update(tracked, now, 1000f, VIEW, VIEW);
+        scheduler.update(tracked, proximity, VIEW, VIEW);
+        assertEquals(Arrays.asList("chair left"), engine.spoken);
+
+        // A person 6 m away walks towards the camera at 2.5 m/s while the chair is announced
+        for (int frame = 1; frame <= 10 && engine.spoken.size() == 1; frame++) {
+            now += 66 * MS;
+            tracked.clear();
+            place(1, 2, 0.9f, 0.5f, 3f, 300, 500);
+            place(2, 0, 1.7f, 0.5f, 6f - 2.5f * frame * 0.066f, 700, 500);
+            proximity.update(tracked, now, 1000f, VIEW, VIEW);
+            scheduler.update(tracked, proximity, VIEW, VIEW);
+        }
+
+        assertEquals(Arrays.asList("chair left", "person right, approaching"), engine.spoken);
+        assertTrue(engine.flushes.get(1));
+    }
+}
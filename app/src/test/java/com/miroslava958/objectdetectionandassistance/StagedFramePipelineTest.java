@@ -0,0 +1,173 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class StagedFramePipelineTest {
+
+    // Synthetic frame slot carrying a sequence number through the stages
+    private static final class TestFrame {
+        long sequence;
+        int stagesSeen;
+    }
+
+    private static void busyWait(long micros) {
+        long end = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(micros);
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void waitUntilIdle(FramePipeline<?> pipeline) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pipeline.getCompletedFrames() + pipeline.getDroppedFrames() + pipeline.getFailedFrames()
+                < pipeline.getSubmittedFrames() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testEveryFrameIsCompletedOrDroppedInOrder() throws InterruptedException {
+        List<Long> published = Collections.synchronizedList(new ArrayList<>());
+        List<FramePipeline.Stage<TestFrame>> stages = Arrays.asList(
+                frame -> { busyWait(200); frame.stagesSeen++; },   // infer
+                frame -> { busyWait(50); frame.stagesSeen++; },    // post-process
+                frame -> {                                          // publish
+                    frame.stagesSeen++;
+                    assertEquals(3, frame.stagesSeen);
+                    published.add(frame.sequence);
+                });
+        FramePipeline<TestFrame> pipeline = new StagedFramePipeline<>("test", TestFrame::new, stages, null);
+        pipeline.start();
+
+        // Submit faster than the slowest stage so stale frames must be dropped
+        for (long i = 0; i < 2000; i++) {
+            final long sequence = i;
+            pipeline.submit(frame -> {
+                frame.sequence = sequence;
+                frame.stagesSeen = 0;
+                return true;
+            });
+            busyWait(20);
+        }
+        waitUntilIdle(pipeline);
+        pipeline.shutdown();
+
+        assertEquals(2000, pipeline.getSubmittedFrames());
+        assertEquals(2000, pipeline.getCompletedFrames() + pipeline.getDroppedFrames());
+        assertTrue("Stale frames should be dropped", pipeline.getDroppedFrames() > 0);
+        assertEquals(pipeline.getCompletedFrames(), published.size());
+        for (int i = 1; i < published.size(); i++) {
+            assertTrue("Frames must stay in order", published.get(i) > published.get(i - 1));
+        }
+    }
+
+    @Test
+    public void testThroughputAndLatency() throws InterruptedException {
+        // Each stage takes ~1ms, so the stages overlap and throughput is bounded by one stage
+        List<FramePipeline.Stage<TestFrame>> stages = Arrays.asList(
+                frame -> busyWait(1000),
+                frame -> busyWait(1000),
+                frame -> busyWait(1000));
+        FramePipeline<TestFrame> pipeline = new StagedFramePipeline<>("bench", TestFrame::new, stages, null);
+        pipeline.start();
+
+        int frames = 300;
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            pipeline.submit(frame -> true);
+            busyWait(1500);
+        }
+        waitUntilIdle(pipeline);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pipeline.shutdown();
+
+        double fps = pipeline.getCompletedFrames() / seconds;
+        double averageMs = pipeline.getAverageLatencyNanos() / 1e6;
+        System.out.printf("Pipeline: %.1f fps, average latency %.2f ms, max %.2f ms, dropped %d%n",
+                fps, averageMs, pipeline.getMaxLatencyNanos() / 1e6, pipeline.getDroppedFrames());
+
+        assertTrue("Most frames should complete when submitting slower than each stage",
+                pipeline.getCompletedFrames() > frames / 2);
+        assertTrue("End-to-end latency covers the three stages", averageMs >= 3.0);
+    }
+
+    @Test
+    public void testFailingStageRecyclesSlot() throws InterruptedException {
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        List<FramePipeline.Stage<TestFrame>> stages = Collections.singletonList(frame -> {
+            if (frame.sequence % 2 == 0) {
+                throw new IllegalStateException("bad frame");
+            }
+        });
+        FramePipeline<TestFrame> pipeline = new StagedFramePipeline<>("fail", TestFrame::new, stages,
+                error -> errors.add(error.getMessage()));
+        pipeline.start();
+
+        for (long i = 0; i < 100; i++) {
+            final long sequence = i;
+            pipeline.submit(frame -> {
+                frame.sequence = sequence;
+                return true;
+            });
+            waitUntilIdle(pipeline);
+        }
+        pipeline.shutdown();
+
+        assertEquals(50, pipeline.getFailedFrames());
+        assertEquals(50, pipeline.getCompletedFrames());
+        assertEquals(50, errors.size());
+    }
+
+    @Test
+    public void testDiscardedFramesAreReported() throws InterruptedException {
+        List<Long> published = Collections.synchronizedList(new ArrayList<>());
+        List<Long> discarded = Collections.synchronizedList(new ArrayList<>());
+        List<FramePipeline.Stage<TestFrame>> stages = Arrays.asList(
+                frame -> busyWait(200),
+                frame -> {
+                    if (frame.sequence % 10 == 0) {
+                        throw new IllegalStateException("bad frame");
+                    }
+                },
+                frame -> published.add(frame.sequence));
+        FramePipeline<TestFrame> pipeline = new StagedFramePipeline<>("discard", TestFrame::new, stages, null,
+                frame -> discarded.add(frame.sequence));
+        pipeline.start();
+
+        for (long i = 0; i < 500; i++) {
+            final long sequence = i;
+            pipeline.submit(frame -> {
+                frame.sequence = sequence;
+                return sequence != 499;
+            });
+            busyWait(20);
+        }
+        waitUntilIdle(pipeline);
+        pipeline.shutdown();
+
+        // Every frame written either finished or was reported, never both
+        assertTrue(pipeline.getDroppedFrames() > 1);
+        assertEquals(pipeline.getDroppedFrames() + pipeline.getFailedFrames(), discarded.size());
+        assertEquals(500, published.size() + discarded.size());
+        assertTrue(discarded.contains(499L));
+        for (Long sequence : published) {
+            assertFalse(discarded.contains(sequence));
+        }
+    }
+
+    @Test
+    public void testWriterCanRejectFrame() {
+        FramePipeline<TestFrame> pipeline = new StagedFramePipeline<>("reject", TestFrame::new,
+                Collections.<FramePipeline.Stage<TestFrame>>singletonList(frame -> { }), null);
+        assertFalse(pipeline.submit(frame -> false));
+        assertEquals(1, pipeline.getDroppedFrames());
+    }
+}
@@ -0,0 +1,105 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StartupReportTest {
+
+    private static final long MS = 1_000_000L;
+
+    // Simulated time advanced by the test
+    private static final class FakeClock implements Clock {
+        long now = 5_000 * MS;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+    }
+
+    private FakeClock clock;
+    private StartupReport report;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        report = new StartupReport(clock);
+    }
+
+    @Test
+    public void testPhasesAreRelativeToCreation() {
+        clock.now += 10 * MS;
+        long start = report.now();
+        clock.now += 25 * MS;
+        report.record(StartupReport.Phase.MODEL_MAP, start);
+
+        assertEquals(10 * MS, report.getStartNanos(StartupReport.Phase.MODEL_MAP));
+        assertEquals(25 * MS, report.getDurationNanos(StartupReport.Phase.MODEL_MAP));
+        assertEquals(-1, report.getStartNanos(StartupReport.Phase.FIRST_INVOKE));
+        assertEquals(-1, report.getDurationNanos(StartupReport.Phase.FIRST_INVOKE));
+    }
+
+    @Test
+    public void testMilestoneIsOnlyRecordedOnce() {
+        clock.now += 40 * MS;
+        assertTrue(report.mark(StartupReport.Phase.FIRST_PREVIEW));
+        clock.now += 40 * MS;
+        assertFalse(report.mark(StartupReport.Phase.FIRST_PREVIEW));
+
+        assertEquals(40 * MS, report.getStartNanos(StartupReport.Phase.FIRST_PREVIEW));
+        assertEquals(0, report.getDurationNanos(StartupReport.Phase.FIRST_PREVIEW));
+    }
+
+    @Test
+    public void testFirstResultMarkedOnce() {
+        clock.now += 300 * MS;
+        assertTrue(report.markFirstResult());
+        clock.now += 33 * MS;
+        assertFalse(report.markFirstResult());
+        assertFalse(report.mark(StartupReport.Phase.FIRST_RESULT));
+
+        assertEquals(300 * MS, report.getStartNanos(StartupReport.Phase.FIRST_RESULT));
+    }
+
+    @Test
+    public void testFirstResultCheckDoesNotAllocate() {
+        report.markFirstResult();
+        for (int i = 0; i < 1000; i++) {
+            report.markFirstResult();
+        }
+
+        long allocated = AllocationCounter.measure(() -> {
+            for (int i = 0; i < 1000; i++) {
+                report.markFirstResult();
+            }
+        });
+
+        assertEquals(0, allocated);
+    }
+
+    @Test
+    public void testJsonListsRecordedPhasesInOrder() {
+        long origin = report.now();
+        clock.now += 2 * MS;
+        long start = report.now();
+        clock.now += 3_500_000L;
+        report.record(StartupReport.Phase.INTERPRETER_INIT, start);
+        report.record(StartupReport.Phase.MODEL_MAP, origin);
+        report.put("backend", "CPU:4:xnnpack");
+        report.put("note", "quote \" and \\ slash");
+
+        String json = report.toJson();
+
+        assertEquals("{\"phases\":["
+                + "{\"name\":\"model_map\",\"startMs\":0.00,\"durationMs\":5.50},"
+                + "{\"name\":\"interpreter_init\",\"startMs\":2.00,\"durationMs\":3.50}],"
+                + "\"attributes\":{\"backend\":\"CPU:4:xnnpack\",\"note\":\"quote \\\" and \\\\ slash\"}}", json);
+    }
+
+    @Test
+    public void testEmptyReportIsValidJson() {
+        assertEquals("{\"phases\":[],\"attributes\":{}}", report.toJson());
+    }
+}
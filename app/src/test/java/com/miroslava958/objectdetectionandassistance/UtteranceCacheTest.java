@@ -0,0 +1,124 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UtteranceCacheTest {
+
+    private final List<Integer> evicted = new ArrayList<>();
+    private UtteranceCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new UtteranceCache(4, 1000, 1, evicted::add);
+    }
+
+    /**
+     * Speaks a phrase and synthesises its clip as the engine would when idle.
+     */
+    private int cached(String phrase, long size) {
+        cache.lookup(phrase);
+        assertEquals(phrase, cache.nextToSynthesize());
+        assertTrue(cache.synthesized(phrase, size));
+        return cache.clipId(phrase);
+    }
+
+    @Test
+    public void testSecondUsePlaysTheClip() {
+        assertEquals(-1, cache.lookup("person left"));
+        assertEquals("person left", cache.nextToSynthesize());
+        // Still live while it is being synthesised, and not queued twice
+        assertEquals(-1, cache.lookup("person left"));
+        assertNull(cache.nextToSynthesize());
+
+        assertTrue(cache.synthesized("person left", 100));
+        int clip = cache.clipId("person left");
+        assertEquals(clip, cache.lookup("person left"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(100, cache.getBytes());
+    }
+
+    @Test
+    public void testOnlyRepeatedPhrasesAreSynthesised() {
+        cache = new UtteranceCache(4, 1000, 2, evicted::add);
+        cache.lookup("chair ahead");
+        assertNull(cache.nextToSynthesize());
+        cache.lookup("chair ahead");
+        assertEquals("chair ahead", cache.nextToSynthesize());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvictedByCount() {
+        int person = cached("person left", 100);
+        int chair = cached("chair ahead", 100);
+        cached("car right", 100);
+        cached("dog left", 100);
+        // Using the person clip makes the chair the oldest
+        assertEquals(person, cache.lookup("person left"));
+
+        cached("cup ahead", 100);
+        assertEquals(Arrays.asList(chair), evicted);
+        assertEquals(4, cache.size());
+        assertEquals(400, cache.getBytes());
+        assertEquals(-1, cache.lookup("chair ahead"));
+    }
+
+    @Test
+    public void testEvictedBySize() {
+        int person = cached("person left", 400);
+        int chair = cached("chair ahead", 400);
+        cached("car right", 400);
+
+        assertEquals(Arrays.asList(person), evicted);
+        assertEquals(800, cache.getBytes());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(chair, cache.lookup("chair ahead"));
+    }
+
+    @Test
+    public void testClipBeingSynthesisedIsNotEvicted() {
+        cache.lookup("person left");
+        String phrase = cache.nextToSynthesize();
+        // Many other phrases are spoken before synthesis finishes
+        for (int i = 0; i < 10; i++) {
+            cache.lookup("phrase " + i);
+        }
+        assertTrue(cache.synthesized(phrase, 100));
+        assertTrue(cache.lookup("person left") >= 0);
+        assertTrue(cache.size() <= 4);
+    }
+
+    @Test
+    public void testQueuedPhraseDroppedBeforeSynthesis() {
+        for (int i = 0; i < 6; i++) {
+            cache.lookup("phrase " + i);
+        }
+        // The first two were dropped from the cache before the engine was idle
+        assertEquals("phrase 2", cache.nextToSynthesize());
+    }
+
+    @Test
+    public void testFailedSynthesisRetriedOnNextUse() {
+        cache.lookup("person left");
+        cache.failed(cache.nextToSynthesize());
+        assertNull(cache.nextToSynthesize());
+
+        cache.lookup("person left");
+        assertEquals("person left", cache.nextToSynthesize());
+    }
+
+    @Test
+    public void testOversizedClipNotKept() {
+        cache.lookup("a very long phrase");
+        assertFalse(cache.synthesized(cache.nextToSynthesize(), 5000));
+        assertEquals(0, cache.getBytes());
+        assertTrue(evicted.isEmpty());
+    }
+}
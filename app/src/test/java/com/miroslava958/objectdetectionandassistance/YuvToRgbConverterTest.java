@@ -0,0 +1,266 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+public class YuvToRgbConverterTest {
+
+    /**
+     * Builds synthetic Y/U/V planes with padded rows and the given chroma pixel stride.
+     * Semi-planar frames (pixel stride 2) share one interleaved buffer like real cameras do.
+     */
+    private static YuvFrame syntheticFrame(int width, int height, int rowPadding, int uvPixelStride, long seed) {
+        Random random = new Random(seed);
+        int yRowStride = width + rowPadding;
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int uvRowStride = chromaWidth * uvPixelStride + rowPadding;
+
+        byte[] y = new byte[yRowStride * height];
+        random.nextBytes(y);
+
+        ByteBuffer uBuffer;
+        ByteBuffer vBuffer;
+        if (uvPixelStride == 2) {
+            // NV21-like interleaving: V then U in one buffer
+            byte[] vu = new byte[uvRowStride * chromaHeight];
+            random.nextBytes(vu);
+            vBuffer = ByteBuffer.wrap(vu);
+            uBuffer = ByteBuffer.wrap(vu, 1, vu.length - 1).slice();
+        } else {
+            byte[] u = new byte[uvRowStride * chromaHeight];
+            byte[] v = new byte[uvRowStride * chromaHeight];
+            random.nextBytes(u);
+            random.nextBytes(v);
+            uBuffer = ByteBuffer.wrap(u);
+            vBuffer = ByteBuffer.wrap(v);
+        }
+        return new YuvFrame().set(width, height, ByteBuffer.wrap(y), uBuffer, vBuffer,
+                yRowStride, uvRowStride, uvPixelStride);
+    }
+
+    /**
+     * Reference conversion of one source pixel using floating point BT.601 full-range maths.
+     */
+    private static int[] referenceRgb(YuvFrame frame, int x, int y) {
+        int luma = frame.getYBuffer().get(y * frame.getYRowStride() + x) & 0xFF;
+        int uvIndex = (y / 2) * frame.getUvRowStride() + (x / 2) * frame.getUvPixelStride();
+        double u = (frame.getUBuffer().get(uvIndex) & 0xFF) - 128.0;
+        double v = (frame.getVBuffer().get(uvIndex) & 0xFF) - 128.0;
+        return new int[]{
+                clamp(Math.round(luma + 1.402 * v)),
+                clamp(Math.round(luma - 0.344136 * u - 0.714136 * v)),
+                clamp(Math.round(luma + 1.772 * u))
+        };
+    }
+
+    private static int clamp(long value) {
+        return (int) Math.max(0, Math.min(255, value));
+    }
+
+    /**
+     * Checks every output pixel against the reference conversion of the source pixel under its centre.
+     */
+    private static void assertMatchesReference(YuvFrame frame, int left, int top, int width, int height,
+                                               int outWidth, int outHeight, ByteBuffer out) {
+        for (int row = 0; row < outHeight; row++) {
+            int sy = top + (int) (((2L * row + 1) * height) / (2L * outHeight));
+            for (int col = 0; col < outWidth; col++) {
+                int sx = left + (int) (((2L * col + 1) * width) / (2L * outWidth));
+                int[] expected = referenceRgb(frame, sx, sy);
+                int index = (row * outWidth + col) * 3;
+                for (int c = 0; c < 3; c++) {
+                    int actual = out.get(index + c) & 0xFF;
+                    assertTrue("Pixel (" + col + "," + row + ") channel " + c + " expected "
+                            + expected[c] + " but was " + actual, Math.abs(actual - expected[c]) <= 1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPlanarFrameWithPaddedRows() {
+        YuvFrame frame = syntheticFrame(64, 48, 16, 1, 1L);
+        YuvToRgbConverter converter = new YuvToRgbConverter(32, 32);
+        ByteBuffer out = ByteBuffer.allocateDirect(converter.getOutputSize());
+
+        converter.convert(frame, out);
+
+        assertEquals(0, out.position());
+        assertMatchesReference(frame, 0, 0, 64, 48, 32, 32, out);
+    }
+
+    @Test
+    public void testSemiPlanarFrame() {
+        YuvFrame frame = syntheticFrame(640, 480, 64, 2, 2L);
+        YuvToRgbConverter converter = new YuvToRgbConverter(320, 320);
+        ByteBuffer out = ByteBuffer.allocateDirect(converter.getOutputSize());
+
+        converter.convert(frame, out);
+
+        assertMatchesReference(frame, 0, 0, 640, 480, 320, 320, out);
+    }
+
+    @Test
+    public void testCropAndUpscale() {
+        YuvFrame frame = syntheticFrame(100, 60, 4, 2, 3L);
+        YuvToRgbConverter converter = new YuvToRgbConverter(50, 40);
+        ByteBuffer out = ByteBuffer.allocate(converter.getOutputSize());
+
+        converter.convert(frame, 30, 10, 20, 40, out);
+        assertMatchesReference(frame, 30, 10, 20, 40, 50, 40, out);
+
+        // The same converter must rebuild its tables when the crop changes
+        converter.convert(frame, 0, 0, 100, 60, out);
+        assertMatchesReference(frame, 0, 0, 100, 60, 50, 40, out);
+    }
+
+    @Test
+    public void testKnownColours() {
+        // Uniform grey (Y=128, U=V=128) must stay grey
+        int width = 4;
+        int height = 4;
+        byte[] y = new byte[width * height];
+        byte[] u = new byte[4];
+        byte[] v = new byte[4];
+        java.util.Arrays.fill(y, (byte) 128);
+        java.util.Arrays.fill(u, (byte) 128);
+        java.util.Arrays.fill(v, (byte) 128);
+        YuvFrame frame = new YuvFrame().set(width, height, ByteBuffer.wrap(y), ByteBuffer.wrap(u),
+                ByteBuffer.wrap(v), width, 2, 1);
+        YuvToRgbConverter converter = new YuvToRgbConverter(2, 2);
+        ByteBuffer out = ByteBuffer.allocate(converter.getOutputSize());
+
+        converter.convert(frame, out);
+
+        for (int i = 0; i < converter.getOutputSize(); i++) {
+            assertEquals(128, out.get(i) & 0xFF);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCropOutsideFrameRejected() {
+        YuvFrame frame = syntheticFrame(64, 48, 0, 1, 4L);
+        YuvToRgbConverter converter = new YuvToRgbConverter(32, 32);
+        converter.convert(frame, 40, 0, 32, 32, ByteBuffer.allocate(converter.getOutputSize()));
+    }
+
+    @Test
+    public void testRotatedFrameMatchesRotatedReference() {
+        YuvFrame frame = syntheticFrame(64, 48, 8, 2, 5L);
+        YuvToRgbConverter converter = new YuvToRgbConverter(24, 32);
+        ByteBuffer out = ByteBuffer.allocate(converter.getOutputSize());
+        float[] sensor = new float[2];
+
+        for (int rotation : new int[]{0, 90, 180, 270}) {
+            InputTransform transform = new InputTransform(24, 32, InputTransform.ScaleMode.STRETCH);
+            transform.update(64, 48, rotation);
+            converter.convert(frame, transform, out);
+
+            for (int row = 0; row < 32; row++) {
+                for (int col = 0; col < 24; col++) {
+                    // Centre of the upright pixel under the output pixel, rotated back to the sensor
+                    int ux = (int) transform.modelToUprightX(col + 0.5f);
+                    int uy = (int) transform.modelToUprightY(row + 0.5f);
+                    transform.uprightToSensor(ux + 0.5f, uy + 0.5f, sensor);
+                    int[] expected = referenceRgb(frame, (int) sensor[0], (int) sensor[1]);
+                    int index = (row * 24 + col) * 3;
+                    for (int c = 0; c < 3; c++) {
+                        assertEquals("Rotation " + rotation + " pixel (" + col + "," + row + ")",
+                                expected[c], out.get(index + c) & 0xFF, 1);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLetterboxPadsWithBlack() {
+        YuvFrame frame = syntheticFrame(64, 48, 0, 1, 6L);
+        YuvToRgbConverter converter = new YuvToRgbConverter(32, 32);
+        ByteBuffer out = ByteBuffer.allocate(converter.getOutputSize());
+        InputTransform transform = new InputTransform(32, 32, InputTransform.ScaleMode.LETTERBOX);
+        transform.update(64, 48, 0);
+
+        converter.convert(frame, transform, out);
+
+        // 64x48 -> 32x24 with 4 rows of padding above and below
+        for (int row = 0; row < 32; row++) {
+            boolean padding = row < 4 || row >= 28;
+            for (int col = 0; col < 32; col++) {
+                int index = (row * 32 + col) * 3;
+                if (padding) {
+                    assertEquals(0, out.get(index) | out.get(index + 1) | out.get(index + 2));
+                } else {
+                    int[] expected = referenceRgb(frame, col * 2 + 1, (row - 4) * 2 + 1);
+                    assertEquals(expected[0], out.get(index) & 0xFF, 1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFloatAndQuantizedInputMatchRawThroughTables() {
+        YuvFrame frame = syntheticFrame(64, 48, 2, 2, 9L);
+        InputTransform transform = new InputTransform(32, 32, InputTransform.ScaleMode.LETTERBOX);
+        transform.update(64, 48, 90);
+        YuvToRgbConverter raw = new YuvToRgbConverter(32, 32);
+        ByteBuffer rawOut = ByteBuffer.allocate(raw.getOutputSize());
+        raw.convert(frame, transform, rawOut);
+
+        InputFormat floats = InputFormat.float32(127.5f, 127.5f);
+        YuvToRgbConverter floatConverter = new YuvToRgbConverter(32, 32, floats);
+        assertEquals(32 * 32 * 3 * 4, floatConverter.getOutputSize());
+        ByteBuffer floatOut = ByteBuffer.allocateDirect(floatConverter.getOutputSize()).order(ByteOrder.nativeOrder());
+        floatConverter.convert(frame, transform, floatOut);
+
+        InputFormat bytes = InputFormat.quantized(TensorSpec.DataType.INT8, 0.01f, 5, 127.5f, 127.5f);
+        YuvToRgbConverter byteConverter = new YuvToRgbConverter(32, 32, bytes);
+        ByteBuffer byteOut = ByteBuffer.allocate(byteConverter.getOutputSize());
+        byteConverter.convert(frame, transform, byteOut);
+
+        for (int i = 0; i < 32 * 32 * 3; i++) {
+            int pixel = rawOut.get(i) & 0xFF;
+            assertEquals((pixel - 127.5f) / 127.5f, floatOut.getFloat(i * 4), 0f);
+            assertEquals(bytes.getByteTable()[pixel], byteOut.get(i));
+        }
+        // Letterbox padding is black in the model's encoding
+        assertEquals(-1f, floatOut.getFloat(0), 0f);
+        assertEquals(bytes.getByteTable()[0], byteOut.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFloatInputInForeignByteOrderRejected() {
+        YuvToRgbConverter converter = new YuvToRgbConverter(16, 16, InputFormat.float32(0f, 255f));
+        ByteOrder foreign = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN
+                : ByteOrder.BIG_ENDIAN;
+        ByteBuffer out = ByteBuffer.allocate(converter.getOutputSize()).order(foreign);
+        converter.convert(syntheticFrame(32, 32, 0, 1, 10L), out);
+    }
+
+    @Test
+    public void testRegionOfInterestMatchesCrop() {
+        YuvFrame frame = syntheticFrame(100, 60, 4, 2, 7L);
+        YuvToRgbConverter converter = new YuvToRgbConverter(20, 20);
+        ByteBuffer out = ByteBuffer.allocate(converter.getOutputSize());
+        InputTransform transform = new InputTransform(20, 20, InputTransform.ScaleMode.STRETCH);
+        transform.update(100, 60, 0, 40, 10, 80, 50);
+
+        converter.convert(frame, transform, out);
+        assertMatchesReference(frame, 40, 10, 40, 40, 20, 20, out);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTransformForOtherFrameRejected() {
+        YuvFrame frame = syntheticFrame(64, 48, 0, 1, 8L);
+        YuvToRgbConverter converter = new YuvToRgbConverter(32, 32);
+        InputTransform transform = new InputTransform(32, 32, InputTransform.ScaleMode.LETTERBOX);
+        transform.update(640, 480, 0);
+        converter.convert(frame, transform, ByteBuffer.allocate(converter.getOutputSize()));
+    }
+}
@@ -0,0 +1,35 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Synthetic camera frames shared by the benchmarks.
+ */
+final class BenchmarkFrames {
+
+    private BenchmarkFrames() {
+    }
+
+    /**
+     * Builds a semi-planar (pixel stride 2) frame with padded rows, the layout most
+     * Android cameras return for YUV_420_888.
+     */
+    static YuvFrame semiPlanar(int width, int height, Random random) {
+        int rowStride = (width + 63) / 64 * 64;
+        byte[] y = new byte[rowStride * height];
+        byte[] vu = new byte[rowStride * (height / 2)];
+        random.nextBytes(y);
+        random.nextBytes(vu);
+
+        ByteBuffer yBuffer = ByteBuffer.allocateDirect(y.length);
+        yBuffer.put(y).rewind();
+        ByteBuffer vBuffer = ByteBuffer.allocateDirect(vu.length);
+        vBuffer.put(vu).rewind();
+        vBuffer.position(1);
+        ByteBuffer uBuffer = vBuffer.slice();
+        vBuffer.rewind();
+
+        return new YuvFrame().set(width, height, yBuffer, uBuffer, vBuffer, rowStride, rowStride, 2);
+    }
+}
@@ -0,0 +1,146 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each detector head's decoding (and NMS where the head needs it) on synthetic
+ * outputs with a growing number of candidate boxes. About 1 in 20 candidates passes the
+ * score threshold, clustered so NMS has overlaps to remove. Outputs are FLOAT32, or INT8
+ * as a fully quantized export gives them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DetectionDecoderBenchmark {
+
+    private static final int CLASSES = 80;
+    private static final float THRESHOLD = 0.5f;
+
+    @Param({"ssd", "anchors", "yolov5", "yolov8"})
+    public String head;
+
+    @Param({"100", "2100", "8400"})
+    public int candidates;
+
+    @Param({"float32", "int8"})
+    public String outputType;
+
+    private DetectionDecoder decoder;
+    private final DetectionBuffer out = new DetectionBuffer(25);
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(11);
+        int n = candidates;
+        switch (head) {
+            case "ssd":
+                TensorSpec boxes = spec("boxes", new int[]{1, n, 4}, 1 / 255f, -128);
+                TensorSpec classes = spec("classes", new int[]{1, n}, 1f, -128);
+                TensorSpec scores = spec("scores", new int[]{1, n}, 1 / 255f, -128);
+                decoder = DetectionDecoders.select(Arrays.asList(boxes, classes, scores,
+                        new TensorSpec("count", new int[]{1})), CLASSES, null, 0.5f, 25).create();
+                fill(0, boxes, random, 0f, 1f);
+                fill(1, classes, random, 0f, CLASSES);
+                fill(2, scores, random, 0f, 0.525f);
+                ((ByteBuffer) decoder.prepareOutputs().get(3)).order(ByteOrder.nativeOrder()).putFloat(0, n);
+                break;
+            case "anchors":
+                float[] anchors = new float[n * 4];
+                for (int i = 0; i < n; i++) {
+                    anchors[i * 4] = random.nextFloat();
+                    anchors[i * 4 + 1] = random.nextFloat();
+                    anchors[i * 4 + 2] = 0.1f + random.nextFloat() * 0.2f;
+                    anchors[i * 4 + 3] = 0.1f + random.nextFloat() * 0.2f;
+                }
+                TensorSpec encodings = spec("raw_boxes", new int[]{1, n, 4}, 1 / 127f, 0);
+                TensorSpec logits = spec("raw_scores", new int[]{1, n, CLASSES + 1}, 0.05f, 0);
+                decoder = DetectionDecoders.select(Arrays.asList(encodings, logits), CLASSES, anchors, 0.5f, 25)
+                        .create();
+                fill(0, encodings, random, -1f, 1f);
+                fill(1, logits, random, -6f, 0.004f);
+                break;
+            case "yolov5":
+                TensorSpec rows = spec("output", new int[]{1, n, CLASSES + 5}, 1 / 255f, -128);
+                decoder = DetectionDecoders.select(Arrays.asList(rows), CLASSES, null, 0.5f, 25).create();
+                fillYolo(random, n, CLASSES + 5, false, rows);
+                break;
+            default:
+                TensorSpec columns = spec("output0", new int[]{1, CLASSES + 4, n}, 1 / 255f, -128);
+                decoder = DetectionDecoders.select(Arrays.asList(columns), CLASSES, null, 0.5f, 25).create();
+                fillYolo(random, n, CLASSES + 4, true, columns);
+        }
+    }
+
+    /**
+     * An output of the benchmarked type; the quantization applies to INT8 only.
+     */
+    private TensorSpec spec(String name, int[] shape, float scale, int zeroPoint) {
+        return "int8".equals(outputType) ? new TensorSpec(name, shape, TensorSpec.DataType.INT8, scale, zeroPoint)
+                : new TensorSpec(name, shape);
+    }
+
+    /**
+     * Writes one value the way the interpreter does for the output's type.
+     */
+    private static void put(ByteBuffer buffer, int index, float value, TensorSpec spec) {
+        if (spec.isQuantized()) {
+            long q = Math.round(value / spec.getScale() + spec.getZeroPoint());
+            buffer.put(index, (byte) Math.max(-128, Math.min(127, q)));
+        } else {
+            buffer.putFloat(index * 4, value);
+        }
+    }
+
+    /**
+     * Fills an output with uniform values in [min, max).
+     */
+    private void fill(int index, TensorSpec spec, Random random, float min, float max) {
+        ByteBuffer buffer = ((ByteBuffer) decoder.prepareOutputs().get(index)).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < spec.getElementCount(); i++) {
+            put(buffer, i, min + random.nextFloat() * (max - min), spec);
+        }
+    }
+
+    /**
+     * Boxes in 20 clusters, class scores mostly low with 1 in 20 candidates above the threshold.
+     */
+    private void fillYolo(Random random, int n, int attributes, boolean attributesFirst, TensorSpec spec) {
+        ByteBuffer buffer = ((ByteBuffer) decoder.prepareOutputs().get(0)).order(ByteOrder.nativeOrder());
+        for (int c = 0; c < n; c++) {
+            int cluster = (c / 20) % 20;
+            for (int a = 0; a < attributes; a++) {
+                float value;
+                if (a < 2) {
+                    value = 0.1f + (cluster % 5) * 0.2f + random.nextFloat() * 0.02f;
+                } else if (a < 4) {
+                    value = 0.15f;
+                } else if (a == 4 && attributes == CLASSES + 5) {
+                    value = c % 20 == 0 ? 0.95f : random.nextFloat() * 0.6f;
+                } else {
+                    value = (c % 20 == 0 && a == 6) ? 0.9f : random.nextFloat() * 0.4f;
+                }
+                int index = attributesFirst ? a * n + c : c * attributes + a;
+                put(buffer, index, value, spec);
+            }
+        }
+    }
+
+    @Benchmark
+    public int decode() {
+        decoder.prepareOutputs();
+        return decoder.decode(THRESHOLD, out);
+    }
+}
@@ -0,0 +1,207 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the detection history with millions of stored detections: appending a
+ * frame's detections from the pipeline, and the queries the app asks, such as "was
+ * there a bench in the last minute?" and counts over the whole history. The history
+ * is filled like a long walk: a frame every 33 ms with five detections, mostly people
+ * and cars, a bench in one detection out of 5000 and no toothbrush at all.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DetectionHistoryBenchmark {
+
+    private static final int CLASSES = 80;
+    private static final int PERSON = 0;
+    private static final int CAR = 2;
+    private static final int BENCH = 13;
+    private static final int TOOTHBRUSH = 79;
+    private static final int PER_FRAME = 5;
+    private static final long FRAME_MILLIS = 33;
+    private static final long MINUTE_MILLIS = 60_000;
+    // Same segments as the app: 16384 rows, 4 in memory
+    private static final int SEGMENT_ROWS = 16384;
+    private static final int MEMORY_SEGMENTS = 4;
+
+    @Param({"1000000", "4000000"})
+    public int storedDetections;
+
+    private File directory;
+    private DetectionHistory history;
+    private final DetectionHistory.Rows rows = new DetectionHistory.Rows(32);
+    private long now;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("history-benchmark").toFile();
+        history = new DetectionHistory(directory, CLASSES, SEGMENT_ROWS, MEMORY_SEGMENTS,
+                storedDetections / SEGMENT_ROWS + 2);
+        Random random = new Random(5);
+        DetectionBuffer frame = new DetectionBuffer(PER_FRAME);
+        long segmentBytes = DetectionHistory.fileSize(SEGMENT_ROWS, CLASSES);
+        for (int i = 0; i < storedDetections / PER_FRAME; i++) {
+            fill(frame, random, i);
+            now = i * FRAME_MILLIS;
+            history.append(frame, now, 640, 480);
+            // Filling runs far faster than the pipeline: let the writer keep up rather than drop rows
+            while (history.getAppended() / SEGMENT_ROWS - history.getBytesWritten() / segmentBytes
+                    >= MEMORY_SEGMENTS - 2) {
+                Thread.sleep(1);
+            }
+        }
+        if (history.getDropped() > 0) {
+            throw new IllegalStateException("Dropped " + history.getDropped() + " detections while filling");
+        }
+    }
+
+    /**
+     * Detections of one frame: 60% people, 20% cars, a rare bench and any other class but the toothbrush.
+     */
+    private static void fill(DetectionBuffer frame, Random random, int index) {
+        frame.clear();
+        for (int d = 0; d < PER_FRAME; d++) {
+            int roll = random.nextInt(10);
+            int classId = roll < 6 ? PERSON : roll < 8 ? CAR : 14 + random.nextInt(TOOTHBRUSH - 14);
+            if ((index * PER_FRAME + d) % 5000 == 0) {
+                classId = BENCH;
+            }
+            float x = random.nextFloat() * 500;
+            float y = random.nextFloat() * 380;
+            int i = frame.add(x, y, x + 100, y + 80, 0.5f + random.nextFloat() / 2, classId);
+            frame.setTrackId(i, index / 30 * PER_FRAME + d);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        history.close();
+        delete(directory);
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public long benchInLastMinute() {
+        return history.lastSeen(BENCH, now - MINUTE_MILLIS, now);
+    }
+
+    @Benchmark
+    public long lastBenchEver() {
+        return history.lastSeen(BENCH, 0, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int peopleInLastMinute() {
+        return history.count(PERSON, now - MINUTE_MILLIS, now);
+    }
+
+    @Benchmark
+    public int benchesEver() {
+        return history.count(BENCH, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Worst case: a class that was never seen, checked against every block of the class index.
+     */
+    @Benchmark
+    public int toothbrushesEver() {
+        return history.count(TOOTHBRUSH, 0, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int recentBenchRows() {
+        return history.query(BENCH, 0, Long.MAX_VALUE, rows);
+    }
+
+    @Benchmark
+    public int carsInAnHourLongAgo() {
+        long from = now / 2;
+        return history.count(CAR, from, from + 60 * MINUTE_MILLIS);
+    }
+
+    /**
+     * Appending from the pipeline, into a history of its own that keeps a few segment files.
+     */
+    @State(Scope.Thread)
+    public static class Ingest {
+        private File directory;
+        private DetectionHistory history;
+        private DetectionBuffer[] frames;
+        private int index = 0;
+        private long time = 0;
+
+        @Setup
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("history-ingest").toFile();
+            history = new DetectionHistory(directory, CLASSES, SEGMENT_ROWS, MEMORY_SEGMENTS, 8);
+            Random random = new Random(7);
+            frames = new DetectionBuffer[64];
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = new DetectionBuffer(PER_FRAME);
+                fill(frames[i], random, i);
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            history.close();
+            delete(directory);
+        }
+    }
+
+    /**
+     * Detections stored and dropped, reported next to the timings: appending as fast as
+     * possible can outrun the writer, which the pipeline at 30 frames per second never does.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcome {
+        public long stored;
+        public long dropped;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            stored = 0;
+            dropped = 0;
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void appendFrame(Ingest ingest, Outcome outcome) {
+        DetectionBuffer frame = ingest.frames[ingest.index];
+        ingest.index = (ingest.index + 1) % ingest.frames.length;
+        long droppedBefore = ingest.history.getDropped();
+        ingest.history.append(frame, ingest.time++, 640, 480);
+        long dropped = ingest.history.getDropped() - droppedBefore;
+        outcome.dropped += dropped;
+        outcome.stored += frame.size() - dropped;
+    }
+}
@@ -0,0 +1,98 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures checking a frame of candidates against the detection policy, compiled into
+ * tables by class ID, compared with looking each class's label up by name.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DetectionPolicyBenchmark {
+
+    private static final String CONFIG = "default: enter=0.7 exit=0.55\n"
+            + "class person: enter=0.5 exit=0.4\n"
+            + "class car: enter=0.55 exit=0.45\n"
+            + "class bus: enter=0.55 exit=0.45\n"
+            + "deny: potted plant, vase\n";
+
+    private final List<String> labels = new ArrayList<>();
+    private DetectionPolicy policy;
+    // The same policy kept by label name
+    private final Map<String, Float> enterByLabel = new HashMap<>();
+    private final Set<String> deniedLabels = new HashSet<>();
+
+    // One frame of candidates
+    private final int[] classIds = new int[100];
+    private final float[] scores = new float[100];
+
+    @Setup
+    public void setUp() throws IOException {
+        for (int i = 0; i < 90; i++) {
+            labels.add("class " + i);
+        }
+        labels.set(0, "person");
+        labels.set(2, "car");
+        labels.set(5, "bus");
+        labels.set(63, "potted plant");
+        labels.set(85, "vase");
+        policy = DetectionPolicy.read(new ByteArrayInputStream(CONFIG.getBytes(StandardCharsets.UTF_8)), labels);
+        enterByLabel.put("person", 0.5f);
+        enterByLabel.put("car", 0.55f);
+        enterByLabel.put("bus", 0.55f);
+        deniedLabels.addAll(Arrays.asList("potted plant", "vase"));
+
+        Random random = new Random(7);
+        for (int i = 0; i < classIds.length; i++) {
+            classIds[i] = random.nextInt(90);
+            scores[i] = random.nextFloat();
+        }
+    }
+
+    @Benchmark
+    public int compiledTables() {
+        int kept = 0;
+        for (int i = 0; i < classIds.length; i++) {
+            if (policy.accepts(classIds[i], scores[i], false)) {
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    @Benchmark
+    public int labelLookups() {
+        int kept = 0;
+        for (int i = 0; i < classIds.length; i++) {
+            String label = labels.get(classIds[i]);
+            if (deniedLabels.contains(label)) {
+                continue;
+            }
+            Float enter = enterByLabel.get(label);
+            if (scores[i] > (enter != null ? enter : 0.7f)) {
+                kept++;
+            }
+        }
+        return kept;
+    }
+}
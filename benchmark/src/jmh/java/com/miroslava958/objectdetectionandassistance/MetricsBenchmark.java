@@ -0,0 +1,41 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of recording metrics on the hot path, alone and with the
+ * four pipeline threads recording into the same histograms at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsBenchmark {
+
+    private final PipelineMetrics metrics = new PipelineMetrics(Clock.SYSTEM, 120);
+    private final long[] stages = {2_000_000, 25_000_000, 300_000, 150_000, 0};
+    private long value = 1;
+
+    @Benchmark
+    public void recordStage() {
+        metrics.recordStage(PipelineMetrics.Stage.INVOKE, value++ & 0xFFFFFF);
+    }
+
+    @Benchmark
+    public void recordFrame() {
+        metrics.recordFrame(value, value++ & 0xFFFFFF, stages);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordStageContended() {
+        metrics.recordStage(PipelineMetrics.Stage.INVOKE, System.nanoTime() & 0xFFFFFF);
+    }
+}
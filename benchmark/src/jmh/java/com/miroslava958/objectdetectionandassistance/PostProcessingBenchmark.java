@@ -0,0 +1,55 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the score threshold and mapping to the overlay applied to the EfficientDet-Lite0 outputs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PostProcessingBenchmark {
+
+    private InferenceContext context;
+    private DetectionPostProcessor postProcessor;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        context = new InferenceContext(320, 320, new SsdDetectionDecoder(25), InputTransform.ScaleMode.LETTERBOX);
+        context.getTransform().update(640, 480, 90);
+        context.getTransform().setViewSize(1080, 2340);
+
+        Map<Integer, Object> outputs = context.getOutputs();
+        ByteBuffer boxes = ((ByteBuffer) outputs.get(0)).order(ByteOrder.nativeOrder());
+        ByteBuffer classes = ((ByteBuffer) outputs.get(1)).order(ByteOrder.nativeOrder());
+        ByteBuffer scores = ((ByteBuffer) outputs.get(2)).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < 25; i++) {
+            float top = random.nextFloat() * 0.8f;
+            float left = random.nextFloat() * 0.8f;
+            boxes.putFloat(top).putFloat(left).putFloat(top + 0.2f).putFloat(left + 0.2f);
+            classes.putFloat(random.nextInt(90));
+            // Sorted descending like the model output, about a third above the threshold
+            scores.putFloat(0.95f - i * 0.03f);
+        }
+        ((ByteBuffer) outputs.get(3)).order(ByteOrder.nativeOrder()).putFloat(25);
+        postProcessor = new DetectionPostProcessor(0.7f);
+    }
+
+    @Benchmark
+    public int thresholdAndMap() {
+        return context.postProcess(postProcessor);
+    }
+}
@@ -0,0 +1,53 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures distance and approach estimation for a frame of 25 tracked objects,
+ * to compare with the ~66 ms between inference frames.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProximityBenchmark {
+
+    private static final int OBJECTS = 25;
+
+    private ProximityEstimator estimator;
+    private final DetectionBuffer tracked = new DetectionBuffer(OBJECTS);
+    private long now = 0;
+
+    @Setup
+    public void setUp() {
+        float[] heights = new float[90];
+        float[] widths = new float[90];
+        Arrays.fill(heights, 1.0f);
+        Arrays.fill(widths, 0.5f);
+        estimator = new ProximityEstimator(heights, widths, OBJECTS);
+        Random random = new Random(7);
+        for (int i = 0; i < OBJECTS; i++) {
+            float x = random.nextFloat() * 800 + 50;
+            float y = random.nextFloat() * 1600 + 50;
+            tracked.add(x, y, x + 100 + random.nextFloat() * 100, y + 150 + random.nextFloat() * 150, 0.8f,
+                    random.nextInt(90));
+            tracked.setTrackId(i, i);
+        }
+    }
+
+    @Benchmark
+    public float update() {
+        now += 66_666_667L;
+        estimator.update(tracked, now, 1500f, 1080, 1920);
+        return estimator.getDistance(0);
+    }
+}
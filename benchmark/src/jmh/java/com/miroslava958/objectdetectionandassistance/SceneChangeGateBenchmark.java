@@ -0,0 +1,106 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the scene change gate per camera frame, to compare with the tens of
+ * milliseconds of an inference, and reports its skip rate on a looping sequence:
+ * two seconds of a static scene with sensor noise, then one second of an object
+ * crossing the view.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SceneChangeGateBenchmark {
+
+    private static final int STATIC_FRAMES = 60;
+    private static final int MOVING_FRAMES = 30;
+    private static final long FRAME_NANOS = 33_333_333L;
+
+    @Param({"640x480", "1280x720"})
+    public String resolution;
+
+    @Param({"2", "4"})
+    public int sampleStep;
+
+    private YuvFrame[] frames;
+    private SceneChangeGate gate;
+    private int index = 0;
+    private long now = 0;
+
+    /**
+     * Frames that went through inference or were skipped, reported next to the timings.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcome {
+        public long inferred;
+        public long skipped;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            inferred = 0;
+            skipped = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        int width = Integer.parseInt(resolution.substring(0, resolution.indexOf('x')));
+        int height = Integer.parseInt(resolution.substring(resolution.indexOf('x') + 1));
+        Random random = new Random(11);
+        frames = new YuvFrame[STATIC_FRAMES + MOVING_FRAMES];
+        for (int i = 0; i < frames.length; i++) {
+            int objectX = i < STATIC_FRAMES ? -width : (i - STATIC_FRAMES) * width / MOVING_FRAMES;
+            frames[i] = scene(width, height, objectX, random);
+        }
+        gate = new SceneChangeGate(16, 12, sampleStep, 6, 0.03f, 2_000_000_000L);
+    }
+
+    /**
+     * A lit gradient with a dark object a quarter of the height tall, and +-3 levels of noise.
+     */
+    private static YuvFrame scene(int width, int height, int objectX, Random random) {
+        int rowStride = (width + 63) / 64 * 64;
+        int size = height / 4;
+        ByteBuffer y = ByteBuffer.allocateDirect(rowStride * height);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int luma = 60 + col * 100 / width + row * 40 / height;
+                if (col >= objectX && col < objectX + size && row >= height / 3 && row < height / 3 + size) {
+                    luma = 20;
+                }
+                y.put(row * rowStride + col, (byte) (luma + random.nextInt(7) - 3));
+            }
+        }
+        ByteBuffer uv = ByteBuffer.allocateDirect(rowStride * height / 2);
+        return new YuvFrame().set(width, height, y, uv, uv, rowStride, rowStride, 2);
+    }
+
+    @Benchmark
+    public boolean shouldInfer(Outcome outcome) {
+        YuvFrame frame = frames[index];
+        index = (index + 1) % frames.length;
+        now += FRAME_NANOS;
+        boolean infer = gate.shouldInfer(frame, now);
+        if (infer) {
+            outcome.inferred++;
+        } else {
+            outcome.skipped++;
+        }
+        return infer;
+    }
+}
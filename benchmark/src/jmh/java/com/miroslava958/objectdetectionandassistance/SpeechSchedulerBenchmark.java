@@ -0,0 +1,96 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-frame speech scheduling done after each inference,
+ * for a stable scene (everything already announced) and a scene whose
+ * objects keep getting new track IDs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpeechSchedulerBenchmark {
+
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 1920;
+    private static final int OBJECTS = 5;
+
+    /**
+     * Engine that finishes every utterance immediately.
+     */
+    private static final class SilentEngine implements SpeechEngine {
+        private Listener listener;
+
+        @Override
+        public void setListener(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void speak(String text, boolean flush, String utteranceId) {
+            listener.onUtteranceDone(utteranceId);
+        }
+    }
+
+    private final DetectionBuffer tracked = new DetectionBuffer(OBJECTS);
+    private SpeechScheduler scheduler;
+    private long now;
+    private int nextTrackId;
+
+    @Setup
+    public void setUp() {
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < 90; i++) {
+            labels.add("label " + i);
+        }
+        scheduler = new SpeechScheduler(new SilentEngine(), () -> now, labels, 4,
+                5_000_000_000L, 2_000_000_000L, 0.35f, 10_000_000_000L);
+        fill();
+        for (int i = 0; i < 10; i++) {
+            step();
+        }
+    }
+
+    private void fill() {
+        tracked.clear();
+        for (int i = 0; i < OBJECTS; i++) {
+            float left = 100 + i * 150;
+            int index = tracked.add(left, 300, left + 200, 900, 0.8f, i);
+            tracked.setTrackId(index, nextTrackId++);
+        }
+    }
+
+    private void step() {
+        now += 66_666_666L;
+        scheduler.update(tracked, VIEW_WIDTH, VIEW_HEIGHT);
+    }
+
+    @Benchmark
+    public int stableScene() {
+        step();
+        return scheduler.getPendingCount();
+    }
+
+    @Benchmark
+    public int changingScene() {
+        fill();
+        step();
+        return scheduler.getPendingCount();
+    }
+}
@@ -0,0 +1,76 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures YUV_420_888 to RGB conversion into the model input at common camera resolutions,
+ * for the full frame (stretched), a centre square crop and the rotated, letterboxed
+ * input the detector uses, at two model input sizes, writing raw bytes, normalised
+ * floats or quantized INT8 values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class YuvConversionBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    @Param({"320", "512"})
+    public int inputSize;
+
+    @Param({"raw", "float32", "int8"})
+    public String format;
+
+    private YuvFrame frame;
+    private YuvToRgbConverter converter;
+    private ByteBuffer input;
+    private InputTransform letterbox;
+
+    @Setup
+    public void setUp() {
+        String[] size = resolution.split("x");
+        frame = BenchmarkFrames.semiPlanar(Integer.parseInt(size[0]), Integer.parseInt(size[1]), new Random(42));
+        InputFormat inputFormat = InputFormat.RGB_BYTES;
+        if ("float32".equals(format)) {
+            inputFormat = InputFormat.float32(127.5f, 127.5f);
+        } else if ("int8".equals(format)) {
+            inputFormat = InputFormat.quantized(TensorSpec.DataType.INT8, 0.0078125f, -1, 127.5f, 127.5f);
+        }
+        converter = new YuvToRgbConverter(inputSize, inputSize, inputFormat);
+        input = ByteBuffer.allocateDirect(converter.getOutputSize()).order(ByteOrder.nativeOrder());
+        letterbox = new InputTransform(inputSize, inputSize, InputTransform.ScaleMode.LETTERBOX);
+        letterbox.update(frame.getWidth(), frame.getHeight(), 90);
+    }
+
+    @Benchmark
+    public ByteBuffer convertFullFrame() {
+        converter.convert(frame, input);
+        return input;
+    }
+
+    @Benchmark
+    public ByteBuffer convertCentreCrop() {
+        int side = Math.min(frame.getWidth(), frame.getHeight());
+        converter.convert(frame, (frame.getWidth() - side) / 2, (frame.getHeight() - side) / 2, side, side, input);
+        return input;
+    }
+
+    @Benchmark
+    public ByteBuffer convertRotatedLetterbox() {
+        converter.convert(frame, letterbox, input);
+        return input;
+    }
+}
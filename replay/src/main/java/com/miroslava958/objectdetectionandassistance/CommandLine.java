@@ -0,0 +1,187 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Command line of the host tools (replay, detection server and load generator): walks
+ * through the arguments, reads option values and prints the usage on mistakes.
+ *
+ * Also handles the options that select what the model's detections are checked
+ * against, shared by the replay tool and the detection server, with the app's defaults:
+ *   [--labels FILE] [--anchors FILE] [--threshold N | --policy FILE]
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class CommandLine {
+    // COCO labels when no label file is given
+    private static final int DEFAULT_CLASSES = 80;
+
+    private final String[] args;
+    private final String[] usage;
+    // Index of the next argument
+    private int next = 0;
+
+    // Detection options
+    private File labelsFile;
+    private File anchorsFile;
+    private File policyFile;
+    // The app's threshold when it has no policy, also its policy's default enter threshold
+    private float threshold = DetectionPolicy.DEFAULT_THRESHOLD;
+
+    /**
+     * @param args  The arguments
+     * @param usage Usage lines, printed after every error
+     */
+    public CommandLine(String[] args, String... usage) {
+        this.args = args;
+        this.usage = usage;
+    }
+
+    public boolean hasNext() {
+        return next < args.length;
+    }
+
+    /**
+     * @return The next argument, normally an option
+     */
+    public String next() {
+        return args[next++];
+    }
+
+    /**
+     * @param option The option whose value follows, for the error message
+     * @return The value following the option
+     */
+    public String value(String option) {
+        if (next >= args.length) {
+            usage("Missing value for " + option);
+        }
+        return args[next++];
+    }
+
+    public int intValue(String option) {
+        String value = value(option);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            usage("Invalid number for " + option + ": " + value);
+            return 0;
+        }
+    }
+
+    public long longValue(String option) {
+        String value = value(option);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            usage("Invalid number for " + option + ": " + value);
+            return 0;
+        }
+    }
+
+    public double doubleValue(String option) {
+        String value = value(option);
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            usage("Invalid number for " + option + ": " + value);
+            return 0;
+        }
+    }
+
+    /**
+     * Prints the error and the usage and exits.
+     *
+     * @param error What was wrong with the arguments
+     */
+    public void usage(String error) {
+        System.err.println(error);
+        for (String line : usage) {
+            System.err.println(line);
+        }
+        System.exit(2);
+    }
+
+    /**
+     * Reads one of the detection options: --labels, --anchors, --policy or --threshold.
+     *
+     * @param option The option just read with {@link #next}
+     * @return false if it is not a detection option
+     */
+    public boolean detectionOption(String option) {
+        switch (option) {
+            case "--labels":
+                labelsFile = new File(value(option));
+                return true;
+            case "--anchors":
+                anchorsFile = new File(value(option));
+                return true;
+            case "--policy":
+                policyFile = new File(value(option));
+                return true;
+            case "--threshold":
+                threshold = (float) doubleValue(option);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return The labels, without blank lines, or null without --labels
+     * @throws IOException if the label file cannot be read
+     */
+    public List<String> readLabels() throws IOException {
+        if (labelsFile == null) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(labelsFile.toPath(), StandardCharsets.UTF_8);
+        lines.removeIf(line -> line.trim().isEmpty());
+        return lines;
+    }
+
+    /**
+     * @param labels The labels from {@link #readLabels}, or null
+     * @return The number of classes, 80 (COCO) without labels
+     */
+    public static int numClasses(List<String> labels) {
+        return labels == null ? DEFAULT_CLASSES : labels.size();
+    }
+
+    /**
+     * @param labels The labels from {@link #readLabels}, or null
+     * @return The policy from --policy, or one threshold for every class
+     * @throws IOException if the policy cannot be read or names an unknown label
+     */
+    public DetectionPolicy readPolicy(List<String> labels) throws IOException {
+        if (policyFile == null) {
+            return DetectionPolicy.uniform(threshold);
+        }
+        if (labels == null) {
+            usage("--policy needs --labels");
+        }
+        try (InputStream in = new FileInputStream(policyFile)) {
+            return DetectionPolicy.read(in, labels);
+        }
+    }
+
+    /**
+     * @return The anchors from --anchors, or null
+     * @throws IOException if the anchor file cannot be read
+     */
+    public float[] readAnchors() throws IOException {
+        if (anchorsFile == null) {
+            return null;
+        }
+        try (InputStream in = new FileInputStream(anchorsFile)) {
+            return DetectionDecoders.readAnchors(in);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Reads a folder of images (JPEG or PNG, in file name order) as a sequence of
+ * planar YUV 4:2:0 frames, so photos or extracted video frames can be replayed
+ * when no recording from the phone is available.
+ *
+ * Colours are converted with the BT.601 limited-range formulas, the inverse of
+ * {@link YuvToRgbConverter}. Frames are timestamped at a fixed rate and are upright.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class ImageDirectorySource implements FrameSource {
+    private final File[] files;
+    private final long frameIntervalNanos;
+    private int next = 0;
+    private int current = -1;
+    // Plane buffers, reused while the images fit
+    private ByteBuffer yPlane;
+    private ByteBuffer uPlane;
+    private ByteBuffer vPlane;
+
+    /**
+     * @param directory Folder containing the images
+     * @param fps       Rate the images are timestamped at
+     * @throws IOException if the folder cannot be listed or holds no images
+     */
+    public ImageDirectorySource(File directory, double fps) throws IOException {
+        File[] listed = directory.listFiles(file -> {
+            String name = file.getName().toLowerCase(Locale.ROOT);
+            return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png");
+        });
+        if (listed == null || listed.length == 0) {
+            throw new IOException("No images in " + directory);
+        }
+        Arrays.sort(listed);
+        this.files = listed;
+        this.frameIntervalNanos = (long) (1e9 / fps);
+    }
+
+    public int getFrameCount() {
+        return files.length;
+    }
+
+    /**
+     * Decodes the next image.
+     *
+     * @throws UncheckedIOException if the image cannot be read
+     */
+    @Override
+    public boolean next(YuvFrame frame) {
+        if (next >= files.length) {
+            return false;
+        }
+        current = next++;
+        BufferedImage image;
+        try {
+            image = ImageIO.read(files[current]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (image == null) {
+            throw new UncheckedIOException(new IOException("Unsupported image " + files[current]));
+        }
+        toYuv(image, frame);
+        return true;
+    }
+
+    private void toYuv(BufferedImage image, YuvFrame frame) {
+        int width = image.getWidth() & ~1;
+        int height = image.getHeight() & ~1;
+        int chromaWidth = width / 2;
+        int ySize = width * height;
+        int uvSize = chromaWidth * (height / 2);
+        if (yPlane == null || yPlane.capacity() < ySize) {
+            yPlane = ByteBuffer.allocateDirect(ySize);
+            uPlane = ByteBuffer.allocateDirect(uvSize);
+            vPlane = ByteBuffer.allocateDirect(uvSize);
+        }
+
+        int[] row = new int[width * 2];
+        for (int y = 0; y < height; y += 2) {
+            image.getRGB(0, y, width, 2, row, 0, width);
+            for (int x = 0; x < width; x += 2) {
+                int uSum = 0;
+                int vSum = 0;
+                for (int dy = 0; dy < 2; dy++) {
+                    for (int dx = 0; dx < 2; dx++) {
+                        int rgb = row[dy * width + x + dx];
+                        int r = (rgb >> 16) & 0xFF;
+                        int g = (rgb >> 8) & 0xFF;
+                        int b = rgb & 0xFF;
+                        int luma = ((66 * r + 129 * g + 25 * b + 128) >> 8) + 16;
+                        yPlane.put((y + dy) * width + x + dx, (byte) luma);
+                        uSum += ((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128;
+                        vSum += ((112 * r - 94 * g - 18 * b + 128) >> 8) + 128;
+                    }
+                }
+                int chroma = (y / 2) * chromaWidth + x / 2;
+                uPlane.put(chroma, (byte) clamp(uSum / 4));
+                vPlane.put(chroma, (byte) clamp(vSum / 4));
+            }
+        }
+        frame.set(width, height, yPlane, uPlane, vPlane, width, chromaWidth, 1);
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    @Override
+    public long getTimestampNanos() {
+        return current * frameIntervalNanos;
+    }
+
+    @Override
+    public int getRotationDegrees() {
+        return 0;
+    }
+
+    @Override
+    public void rewind() {
+        next = 0;
+        current = -1;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,165 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Command line entry point of the replay tool.
+ *
+ * Usage:
+ *   replay (--recording FILE | --images DIR [--fps N])
+ *          (--stub [--stub-latency-ms N] | --model FILE [--threads N])
+ *          [--labels FILE] [--anchors FILE] [--threshold N | --policy FILE] [--scene-gate]
+ *          [--refiner FILE | --refiner-stub [--refiner-latency-ms N]]
+ *          [--realtime] [--out FILE]
+ *
+ * Prints a summary and optionally writes the full report as JSON.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class ReplayMain {
+    private static final double DEFAULT_IMAGE_FPS = 30;
+    // Same scene change gate as the app: 16x12 blocks, every 4th pixel, 6 levels, 3% of blocks, 2 s
+    private static final long SCENE_GATE_MAX_SKIP_NANOS = 2_000_000_000L;
+    // Same cascade settings as the app
+    private static final int REFINER_THREADS = 2;
+    private static final int CASCADE_MAX_REGIONS = 2;
+    private static final long CASCADE_BUDGET_NANOS = 25_000_000L;
+    private static final long CASCADE_MAX_CREDIT_NANOS = 150_000_000L;
+    // Built only when a TensorFlow Lite jar is available, see build.gradle
+    private static final String TFLITE_RUNNER = "com.miroslava958.objectdetectionandassistance.TfliteModelRunner";
+
+    public static void main(String[] args) throws Exception {
+        CommandLine line = new CommandLine(args,
+                "Usage: replay (--recording FILE | --images DIR [--fps N])",
+                "              (--stub [--stub-latency-ms N] | --model FILE [--threads N])",
+                "              [--labels FILE] [--anchors FILE] [--threshold N | --policy FILE]",
+                "              [--scene-gate] [--refiner FILE | --refiner-stub [--refiner-latency-ms N]]",
+                "              [--realtime] [--out FILE]");
+        File recording = null;
+        File images = null;
+        File model = null;
+        File out = null;
+        File refinerModel = null;
+        boolean stub = false;
+        boolean realtime = false;
+        boolean sceneGate = false;
+        boolean refinerStub = false;
+        long stubLatencyMs = 0;
+        long refinerLatencyMs = 0;
+        int threads = 4;
+        double fps = DEFAULT_IMAGE_FPS;
+
+        while (line.hasNext()) {
+            String arg = line.next();
+            switch (arg) {
+                case "--recording":
+                    recording = new File(line.value(arg));
+                    break;
+                case "--images":
+                    images = new File(line.value(arg));
+                    break;
+                case "--fps":
+                    fps = line.doubleValue(arg);
+                    break;
+                case "--model":
+                    model = new File(line.value(arg));
+                    break;
+                case "--threads":
+                    threads = line.intValue(arg);
+                    break;
+                case "--stub":
+                    stub = true;
+                    break;
+                case "--stub-latency-ms":
+                    stubLatencyMs = line.longValue(arg);
+                    break;
+                case "--scene-gate":
+                    sceneGate = true;
+                    break;
+                case "--refiner":
+                    refinerModel = new File(line.value(arg));
+                    break;
+                case "--refiner-stub":
+                    refinerStub = true;
+                    break;
+                case "--refiner-latency-ms":
+                    refinerLatencyMs = line.longValue(arg);
+                    break;
+                case "--realtime":
+                    realtime = true;
+                    break;
+                case "--out":
+                    out = new File(line.value(arg));
+                    break;
+                default:
+                    if (!line.detectionOption(arg)) {
+                        line.usage("Unknown option " + arg);
+                    }
+            }
+        }
+        if ((recording == null) == (images == null)) {
+            line.usage("Give either --recording or --images");
+        }
+        if (stub == (model != null)) {
+            line.usage("Give either --stub or --model");
+        }
+        if (refinerStub && refinerModel != null) {
+            line.usage("Give either --refiner or --refiner-stub");
+        }
+        List<String> labels = line.readLabels();
+        int numClasses = CommandLine.numClasses(labels);
+        DetectionPolicy policy = line.readPolicy(labels);
+        float[] anchors = line.readAnchors();
+
+        try (ModelRunner runner = stub ? new StubModelRunner(stubLatencyMs * 1_000_000L) : loadModel(model, threads);
+             ModelRunner refiner = refinerStub ? new StubModelRunner(refinerLatencyMs * 1_000_000L)
+                     : refinerModel != null ? loadModel(refinerModel, REFINER_THREADS) : null;
+             FrameSource source = recording != null ? new FrameRecording(recording)
+                     : new ImageDirectorySource(images, fps)) {
+            ReplayEngine engine = new ReplayEngine(runner, numClasses, anchors, policy,
+                    InputTransform.ScaleMode.LETTERBOX);
+            if (sceneGate) {
+                engine.setSceneGate(new SceneChangeGate(16, 12, 4, 6, 0.03f, SCENE_GATE_MAX_SKIP_NANOS));
+            }
+            if (refiner != null) {
+                TensorSpec input = refiner.getInputSpec(); // [1, height, width, 3]
+                engine.setCascade(refiner, numClasses, new CascadeController(CASCADE_MAX_REGIONS, input.getDim(2),
+                        input.getDim(1), 25, CASCADE_BUDGET_NANOS, CASCADE_MAX_CREDIT_NANOS, 0.6f, 1_000_000_000L,
+                        0.3f, 0.25f, 0.5f, Clock.SYSTEM));
+            }
+            ReplayEngine.Report report = engine.run(source,
+                    realtime ? ReplayEngine.Pacing.REALTIME : ReplayEngine.Pacing.FAST);
+            System.out.println(report);
+            if (report.getLastError() != null) {
+                System.err.println("Last error: " + report.getLastError());
+            }
+            if (out != null) {
+                Files.write(out.toPath(), report.toJson().getBytes(StandardCharsets.UTF_8));
+                System.out.println("Report written to " + out);
+            }
+        }
+    }
+
+    /**
+     * Creates the TensorFlow Lite runner by name, so this class compiles without the runtime.
+     * Also used by the detection server, which has one runner per worker.
+     */
+    static ModelRunner loadModel(File model, int threads) throws Exception {
+        Class<?> runnerClass;
+        try {
+            runnerClass = Class.forName(TFLITE_RUNNER);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Built without TensorFlow Lite, rebuild with -PtfliteJar=... or use --stub");
+        }
+        try {
+            return (ModelRunner) runnerClass.getConstructor(File.class, int.class).newInstance(model, threads);
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+}
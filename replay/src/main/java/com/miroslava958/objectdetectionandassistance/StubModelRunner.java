@@ -0,0 +1,111 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stands in for the detection model when TensorFlow Lite is not available on the host.
+ * It has the same inputs and outputs as the app's SSD MobileNet model and reports an
+ * object on every bright cell of a grid laid over the input, so a replay exercises
+ * conversion, decoding, tracking and pacing with repeatable results.
+ *
+ * An optional delay simulates the cost of real inference.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class StubModelRunner implements ModelRunner {
+    // Same input size and detection count as the app's model
+    private static final int INPUT_SIZE = 300;
+    private static final int MAX_DETECTIONS = 10;
+    // Grid cells whose mean luminance is above this are reported as objects
+    private static final int GRID = 6;
+    private static final int BRIGHT_THRESHOLD = 128;
+    // Sampling step inside a cell, in pixels
+    private static final int SAMPLE_STEP = 5;
+
+    private final long latencyNanos;
+
+    /**
+     * @param latencyNanos Simulated inference time per run
+     */
+    public StubModelRunner(long latencyNanos) {
+        this.latencyNanos = latencyNanos;
+    }
+
+    @Override
+    public TensorSpec getInputSpec() {
+        return new TensorSpec("image", new int[]{1, INPUT_SIZE, INPUT_SIZE, 3}, TensorSpec.DataType.UINT8, 0f, 0);
+    }
+
+    @Override
+    public List<TensorSpec> getOutputSpecs() {
+        return Arrays.asList(
+                new TensorSpec("detection_boxes", new int[]{1, MAX_DETECTIONS, 4}),
+                new TensorSpec("detection_classes", new int[]{1, MAX_DETECTIONS}),
+                new TensorSpec("detection_scores", new int[]{1, MAX_DETECTIONS}),
+                new TensorSpec("num_detections", new int[]{1}));
+    }
+
+    @Override
+    public void run(Object[] inputs, Map<Integer, Object> outputs) {
+        long end = System.nanoTime() + latencyNanos;
+        ByteBuffer input = (ByteBuffer) inputs[0];
+        ByteBuffer boxes = ((ByteBuffer) outputs.get(0)).order(ByteOrder.nativeOrder());
+        ByteBuffer classes = ((ByteBuffer) outputs.get(1)).order(ByteOrder.nativeOrder());
+        ByteBuffer scores = ((ByteBuffer) outputs.get(2)).order(ByteOrder.nativeOrder());
+        ByteBuffer count = ((ByteBuffer) outputs.get(3)).order(ByteOrder.nativeOrder());
+
+        int cellSize = INPUT_SIZE / GRID;
+        int found = 0;
+        for (int cell = 0; cell < GRID * GRID && found < MAX_DETECTIONS; cell++) {
+            int cellX = (cell % GRID) * cellSize;
+            int cellY = (cell / GRID) * cellSize;
+            long sum = 0;
+            int samples = 0;
+            for (int y = cellY; y < cellY + cellSize; y += SAMPLE_STEP) {
+                for (int x = cellX; x < cellX + cellSize; x += SAMPLE_STEP) {
+                    int p = (y * INPUT_SIZE + x) * 3;
+                    sum += (input.get(p) & 0xFF) + (input.get(p + 1) & 0xFF) + (input.get(p + 2) & 0xFF);
+                    samples += 3;
+                }
+            }
+            int mean = (int) (sum / samples);
+            if (mean < BRIGHT_THRESHOLD) {
+                continue;
+            }
+            // Boxes are (top, left, bottom, right), normalised
+            int b = found * 16;
+            boxes.putFloat(b, cellY / (float) INPUT_SIZE);
+            boxes.putFloat(b + 4, cellX / (float) INPUT_SIZE);
+            boxes.putFloat(b + 8, (cellY + cellSize) / (float) INPUT_SIZE);
+            boxes.putFloat(b + 12, (cellX + cellSize) / (float) INPUT_SIZE);
+            classes.putFloat(found * 4, 0);
+            scores.putFloat(found * 4, mean / 255f);
+            found++;
+        }
+        for (int i = found; i < MAX_DETECTIONS; i++) {
+            scores.putFloat(i * 4, 0);
+        }
+        count.putFloat(0, found);
+
+        long wait;
+        while ((wait = end - System.nanoTime()) > 0) {
+            if (wait > 2_000_000L) {
+                try {
+                    Thread.sleep(wait / 2_000_000L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
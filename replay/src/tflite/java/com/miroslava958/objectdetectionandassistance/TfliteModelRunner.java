@@ -0,0 +1,86 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the real model with the desktop TensorFlow Lite runtime (CPU only).
+ * Only compiled when a runtime jar is passed to the build, and created by
+ * {@link ReplayMain} through reflection so the tool also builds without it.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class TfliteModelRunner implements ModelRunner {
+    private final Interpreter interpreter;
+
+    /**
+     * @param model   The .tflite model file
+     * @param threads CPU threads for inference
+     * @throws IOException if the model cannot be read
+     */
+    public TfliteModelRunner(File model, int threads) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile file = new RandomAccessFile(model, "r");
+             FileChannel channel = file.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        interpreter = new Interpreter(buffer, new Interpreter.Options().setNumThreads(threads));
+    }
+
+    @Override
+    public TensorSpec getInputSpec() {
+        return describe(interpreter.getInputTensor(0));
+    }
+
+    @Override
+    public List<TensorSpec> getOutputSpecs() {
+        List<TensorSpec> specs = new ArrayList<>();
+        for (int i = 0; i < interpreter.getOutputTensorCount(); i++) {
+            specs.add(describe(interpreter.getOutputTensor(i)));
+        }
+        return specs;
+    }
+
+    /**
+     * Describes a tensor with its type and quantization, like the app's InterpreterFactory.
+     */
+    private static TensorSpec describe(Tensor tensor) {
+        TensorSpec.DataType dataType;
+        switch (tensor.dataType()) {
+            case FLOAT32:
+                dataType = TensorSpec.DataType.FLOAT32;
+                break;
+            case UINT8:
+                dataType = TensorSpec.DataType.UINT8;
+                break;
+            case INT8:
+                dataType = TensorSpec.DataType.INT8;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported " + tensor.dataType() + " tensor " + tensor.name());
+        }
+        Tensor.QuantizationParams quantization = tensor.quantizationParams();
+        return new TensorSpec(tensor.name(), tensor.shape(), dataType,
+                quantization.getScale(), quantization.getZeroPoint());
+    }
+
+    @Override
+    public void run(Object[] inputs, Map<Integer, Object> outputs) {
+        interpreter.runForMultipleInputsOutputs(inputs, outputs);
+    }
+
+    @Override
+    public void close() {
+        interpreter.close();
+    }
+}
@@ -0,0 +1,340 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Headless detection service for phones that offload detection to a local edge box.
+ * Runs the app's detection steps ({@link FrameDetector}) on a plain JVM behind the
+ * JDK's built-in HTTP server.
+ *
+ * API:
+ *   POST /detect?width=W&amp;height=H[&amp;rotation=R] with an I420 frame as the body
+ *        200: {"detections":[{"classId":0,"label":"person","score":0.91,"box":[l,t,r,b]}],
+ *              "batchSize":3,"queueMs":1.2,"inferenceMs":14.0}, boxes in upright frame pixels
+ *        400: malformed request, 503 + Retry-After: overloaded, 504: not processed in time
+ *   GET  /stats - queue and batch counters and server-side latency percentiles as JSON
+ *
+ * Frames go through a {@link DynamicBatcher} with one worker per interpreter (normally
+ * one single-threaded interpreter per core). When the queue is full the request is
+ * answered 503 at once, and frames that queued past their deadline are answered 503
+ * without running them, so an overloaded server sheds load instead of building a backlog.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class DetectionServer implements AutoCloseable {
+    // Largest frame accepted, in pixels per side
+    private static final int MAX_SIDE = 4096;
+    // How long a client is told to wait before retrying when the server is overloaded
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    /**
+     * One frame waiting for detection, answered exactly once.
+     */
+    static final class FrameRequest {
+        final ByteBuffer data;
+        final int width;
+        final int height;
+        final int rotation;
+        final long receivedNanos = System.nanoTime();
+        private final AtomicBoolean answered = new AtomicBoolean();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private int status;
+        private String body;
+
+        FrameRequest(byte[] data, int width, int height, int rotation) {
+            this.data = ByteBuffer.wrap(data);
+            this.width = width;
+            this.height = height;
+            this.rotation = rotation;
+        }
+
+        /**
+         * @return false if the request was already answered, perhaps still being written
+         */
+        boolean answer(int status, String body) {
+            if (!answered.compareAndSet(false, true)) {
+                return false;
+            }
+            this.status = status;
+            this.body = body;
+            done.countDown();
+            return true;
+        }
+    }
+
+    /**
+     * Runs batches of frames through its own detector and model runner.
+     */
+    private final class DetectorWorker implements DynamicBatcher.Worker<FrameRequest> {
+        private final FrameDetector detector;
+        private final YuvFrame frame = new YuvFrame();
+        private final StringBuilder json = new StringBuilder(1024);
+
+        DetectorWorker(FrameDetector detector) {
+            this.detector = detector;
+        }
+
+        @Override
+        public void process(List<FrameRequest> batch) {
+            for (int i = 0; i < batch.size(); i++) {
+                FrameRequest request = batch.get(i);
+                long start = System.nanoTime();
+                try {
+                    frame.setI420(request.width, request.height, request.data);
+                    DetectionBuffer detections = detector.detect(frame, request.rotation);
+                    request.answer(200, toJson(detections, batch.size(), start - request.receivedNanos,
+                            System.nanoTime() - start));
+                } catch (Exception e) {
+                    request.answer(500, error("Detection failed: " + e.getMessage()));
+                }
+                latency.record(System.nanoTime() - request.receivedNanos);
+            }
+        }
+
+        private String toJson(DetectionBuffer detections, int batchSize, long queueNanos, long inferenceNanos) {
+            json.setLength(0);
+            json.append("{\"detections\":[");
+            for (int i = 0; i < detections.size(); i++) {
+                int classId = detections.getClassId(i);
+                json.append(i > 0 ? "," : "").append("{\"classId\":").append(classId);
+                if (labels != null && classId >= 0 && classId < labels.size()) {
+                    json.append(",\"label\":\"").append(labels.get(classId)).append('"');
+                }
+                appendFixed(json.append(",\"score\":"), detections.getScore(i), 1000);
+                appendFixed(json.append(",\"box\":["), detections.getLeft(i), 10);
+                appendFixed(json.append(','), detections.getTop(i), 10);
+                appendFixed(json.append(','), detections.getRight(i), 10);
+                appendFixed(json.append(','), detections.getBottom(i), 10);
+                json.append("]}");
+            }
+            json.append("],\"batchSize\":").append(batchSize);
+            appendFixed(json.append(",\"queueMs\":"), queueNanos / 1e6, 100);
+            appendFixed(json.append(",\"inferenceMs\":"), inferenceNanos / 1e6, 100);
+            return json.append('}').toString();
+        }
+    }
+
+    private final HttpServer http;
+    private final ExecutorService httpThreads;
+    private final DynamicBatcher<FrameRequest> batcher;
+    // Label names escaped for JSON once, or null
+    private final List<String> labels;
+    // Longest a request handler waits for its frame before answering 504
+    private final long responseTimeoutNanos;
+    // Time from receiving a frame to its answer, for frames that were processed
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * @param address       Address to listen on; port 0 picks a free port
+     * @param runners       One model runner per worker, used only by that worker
+     * @param numClasses    Number of labels
+     * @param labels        Label names for the answers, or null to send class IDs only
+     * @param anchors       Anchors for raw SSD outputs, or null
+     * @param policy        Decides which detections are kept
+     * @param queueCapacity Most frames queued at once; more are answered 503
+     * @param maxBatch      Most frames per batch
+     * @param maxWaitNanos  Longest a frame waits for its batch to fill
+     * @param maxQueueNanos Frames queued longer than this are answered 503 without running them
+     * @throws IOException if the address cannot be bound
+     */
+    public DetectionServer(InetSocketAddress address, List<ModelRunner> runners, int numClasses, List<String> labels,
+                           float[] anchors, DetectionPolicy policy, int queueCapacity, int maxBatch,
+                           long maxWaitNanos, long maxQueueNanos) throws IOException {
+        if (labels != null) {
+            this.labels = new ArrayList<>(labels.size());
+            for (String label : labels) {
+                this.labels.add(escape(label));
+            }
+        } else {
+            this.labels = null;
+        }
+        List<DetectorWorker> workers = new ArrayList<>();
+        for (ModelRunner runner : runners) {
+            workers.add(new DetectorWorker(new FrameDetector(runner, numClasses, anchors, policy,
+                    InputTransform.ScaleMode.LETTERBOX)));
+        }
+        batcher = new DynamicBatcher<>("detect", workers, queueCapacity, maxBatch, maxWaitNanos, maxQueueNanos,
+                (request, reason) -> request.answer(reason == DynamicBatcher.Drop.FAILED ? 500 : 503,
+                        error("Frame " + reason.name().toLowerCase(Locale.ROOT))));
+        responseTimeoutNanos = maxQueueNanos * 2 + TimeUnit.SECONDS.toNanos(5);
+
+        // Enough handler threads for every queued frame and every frame being processed,
+        // so the batcher's queue rather than the connection backlog limits the load
+        httpThreads = Executors.newFixedThreadPool(queueCapacity + runners.size() * maxBatch);
+        http = HttpServer.create(address, 0);
+        http.setExecutor(httpThreads);
+        http.createContext("/detect", this::handleDetect);
+        http.createContext("/stats", this::handleStats);
+    }
+
+    public void start() {
+        batcher.start();
+        http.start();
+    }
+
+    /**
+     * @return The port the server listens on
+     */
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    private void handleDetect(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, error("Use POST"));
+                return;
+            }
+            URI uri = exchange.getRequestURI();
+            int width = intParameter(uri, "width", -1);
+            int height = intParameter(uri, "height", -1);
+            int rotation = intParameter(uri, "rotation", 0);
+            if (width <= 0 || height <= 0 || width > MAX_SIDE || height > MAX_SIDE || rotation % 90 != 0) {
+                respond(exchange, 400, error("Give width and height, and rotation in steps of 90"));
+                return;
+            }
+            byte[] data = readBody(exchange.getRequestBody(), YuvFrame.i420Size(width, height));
+            if (data == null) {
+                respond(exchange, 400, error("Body must be a " + width + "x" + height + " I420 frame"));
+                return;
+            }
+            FrameRequest request = new FrameRequest(data, width, height, rotation);
+            if (!batcher.submit(request)) {
+                exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+                respond(exchange, 503, error("Overloaded"));
+                return;
+            }
+            if (!request.done.await(responseTimeoutNanos, TimeUnit.NANOSECONDS)
+                    && !request.answer(504, error("Timed out"))) {
+                // A worker is answering it at this moment: wait until its answer is complete
+                request.done.await();
+            }
+            if (request.status == 503) {
+                exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+            }
+            respond(exchange, request.status, request.body);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, error(e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, error("Shutting down"));
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        LatencyHistogram.Snapshot snapshot = latency.snapshot();
+        long batches = batcher.getBatches();
+        String json = String.format(Locale.ROOT, "{\"workers\":%d,\"queueDepth\":%d,\"submitted\":%d,"
+                        + "\"rejected\":%d,\"expired\":%d,\"failed\":%d,\"processed\":%d,\"batches\":%d,"
+                        + "\"meanBatch\":%.2f,\"latencyMs\":{\"p50\":%.2f,\"p99\":%.2f,\"max\":%.2f}}",
+                batcher.getWorkerCount(), batcher.getQueueDepth(), batcher.getSubmitted(), batcher.getRejected(),
+                batcher.getExpired(), batcher.getFailed(), batcher.getProcessed(), batches,
+                batches > 0 ? (batcher.getProcessed() + batcher.getFailed()) / (double) batches : 0.0,
+                snapshot.getPercentile(50) / 1e6, snapshot.getPercentile(99) / 1e6, snapshot.getMax() / 1e6);
+        respond(exchange, 200, json);
+    }
+
+    /**
+     * Reads a body of exactly the expected length.
+     *
+     * @return The body, or null if it has another length
+     */
+    private static byte[] readBody(InputStream in, int expected) throws IOException {
+        byte[] data = new byte[expected];
+        int read = 0;
+        int n;
+        while (read < expected && (n = in.read(data, read, expected - read)) > 0) {
+            read += n;
+        }
+        boolean exact = read == expected && in.read() < 0;
+        in.close();
+        return exact ? data : null;
+    }
+
+    private static int intParameter(URI uri, String name, int missing) {
+        String query = uri.getRawQuery();
+        if (query == null) {
+            return missing;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0 && pair.substring(0, equals).equals(name)) {
+                try {
+                    return Integer.parseInt(pair.substring(equals + 1));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid " + name);
+                }
+            }
+        }
+        return missing;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String error(String message) {
+        return "{\"error\":\"" + escape(message) + "\"}";
+    }
+
+    /**
+     * Appends a number rounded to a fixed number of decimals, like %.2f without formatting.
+     *
+     * @param scale 10 to the number of decimals, e.g. 100 for two
+     */
+    private static void appendFixed(StringBuilder json, double value, long scale) {
+        long scaled = Math.round(value * scale);
+        if (scaled < 0) {
+            json.append('-');
+            scaled = -scaled;
+        }
+        json.append(scaled / scale).append('.');
+        for (long digit = scale / 10; digit > 0; digit /= 10) {
+            json.append(scaled / digit % 10);
+        }
+    }
+
+    private static String escape(String text) {
+        return text == null ? "" : text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Stops accepting frames, answers the queued ones 503 and stops the workers. If the
+     * calling thread is interrupted while waiting for the workers, this returns with its
+     * interrupt flag set.
+     */
+    @Override
+    public void close() {
+        http.stop(0);
+        try {
+            batcher.shutdown(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            httpThreads.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for the detection server: a number of clients each send a frame, wait
+ * for the answer and send the next one, like phones streaming to an edge box, and the
+ * throughput, latency percentiles and shed requests are reported at the end.
+ *
+ * Usage:
+ *   loadTest (--url URL | --stub-server [--workers N] [--stub-latency-ms N] [--max-batch N])
+ *            [--clients N] [--duration-s N] [--width N] [--height N]
+ *
+ * --stub-server starts a server with the stub model in this process, so the batching
+ * and load shedding can be measured without a model or a second machine.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class LoadGenerator {
+    // VGA frames, like the app's camera analysis
+    private static final int DEFAULT_WIDTH = 640;
+    private static final int DEFAULT_HEIGHT = 480;
+    private static final int DEFAULT_CLIENTS = 8;
+    private static final int DEFAULT_DURATION_S = 10;
+    // Stub server settings: about the inference time of SSD MobileNet on one desktop core
+    private static final long DEFAULT_STUB_LATENCY_MS = 10;
+    private static final int DEFAULT_MAX_BATCH = 4;
+    private static final long STUB_MAX_WAIT_MS = 5;
+    private static final long STUB_MAX_QUEUE_MS = 500;
+    private static final int STUB_QUEUE_PER_WORKER = 8;
+    // How long a shed client waits before sending again
+    private static final long BACKOFF_MS = 20;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong answered = new AtomicLong();
+    private final AtomicLong shed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        CommandLine line = new CommandLine(args,
+                "Usage: loadTest (--url URL | --stub-server [--workers N] [--stub-latency-ms N] [--max-batch N])",
+                "                [--clients N] [--duration-s N] [--width N] [--height N]");
+        String url = null;
+        boolean stubServer = false;
+        int workers = Runtime.getRuntime().availableProcessors();
+        long stubLatencyMs = DEFAULT_STUB_LATENCY_MS;
+        int maxBatch = DEFAULT_MAX_BATCH;
+        int clients = DEFAULT_CLIENTS;
+        int durationS = DEFAULT_DURATION_S;
+        int width = DEFAULT_WIDTH;
+        int height = DEFAULT_HEIGHT;
+
+        while (line.hasNext()) {
+            String arg = line.next();
+            switch (arg) {
+                case "--url":
+                    url = line.value(arg);
+                    break;
+                case "--stub-server":
+                    stubServer = true;
+                    break;
+                case "--workers":
+                    workers = line.intValue(arg);
+                    break;
+                case "--stub-latency-ms":
+                    stubLatencyMs = line.longValue(arg);
+                    break;
+                case "--max-batch":
+                    maxBatch = line.intValue(arg);
+                    break;
+                case "--clients":
+                    clients = line.intValue(arg);
+                    break;
+                case "--duration-s":
+                    durationS = line.intValue(arg);
+                    break;
+                case "--width":
+                    width = line.intValue(arg);
+                    break;
+                case "--height":
+                    height = line.intValue(arg);
+                    break;
+                default:
+                    line.usage("Unknown option " + arg);
+            }
+        }
+        if (stubServer == (url != null)) {
+            line.usage("Give either --url or --stub-server");
+        }
+        if (clients < 1 || durationS < 1 || width < 1 || height < 1) {
+            line.usage("Invalid client count, duration or frame size");
+        }
+
+        DetectionServer server = null;
+        if (stubServer) {
+            List<ModelRunner> runners = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                runners.add(new StubModelRunner(stubLatencyMs * 1_000_000L));
+            }
+            server = new DetectionServer(new InetSocketAddress("127.0.0.1", 0), runners, 80, null, null,
+                    DetectionPolicy.uniform(0.5f), workers * STUB_QUEUE_PER_WORKER, maxBatch,
+                    STUB_MAX_WAIT_MS * 1_000_000L, STUB_MAX_QUEUE_MS * 1_000_000L);
+            server.start();
+            url = "http://127.0.0.1:" + server.getPort();
+        }
+        try {
+            new LoadGenerator().run(url, clients, TimeUnit.SECONDS.toNanos(durationS), width, height);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    private void run(String baseUrl, int clients, long durationNanos, int width, int height) throws Exception {
+        URL detect = new URL(baseUrl + "/detect?width=" + width + "&height=" + height + "&rotation=0");
+        byte[] frame = syntheticFrame(width, height);
+        long end = System.nanoTime() + durationNanos;
+        Thread[] threads = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            threads[i] = new Thread(() -> client(detect, frame, end), "client-" + i);
+            threads[i].start();
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        LatencyHistogram.Snapshot snapshot = latency.snapshot();
+        long sent = answered.get() + shed.get() + errors.get();
+        System.out.printf(Locale.ROOT, "%d clients for %.1f s: %d requests, %.1f answered/s%n",
+                clients, seconds, sent, answered.get() / seconds);
+        System.out.printf(Locale.ROOT, "Latency ms: p50 %.1f, p99 %.1f, max %.1f%n",
+                snapshot.getPercentile(50) / 1e6, snapshot.getPercentile(99) / 1e6, snapshot.getMax() / 1e6);
+        System.out.printf(Locale.ROOT, "Shed: %d (%.1f%%), errors: %d%n",
+                shed.get(), sent > 0 ? 100.0 * shed.get() / sent : 0.0, errors.get());
+        System.out.println("Server: " + get(new URL(baseUrl + "/stats")));
+    }
+
+    /**
+     * One closed-loop client: sends the next frame as soon as the last one is answered.
+     */
+    private void client(URL detect, byte[] frame, long endNanos) {
+        while (System.nanoTime() < endNanos) {
+            long start = System.nanoTime();
+            try {
+                HttpURLConnection connection = (HttpURLConnection) detect.openConnection();
+                connection.setRequestMethod("POST");
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(frame.length);
+                connection.setRequestProperty("Content-Type", "application/octet-stream");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(frame);
+                }
+                int status = connection.getResponseCode();
+                drain(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+                if (status == 200) {
+                    latency.record(System.nanoTime() - start);
+                    answered.incrementAndGet();
+                } else if (status == 503) {
+                    shed.incrementAndGet();
+                    Thread.sleep(BACKOFF_MS);
+                } else {
+                    errors.incrementAndGet();
+                }
+            } catch (IOException e) {
+                errors.incrementAndGet();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return A grey I420 frame with a few bright squares, which the stub model reports as objects
+     */
+    static byte[] syntheticFrame(int width, int height) {
+        byte[] frame = new byte[YuvFrame.i420Size(width, height)];
+        int lumaSize = width * height;
+        for (int i = 0; i < lumaSize; i++) {
+            frame[i] = 60;
+        }
+        for (int i = lumaSize; i < frame.length; i++) {
+            frame[i] = (byte) 128;
+        }
+        int side = Math.min(width, height) / 4;
+        int[][] corners = {{width / 8, height / 8}, {width / 2, height / 2}};
+        for (int[] corner : corners) {
+            for (int y = corner[1]; y < Math.min(height, corner[1] + side); y++) {
+                for (int x = corner[0]; x < Math.min(width, corner[0] + side); x++) {
+                    frame[y * width + x] = (byte) 230;
+                }
+            }
+        }
+        return frame;
+    }
+
+    private static String get(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            return new String(readAll(in), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        if (in != null) {
+            try (InputStream body = in) {
+                readAll(body);
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,114 @@
+package com.miroslava958.objectdetectionandassistance;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line entry point of the detection server.
+ *
+ * Usage:
+ *   server (--stub [--stub-latency-ms N] | --model FILE)
+ *          [--port N] [--workers N] [--max-batch N] [--max-wait-ms N]
+ *          [--queue N] [--max-queue-ms N]
+ *          [--labels FILE] [--anchors FILE] [--threshold N | --policy FILE]
+ *
+ * Each worker loads its own copy of the model with one interpreter thread, so the
+ * default of one worker per core keeps every core busy without the workers competing.
+ *
+ * Author: Miroslava Milcheva
+ * Course: BSc Computing - Final Year Project
+ */
+public class ServerMain {
+    private static final int DEFAULT_PORT = 8080;
+    // Batches of up to 4 frames, waiting at most 5 ms for one to fill
+    private static final int DEFAULT_MAX_BATCH = 4;
+    private static final long DEFAULT_MAX_WAIT_MS = 5;
+    // Frames per worker that may wait; frames that waited longer than 500 ms are stale for a walking user
+    private static final int DEFAULT_QUEUE_PER_WORKER = 8;
+    private static final long DEFAULT_MAX_QUEUE_MS = 500;
+
+    public static void main(String[] args) throws Exception {
+        CommandLine line = new CommandLine(args,
+                "Usage: server (--stub [--stub-latency-ms N] | --model FILE)",
+                "              [--port N] [--workers N] [--max-batch N] [--max-wait-ms N]",
+                "              [--queue N] [--max-queue-ms N]",
+                "              [--labels FILE] [--anchors FILE] [--threshold N | --policy FILE]");
+        File model = null;
+        boolean stub = false;
+        long stubLatencyMs = 0;
+        int port = DEFAULT_PORT;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int maxBatch = DEFAULT_MAX_BATCH;
+        long maxWaitMs = DEFAULT_MAX_WAIT_MS;
+        int queue = -1;
+        long maxQueueMs = DEFAULT_MAX_QUEUE_MS;
+
+        while (line.hasNext()) {
+            String arg = line.next();
+            switch (arg) {
+                case "--model":
+                    model = new File(line.value(arg));
+                    break;
+                case "--stub":
+                    stub = true;
+                    break;
+                case "--stub-latency-ms":
+                    stubLatencyMs = line.longValue(arg);
+                    break;
+                case "--port":
+                    port = line.intValue(arg);
+                    break;
+                case "--workers":
+                    workers = line.intValue(arg);
+                    break;
+                case "--max-batch":
+                    maxBatch = line.intValue(arg);
+                    break;
+                case "--max-wait-ms":
+                    maxWaitMs = line.longValue(arg);
+                    break;
+                case "--queue":
+                    queue = line.intValue(arg);
+                    break;
+                case "--max-queue-ms":
+                    maxQueueMs = line.longValue(arg);
+                    break;
+                default:
+                    if (!line.detectionOption(arg)) {
+                        line.usage("Unknown option " + arg);
+                    }
+            }
+        }
+        if (stub == (model != null)) {
+            line.usage("Give either --stub or --model");
+        }
+        if (workers < 1 || maxBatch < 1 || maxWaitMs < 0 || maxQueueMs < maxWaitMs) {
+            line.usage("Invalid worker, batch or wait settings");
+        }
+        if (queue < 0) {
+            queue = workers * DEFAULT_QUEUE_PER_WORKER;
+        }
+        List<String> labels = line.readLabels();
+        int numClasses = CommandLine.numClasses(labels);
+        DetectionPolicy policy = line.readPolicy(labels);
+        float[] anchors = line.readAnchors();
+
+        List<ModelRunner> runners = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            runners.add(stub ? new StubModelRunner(stubLatencyMs * 1_000_000L) : ReplayMain.loadModel(model, 1));
+        }
+        DetectionServer server = new DetectionServer(new InetSocketAddress(port), runners, numClasses, labels,
+                anchors, policy, queue, maxBatch, maxWaitMs * 1_000_000L, maxQueueMs * 1_000_000L);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            for (ModelRunner runner : runners) {
+                runner.close();
+            }
+        }));
+        server.start();
+        System.out.println("Detection server on port " + server.getPort() + " with " + workers
+                + " workers, batches of up to " + maxBatch + ", queue of " + queue);
+    }
+}